@@ -1,16 +1,37 @@
 package io.legado.api.controller;
 
 import io.legado.api.dto.ApiResponse;
+import io.legado.core.dto.ContentSearchResultDto;
+import io.legado.core.dto.CursorPageDto;
+import io.legado.core.dto.SearchBatchDto;
+import io.legado.core.dto.SearchPageDto;
 import io.legado.core.dto.SearchResultDto;
+import io.legado.core.dto.SearchSummaryDto;
+import io.legado.core.dto.TocMergeResultDto;
+import io.legado.core.search.SearchListener;
+import io.legado.core.search.SearchSession;
 import io.legado.core.service.BookSearchService;
 import io.legado.core.service.BookService;
+import io.legado.core.service.ExportService;
+import io.legado.core.service.ReadaheadService;
 import io.legado.model.entity.Book;
-import io.legado.model.entity.BookChapter;
+import io.legado.model.entity.User;
+import io.legado.model.projection.ChapterTocItem;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.util.Date;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
 
 /**
  * 书籍API控制器
@@ -20,12 +41,31 @@ import java.util.List;
 @RequestMapping("/api/v1/books")
 public class BookController {
     
+    /**
+     * 流式搜索连接在搜索截止时间之外预留的时间（毫秒）
+     */
+    private static final long SEARCH_STREAM_GRACE = 5_000L;
+    
+    /**
+     * 流式搜索心跳间隔（毫秒），用于尽早发现客户端断开
+     */
+    private static final long SEARCH_STREAM_HEARTBEAT = 2_000L;
+    
     @Autowired
     private BookService bookService;
     
     @Autowired
     private BookSearchService bookSearchService;
     
+    @Autowired
+    private TaskScheduler taskScheduler;
+    
+    @Autowired
+    private ExportService exportService;
+    
+    @Autowired
+    private ReadaheadService readaheadService;
+    
     /**
      * 获取所有书籍
      */
@@ -35,6 +75,38 @@ public class BookController {
         return ApiResponse.success(books);
     }
     
+    /**
+     * 按更新时间倒序分页获取书籍
+     * 不带游标时获取第一页，带上返回的 nextCursor 获取下一页
+     */
+    @GetMapping("/page")
+    public ApiResponse<CursorPageDto<Book>> getBookPage(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size) {
+        return ApiResponse.success(bookService.getBookPage(cursor, size));
+    }
+    
+    /**
+     * 搜索书架中的书籍（书名、作者、分类、简介）
+     */
+    @GetMapping("/shelf/search")
+    public ApiResponse<List<Book>> searchShelf(
+            @RequestParam String keyword,
+            @RequestParam(required = false) Integer limit) {
+        if (isBlank(keyword)) {
+            return ApiResponse.error(400, "搜索关键词不能为空");
+        }
+        return ApiResponse.success(bookService.searchShelf(keyword, limit));
+    }
+    
+    /**
+     * 导出所有书籍
+     */
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportBooks(@RequestParam(defaultValue = "false") boolean gzip) {
+        return ExportResponse.of("books", gzip, exportService::exportBooks);
+    }
+    
     /**
      * 获取书籍详情
      */
@@ -60,11 +132,10 @@ public class BookController {
      * 从书源添加书籍
      */
     @PostMapping("/from-source")
-    public ApiResponse<Book> addBookFromSource(
+    public CompletableFuture<ApiResponse<Book>> addBookFromSource(
             @RequestParam String bookUrl,
             @RequestParam String sourceUrl) {
-        Book book = bookService.addBookFromSource(bookUrl, sourceUrl);
-        return ApiResponse.success(book);
+        return bookService.addBookFromSource(bookUrl, sourceUrl).thenApply(ApiResponse::success);
     }
     
     /**
@@ -80,20 +151,54 @@ public class BookController {
      * 获取书籍章节列表
      */
     @GetMapping("/{id}/chapters")
-    public ApiResponse<List<BookChapter>> getChapters(@PathVariable Long id) {
-        List<BookChapter> chapters = bookService.getChapters(id);
+    public ApiResponse<List<ChapterTocItem>> getChapters(@PathVariable Long id) {
+        List<ChapterTocItem> chapters = bookService.getChapters(id);
         return ApiResponse.success(chapters);
     }
     
     /**
-     * 获取章节内容
+     * 分页获取书籍章节列表
+     */
+    @GetMapping("/{id}/chapters/page")
+    public ApiResponse<CursorPageDto<ChapterTocItem>> getChapterPage(
+            @PathVariable Long id,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size) {
+        return ApiResponse.success(bookService.getChapterPage(id, cursor, size));
+    }
+    
+    /**
+     * 在书籍已缓存的章节内容中搜索
+     */
+    @GetMapping("/{id}/search")
+    public ApiResponse<List<ContentSearchResultDto>> searchContent(
+            @PathVariable Long id,
+            @RequestParam String keyword,
+            @RequestParam(required = false) Integer limit) {
+        if (isBlank(keyword)) {
+            return ApiResponse.error(400, "搜索关键词不能为空");
+        }
+        return ApiResponse.success(bookService.searchContent(id, keyword, limit));
+    }
+    
+    /**
+     * 从书源更新目录，只写入有变化的章节，已缓存的内容保留
+     */
+    @PostMapping("/{id}/chapters/refresh")
+    public CompletableFuture<ApiResponse<TocMergeResultDto>> refreshChapters(@PathVariable Long id) {
+        return bookService.refreshChapters(id).thenApply(ApiResponse::success);
+    }
+    
+    /**
+     * 获取章节内容，并在后台预读之后的章节
      */
     @GetMapping("/{id}/chapters/{index}/content")
-    public ApiResponse<String> getChapterContent(
+    public CompletableFuture<ApiResponse<String>> getChapterContent(
             @PathVariable Long id,
-            @PathVariable Integer index) {
-        String content = bookService.getChapterContent(id, index);
-        return ApiResponse.success(content);
+            @PathVariable Integer index,
+            @AuthenticationPrincipal User user) {
+        return readaheadService.getChapterContent(id, index, user != null ? user.getUsername() : "anonymous")
+                .thenApply(ApiResponse::success);
     }
     
     /**
@@ -103,8 +208,9 @@ public class BookController {
     public ApiResponse<Void> updateProgress(
             @PathVariable Long id,
             @RequestParam Integer chapterIndex,
-            @RequestParam(required = false, defaultValue = "0") Integer chapterPos) {
-        bookService.updateProgress(id, chapterIndex, chapterPos);
+            @RequestParam(required = false, defaultValue = "0") Integer chapterPos,
+            @AuthenticationPrincipal User user) {
+        bookService.updateProgress(id, chapterIndex, chapterPos, user != null ? user.getUsername() : "anonymous");
         return ApiResponse.success(null);
     }
     
@@ -121,4 +227,76 @@ public class BookController {
         return ApiResponse.success(results);
     }
     
+    /**
+     * 分页搜索书籍
+     * 不带游标时搜索第一页；带上返回的 summary.cursor 继续搜索所有还有下一页的书源，
+     * 或带上 sourceCursors 中的游标只继续单个书源
+     */
+    @GetMapping("/search/page")
+    public ApiResponse<SearchPageDto> searchBooksPage(
+            @RequestParam(required = false) String keyword,
+            @RequestParam(required = false) String cursor) {
+        if (isBlank(cursor) && isBlank(keyword)) {
+            return ApiResponse.error(400, "搜索关键词不能为空");
+        }
+        
+        return ApiResponse.success(bookSearchService.searchPage(keyword, cursor));
+    }
+    
+    /**
+     * 流式搜索书籍（SSE）
+     * 每个书源完成后推送一次 batch 事件，全部结束或到达截止时间后推送 summary 事件；
+     * 带上 summary 或 batch 中的 cursor 继续搜索下一页
+     */
+    @GetMapping(value = "/search/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter searchBooksStream(
+            @RequestParam(required = false) String keyword,
+            @RequestParam(required = false) String cursor) {
+        if (isBlank(cursor) && isBlank(keyword)) {
+            throw new IllegalArgumentException("搜索关键词不能为空");
+        }
+        
+        SseEmitter emitter = new SseEmitter(bookSearchService.getDeadlineMillis() + SEARCH_STREAM_GRACE);
+        SearchSession session = bookSearchService.searchStream(keyword, cursor, new SearchListener() {
+            @Override
+            public void onBatch(SearchBatchDto batch) {
+                try {
+                    emitter.send(SseEmitter.event().name("batch").data(batch, MediaType.APPLICATION_JSON));
+                } catch (IOException e) {
+                    throw new IllegalStateException("客户端已断开", e);
+                }
+            }
+            
+            @Override
+            public void onComplete(SearchSummaryDto summary) {
+                try {
+                    emitter.send(SseEmitter.event().name("summary").data(summary, MediaType.APPLICATION_JSON));
+                    emitter.complete();
+                } catch (IOException e) {
+                    emitter.completeWithError(e);
+                }
+            }
+        });
+        
+        // 定时发送心跳，写入失败说明客户端已断开
+        ScheduledFuture<?> heartbeat = taskScheduler.scheduleAtFixedRate(() -> {
+            try {
+                emitter.send(SseEmitter.event().comment("heartbeat"));
+            } catch (Exception e) {
+                session.cancel();
+            }
+        }, new Date(System.currentTimeMillis() + SEARCH_STREAM_HEARTBEAT), SEARCH_STREAM_HEARTBEAT);
+        session.getResult().whenComplete((summary, e) -> heartbeat.cancel(false));
+        
+        // 客户端断开或连接超时时中断仍在进行的书源请求
+        emitter.onCompletion(session::cancel);
+        emitter.onTimeout(session::cancel);
+        emitter.onError(e -> session.cancel());
+        return emitter;
+    }
+    
+    private static boolean isBlank(String value) {
+        return value == null || value.trim().isEmpty();
+    }
+    
 }
@@ -1,13 +1,20 @@
 package io.legado.api.controller;
 
 import io.legado.api.dto.ApiResponse;
+import io.legado.core.dto.CursorPageDto;
+import io.legado.core.dto.SourceImportResultDto;
 import io.legado.core.service.BookSourceService;
+import io.legado.core.service.ExportService;
 import io.legado.model.entity.BookSource;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 
 /**
@@ -21,6 +28,9 @@ public class BookSourceController {
     @Autowired
     private BookSourceService bookSourceService;
     
+    @Autowired
+    private ExportService exportService;
+    
     /**
      * 获取所有书源
      */
@@ -30,6 +40,54 @@ public class BookSourceController {
         return ApiResponse.success(sources);
     }
     
+    /**
+     * 按权重倒序分页获取书源
+     * 不带游标时获取第一页，带上返回的 nextCursor 获取下一页
+     */
+    @GetMapping("/page")
+    public ApiResponse<CursorPageDto<BookSource>> getSourcePage(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size) {
+        return ApiResponse.success(bookSourceService.getSourcePage(cursor, size));
+    }
+    
+    /**
+     * 获取启用的书源，可按分组筛选
+     */
+    @GetMapping("/enabled")
+    public ApiResponse<List<BookSource>> getEnabledSources(@RequestParam(required = false) String group) {
+        return ApiResponse.success(bookSourceService.getEnabledSources(group));
+    }
+    
+    /**
+     * 获取启用书源的分组
+     */
+    @GetMapping("/groups")
+    public ApiResponse<List<String>> getEnabledGroups() {
+        return ApiResponse.success(bookSourceService.getEnabledGroups());
+    }
+    
+    /**
+     * 按名称、URL与分组搜索书源
+     */
+    @GetMapping("/search")
+    public ApiResponse<List<BookSource>> searchSources(
+            @RequestParam String keyword,
+            @RequestParam(required = false) Integer limit) {
+        if (keyword.trim().isEmpty()) {
+            return ApiResponse.error(400, "搜索关键词不能为空");
+        }
+        return ApiResponse.success(bookSourceService.searchSources(keyword, limit));
+    }
+    
+    /**
+     * 导出所有书源（阅读App书源格式）
+     */
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportSources(@RequestParam(defaultValue = "false") boolean gzip) {
+        return ExportResponse.of("bookSource", gzip, exportService::exportSources);
+    }
+    
     /**
      * 获取书源详情
      */
@@ -64,16 +122,28 @@ public class BookSourceController {
      * 从URL导入书源
      */
     @PostMapping("/import/url")
-    public ApiResponse<Integer> importFromUrl(@RequestParam String url) {
+    public ApiResponse<SourceImportResultDto> importFromUrl(@RequestParam String url) {
         try {
-            int count = bookSourceService.importFromUrl(url);
-            return ApiResponse.success(count);
+            return ApiResponse.success(bookSourceService.importFromUrl(url));
         } catch (IOException e) {
             log.error("从URL导入书源失败: {}", url, e);
             return ApiResponse.error(400, "从URL导入书源失败: " + e.getMessage());
         }
     }
     
+    /**
+     * 从文件导入书源
+     */
+    @PostMapping("/import/file")
+    public ApiResponse<SourceImportResultDto> importFromFile(@RequestParam("file") MultipartFile file) {
+        try (InputStream in = file.getInputStream()) {
+            return ApiResponse.success(bookSourceService.importFrom(in));
+        } catch (IOException e) {
+            log.error("从文件导入书源失败: {}", file.getOriginalFilename(), e);
+            return ApiResponse.error(400, "从文件导入书源失败: " + e.getMessage());
+        }
+    }
+    
     /**
      * 更新书源
      */
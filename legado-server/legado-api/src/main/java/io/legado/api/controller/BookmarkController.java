@@ -0,0 +1,34 @@
+package io.legado.api.controller;
+
+import io.legado.api.dto.ApiResponse;
+import io.legado.core.dto.CursorPageDto;
+import io.legado.core.service.BookmarkService;
+import io.legado.model.entity.Bookmark;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * 书签API控制器
+ */
+@RestController
+@RequestMapping("/api/v1/bookmarks")
+public class BookmarkController {
+    
+    @Autowired
+    private BookmarkService bookmarkService;
+    
+    /**
+     * 按创建时间倒序分页获取书签
+     * 不带游标时获取第一页，带上返回的 nextCursor 获取下一页
+     */
+    @GetMapping
+    public ApiResponse<CursorPageDto<Bookmark>> getBookmarkPage(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size) {
+        return ApiResponse.success(bookmarkService.getBookmarkPage(cursor, size));
+    }
+    
+}
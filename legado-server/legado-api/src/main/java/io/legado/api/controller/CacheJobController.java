@@ -0,0 +1,70 @@
+package io.legado.api.controller;
+
+import io.legado.api.dto.ApiResponse;
+import io.legado.core.service.CacheJobService;
+import io.legado.model.entity.CacheJob;
+import io.legado.model.entity.User;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+/**
+ * 章节缓存任务API控制器
+ * 进度通过 WebSocket /user/queue/cache-progress 推送
+ */
+@RestController
+@RequestMapping("/api/v1/cache-jobs")
+public class CacheJobController {
+    
+    @Autowired
+    private CacheJobService cacheJobService;
+    
+    /**
+     * 创建缓存任务，缓存书籍 start 到 end 章（含），不指定时缓存整本书
+     */
+    @PostMapping
+    public ApiResponse<CacheJob> createJob(
+            @RequestParam Long bookId,
+            @RequestParam(required = false) Integer start,
+            @RequestParam(required = false) Integer end,
+            @AuthenticationPrincipal User user) {
+        return ApiResponse.success(cacheJobService.createJob(bookId, start, end, username(user)));
+    }
+    
+    /**
+     * 获取当前用户的缓存任务
+     */
+    @GetMapping
+    public ApiResponse<List<CacheJob>> getJobs(@AuthenticationPrincipal User user) {
+        return ApiResponse.success(cacheJobService.getJobs(username(user)));
+    }
+    
+    /**
+     * 获取缓存任务
+     */
+    @GetMapping("/{id}")
+    public ApiResponse<CacheJob> getJob(@PathVariable Long id, @AuthenticationPrincipal User user) {
+        return ApiResponse.success(cacheJobService.getJob(id, username(user)));
+    }
+    
+    /**
+     * 取消缓存任务
+     */
+    @DeleteMapping("/{id}")
+    public ApiResponse<CacheJob> cancelJob(@PathVariable Long id, @AuthenticationPrincipal User user) {
+        return ApiResponse.success(cacheJobService.cancelJob(id, username(user)));
+    }
+    
+    private String username(User user) {
+        return user != null ? user.getUsername() : "anonymous";
+    }
+    
+}
@@ -0,0 +1,57 @@
+package io.legado.api.controller;
+
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 流式导出响应
+ * 导出内容边生成边写入响应，可选边写边压缩为gzip文件
+ */
+final class ExportResponse {
+    
+    private static final int BUFFER_SIZE = 64 * 1024;
+    
+    private ExportResponse() {
+    }
+    
+    /**
+     * @param name 下载文件名（不含扩展名）
+     * @param gzip 是否压缩为 .json.gz
+     */
+    static ResponseEntity<StreamingResponseBody> of(String name, boolean gzip, Exporter exporter) {
+        StreamingResponseBody body = out -> {
+            if (gzip) {
+                GZIPOutputStream compressed = new GZIPOutputStream(out, BUFFER_SIZE);
+                exporter.export(compressed);
+                compressed.finish();
+                compressed.flush();
+            } else {
+                OutputStream buffered = new BufferedOutputStream(out, BUFFER_SIZE);
+                exporter.export(buffered);
+                buffered.flush();
+            }
+        };
+        String filename = name + (gzip ? ".json.gz" : ".json");
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment().filename(filename).build().toString())
+                .contentType(gzip ? MediaType.parseMediaType("application/gzip") : MediaType.APPLICATION_JSON)
+                .body(body);
+    }
+    
+    /**
+     * 导出内容
+     */
+    interface Exporter {
+        
+        void export(OutputStream out) throws IOException;
+    }
+    
+}
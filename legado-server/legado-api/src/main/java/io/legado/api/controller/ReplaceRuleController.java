@@ -0,0 +1,30 @@
+package io.legado.api.controller;
+
+import io.legado.core.service.ExportService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+/**
+ * 替换规则API控制器
+ */
+@RestController
+@RequestMapping("/api/v1/replace-rules")
+public class ReplaceRuleController {
+    
+    @Autowired
+    private ExportService exportService;
+    
+    /**
+     * 导出所有替换规则
+     */
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportReplaceRules(@RequestParam(defaultValue = "false") boolean gzip) {
+        return ExportResponse.of("replaceRule", gzip, exportService::exportReplaceRules);
+    }
+    
+}
@@ -0,0 +1,72 @@
+package io.legado.api.controller;
+
+import io.legado.api.dto.ApiResponse;
+import io.legado.core.dto.CircuitBreakerStatusDto;
+import io.legado.core.dto.SourceRateStatusDto;
+import io.legado.core.dto.SourceStatsDto;
+import io.legado.core.source.SourceCircuitBreaker;
+import io.legado.core.source.SourceRateLimiter;
+import io.legado.core.source.SourceStats;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+/**
+ * 书源运行状态API控制器
+ */
+@RestController
+@RequestMapping("/api/v1/sources/status")
+public class SourceStatusController {
+    
+    @Autowired
+    private SourceRateLimiter sourceRateLimiter;
+    
+    @Autowired
+    private SourceStats sourceStats;
+    
+    @Autowired
+    private SourceCircuitBreaker sourceCircuitBreaker;
+    
+    /**
+     * 获取各书源的并发率状态
+     */
+    @GetMapping("/rate-limits")
+    public ApiResponse<List<SourceRateStatusDto>> getRateLimits() {
+        return ApiResponse.success(sourceRateLimiter.getStatus());
+    }
+    
+    /**
+     * 获取各书源的响应统计
+     */
+    @GetMapping("/stats")
+    public ApiResponse<List<SourceStatsDto>> getStats() {
+        return ApiResponse.success(sourceStats.getStatus());
+    }
+    
+    /**
+     * 获取各站点的熔断状态
+     */
+    @GetMapping("/circuit-breakers")
+    public ApiResponse<List<CircuitBreakerStatusDto>> getCircuitBreakers() {
+        return ApiResponse.success(sourceCircuitBreaker.getStatus());
+    }
+    
+    /**
+     * 手动恢复站点的访问
+     * 
+     * @param host 站点（主机:端口）
+     */
+    @PostMapping("/circuit-breakers/reset")
+    public ApiResponse<Void> resetCircuitBreaker(@RequestParam String host) {
+        if (!sourceCircuitBreaker.reset(host)) {
+            return ApiResponse.error(404, "站点没有熔断记录");
+        }
+        return ApiResponse.success(null);
+    }
+    
+}
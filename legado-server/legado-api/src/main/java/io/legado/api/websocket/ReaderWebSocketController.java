@@ -1,7 +1,10 @@
 package io.legado.api.websocket;
 
+import io.legado.core.service.BookService;
+import io.legado.core.service.CacheProgressEvent;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
@@ -20,18 +23,28 @@ public class ReaderWebSocketController {
     @Autowired
     private SimpMessagingTemplate messagingTemplate;
     
+    @Autowired
+    private BookService bookService;
+    
     /**
      * 接收阅读进度更新
      */
     @MessageMapping("/reader/progress")
     public void updateProgress(@Payload Map<String, Object> payload, Principal principal) {
         String username = principal != null ? principal.getName() : "anonymous";
-        log.info("用户 {} 更新阅读进度: {}", username, payload);
+        log.debug("用户 {} 更新阅读进度: {}", username, payload);
         
-        // 可以在这里处理进度保存逻辑
+        // 与 REST 接口写入同一个进度缓冲
         Long bookId = Long.valueOf(payload.get("bookId").toString());
         Integer chapterIndex = Integer.valueOf(payload.get("chapterIndex").toString());
-        Integer chapterPos = Integer.valueOf(payload.get("chapterPos").toString());
+        Integer chapterPos = payload.get("chapterPos") != null
+                ? Integer.valueOf(payload.get("chapterPos").toString()) : 0;
+        try {
+            bookService.updateProgress(bookId, chapterIndex, chapterPos, username);
+        } catch (Exception e) {
+            log.warn("保存阅读进度失败: {}", e.getMessage());
+            return;
+        }
         
         // 广播给其他设备（多端同步）
         messagingTemplate.convertAndSendToUser(
@@ -56,6 +69,14 @@ public class ReaderWebSocketController {
         );
     }
     
+    /**
+     * 推送章节缓存任务的进度
+     */
+    @EventListener
+    public void onCacheProgress(CacheProgressEvent event) {
+        broadcastCacheProgress(event.getUsername(), event.getBookId(), event.getCachedCount(), event.getTotalCount());
+    }
+    
     /**
      * 广播缓存进度（供服务层调用）
      */
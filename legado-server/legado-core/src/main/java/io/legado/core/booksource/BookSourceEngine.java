@@ -1,120 +1,106 @@
 package io.legado.core.booksource;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import io.legado.core.booksource.rule.CompiledRule;
+import io.legado.core.booksource.rule.RuleContext;
+import io.legado.core.booksource.rule.SourceRulePlan;
 import io.legado.model.entity.Book;
 import io.legado.model.entity.BookChapter;
 import lombok.extern.slf4j.Slf4j;
-import org.graalvm.polyglot.Context;
-import org.graalvm.polyglot.Value;
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
-import org.jsoup.nodes.Element;
-import org.jsoup.select.Elements;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
-import javax.annotation.PostConstruct;
-import javax.annotation.PreDestroy;
+import java.net.MalformedURLException;
+import java.net.URL;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Map;
 
 /**
  * 书源规则引擎
- * 使用GraalVM JavaScript引擎解析书源规则
+ * 支持JSOUP、JSONPath、XPath、正则与JavaScript规则，JavaScript使用GraalVM引擎执行
  */
 @Slf4j
 @Component
 public class BookSourceEngine {
     
-    private static final ObjectMapper mapper = new ObjectMapper();
-    private Context polyglot;
+    @Autowired
+    private JsContextPool jsContextPool;
     
-    @PostConstruct
-    public void init() {
-        try {
-            polyglot = Context.newBuilder("js")
-                    .allowAllAccess(true)
-                    .build();
-            log.info("GraalVM JavaScript引擎初始化成功");
-        } catch (Exception e) {
-            log.error("GraalVM JavaScript引擎初始化失败", e);
-            throw new RuntimeException("无法初始化JavaScript引擎", e);
-        }
-    }
-    
-    @PreDestroy
-    public void destroy() {
-        if (polyglot != null) {
-            polyglot.close();
-            log.info("GraalVM JavaScript引擎已关闭");
-        }
+    /**
+     * 执行JavaScript规则
+     * 
+     * @param script 脚本内容
+     * @param bindings 脚本可见的变量
+     * @return 脚本结果
+     */
+    public Object evalJs(String script, Map<String, Object> bindings) {
+        return jsContextPool.eval(script, bindings);
     }
     
     /**
      * 解析搜索结果
      */
-    public List<Book> parseSearchResults(String html, String searchRuleJson, String sourceName, String sourceUrl) {
+    public List<Book> parseSearchResults(String html, SourceRulePlan plan, String sourceName, String sourceUrl) {
         List<Book> results = new ArrayList<>();
         
         try {
-            SearchRule rule = mapper.readValue(searchRuleJson, SearchRule.class);
-            Document doc = Jsoup.parse(html);
+            SourceRulePlan.SearchPlan rule = plan.getSearch();
+            RuleContext ctx = new RuleContext(html, sourceUrl, jsContextPool);
+            URL base = toUrl(sourceUrl);
             
-            // 获取书籍列表
-            Elements bookList;
-            if (rule.getBookList() != null && !rule.getBookList().isEmpty()) {
-                bookList = selectElements(doc, rule.getBookList());
+            // 获取书籍列表，未配置列表规则时整个页面为一本书
+            List<Object> bookList;
+            if (!rule.getBookList().isEmpty()) {
+                bookList = rule.getBookList().getElements(ctx);
             } else {
-                bookList = doc.select("body");
+                bookList = Collections.singletonList(ctx.getRoot());
             }
             
-            for (Element element : bookList) {
+            for (Object element : bookList) {
                 try {
                     Book book = new Book();
                     book.setOrigin(sourceUrl);
                     book.setOriginName(sourceName);
                     
                     // 解析书名
-                    if (rule.getName() != null) {
-                        book.setName(parseText(element, rule.getName()));
+                    if (!rule.getName().isEmpty()) {
+                        book.setName(rule.getName().getString(ctx, element));
                     }
                     
                     // 解析作者
-                    if (rule.getAuthor() != null) {
-                        book.setAuthor(parseText(element, rule.getAuthor()));
+                    if (!rule.getAuthor().isEmpty()) {
+                        book.setAuthor(rule.getAuthor().getString(ctx, element));
                     }
                     
                     // 解析简介
-                    if (rule.getIntro() != null) {
-                        book.setIntro(parseText(element, rule.getIntro()));
+                    if (!rule.getIntro().isEmpty()) {
+                        book.setIntro(rule.getIntro().getString(ctx, element));
                     }
                     
                     // 解析封面
-                    if (rule.getCoverUrl() != null) {
-                        String coverUrl = parseAttr(element, rule.getCoverUrl(), "src");
-                        book.setCoverUrl(absoluteUrl(coverUrl, sourceUrl));
+                    if (!rule.getCoverUrl().isEmpty()) {
+                        book.setCoverUrl(absoluteUrl(rule.getCoverUrl().getUrl(ctx, element), base));
                     }
                     
                     // 解析书籍URL
-                    if (rule.getBookUrl() != null) {
-                        String bookUrl = parseAttr(element, rule.getBookUrl(), "href");
-                        book.setBookUrl(absoluteUrl(bookUrl, sourceUrl));
+                    if (!rule.getBookUrl().isEmpty()) {
+                        book.setBookUrl(absoluteUrl(rule.getBookUrl().getUrl(ctx, element), base));
                     }
                     
                     // 解析最新章节
-                    if (rule.getLatestChapter() != null) {
-                        book.setLatestChapterTitle(parseText(element, rule.getLatestChapter()));
+                    if (!rule.getLatestChapter().isEmpty()) {
+                        book.setLatestChapterTitle(rule.getLatestChapter().getString(ctx, element));
                     }
                     
                     // 解析字数
-                    if (rule.getWordCount() != null) {
-                        book.setWordCount(parseText(element, rule.getWordCount()));
+                    if (!rule.getWordCount().isEmpty()) {
+                        book.setWordCount(rule.getWordCount().getString(ctx, element));
                     }
                     
                     // 解析分类
-                    if (rule.getKind() != null) {
-                        book.setKind(parseText(element, rule.getKind()));
+                    if (!rule.getKind().isEmpty()) {
+                        book.setKind(rule.getKind().getString(ctx, element));
                     }
                     
                     // 验证必要字段
@@ -138,59 +124,54 @@ public class BookSourceEngine {
     /**
      * 解析书籍详情
      */
-    public Book parseBookInfo(String html, String bookInfoRuleJson, Book book) {
+    public Book parseBookInfo(String html, SourceRulePlan plan, Book book) {
         try {
-            BookInfoRule rule = mapper.readValue(bookInfoRuleJson, BookInfoRule.class);
-            Document doc = Jsoup.parse(html);
+            SourceRulePlan.BookInfoPlan rule = plan.getBookInfo();
+            RuleContext ctx = new RuleContext(html, book.getBookUrl(), jsContextPool);
+            Object doc = ctx.getRoot();
+            URL base = toUrl(book.getOrigin());
             
             // 解析书名
-            if (rule.getName() != null) {
-                String name = parseText(doc, rule.getName());
-                if (name != null && !name.isEmpty()) {
+            if (!rule.getName().isEmpty()) {
+                String name = rule.getName().getString(ctx, doc);
+                if (!name.isEmpty()) {
                     book.setName(name);
                 }
             }
             
             // 解析作者
-            if (rule.getAuthor() != null) {
-                book.setAuthor(parseText(doc, rule.getAuthor()));
+            if (!rule.getAuthor().isEmpty()) {
+                book.setAuthor(rule.getAuthor().getString(ctx, doc));
             }
             
             // 解析简介
-            if (rule.getIntro() != null) {
-                book.setIntro(parseText(doc, rule.getIntro()));
+            if (!rule.getIntro().isEmpty()) {
+                book.setIntro(rule.getIntro().getString(ctx, doc));
             }
             
             // 解析封面
-            if (rule.getCoverUrl() != null) {
-                String coverUrl = parseAttr(doc, rule.getCoverUrl(), "src");
-                book.setCoverUrl(absoluteUrl(coverUrl, book.getOrigin()));
+            if (!rule.getCoverUrl().isEmpty()) {
+                book.setCoverUrl(absoluteUrl(rule.getCoverUrl().getUrl(ctx, doc), base));
             }
             
             // 解析分类
-            if (rule.getKind() != null) {
-                book.setKind(parseText(doc, rule.getKind()));
+            if (!rule.getKind().isEmpty()) {
+                book.setKind(rule.getKind().getString(ctx, doc));
             }
             
             // 解析最新章节
-            if (rule.getLatestChapter() != null) {
-                book.setLatestChapterTitle(parseText(doc, rule.getLatestChapter()));
-            }
-            
-            // 解析最新章节时间
-            if (rule.getLatestChapterTime() != null) {
-                // TODO: 解析时间
+            if (!rule.getLatestChapter().isEmpty()) {
+                book.setLatestChapterTitle(rule.getLatestChapter().getString(ctx, doc));
             }
             
             // 解析目录链接
-            if (rule.getTocUrl() != null) {
-                String tocUrl = parseAttr(doc, rule.getTocUrl(), "href");
-                book.setTocUrl(absoluteUrl(tocUrl, book.getOrigin()));
+            if (!rule.getTocUrl().isEmpty()) {
+                book.setTocUrl(absoluteUrl(rule.getTocUrl().getUrl(ctx, doc), base));
             }
             
             // 解析字数
-            if (rule.getWordCount() != null) {
-                book.setWordCount(parseText(doc, rule.getWordCount()));
+            if (!rule.getWordCount().isEmpty()) {
+                book.setWordCount(rule.getWordCount().getString(ctx, doc));
             }
             
         } catch (Exception e) {
@@ -203,32 +184,36 @@ public class BookSourceEngine {
     /**
      * 解析章节目录
      */
-    public List<BookChapter> parseToc(String html, String tocRuleJson, Long bookId, String baseUrl) {
+    public List<BookChapter> parseToc(String html, SourceRulePlan plan, Long bookId, String baseUrl) {
         List<BookChapter> chapters = new ArrayList<>();
         
         try {
-            TocRule rule = mapper.readValue(tocRuleJson, TocRule.class);
-            Document doc = Jsoup.parse(html);
+            SourceRulePlan.TocPlan rule = plan.getToc();
+            RuleContext ctx = new RuleContext(html, baseUrl, jsContextPool);
+            URL base = toUrl(baseUrl);
             
-            // 获取章节列表
-            Elements chapterList = selectElements(doc, rule.getChapterList());
+            // 获取章节列表，列表规则以 - 开头或书源设置倒序时反转
+            CompiledRule chapterListRule = rule.getChapterList();
+            List<Object> chapterList = new ArrayList<>(chapterListRule.getElements(ctx));
+            if (chapterListRule.isReverse() != rule.isReverse()) {
+                Collections.reverse(chapterList);
+            }
             
             int index = 0;
-            for (Element element : chapterList) {
+            for (Object element : chapterList) {
                 try {
                     BookChapter chapter = new BookChapter();
                     chapter.setBookId(bookId);
                     chapter.setChapterIndex(index);
                     
                     // 解析章节名
-                    if (rule.getChapterName() != null) {
-                        chapter.setTitle(parseText(element, rule.getChapterName()));
+                    if (!rule.getChapterName().isEmpty()) {
+                        chapter.setTitle(rule.getChapterName().getString(ctx, element));
                     }
                     
                     // 解析章节链接
-                    if (rule.getChapterUrl() != null) {
-                        String chapterUrl = parseAttr(element, rule.getChapterUrl(), "href");
-                        chapter.setUrl(absoluteUrl(chapterUrl, baseUrl));
+                    if (!rule.getChapterUrl().isEmpty()) {
+                        chapter.setUrl(absoluteUrl(rule.getChapterUrl().getUrl(ctx, element), base));
                     }
                     
                     if (chapter.getTitle() != null && !chapter.getTitle().isEmpty()) {
@@ -241,14 +226,6 @@ public class BookSourceEngine {
                 }
             }
             
-            // 如果需要倒序
-            if (rule.getIsReverse() != null && rule.getIsReverse()) {
-                // 重新设置索引
-                for (int i = 0; i < chapters.size(); i++) {
-                    chapters.get(i).setChapterIndex(i);
-                }
-            }
-            
         } catch (Exception e) {
             log.error("解析章节目录失败", e);
         }
@@ -259,20 +236,15 @@ public class BookSourceEngine {
     /**
      * 解析正文内容
      */
-    public String parseContent(String html, String contentRuleJson) {
+    public String parseContent(String html, SourceRulePlan plan, String baseUrl) {
         StringBuilder content = new StringBuilder();
         
         try {
-            ContentRule rule = mapper.readValue(contentRuleJson, ContentRule.class);
-            Document doc = Jsoup.parse(html);
+            SourceRulePlan.ContentPlan rule = plan.getContent();
+            RuleContext ctx = new RuleContext(html, baseUrl, jsContextPool);
             
             // 获取正文内容
-            if (rule.getContent() != null) {
-                Elements elements = selectElements(doc, rule.getContent());
-                for (Element element : elements) {
-                    content.append(element.html());
-                }
-            }
+            content.append(rule.getContent().getString(ctx, ctx.getRoot()));
             
         } catch (Exception e) {
             log.error("解析正文内容失败", e);
@@ -282,102 +254,24 @@ public class BookSourceEngine {
     }
     
     /**
-     * 选择元素
-     */
-    private Elements selectElements(Element element, String rule) {
-        if (rule == null || rule.isEmpty()) {
-            return new Elements();
-        }
-        
-        // 处理CSS选择器前缀 @css:
-        if (rule.startsWith("@css:")) {
-            rule = rule.substring(5);
-        }
-        
-        // 处理JSON路径
-        if (rule.startsWith("$.")) {
-            // TODO: 实现JSON路径解析
-            return new Elements();
-        }
-        
-        return element.select(rule);
-    }
-    
-    /**
-     * 解析文本
+     * 解析基础URL，无效时返回null
      */
-    private String parseText(Element element, String rule) {
-        if (rule == null || rule.isEmpty()) {
-            return "";
-        }
-        
-        // 处理CSS选择器前缀 @css:
-        if (rule.startsWith("@css:")) {
-            rule = rule.substring(5);
-        }
-        
-        // 处理正则表达式
-        if (rule.contains("&&")) {
-            String[] parts = rule.split("&&");
-            String selector = parts[0].trim();
-            String regex = parts[1].trim().replace("##", "");
-            
-            Elements elements = element.select(selector);
-            if (!elements.isEmpty()) {
-                String text = elements.first().text();
-                // 应用正则
-                if (!regex.isEmpty()) {
-                    Pattern pattern = Pattern.compile(regex);
-                    Matcher matcher = pattern.matcher(text);
-                    if (matcher.find()) {
-                        return matcher.group(1);
-                    }
-                }
-                return text;
-            }
-        }
-        
-        // 普通CSS选择器
-        Elements elements = element.select(rule);
-        if (!elements.isEmpty()) {
-            return elements.first().text();
-        }
-        
-        return "";
-    }
-    
-    /**
-     * 解析属性
-     */
-    private String parseAttr(Element element, String rule, String attr) {
-        if (rule == null || rule.isEmpty()) {
-            return "";
-        }
-        
-        // 处理CSS选择器前缀 @css:
-        if (rule.startsWith("@css:")) {
-            rule = rule.substring(5);
-        }
-        
-        // 检查是否指定了属性
-        if (rule.contains("@")) {
-            String[] parts = rule.split("@");
-            rule = parts[0].trim();
-            attr = parts[1].trim();
+    private URL toUrl(String baseUrl) {
+        if (baseUrl == null || baseUrl.isEmpty()) {
+            return null;
         }
         
-        Elements elements = element.select(rule);
-        if (!elements.isEmpty()) {
-            return elements.first().attr(attr);
+        try {
+            return new URL(baseUrl);
+        } catch (MalformedURLException e) {
+            return null;
         }
-        
-        return "";
     }
     
     /**
      * 转换为绝对URL
      */
-    private String absoluteUrl(String url, String baseUrl) {
+    private String absoluteUrl(String url, URL base) {
         if (url == null || url.isEmpty()) {
             return "";
         }
@@ -386,15 +280,13 @@ public class BookSourceEngine {
             return url;
         }
         
-        if (baseUrl == null || baseUrl.isEmpty()) {
+        if (base == null) {
             return url;
         }
         
         // 处理相对路径
         try {
-            java.net.URL base = new java.net.URL(baseUrl);
-            java.net.URL absolute = new java.net.URL(base, url);
-            return absolute.toString();
+            return new URL(base, url).toString();
         } catch (Exception e) {
             return url;
         }
@@ -0,0 +1,326 @@
+package io.legado.core.booksource;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.Engine;
+import org.graalvm.polyglot.PolyglotException;
+import org.graalvm.polyglot.Source;
+import org.graalvm.polyglot.Value;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * JavaScript上下文池
+ * 所有上下文共享同一个 {@link Engine}，已解析的脚本在上下文之间复用；
+ * 单个上下文同一时间只被一个线程使用。脚本包在块语句中执行，let/const/class 声明不留在全局；
+ * 归还上下文时移除脚本新增的全局变量，var 与函数声明无法删除的置为 undefined，不同书源的脚本互不可见
+ */
+@Slf4j
+@Component
+public class JsContextPool {
+    
+    /**
+     * 上下文中置为 undefined 的全局变量超过此数量时关闭上下文，避免清理越来越慢
+     */
+    private static final int MAX_DECLARED_GLOBALS = 256;
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    /**
+     * 上下文数量上限，0表示使用CPU核数
+     */
+    @org.springframework.beans.factory.annotation.Value("${legado.js.pool-size:0}")
+    private int poolSize;
+    
+    /**
+     * 等待空闲上下文的超时时间（毫秒）
+     */
+    @org.springframework.beans.factory.annotation.Value("${legado.js.checkout-timeout-ms:5000}")
+    private long checkoutTimeoutMillis;
+    
+    /**
+     * 缓存的脚本数量上限
+     */
+    @org.springframework.beans.factory.annotation.Value("${legado.js.source-cache-size:500}")
+    private long sourceCacheSize;
+    
+    private Engine engine;
+    
+    private Semaphore permits;
+    
+    private final BlockingQueue<PooledContext> idle = new LinkedBlockingQueue<>();
+    
+    private final AtomicInteger created = new AtomicInteger();
+    
+    private final AtomicInteger active = new AtomicInteger();
+    
+    private Cache<String, Source> sources;
+    
+    private Timer waitTimer;
+    
+    private Counter timeoutCounter;
+    
+    private volatile boolean closed;
+    
+    @PostConstruct
+    public void init() {
+        int maxSize = poolSize > 0 ? poolSize : Runtime.getRuntime().availableProcessors();
+        try {
+            engine = Engine.newBuilder()
+                    .option("engine.WarnInterpreterOnly", "false")
+                    .build();
+        } catch (Exception e) {
+            log.error("GraalVM JavaScript引擎初始化失败", e);
+            throw new RuntimeException("无法初始化JavaScript引擎", e);
+        }
+        permits = new Semaphore(maxSize, true);
+        sources = Caffeine.newBuilder()
+                .maximumSize(sourceCacheSize)
+                .build();
+        
+        Gauge.builder("legado.js.pool.max", () -> maxSize)
+                .description("JavaScript上下文数量上限")
+                .register(meterRegistry);
+        Gauge.builder("legado.js.pool.size", created, AtomicInteger::get)
+                .description("已创建的JavaScript上下文数量")
+                .register(meterRegistry);
+        Gauge.builder("legado.js.pool.active", active, AtomicInteger::get)
+                .description("正在使用的JavaScript上下文数量")
+                .register(meterRegistry);
+        Gauge.builder("legado.js.pool.pending", permits, Semaphore::getQueueLength)
+                .description("等待JavaScript上下文的线程数量")
+                .register(meterRegistry);
+        Gauge.builder("legado.js.source.cached", sources, Cache::estimatedSize)
+                .description("缓存的脚本数量")
+                .register(meterRegistry);
+        waitTimer = Timer.builder("legado.js.pool.wait")
+                .description("获取JavaScript上下文的等待时间")
+                .register(meterRegistry);
+        timeoutCounter = Counter.builder("legado.js.pool.timeout")
+                .description("获取JavaScript上下文超时次数")
+                .register(meterRegistry);
+        
+        log.info("GraalVM JavaScript引擎初始化成功, 上下文上限: {}", maxSize);
+    }
+    
+    @PreDestroy
+    public void destroy() {
+        closed = true;
+        PooledContext pooled;
+        while ((pooled = idle.poll()) != null) {
+            pooled.context.close();
+        }
+        if (engine != null) {
+            engine.close();
+            log.info("GraalVM JavaScript引擎已关闭");
+        }
+    }
+    
+    /**
+     * 执行脚本
+     *
+     * @param script 脚本内容，相同内容只解析一次
+     * @param bindings 执行期间可见的全局变量，执行后移除
+     * @return 转换为Java对象的结果（字符串、数字、布尔、List、Map或宿主对象）
+     */
+    public Object eval(String script, Map<String, Object> bindings) {
+        // 块语句的结果即最后一条语句的值，与直接执行脚本相同
+        Source source = sources.get(script, s -> Source.create("js", "{\n" + s + "\n}"));
+        PooledContext pooled = checkout();
+        Context context = pooled.context;
+        boolean broken = false;
+        try {
+            Value scope = context.getBindings("js");
+            bindings.forEach(scope::putMember);
+            try {
+                return toJava(context.eval(source));
+            } finally {
+                for (String key : bindings.keySet()) {
+                    scope.removeMember(key);
+                }
+            }
+        } catch (PolyglotException e) {
+            broken = e.isInternalError() || e.isCancelled() || e.isExit() || e.isResourceExhausted();
+            throw e;
+        } finally {
+            release(pooled, broken);
+        }
+    }
+    
+    /**
+     * 执行脚本
+     */
+    public Object eval(String script) {
+        return eval(script, Collections.emptyMap());
+    }
+    
+    /**
+     * 取出一个空闲上下文，达到上限时等待
+     */
+    private PooledContext checkout() {
+        if (closed) {
+            throw new IllegalStateException("JavaScript引擎已关闭");
+        }
+        
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(checkoutTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                timeoutCounter.increment();
+                throw new RuntimeException("JavaScript引擎繁忙，请稍后重试");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("等待JavaScript引擎时被中断", e);
+        } finally {
+            waitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+        
+        try {
+            PooledContext pooled = idle.poll();
+            if (pooled == null) {
+                pooled = new PooledContext(Context.newBuilder("js")
+                        .engine(engine)
+                        .allowAllAccess(true)
+                        .build());
+                created.incrementAndGet();
+            }
+            active.incrementAndGet();
+            return pooled;
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+    
+    /**
+     * 归还上下文，执行中出现不可恢复错误的上下文直接关闭
+     */
+    private void release(PooledContext pooled, boolean broken) {
+        active.decrementAndGet();
+        if (!broken && !closed) {
+            try {
+                broken = !pooled.reset();
+            } catch (PolyglotException | UnsupportedOperationException e) {
+                log.debug("清理JavaScript上下文失败: {}", e.getMessage());
+                broken = true;
+            }
+        }
+        if (broken || closed) {
+            pooled.context.close(true);
+            created.decrementAndGet();
+        } else {
+            idle.offer(pooled);
+        }
+        permits.release();
+    }
+    
+    /**
+     * 将脚本结果转换为脱离上下文的Java对象
+     */
+    private Object toJava(Value value) {
+        if (value == null || value.isNull()) {
+            return null;
+        }
+        if (value.isHostObject()) {
+            return value.asHostObject();
+        }
+        if (value.isString()) {
+            return value.asString();
+        }
+        if (value.isBoolean()) {
+            return value.asBoolean();
+        }
+        if (value.isNumber()) {
+            return value.fitsInLong() ? (Object) value.asLong() : (Object) value.asDouble();
+        }
+        if (value.hasArrayElements()) {
+            List<Object> list = new ArrayList<>((int) value.getArraySize());
+            for (long i = 0; i < value.getArraySize(); i++) {
+                list.add(toJava(value.getArrayElement(i)));
+            }
+            return list;
+        }
+        if (value.hasMembers() && !value.canExecute()) {
+            Map<String, Object> map = new LinkedHashMap<>();
+            for (String key : value.getMemberKeys()) {
+                map.put(key, toJava(value.getMember(key)));
+            }
+            return map;
+        }
+        return value.toString();
+    }
+    
+    /**
+     * 池中的上下文，记录创建时已有的全局变量
+     */
+    private static final class PooledContext {
+        
+        private final Context context;
+        
+        private final Set<String> globals;
+        
+        private final Value undefined;
+        
+        /**
+         * 脚本声明过的不可删除的全局变量
+         */
+        private final Set<String> declared = new HashSet<>();
+        
+        private PooledContext(Context context) {
+            this.context = context;
+            this.globals = new HashSet<>(context.getBindings("js").getMemberKeys());
+            this.undefined = context.eval("js", "undefined");
+        }
+        
+        /**
+         * 移除脚本新增的全局变量
+         *
+         * @return 上下文是否可以继续使用
+         */
+        boolean reset() {
+            Value scope = context.getBindings("js");
+            for (String key : new ArrayList<>(scope.getMemberKeys())) {
+                if (globals.contains(key)) {
+                    continue;
+                }
+                if (declared.contains(key)) {
+                    if (!scope.getMember(key).isNull()) {
+                        scope.putMember(key, undefined);
+                    }
+                    continue;
+                }
+                try {
+                    scope.removeMember(key);
+                } catch (UnsupportedOperationException e) {
+                    // var 与函数声明不可删除
+                    declared.add(key);
+                    scope.putMember(key, undefined);
+                }
+            }
+            return declared.size() <= MAX_DECLARED_GLOBALS;
+        }
+    }
+    
+}
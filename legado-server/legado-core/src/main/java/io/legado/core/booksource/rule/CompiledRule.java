@@ -0,0 +1,294 @@
+package io.legado.core.booksource.rule;
+
+import org.jsoup.nodes.Element;
+import org.jsoup.parser.Parser;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 编译后的单条规则
+ * 规则按 &lt;js&gt;&lt;/js&gt;、@js: 切分为多步，前一步的结果作为后一步的输入；
+ * 每一步的类型、参数与替换正则在编译时解析，解析页面时直接复用
+ */
+public final class CompiledRule {
+    
+    private static final Pattern JS_PATTERN =
+            Pattern.compile("<js>([\\w\\W]*?)</js>|@js:([\\w\\W]*)", Pattern.CASE_INSENSITIVE);
+    
+    /**
+     * 空规则，选择结果为空，提取结果为空字符串
+     */
+    public static final CompiledRule EMPTY = new CompiledRule(Collections.emptyList(), false, false);
+    
+    private final List<RuleStep> steps;
+    
+    /**
+     * 列表规则以 : 开头时为AllInOne正则
+     */
+    private final boolean allInOne;
+    
+    /**
+     * 列表规则以 - 开头时倒序
+     */
+    private final boolean reverse;
+    
+    private CompiledRule(List<RuleStep> steps, boolean allInOne, boolean reverse) {
+        this.steps = steps;
+        this.allInOne = allInOne;
+        this.reverse = reverse;
+    }
+    
+    /**
+     * 编译规则
+     *
+     * @param ruleStr 规则
+     * @param list 是否为列表规则
+     * @param defaultExtractor 字段规则未指定取值方式时使用的默认值，如 text、href
+     */
+    static CompiledRule compile(String ruleStr, boolean list, String defaultExtractor) {
+        if (ruleStr == null || ruleStr.trim().isEmpty()) {
+            return EMPTY;
+        }
+        
+        String rule = ruleStr.trim();
+        boolean reverse = false;
+        if (list) {
+            if (rule.startsWith("-")) {
+                reverse = true;
+                rule = rule.substring(1);
+            } else if (rule.startsWith("+")) {
+                rule = rule.substring(1);
+            }
+        }
+        
+        boolean allInOne = list && rule.startsWith(":");
+        RuleMode mode = allInOne ? RuleMode.REGEX : RuleMode.DEFAULT;
+        if (allInOne) {
+            rule = rule.substring(1);
+        }
+        
+        List<RuleStep> steps = new ArrayList<>();
+        int start = 0;
+        Matcher jsMatcher = JS_PATTERN.matcher(rule);
+        while (jsMatcher.find()) {
+            if (jsMatcher.start() > start) {
+                String tmp = rule.substring(start, jsMatcher.start()).trim();
+                if (!tmp.isEmpty()) {
+                    steps.add(new RuleStep(tmp, mode, list, defaultExtractor));
+                }
+            }
+            String js = jsMatcher.group(1) != null ? jsMatcher.group(1) : jsMatcher.group(2);
+            steps.add(new RuleStep(js, RuleMode.JS, list, defaultExtractor));
+            start = jsMatcher.end();
+        }
+        if (rule.length() > start) {
+            String tmp = rule.substring(start).trim();
+            if (!tmp.isEmpty()) {
+                steps.add(new RuleStep(tmp, mode, list, defaultExtractor));
+            }
+        }
+        return new CompiledRule(Collections.unmodifiableList(steps), allInOne, reverse);
+    }
+    
+    /**
+     * 编译阶段预先编译各步的解析器
+     */
+    CompiledRule precompile() {
+        for (RuleStep step : steps) {
+            step.precompile();
+        }
+        return this;
+    }
+    
+    public boolean isEmpty() {
+        return steps.isEmpty();
+    }
+    
+    /**
+     * 列表是否需要倒序
+     */
+    public boolean isReverse() {
+        return reverse;
+    }
+    
+    /**
+     * 获取列表，元素为jsoup元素、JSON对象或正则分组
+     */
+    public List<Object> getElements(RuleContext ctx) {
+        if (steps.isEmpty()) {
+            return Collections.emptyList();
+        }
+        if (allInOne) {
+            ctx.markRegex();
+        }
+        
+        // 正则与JS作用于原始响应，jsoup重新序列化后的HTML会改变引号与空白，导致正则无法匹配
+        RuleMode firstMode = steps.get(0).resolveMode(ctx);
+        Object result = firstMode == RuleMode.REGEX || firstMode == RuleMode.JS ? ctx.getContent() : ctx.getRoot();
+        for (RuleStep step : steps) {
+            if (result == null) {
+                break;
+            }
+            step.putRule(ctx, result);
+            RuleStep.Rule rule = step.makeUpRule(ctx, result, result);
+            if (rule.text.isEmpty()) {
+                continue;
+            }
+            switch (step.resolveMode(ctx)) {
+                case REGEX:
+                    result = step.regex(rule).getElements(String.valueOf(result));
+                    break;
+                case JS:
+                    result = ctx.evalJs(rule.text, result);
+                    break;
+                case JSON:
+                    result = step.jsonPath(rule).getList(result);
+                    break;
+                case XPATH:
+                    result = step.xPath(rule).getElements(result, ctx);
+                    break;
+                default:
+                    result = step.jsoup(rule).getElements(RuleStep.asElement(result, ctx));
+            }
+        }
+        
+        if (result instanceof List) {
+            return new ArrayList<>((List<?>) result);
+        }
+        return Collections.emptyList();
+    }
+    
+    /**
+     * 获取文本，多个结果以换行连接
+     */
+    public String getString(RuleContext ctx, Object item) {
+        Object result = evaluate(ctx, item, false);
+        if (result == null) {
+            return "";
+        }
+        String str = result instanceof List ? join((List<?>) result) : String.valueOf(result);
+        return str.indexOf('&') >= 0 ? Parser.unescapeEntities(str, false) : str;
+    }
+    
+    /**
+     * 获取链接，只取第一个结果
+     */
+    public String getUrl(RuleContext ctx, Object item) {
+        Object result = evaluate(ctx, item, true);
+        if (result == null) {
+            return "";
+        }
+        if (result instanceof List) {
+            List<?> list = (List<?>) result;
+            return list.isEmpty() ? "" : String.valueOf(list.get(0));
+        }
+        return String.valueOf(result);
+    }
+    
+    /**
+     * 获取文本列表
+     */
+    public List<String> getStringList(RuleContext ctx, Object item) {
+        if (steps.isEmpty()) {
+            return Collections.emptyList();
+        }
+        
+        Object result = item;
+        for (RuleStep step : steps) {
+            if (result == null) {
+                break;
+            }
+            step.putRule(ctx, item);
+            RuleStep.Rule rule = step.makeUpRule(ctx, item, result);
+            if (!rule.text.isEmpty()) {
+                switch (step.resolveMode(ctx)) {
+                    case JS:
+                        result = ctx.evalJs(rule.text, result);
+                        break;
+                    case JSON:
+                        result = step.jsonPath(rule).getStringList(result);
+                        break;
+                    case XPATH:
+                        result = step.xPath(rule).getStringList(result, ctx);
+                        break;
+                    case REGEX:
+                        result = rule.text;
+                        break;
+                    default:
+                        result = step.jsoup(rule).getStringList(RuleStep.asElement(result, ctx));
+                }
+            }
+            if (result != null && !rule.replaceRegex.isEmpty()) {
+                result = result instanceof List
+                        ? RuleStep.Rule.replace((List<?>) result, rule)
+                        : rule.replace(String.valueOf(result));
+            }
+        }
+        
+        if (result == null) {
+            return Collections.emptyList();
+        }
+        List<String> list = new ArrayList<>();
+        if (result instanceof List) {
+            for (Object o : (List<?>) result) {
+                list.add(String.valueOf(o));
+            }
+        } else {
+            for (String s : String.valueOf(result).split("\n")) {
+                list.add(s);
+            }
+        }
+        return list;
+    }
+    
+    private Object evaluate(RuleContext ctx, Object item, boolean first) {
+        Object result = item;
+        for (RuleStep step : steps) {
+            if (result == null) {
+                break;
+            }
+            step.putRule(ctx, item);
+            RuleStep.Rule rule = step.makeUpRule(ctx, item, result);
+            if (!rule.text.isEmpty() || rule.replaceRegex.isEmpty()) {
+                result = evaluateStep(step, rule, ctx, result, first);
+            }
+            if (result != null && !rule.replaceRegex.isEmpty()) {
+                result = rule.replace(result instanceof List ? join((List<?>) result) : String.valueOf(result));
+            }
+        }
+        return result;
+    }
+    
+    private Object evaluateStep(RuleStep step, RuleStep.Rule rule, RuleContext ctx, Object result, boolean first) {
+        RuleMode mode = step.resolveMode(ctx);
+        if (rule.text.isEmpty() && mode != RuleMode.REGEX) {
+            return null;
+        }
+        switch (mode) {
+            case JS:
+                return ctx.evalJs(rule.text, result);
+            case JSON:
+                return step.jsonPath(rule).getString(result);
+            case XPATH:
+                return step.xPath(rule).getString(result, ctx);
+            case REGEX:
+                return rule.text;
+            default:
+                Element element = RuleStep.asElement(result, ctx);
+                return first ? step.jsoup(rule).getString0(element) : step.jsoup(rule).getString(element);
+        }
+    }
+    
+    private static String join(List<?> list) {
+        List<String> textS = new ArrayList<>(list.size());
+        for (Object o : list) {
+            textS.add(o instanceof Element ? ((Element) o).outerHtml() : String.valueOf(o));
+        }
+        return String.join("\n", textS);
+    }
+    
+}
@@ -0,0 +1,262 @@
+package io.legado.core.booksource.rule;
+
+import com.jayway.jsonpath.Configuration;
+import com.jayway.jsonpath.JsonPath;
+import com.jayway.jsonpath.Option;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * JSONPath规则
+ * 对应App的 AnalyzeByJSonPath，路径在编译时解析，作用于已解析的JSON对象
+ */
+@Slf4j
+final class JsonPathRule {
+    
+    private static final Configuration CONFIGURATION = Configuration.defaultConfiguration()
+            .addOptions(Option.SUPPRESS_EXCEPTIONS);
+    
+    private final String rule;
+    
+    private final String elementsType;
+    
+    /**
+     * 由 &&、||、%% 分隔出的子规则，只有一个规则时为空
+     */
+    private final List<JsonPathRule> alternatives;
+    
+    private final JsonPath path;
+    
+    /**
+     * 内嵌规则 {$.xxx} 切分出的片段，String为原文，JsonPathRule为内嵌规则；没有内嵌规则时为空
+     */
+    private final List<Object> segments;
+    
+    private JsonPathRule(String rule, String elementsType, List<JsonPathRule> alternatives,
+                         JsonPath path, List<Object> segments) {
+        this.rule = rule;
+        this.elementsType = elementsType;
+        this.alternatives = alternatives;
+        this.path = path;
+        this.segments = segments;
+    }
+    
+    static JsonPathRule compile(String rule) {
+        RuleAnalyzer analyzer = new RuleAnalyzer(rule, true);
+        List<String> rules = analyzer.splitRule("&&", "||", "%%");
+        if (rules.size() > 1) {
+            List<JsonPathRule> alternatives = new ArrayList<>(rules.size());
+            for (String rl : rules) {
+                alternatives.add(compile(rl));
+            }
+            return new JsonPathRule(rule, analyzer.getElementsType(), alternatives, null, null);
+        }
+        
+        List<Object> segments = compileSegments(rule);
+        JsonPath path = null;
+        try {
+            path = JsonPath.compile(rule);
+        } catch (Exception e) {
+            if (segments == null) {
+                log.debug("JSONPath编译失败: {}, {}", rule, e.getMessage());
+            }
+        }
+        return new JsonPathRule(rule, "", null, path, segments);
+    }
+    
+    /**
+     * 在编译时切分内嵌规则 {$.xxx}
+     */
+    private static List<Object> compileSegments(String rule) {
+        if (!rule.contains("{$.")) {
+            return null;
+        }
+        
+        List<String> inner = new ArrayList<>();
+        String marked = new RuleAnalyzer(rule, true).innerRule("{$.", s -> {
+            inner.add(s);
+            return "\u0000" + (inner.size() - 1) + "\u0000";
+        });
+        if (inner.isEmpty()) {
+            return null;
+        }
+        
+        List<Object> segments = new ArrayList<>();
+        String[] parts = marked.split("\u0000", -1);
+        for (int i = 0; i < parts.length; i++) {
+            if (i % 2 == 0) {
+                if (!parts[i].isEmpty()) {
+                    segments.add(parts[i]);
+                }
+            } else {
+                String innerRule = inner.get(Integer.parseInt(parts[i]));
+                segments.add(new InnerRule(compile(innerRule), "{" + innerRule + "}"));
+            }
+        }
+        return segments;
+    }
+    
+    String getString(Object json) {
+        if (alternatives != null) {
+            List<String> textList = new ArrayList<>();
+            for (JsonPathRule alternative : alternatives) {
+                String temp = alternative.getString(json);
+                if (temp != null && !temp.isEmpty()) {
+                    textList.add(temp);
+                    if ("||".equals(elementsType)) {
+                        break;
+                    }
+                }
+            }
+            return String.join("\n", textList);
+        }
+        
+        String result = replaceInner(json);
+        if (result.isEmpty()) {
+            Object ob = read(json);
+            if (ob instanceof List) {
+                List<String> list = new ArrayList<>();
+                for (Object o : (List<?>) ob) {
+                    list.add(String.valueOf(o));
+                }
+                result = String.join("\n", list);
+            } else if (ob != null) {
+                result = ob.toString();
+            }
+        }
+        return result;
+    }
+    
+    List<String> getStringList(Object json) {
+        List<String> result = new ArrayList<>();
+        if (alternatives != null) {
+            List<List<String>> results = new ArrayList<>();
+            for (JsonPathRule alternative : alternatives) {
+                List<String> temp = alternative.getStringList(json);
+                if (!temp.isEmpty()) {
+                    results.add(temp);
+                    if ("||".equals(elementsType)) {
+                        break;
+                    }
+                }
+            }
+            merge(results, result);
+            return result;
+        }
+        
+        String st = replaceInner(json);
+        if (!st.isEmpty()) {
+            result.add(st);
+            return result;
+        }
+        Object obj = read(json);
+        if (obj instanceof List) {
+            for (Object o : (List<?>) obj) {
+                result.add(String.valueOf(o));
+            }
+        } else if (obj != null) {
+            result.add(obj.toString());
+        }
+        return result;
+    }
+    
+    List<Object> getList(Object json) {
+        List<Object> result = new ArrayList<>();
+        if (alternatives != null) {
+            List<List<Object>> results = new ArrayList<>();
+            for (JsonPathRule alternative : alternatives) {
+                List<Object> temp = alternative.getList(json);
+                if (!temp.isEmpty()) {
+                    results.add(temp);
+                    if ("||".equals(elementsType)) {
+                        break;
+                    }
+                }
+            }
+            merge(results, result);
+            return result;
+        }
+        
+        Object obj = read(json);
+        if (obj instanceof List) {
+            result.addAll((List<?>) obj);
+        }
+        return result;
+    }
+    
+    private <T> void merge(List<List<T>> results, List<T> result) {
+        if (results.isEmpty()) {
+            return;
+        }
+        if ("%%".equals(elementsType)) {
+            for (int i = 0; i < results.get(0).size(); i++) {
+                for (List<T> temp : results) {
+                    if (i < temp.size()) {
+                        result.add(temp.get(i));
+                    }
+                }
+            }
+        } else {
+            for (List<T> temp : results) {
+                result.addAll(temp);
+            }
+        }
+    }
+    
+    /**
+     * 替换所有内嵌规则，没有成功替换时返回空字符串
+     */
+    private String replaceInner(Object json) {
+        if (segments == null) {
+            return "";
+        }
+        
+        StringBuilder sb = new StringBuilder();
+        boolean replaced = false;
+        for (Object segment : segments) {
+            if (segment instanceof InnerRule) {
+                InnerRule inner = (InnerRule) segment;
+                String value = inner.rule.getString(json);
+                if (value != null && !value.isEmpty()) {
+                    sb.append(value);
+                    replaced = true;
+                } else {
+                    sb.append(inner.raw);
+                }
+            } else {
+                sb.append(segment);
+            }
+        }
+        return replaced ? sb.toString() : "";
+    }
+    
+    private Object read(Object json) {
+        if (path == null || json == null) {
+            return null;
+        }
+        try {
+            if (json instanceof String) {
+                json = RuleContext.parseJson((String) json);
+            }
+            return path.read(json, CONFIGURATION);
+        } catch (Exception e) {
+            log.debug("JSONPath解析失败: {}, {}", rule, e.getMessage());
+            return null;
+        }
+    }
+    
+    private static final class InnerRule {
+        
+        private final JsonPathRule rule;
+        
+        private final String raw;
+        
+        private InnerRule(JsonPathRule rule, String raw) {
+            this.rule = rule;
+            this.raw = raw;
+        }
+    }
+    
+}
@@ -0,0 +1,588 @@
+package io.legado.core.booksource.rule;
+
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.TextNode;
+import org.jsoup.select.Collector;
+import org.jsoup.select.Elements;
+import org.jsoup.select.Evaluator;
+import org.jsoup.select.QueryParser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 默认规则（JSOUP）
+ * 对应App的 AnalyzeByJSoup，支持 @CSS: 选择器以及 tag.div.0@text 形式的阅读原有写法，
+ * 选择器与索引在编译时解析
+ */
+final class JsoupRule {
+    
+    private static final Set<String> EXTRACTORS = Collections.unmodifiableSet(
+            new HashSet<>(Arrays.asList("text", "textNodes", "ownText", "html", "all")));
+    
+    private final boolean css;
+    
+    private final String elementsType;
+    
+    private final List<Alternative> alternatives;
+    
+    /**
+     * 未指定取值方式时的默认取值，兼容 "选择器" 与 "选择器@属性" 的旧写法；为空表示严格按App规则处理
+     */
+    private final String defaultExtractor;
+    
+    private JsoupRule(boolean css, String elementsType, List<Alternative> alternatives, String defaultExtractor) {
+        this.css = css;
+        this.elementsType = elementsType;
+        this.alternatives = alternatives;
+        this.defaultExtractor = defaultExtractor;
+    }
+    
+    static JsoupRule compile(String ruleStr, String defaultExtractor) {
+        boolean css = false;
+        String elementsRule = ruleStr;
+        if (ruleStr.regionMatches(true, 0, "@CSS:", 0, 5)) {
+            css = true;
+            elementsRule = ruleStr.substring(5).trim();
+        }
+        if (elementsRule.isEmpty()) {
+            return new JsoupRule(css, "", Collections.emptyList(), defaultExtractor);
+        }
+        
+        RuleAnalyzer analyzer = new RuleAnalyzer(elementsRule);
+        List<String> ruleStrS = analyzer.splitRule("&&", "||", "%%");
+        List<Alternative> alternatives = new ArrayList<>(ruleStrS.size());
+        for (String ruleStrX : ruleStrS) {
+            alternatives.add(css ? Alternative.css(ruleStrX, defaultExtractor) : Alternative.rule(ruleStrX));
+        }
+        return new JsoupRule(css, analyzer.getElementsType(), alternatives, defaultExtractor);
+    }
+    
+    /**
+     * 获取元素列表
+     */
+    Elements getElements(Element root) {
+        List<Elements> elementsList = new ArrayList<>();
+        for (Alternative alternative : alternatives) {
+            Elements es = alternative.getElements(root);
+            elementsList.add(es);
+            if (!es.isEmpty() && "||".equals(elementsType)) {
+                break;
+            }
+        }
+        
+        Elements elements = new Elements();
+        if ("%%".equals(elementsType) && !elementsList.isEmpty()) {
+            for (int i = 0; i < elementsList.get(0).size(); i++) {
+                for (Elements es : elementsList) {
+                    if (i < es.size()) {
+                        elements.add(es.get(i));
+                    }
+                }
+            }
+        } else {
+            for (Elements es : elementsList) {
+                elements.addAll(es);
+            }
+        }
+        return elements;
+    }
+    
+    /**
+     * 获取所有内容列表
+     */
+    List<String> getStringList(Element root) {
+        List<String> textS = new ArrayList<>();
+        if (alternatives.isEmpty()) {
+            textS.add(root.data());
+            return textS;
+        }
+        
+        List<List<String>> results = new ArrayList<>();
+        for (Alternative alternative : alternatives) {
+            List<String> temp = css ? alternative.getCssStrings(root) : alternative.getStrings(root, defaultExtractor);
+            if (temp != null && !temp.isEmpty()) {
+                results.add(temp);
+                if ("||".equals(elementsType)) {
+                    break;
+                }
+            }
+        }
+        
+        if (!results.isEmpty()) {
+            if ("%%".equals(elementsType)) {
+                for (int i = 0; i < results.get(0).size(); i++) {
+                    for (List<String> temp : results) {
+                        if (i < temp.size()) {
+                            textS.add(temp.get(i));
+                        }
+                    }
+                }
+            } else {
+                for (List<String> temp : results) {
+                    textS.addAll(temp);
+                }
+            }
+        }
+        return textS;
+    }
+    
+    /**
+     * 合并内容列表，得到内容
+     */
+    String getString(Element root) {
+        List<String> list = getStringList(root);
+        if (list.isEmpty()) {
+            return null;
+        }
+        if (list.size() == 1) {
+            return list.get(0);
+        }
+        return String.join("\n", list);
+    }
+    
+    /**
+     * 获取第一个内容
+     */
+    String getString0(Element root) {
+        List<String> list = getStringList(root);
+        return list.isEmpty() ? "" : list.get(0);
+    }
+    
+    /**
+     * 根据最后一个规则获取内容
+     */
+    static List<String> getResultLast(Elements elements, String lastRule) {
+        List<String> textS = new ArrayList<>();
+        switch (lastRule) {
+            case "text":
+                for (Element element : elements) {
+                    String text = element.text();
+                    if (!text.isEmpty()) {
+                        textS.add(text);
+                    }
+                }
+                break;
+            case "textNodes":
+                for (Element element : elements) {
+                    List<String> tn = new ArrayList<>();
+                    for (TextNode item : element.textNodes()) {
+                        String text = item.text().trim();
+                        if (!text.isEmpty()) {
+                            tn.add(text);
+                        }
+                    }
+                    if (!tn.isEmpty()) {
+                        textS.add(String.join("\n", tn));
+                    }
+                }
+                break;
+            case "ownText":
+                for (Element element : elements) {
+                    String text = element.ownText();
+                    if (!text.isEmpty()) {
+                        textS.add(text);
+                    }
+                }
+                break;
+            case "html":
+                elements.select("script").remove();
+                elements.select("style").remove();
+                String html = elements.outerHtml();
+                if (!html.isEmpty()) {
+                    textS.add(html);
+                }
+                break;
+            case "all":
+                textS.add(elements.outerHtml());
+                break;
+            default:
+                for (Element element : elements) {
+                    String url = element.attr(lastRule);
+                    if (url.trim().isEmpty() || textS.contains(url)) {
+                        continue;
+                    }
+                    textS.add(url);
+                }
+        }
+        return textS;
+    }
+    
+    /**
+     * 由 &&、||、%% 分隔出的单个规则
+     */
+    private static final class Alternative {
+        
+        /**
+         * CSS规则整体作为选择器
+         */
+        private Evaluator cssAll;
+        
+        /**
+         * CSS规则最后一个@之前的选择器
+         */
+        private Evaluator cssSelector;
+        
+        /**
+         * CSS规则最后一个@之后的取值方式
+         */
+        private String cssLast;
+        
+        /**
+         * 阅读原有写法按@切分出的各段
+         */
+        private List<SingleRule> parts;
+        
+        /**
+         * 阅读原有写法的最后一段，作为取值方式
+         */
+        private String last;
+        
+        static Alternative css(String ruleStr, String defaultExtractor) {
+            Alternative alternative = new Alternative();
+            alternative.cssAll = parseQuery(ruleStr);
+            int lastIndex = ruleStr.lastIndexOf('@');
+            if (lastIndex >= 0) {
+                alternative.cssSelector = parseQuery(ruleStr.substring(0, lastIndex));
+                alternative.cssLast = ruleStr.substring(lastIndex + 1);
+            } else {
+                alternative.cssSelector = alternative.cssAll;
+                alternative.cssLast = defaultExtractor != null ? defaultExtractor : "text";
+            }
+            return alternative;
+        }
+        
+        static Alternative rule(String ruleStr) {
+            RuleAnalyzer analyzer = new RuleAnalyzer(ruleStr);
+            analyzer.trim();
+            List<String> rules = analyzer.splitRule("@");
+            Alternative alternative = new Alternative();
+            alternative.parts = new ArrayList<>(rules.size());
+            for (String rule : rules) {
+                alternative.parts.add(SingleRule.parse(rule));
+            }
+            alternative.last = rules.get(rules.size() - 1);
+            return alternative;
+        }
+        
+        Elements getElements(Element root) {
+            if (parts == null) {
+                return select(root, cssAll);
+            }
+            Elements elements = new Elements(root);
+            for (SingleRule part : parts) {
+                Elements es = new Elements();
+                for (Element element : elements) {
+                    es.addAll(part.getElements(element));
+                }
+                elements = es;
+            }
+            return elements;
+        }
+        
+        List<String> getCssStrings(Element root) {
+            return getResultLast(select(root, cssSelector), cssLast);
+        }
+        
+        List<String> getStrings(Element root, String defaultExtractor) {
+            if (last.isEmpty()) {
+                return null;
+            }
+            
+            // 只有一段且不是取值方式时，兼容 "选择器" 写法
+            if (parts.size() == 1 && defaultExtractor != null && !EXTRACTORS.contains(last)) {
+                if (root.hasAttr(last)) {
+                    return getResultLast(new Elements(root), last);
+                }
+                return getResultLast(parts.get(0).getElements(root), defaultExtractor);
+            }
+            
+            Elements elements = new Elements(root);
+            for (int i = 0; i < parts.size() - 1; i++) {
+                Elements es = new Elements();
+                for (Element element : elements) {
+                    es.addAll(parts.get(i).getElements(element));
+                }
+                elements = es;
+            }
+            return elements.isEmpty() ? null : getResultLast(elements, last);
+        }
+        
+        private static Elements select(Element root, Evaluator evaluator) {
+            return evaluator == null ? new Elements() : root.select(evaluator);
+        }
+        
+        private static Evaluator parseQuery(String query) {
+            String q = query.trim();
+            return q.isEmpty() ? null : QueryParser.parse(q);
+        }
+    }
+    
+    /**
+     * 单段规则，支持 ':' 分隔的索引与 '!' '.' 筛选方式，以及 [] 索引写法
+     * 例如 tag.div.-1:10:2、tag.div!0:3、tag.div[-1, 3:-2:-10, 2]
+     */
+    private static final class SingleRule {
+        
+        private enum Kind { CHILDREN, CLASS, TAG, ID, TEXT, SELECT }
+        
+        private char split = '.';
+        
+        private String beforeRule = "";
+        
+        private final List<Integer> indexDefault = new ArrayList<>();
+        
+        /**
+         * 单个索引为Integer，区间为 {start, end, step}
+         */
+        private final List<Object> indexes = new ArrayList<>();
+        
+        private Kind kind;
+        
+        private String arg;
+        
+        private Evaluator evaluator;
+        
+        static SingleRule parse(String rule) {
+            SingleRule single = new SingleRule();
+            single.findIndexSet(rule);
+            
+            if (single.beforeRule.isEmpty()) {
+                single.kind = Kind.CHILDREN;
+                return single;
+            }
+            
+            String[] rules = single.beforeRule.split("\\.", -1);
+            single.arg = rules.length > 1 ? rules[1] : "";
+            switch (rules[0]) {
+                case "children":
+                    single.kind = Kind.CHILDREN;
+                    break;
+                case "class":
+                    single.kind = Kind.CLASS;
+                    break;
+                case "tag":
+                    single.kind = Kind.TAG;
+                    break;
+                case "id":
+                    single.kind = Kind.ID;
+                    break;
+                case "text":
+                    single.kind = Kind.TEXT;
+                    break;
+                default:
+                    single.kind = Kind.SELECT;
+                    try {
+                        single.evaluator = QueryParser.parse(single.beforeRule);
+                    } catch (Exception e) {
+                        // 最后一段可能是取值方式而非选择器，只有真正用作选择器时才报错
+                        single.evaluator = null;
+                    }
+            }
+            return single;
+        }
+        
+        Elements getElements(Element temp) {
+            Elements elements;
+            switch (kind) {
+                case CLASS:
+                    elements = temp.getElementsByClass(arg);
+                    break;
+                case TAG:
+                    elements = temp.getElementsByTag(arg);
+                    break;
+                case ID:
+                    elements = Collector.collect(new Evaluator.Id(arg), temp);
+                    break;
+                case TEXT:
+                    elements = temp.getElementsContainingOwnText(arg);
+                    break;
+                case SELECT:
+                    elements = evaluator != null ? temp.select(evaluator) : temp.select(beforeRule);
+                    break;
+                default:
+                    elements = temp.children();
+            }
+            
+            int len = elements.size();
+            if (len == 0 || split == ' ') {
+                return elements;
+            }
+            
+            int lastIndexes = !indexDefault.isEmpty() ? indexDefault.size() - 1 : indexes.size() - 1;
+            Set<Integer> indexSet = new LinkedHashSet<>();
+            
+            // 获取无重且不越界的索引集合，解析时是逆向插入的，这里逆向遍历还原顺序
+            if (indexes.isEmpty()) {
+                for (int ix = lastIndexes; ix >= 0; ix--) {
+                    int it = indexDefault.get(ix);
+                    if (it >= 0 && it < len) {
+                        indexSet.add(it);
+                    } else if (it < 0 && len >= -it) {
+                        indexSet.add(it + len);
+                    }
+                }
+            } else {
+                for (int ix = lastIndexes; ix >= 0; ix--) {
+                    Object index = indexes.get(ix);
+                    if (index instanceof Integer[]) {
+                        Integer[] range = (Integer[]) index;
+                        Integer startX = range[0];
+                        Integer endX = range[1];
+                        int stepX = range[2];
+                        
+                        int start = startX == null ? 0
+                                : startX >= 0 ? (startX < len ? startX : len - 1)
+                                : (-startX <= len ? len + startX : 0);
+                        int end = endX == null ? len - 1
+                                : endX >= 0 ? (endX < len ? endX : len - 1)
+                                : (-endX <= len ? len + endX : 0);
+                        
+                        if (start == end || stepX >= len) {
+                            indexSet.add(start);
+                            continue;
+                        }
+                        
+                        int step = stepX > 0 ? stepX : (-stepX < len ? stepX + len : 1);
+                        if (end > start) {
+                            for (int i = start; i <= end; i += step) {
+                                indexSet.add(i);
+                            }
+                        } else {
+                            for (int i = start; i >= end; i -= step) {
+                                indexSet.add(i);
+                            }
+                        }
+                    } else {
+                        int it = (Integer) index;
+                        if (it >= 0 && it < len) {
+                            indexSet.add(it);
+                        } else if (it < 0 && len >= -it) {
+                            indexSet.add(it + len);
+                        }
+                    }
+                }
+            }
+            
+            Elements es = new Elements();
+            if (split == '!') {
+                for (int i = 0; i < len; i++) {
+                    if (!indexSet.contains(i)) {
+                        es.add(elements.get(i));
+                    }
+                }
+            } else {
+                for (int i : indexSet) {
+                    es.add(elements.get(i));
+                }
+            }
+            return es;
+        }
+        
+        private void findIndexSet(String rule) {
+            String rus = rule.trim();
+            int len = rus.length();
+            boolean curMinus = false;
+            List<Integer> curList = new ArrayList<>();
+            StringBuilder l = new StringBuilder();
+            
+            boolean head = len > 0 && rus.charAt(len - 1) == ']';
+            
+            if (head) {
+                // 常规索引写法 [index...]，逆向遍历
+                len--;
+                while (len-- > 0) {
+                    char rl = rus.charAt(len);
+                    if (rl == ' ') {
+                        continue;
+                    }
+                    
+                    if (rl >= '0' && rl <= '9') {
+                        l.insert(0, rl);
+                    } else if (rl == '-') {
+                        curMinus = true;
+                    } else {
+                        Integer curInt = l.length() == 0 ? null
+                                : (curMinus ? -Integer.parseInt(l.toString()) : Integer.parseInt(l.toString()));
+                        
+                        if (rl == ':') {
+                            curList.add(curInt);
+                        } else {
+                            if (curList.isEmpty()) {
+                                if (curInt == null) {
+                                    break;
+                                }
+                                indexes.add(curInt);
+                            } else {
+                                Integer step = curList.size() == 2 ? curList.get(0) : Integer.valueOf(1);
+                                indexes.add(new Integer[]{curInt, curList.get(curList.size() - 1), step == null ? 1 : step});
+                                curList.clear();
+                            }
+                            
+                            if (rl == '!') {
+                                split = '!';
+                                while (len > 0) {
+                                    rl = rus.charAt(--len);
+                                    if (rl != ' ') {
+                                        break;
+                                    }
+                                }
+                            }
+                            
+                            if (rl == '[') {
+                                beforeRule = rus.substring(0, len);
+                                return;
+                            }
+                            
+                            if (rl != ',') {
+                                break;
+                            }
+                        }
+                        
+                        l.setLength(0);
+                        curMinus = false;
+                    }
+                }
+            } else {
+                // 阅读原本写法，逆向遍历
+                while (len-- > 0) {
+                    char rl = rus.charAt(len);
+                    if (rl == ' ') {
+                        continue;
+                    }
+                    
+                    if (rl >= '0' && rl <= '9') {
+                        l.insert(0, rl);
+                    } else if (rl == '-') {
+                        curMinus = true;
+                    } else {
+                        if ((rl == '!' || rl == '.' || rl == ':') && l.length() > 0) {
+                            int value = Integer.parseInt(l.toString());
+                            indexDefault.add(curMinus ? -value : value);
+                            
+                            if (rl != ':') {
+                                split = rl;
+                                beforeRule = rus.substring(0, len);
+                                return;
+                            }
+                        } else {
+                            break;
+                        }
+                        
+                        l.setLength(0);
+                        curMinus = false;
+                    }
+                }
+            }
+            
+            split = ' ';
+            beforeRule = rus;
+        }
+    }
+    
+}
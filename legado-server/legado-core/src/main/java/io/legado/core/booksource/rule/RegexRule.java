@@ -0,0 +1,66 @@
+package io.legado.core.booksource.rule;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 正则列表规则（AllInOne）
+ * 对应App的 AnalyzeByRegex，以 &amp;&amp; 分隔的多个正则逐级缩小范围，最后一个正则的每次匹配为一条结果，
+ * 字段规则用 $1、$2 引用分组
+ */
+final class RegexRule {
+    
+    private final Pattern[] patterns;
+    
+    private RegexRule(Pattern[] patterns) {
+        this.patterns = patterns;
+    }
+    
+    static RegexRule compile(String rule) {
+        List<Pattern> patterns = new ArrayList<>();
+        for (String regex : rule.split("&&")) {
+            if (!regex.trim().isEmpty()) {
+                patterns.add(Pattern.compile(regex));
+            }
+        }
+        return new RegexRule(patterns.toArray(new Pattern[0]));
+    }
+    
+    List<List<String>> getElements(String res) {
+        return getElements(res, 0);
+    }
+    
+    private List<List<String>> getElements(String res, int index) {
+        List<List<String>> books = new ArrayList<>();
+        if (index >= patterns.length) {
+            return books;
+        }
+        
+        Matcher resM = patterns[index].matcher(res);
+        if (!resM.find()) {
+            return books;
+        }
+        
+        // 最后一个正则，提取列表
+        if (index + 1 == patterns.length) {
+            do {
+                List<String> info = new ArrayList<>(resM.groupCount() + 1);
+                for (int groupIndex = 0; groupIndex <= resM.groupCount(); groupIndex++) {
+                    String group = resM.group(groupIndex);
+                    info.add(group == null ? "" : group);
+                }
+                books.add(info);
+            } while (resM.find());
+            return books;
+        }
+        
+        StringBuilder result = new StringBuilder();
+        do {
+            result.append(resM.group());
+        } while (resM.find());
+        return getElements(result.toString(), index + 1);
+    }
+    
+}
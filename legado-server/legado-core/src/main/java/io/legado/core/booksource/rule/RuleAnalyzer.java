@@ -0,0 +1,398 @@
+package io.legado.core.booksource.rule;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * 通用的规则切分处理
+ * 与阅读App的 RuleAnalyzer 保持一致：不用正则，按平衡组切分 &amp;&amp;、||、%% 与 @，
+ * 避免选择器、JSONPath筛选器或引号中的分隔符被误切
+ */
+public class RuleAnalyzer {
+    
+    /**
+     * 转义字符
+     */
+    private static final char ESC = '\\';
+    
+    /**
+     * 被处理字符串
+     */
+    private final String queue;
+    
+    /**
+     * 是否按代码（JSON、JavaScript）规则匹配平衡组
+     */
+    private final boolean code;
+    
+    /**
+     * 当前处理到的位置
+     */
+    private int pos = 0;
+    
+    /**
+     * 当前处理字段的开始
+     */
+    private int start = 0;
+    
+    /**
+     * 当前规则的开始
+     */
+    private int startX = 0;
+    
+    /**
+     * 分割出的规则列表
+     */
+    private List<String> rule = new ArrayList<>();
+    
+    /**
+     * 分割字符的长度
+     */
+    private int step = 0;
+    
+    /**
+     * 当前分割字符串
+     */
+    private String elementsType = "";
+    
+    public RuleAnalyzer(String data) {
+        this(data, false);
+    }
+    
+    public RuleAnalyzer(String data, boolean code) {
+        this.queue = data;
+        this.code = code;
+    }
+    
+    public String getElementsType() {
+        return elementsType;
+    }
+    
+    /**
+     * 修剪当前规则之前的"@"或者空白符
+     */
+    public void trim() {
+        if (pos < queue.length() && (queue.charAt(pos) == '@' || queue.charAt(pos) < '!')) {
+            pos++;
+            while (pos < queue.length() && (queue.charAt(pos) == '@' || queue.charAt(pos) < '!')) {
+                pos++;
+            }
+            start = pos;
+            startX = pos;
+        }
+    }
+    
+    /**
+     * 将pos重置为0，方便复用
+     */
+    public void reSetPos() {
+        pos = 0;
+        startX = 0;
+    }
+    
+    /**
+     * 从剩余字串中拉出一个字符串，直到但不包括匹配序列
+     */
+    private boolean consumeTo(String seq) {
+        start = pos;
+        int offset = queue.indexOf(seq, pos);
+        if (offset != -1) {
+            pos = offset;
+            return true;
+        }
+        return false;
+    }
+    
+    /**
+     * 从剩余字串中拉出一个字符串，直到但不包括匹配序列（匹配参数列表中一项即为匹配）
+     */
+    private boolean consumeToAny(String... seq) {
+        int p = pos;
+        while (p != queue.length()) {
+            for (String s : seq) {
+                if (queue.regionMatches(p, s, 0, s.length())) {
+                    step = s.length();
+                    this.pos = p;
+                    return true;
+                }
+            }
+            p++;
+        }
+        return false;
+    }
+    
+    /**
+     * 查找下一个匹配字符的位置，找不到返回-1
+     */
+    private int findToAny(char... seq) {
+        int p = pos;
+        while (p != queue.length()) {
+            for (char s : seq) {
+                if (queue.charAt(p) == s) {
+                    return p;
+                }
+            }
+            p++;
+        }
+        return -1;
+    }
+    
+    /**
+     * 拉出一个非内嵌代码平衡组，存在转义文本
+     */
+    private boolean chompCodeBalanced(char open, char close) {
+        int p = pos;
+        int depth = 0;
+        int otherDepth = 0;
+        boolean inSingleQuote = false;
+        boolean inDoubleQuote = false;
+        
+        do {
+            if (p == queue.length()) {
+                break;
+            }
+            char c = queue.charAt(p++);
+            if (c != ESC) {
+                if (c == '\'' && !inDoubleQuote) {
+                    inSingleQuote = !inSingleQuote;
+                } else if (c == '"' && !inSingleQuote) {
+                    inDoubleQuote = !inDoubleQuote;
+                }
+                
+                if (inSingleQuote || inDoubleQuote) {
+                    continue;
+                }
+                
+                if (c == '[') {
+                    depth++;
+                } else if (c == ']') {
+                    depth--;
+                } else if (depth == 0) {
+                    // 默认嵌套全部闭合时，才对其他对称符号计数
+                    if (c == open) {
+                        otherDepth++;
+                    } else if (c == close) {
+                        otherDepth--;
+                    }
+                }
+            } else {
+                p++;
+            }
+        } while (depth > 0 || otherDepth > 0);
+        
+        if (depth > 0 || otherDepth > 0) {
+            return false;
+        }
+        this.pos = p;
+        return true;
+    }
+    
+    /**
+     * 拉出一个规则平衡组，xpath和jsoup中引号内的转义字符无效
+     */
+    private boolean chompRuleBalanced(char open, char close) {
+        int p = pos;
+        int depth = 0;
+        boolean inSingleQuote = false;
+        boolean inDoubleQuote = false;
+        
+        do {
+            if (p == queue.length()) {
+                break;
+            }
+            char c = queue.charAt(p++);
+            if (c == '\'' && !inDoubleQuote) {
+                inSingleQuote = !inSingleQuote;
+            } else if (c == '"' && !inSingleQuote) {
+                inDoubleQuote = !inDoubleQuote;
+            }
+            
+            if (inSingleQuote || inDoubleQuote) {
+                continue;
+            } else if (c == '\\') {
+                // 不在引号中的转义字符才将下个字符转义
+                p++;
+                continue;
+            }
+            
+            if (c == open) {
+                depth++;
+            } else if (c == close) {
+                depth--;
+            }
+        } while (depth > 0);
+        
+        if (depth > 0) {
+            return false;
+        }
+        this.pos = p;
+        return true;
+    }
+    
+    private boolean chompBalanced(char open, char close) {
+        return code ? chompCodeBalanced(open, close) : chompRuleBalanced(open, close);
+    }
+    
+    /**
+     * 按分隔符切分规则，筛选器（[]、()）中的分隔符不切分
+     * 只传一个分隔符时直接按该分隔符切分；传多个时以首个出现的分隔符为准
+     */
+    public List<String> splitRule(String... split) {
+        if (split.length == 1) {
+            elementsType = split[0];
+            if (!consumeTo(elementsType)) {
+                rule.add(queue.substring(startX));
+                return rule;
+            }
+            step = elementsType.length();
+            return splitRuleNext();
+        } else if (!consumeToAny(split)) {
+            rule.add(queue.substring(startX));
+            return rule;
+        }
+        
+        int end = pos;
+        pos = start;
+        
+        do {
+            int st = findToAny('[', '(');
+            
+            if (st == -1) {
+                rule = new ArrayList<>();
+                rule.add(queue.substring(startX, end));
+                
+                elementsType = queue.substring(end, end + step);
+                pos = end + step;
+                
+                while (consumeTo(elementsType)) {
+                    rule.add(queue.substring(start, pos));
+                    pos += step;
+                }
+                
+                rule.add(queue.substring(pos));
+                return rule;
+            }
+            
+            if (st > end) {
+                // 分隔符不在筛选器中，将筛选器前的字段依次压入
+                rule = new ArrayList<>();
+                rule.add(queue.substring(startX, end));
+                
+                elementsType = queue.substring(end, end + step);
+                pos = end + step;
+                
+                while (consumeTo(elementsType) && pos < st) {
+                    rule.add(queue.substring(start, pos));
+                    pos += step;
+                }
+                
+                if (pos > st) {
+                    startX = start;
+                    return splitRuleNext();
+                }
+                rule.add(queue.substring(pos));
+                return rule;
+            }
+            
+            pos = st;
+            char next = queue.charAt(pos) == '[' ? ']' : ')';
+            
+            if (!chompBalanced(queue.charAt(pos), next)) {
+                throw new IllegalArgumentException(queue.substring(0, start) + "后未平衡");
+            }
+            
+        } while (end > pos);
+        
+        start = pos;
+        return splitRule(split);
+    }
+    
+    /**
+     * 二段匹配，elementsType已在首段确定，直接按其查找
+     */
+    private List<String> splitRuleNext() {
+        int end = pos;
+        pos = start;
+        
+        do {
+            int st = findToAny('[', '(');
+            
+            if (st == -1) {
+                rule.add(queue.substring(startX, end));
+                pos = end + step;
+                
+                while (consumeTo(elementsType)) {
+                    rule.add(queue.substring(start, pos));
+                    pos += step;
+                }
+                
+                rule.add(queue.substring(pos));
+                return rule;
+            }
+            
+            if (st > end) {
+                rule.add(queue.substring(startX, end));
+                pos = end + step;
+                
+                while (consumeTo(elementsType) && pos < st) {
+                    rule.add(queue.substring(start, pos));
+                    pos += step;
+                }
+                
+                if (pos > st) {
+                    startX = start;
+                    return splitRuleNext();
+                }
+                rule.add(queue.substring(pos));
+                return rule;
+            }
+            
+            pos = st;
+            char next = queue.charAt(pos) == '[' ? ']' : ')';
+            
+            if (!chompBalanced(queue.charAt(pos), next)) {
+                throw new IllegalArgumentException(queue.substring(0, start) + "后未平衡");
+            }
+            
+        } while (end > pos);
+        
+        start = pos;
+        
+        if (!consumeTo(elementsType)) {
+            rule.add(queue.substring(startX));
+            return rule;
+        }
+        return splitRuleNext();
+    }
+    
+    /**
+     * 替换内嵌规则，如 {$.name}
+     *
+     * @param inner 起始标志，如 {$.
+     * @param fr 查找到内嵌规则时用于解析的函数
+     * @return 替换后的字符串，没有成功替换的内嵌规则时返回空字符串
+     */
+    public String innerRule(String inner, Function<String, String> fr) {
+        StringBuilder st = new StringBuilder();
+        
+        while (consumeTo(inner)) {
+            int posPre = pos;
+            if (chompCodeBalanced('{', '}')) {
+                String frv = fr.apply(queue.substring(posPre + 1, pos - 1));
+                if (frv != null && !frv.isEmpty()) {
+                    st.append(queue, startX, posPre).append(frv);
+                    startX = pos;
+                    continue;
+                }
+            }
+            pos += inner.length();
+        }
+        
+        if (startX == 0) {
+            return "";
+        }
+        return st.append(queue.substring(startX)).toString();
+    }
+    
+}
@@ -0,0 +1,137 @@
+package io.legado.core.booksource.rule;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.legado.core.booksource.BookInfoRule;
+import io.legado.core.booksource.ContentRule;
+import io.legado.core.booksource.SearchRule;
+import io.legado.core.booksource.TocRule;
+import io.legado.model.entity.BookSource;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * 规则编译器
+ * 将书源的规则JSON编译为 {@link SourceRulePlan}
+ */
+@Slf4j
+public final class RuleCompiler {
+    
+    private static final ObjectMapper mapper = new ObjectMapper();
+    
+    private RuleCompiler() {
+    }
+    
+    /**
+     * 编译书源
+     */
+    public static SourceRulePlan compile(BookSource source) {
+        SearchRule searchRule = readRule(source.getRuleSearch(), SearchRule.class, source);
+        BookInfoRule bookInfoRule = readRule(source.getRuleBookInfo(), BookInfoRule.class, source);
+        TocRule tocRule = readRule(source.getRuleToc(), TocRule.class, source);
+        ContentRule contentRule = readRule(source.getRuleContent(), ContentRule.class, source);
+        
+        SourceRulePlan.SearchPlan search = new SourceRulePlan.SearchPlan(
+                compileList(searchRule.getBookList()),
+                compileText(searchRule.getName()),
+                compileText(searchRule.getAuthor()),
+                compileText(searchRule.getIntro()),
+                compileAttr(searchRule.getCoverUrl(), "src"),
+                compileAttr(searchRule.getBookUrl(), "href"),
+                compileText(searchRule.getLatestChapter()),
+                compileText(searchRule.getWordCount()),
+                compileText(searchRule.getKind())
+        );
+        
+        SourceRulePlan.BookInfoPlan bookInfo = new SourceRulePlan.BookInfoPlan(
+                compileText(bookInfoRule.getName()),
+                compileText(bookInfoRule.getAuthor()),
+                compileText(bookInfoRule.getIntro()),
+                compileAttr(bookInfoRule.getCoverUrl(), "src"),
+                compileText(bookInfoRule.getKind()),
+                compileText(bookInfoRule.getLatestChapter()),
+                compileAttr(bookInfoRule.getTocUrl(), "href"),
+                compileText(bookInfoRule.getWordCount())
+        );
+        
+        SourceRulePlan.TocPlan toc = new SourceRulePlan.TocPlan(
+                compileList(tocRule.getChapterList()),
+                compileText(tocRule.getChapterName()),
+                compileAttr(tocRule.getChapterUrl(), "href"),
+                Boolean.TRUE.equals(tocRule.getIsReverse())
+        );
+        
+        SourceRulePlan.ContentPlan content = new SourceRulePlan.ContentPlan(
+                compileAttr(contentRule.getContent(), "html")
+        );
+        
+        return new SourceRulePlan(source.getId(), source.getLastUpdateTime(), parseHeaders(source.getHeader()),
+                search, bookInfo, toc, content);
+    }
+    
+    /**
+     * 编译列表规则，- 开头时倒序，: 开头时为AllInOne正则
+     */
+    public static CompiledRule compileList(String rule) {
+        return compile(rule, true, null);
+    }
+    
+    /**
+     * 编译文本规则，未指定取值方式时取文本
+     */
+    public static CompiledRule compileText(String rule) {
+        return compile(rule, false, "text");
+    }
+    
+    /**
+     * 编译属性规则，未指定取值方式时使用默认属性
+     */
+    public static CompiledRule compileAttr(String rule, String defaultAttr) {
+        return compile(rule, false, defaultAttr);
+    }
+    
+    private static CompiledRule compile(String rule, boolean list, String defaultExtractor) {
+        try {
+            return CompiledRule.compile(rule, list, defaultExtractor).precompile();
+        } catch (Exception e) {
+            log.warn("编译规则失败: {}, {}", rule, e.getMessage());
+            return CompiledRule.EMPTY;
+        }
+    }
+    
+    private static <T> T readRule(String json, Class<T> type, BookSource source) {
+        try {
+            if (json != null && !json.isEmpty()) {
+                return mapper.readValue(json, type);
+            }
+        } catch (Exception e) {
+            log.warn("解析书源 {} 的规则失败: {}", source.getSourceName(), e.getMessage());
+        }
+        
+        try {
+            return type.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+    
+    /**
+     * 解析请求头
+     */
+    private static Map<String, String> parseHeaders(String headerJson) {
+        if (headerJson == null || headerJson.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        
+        try {
+            return Collections.unmodifiableMap(
+                    mapper.readValue(headerJson, new TypeReference<Map<String, String>>() {}));
+        } catch (Exception e) {
+            log.warn("解析请求头失败", e);
+            return Collections.emptyMap();
+        }
+    }
+    
+}
@@ -0,0 +1,149 @@
+package io.legado.core.booksource.rule;
+
+import com.jayway.jsonpath.Configuration;
+import io.legado.core.booksource.JsContextPool;
+import org.jsoup.Jsoup;
+import org.jsoup.helper.W3CDom;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.parser.Parser;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 规则解析上下文
+ * 对应一次响应：HTML只解析一次，JSON只解析一次，XPath所需的W3C文档按需转换并缓存，
+ * 同一响应的所有字段规则共享这些解析结果
+ */
+public class RuleContext {
+    
+    private final String content;
+    
+    private final String baseUrl;
+    
+    private final JsContextPool jsContextPool;
+    
+    private final boolean json;
+    
+    private Object root;
+    
+    /**
+     * 列表规则为正则（AllInOne）时，字段规则按 $1 等分组引用解析
+     */
+    private boolean regex;
+    
+    private Map<Element, org.w3c.dom.Document> xpathDocuments;
+    
+    private final Map<String, String> variables = new HashMap<>();
+    
+    public RuleContext(String content, String baseUrl, JsContextPool jsContextPool) {
+        this.content = content == null ? "" : content;
+        this.baseUrl = baseUrl;
+        this.jsContextPool = jsContextPool;
+        this.json = isJson(this.content);
+    }
+    
+    /**
+     * 原始响应内容
+     */
+    public String getContent() {
+        return content;
+    }
+    
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+    
+    /**
+     * 响应是否为JSON
+     */
+    public boolean isJson() {
+        return json;
+    }
+    
+    public boolean isRegex() {
+        return regex;
+    }
+    
+    void markRegex() {
+        this.regex = true;
+    }
+    
+    /**
+     * 解析后的根节点：JSON响应为JSON对象，其余为jsoup文档
+     */
+    public Object getRoot() {
+        if (root == null) {
+            root = json ? parseJson(content) : parseHtml(content, baseUrl);
+        }
+        return root;
+    }
+    
+    /**
+     * 获取元素对应的W3C文档，用于XPath
+     * 根文档直接转换；列表中的元素单独转换，使 // 相对于该元素，与App的行为一致
+     */
+    org.w3c.dom.Document xpathDocument(Element element) {
+        if (xpathDocuments == null) {
+            xpathDocuments = new IdentityHashMap<>();
+        }
+        return xpathDocuments.computeIfAbsent(element, e -> {
+            W3CDom w3cDom = new W3CDom().namespaceAware(false);
+            if (e instanceof Document) {
+                return w3cDom.fromJsoup((Document) e);
+            }
+            Document shell = Document.createShell(baseUrl == null ? "" : baseUrl);
+            shell.body().appendChild(e.clone());
+            return w3cDom.fromJsoup(shell);
+        });
+    }
+    
+    /**
+     * 执行JavaScript
+     */
+    Object evalJs(String script, Object result) {
+        if (jsContextPool == null) {
+            throw new IllegalStateException("JavaScript引擎不可用");
+        }
+        Map<String, Object> bindings = new LinkedHashMap<>();
+        bindings.put("result", result);
+        bindings.put("baseUrl", baseUrl);
+        bindings.put("src", content);
+        return jsContextPool.eval(script, bindings);
+    }
+    
+    /**
+     * 保存变量（@put）
+     */
+    public void put(String key, String value) {
+        variables.put(key, value);
+    }
+    
+    /**
+     * 获取变量（@get）
+     */
+    public String get(String key) {
+        return variables.getOrDefault(key, "");
+    }
+    
+    static boolean isJson(String str) {
+        String s = str.trim();
+        return (s.startsWith("{") && s.endsWith("}")) || (s.startsWith("[") && s.endsWith("]"));
+    }
+    
+    static Object parseJson(String str) {
+        return Configuration.defaultConfiguration().jsonProvider().parse(str);
+    }
+    
+    static Document parseHtml(String str, String baseUrl) {
+        String base = baseUrl == null ? "" : baseUrl;
+        if (str.trim().regionMatches(true, 0, "<?xml", 0, 5)) {
+            return Jsoup.parse(str, base, Parser.xmlParser());
+        }
+        return Jsoup.parse(str, base);
+    }
+    
+}
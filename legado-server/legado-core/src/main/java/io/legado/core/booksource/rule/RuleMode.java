@@ -0,0 +1,33 @@
+package io.legado.core.booksource.rule;
+
+/**
+ * 规则类型
+ */
+public enum RuleMode {
+    
+    /**
+     * JSOUP（@CSS: 或阅读原有写法），响应为JSON时按JSONPath处理
+     */
+    DEFAULT,
+    
+    /**
+     * JSONPath（$. $[ 或 @Json:）
+     */
+    JSON,
+    
+    /**
+     * XPath（/ 或 @XPath:）
+     */
+    XPATH,
+    
+    /**
+     * JavaScript（&lt;js&gt;&lt;/js&gt; 或 @js:）
+     */
+    JS,
+    
+    /**
+     * 正则：列表规则以 : 开头时为AllInOne正则，字段规则中为含 $1、{{}}、@get 的模板
+     */
+    REGEX
+    
+}
@@ -0,0 +1,74 @@
+package io.legado.core.booksource.rule;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.legado.model.entity.BookSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.Objects;
+
+/**
+ * 书源规则计划缓存
+ * 按书源ID缓存，书源的更新时间变化时重新编译；书源被修改或删除时由书源服务主动失效。
+ * 容量与过期时间见 legado.cache.rule-plan，命中统计以 cache=rulePlan 输出
+ */
+@Slf4j
+@Component
+public class RulePlanCache {
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    @Value("${legado.cache.rule-plan:maximumSize=5000,expireAfterAccess=1h}")
+    private String spec;
+    
+    private Cache<Long, SourceRulePlan> plans;
+    
+    @PostConstruct
+    public void init() {
+        plans = Caffeine.from(spec).recordStats().build();
+        CaffeineCacheMetrics.monitor(meterRegistry, plans, "rulePlan");
+    }
+    
+    /**
+     * 获取书源的规则计划，不存在或已过期时编译
+     */
+    public SourceRulePlan get(BookSource source) {
+        if (source.getId() == null) {
+            return RuleCompiler.compile(source);
+        }
+        
+        SourceRulePlan plan = plans.getIfPresent(source.getId());
+        if (plan != null && Objects.equals(plan.getLastUpdateTime(), source.getLastUpdateTime())) {
+            return plan;
+        }
+        
+        SourceRulePlan compiled = RuleCompiler.compile(source);
+        plans.put(source.getId(), compiled);
+        log.debug("编译书源规则: {}", source.getSourceName());
+        return compiled;
+    }
+    
+    /**
+     * 使指定书源的规则计划失效
+     */
+    public void invalidate(Long sourceId) {
+        if (sourceId != null) {
+            plans.invalidate(sourceId);
+        }
+    }
+    
+    /**
+     * 清空所有规则计划
+     */
+    public void invalidateAll() {
+        plans.invalidateAll();
+    }
+    
+}
@@ -0,0 +1,454 @@
+package io.legado.core.booksource.rule;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.jsoup.nodes.Element;
+import org.jsoup.select.Elements;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 规则中的一步
+ * 对应App的 AnalyzeRule.SourceRule：规则前缀、@put、@get、{{}}、$1 与 ##替换 在编译时解析，
+ * 各类型的解析器按需编译一次后复用
+ */
+@Slf4j
+final class RuleStep {
+    
+    /**
+     * @put 的内容按App的习惯允许省略键的引号
+     */
+    private static final ObjectMapper mapper = new ObjectMapper()
+            .configure(JsonParser.Feature.ALLOW_UNQUOTED_FIELD_NAMES, true)
+            .configure(JsonParser.Feature.ALLOW_SINGLE_QUOTES, true);
+    
+    private static final Pattern PUT_PATTERN = Pattern.compile("@put:(\\{[^}]+?\\})", Pattern.CASE_INSENSITIVE);
+    
+    private static final Pattern EVAL_PATTERN =
+            Pattern.compile("@get:\\{[^}]+?\\}|\\{\\{[\\w\\W]*?\\}\\}", Pattern.CASE_INSENSITIVE);
+    
+    private static final Pattern REGEX_PATTERN = Pattern.compile("\\$\\d{1,2}");
+    
+    private static final int GET_RULE_TYPE = -2;
+    
+    private static final int JS_RULE_TYPE = -1;
+    
+    private static final int DEFAULT_RULE_TYPE = 0;
+    
+    private RuleMode mode;
+    
+    /**
+     * 未显式指定类型的默认规则，响应为JSON时按JSONPath处理
+     */
+    private boolean implicit;
+    
+    private final String defaultExtractor;
+    
+    private final Map<String, CompiledRule> putMap = new LinkedHashMap<>();
+    
+    private final List<String> ruleParam = new ArrayList<>();
+    
+    private final List<Integer> ruleType = new ArrayList<>();
+    
+    /**
+     * {{}} 中为规则（而非JavaScript）时编译好的规则，下标与ruleParam对应
+     */
+    private final List<CompiledRule> paramRules = new ArrayList<>();
+    
+    /**
+     * 是否含有需要在运行时拼接的参数
+     */
+    private boolean dynamic;
+    
+    private Rule fixed;
+    
+    private volatile JsoupRule jsoupRule;
+    
+    private volatile JsonPathRule jsonPathRule;
+    
+    private volatile XPathRule xPathRule;
+    
+    private volatile RegexRule regexRule;
+    
+    /**
+     * @param ruleStr 规则
+     * @param mode 初始类型，JS与REGEX不再识别前缀
+     * @param list 是否为列表规则，列表规则不拆分 ## 与参数
+     * @param defaultExtractor 默认取值方式
+     */
+    RuleStep(String ruleStr, RuleMode mode, boolean list, String defaultExtractor) {
+        this.mode = mode;
+        this.defaultExtractor = defaultExtractor;
+        
+        String rule;
+        if (mode == RuleMode.JS || mode == RuleMode.REGEX) {
+            rule = ruleStr;
+        } else if (ruleStr.regionMatches(true, 0, "@CSS:", 0, 5)) {
+            rule = ruleStr;
+        } else if (ruleStr.startsWith("@@")) {
+            rule = ruleStr.substring(2);
+        } else if (ruleStr.regionMatches(true, 0, "@XPath:", 0, 7)) {
+            this.mode = RuleMode.XPATH;
+            rule = ruleStr.substring(7);
+        } else if (ruleStr.regionMatches(true, 0, "@Json:", 0, 6)) {
+            this.mode = RuleMode.JSON;
+            rule = ruleStr.substring(6);
+        } else if (ruleStr.startsWith("$.") || ruleStr.startsWith("$[")) {
+            this.mode = RuleMode.JSON;
+            rule = ruleStr;
+        } else if (ruleStr.startsWith("/")) {
+            this.mode = RuleMode.XPATH;
+            rule = ruleStr;
+        } else {
+            this.implicit = true;
+            rule = ruleStr;
+        }
+        
+        rule = splitPutRule(rule);
+        if (list) {
+            fixed = new Rule(rule, "", "", false);
+            return;
+        }
+        
+        splitParams(rule);
+        dynamic = ruleType.stream().anyMatch(type -> type != DEFAULT_RULE_TYPE);
+        if (!dynamic) {
+            fixed = Rule.of(String.join("", ruleParam));
+        }
+        if (this.mode != RuleMode.DEFAULT) {
+            implicit = false;
+        }
+    }
+    
+    /**
+     * 分离 @put:{key:rule}
+     */
+    private String splitPutRule(String ruleStr) {
+        String vRuleStr = ruleStr;
+        Matcher putMatcher = PUT_PATTERN.matcher(ruleStr);
+        while (putMatcher.find()) {
+            vRuleStr = vRuleStr.replace(putMatcher.group(), "");
+            try {
+                Map<String, String> map = mapper.readValue(putMatcher.group(1), new TypeReference<Map<String, String>>() {});
+                map.forEach((key, value) -> putMap.put(key, CompiledRule.compile(value, false, "text")));
+            } catch (Exception e) {
+                log.debug("解析@put失败: {}", putMatcher.group(1));
+            }
+        }
+        return vRuleStr;
+    }
+    
+    /**
+     * 拆分 @get、{{}} 与 $1
+     */
+    private void splitParams(String rule) {
+        int start = 0;
+        Matcher evalMatcher = EVAL_PATTERN.matcher(rule);
+        
+        if (evalMatcher.find()) {
+            String tmp = rule.substring(start, evalMatcher.start());
+            if (mode != RuleMode.JS && mode != RuleMode.REGEX
+                    && (evalMatcher.start() == 0 || !tmp.contains("##"))) {
+                mode = RuleMode.REGEX;
+            }
+            do {
+                if (evalMatcher.start() > start) {
+                    splitRegex(rule.substring(start, evalMatcher.start()));
+                }
+                tmp = evalMatcher.group();
+                if (tmp.regionMatches(true, 0, "@get:", 0, 5)) {
+                    addParam(GET_RULE_TYPE, tmp.substring(6, tmp.length() - 1));
+                } else if (tmp.startsWith("{{")) {
+                    addParam(JS_RULE_TYPE, tmp.substring(2, tmp.length() - 2));
+                } else {
+                    splitRegex(tmp);
+                }
+                start = evalMatcher.end();
+            } while (evalMatcher.find());
+        }
+        if (rule.length() > start) {
+            splitRegex(rule.substring(start));
+        }
+    }
+    
+    /**
+     * 拆分 $\d{1,2}
+     */
+    private void splitRegex(String ruleStr) {
+        int start = 0;
+        String head = ruleStr.split("##", -1)[0];
+        Matcher regexMatcher = REGEX_PATTERN.matcher(head);
+        
+        if (regexMatcher.find()) {
+            if (mode != RuleMode.JS && mode != RuleMode.REGEX) {
+                mode = RuleMode.REGEX;
+            }
+            do {
+                if (regexMatcher.start() > start) {
+                    addParam(DEFAULT_RULE_TYPE, ruleStr.substring(start, regexMatcher.start()));
+                }
+                String tmp = regexMatcher.group();
+                addParam(Integer.parseInt(tmp.substring(1)), tmp);
+                start = regexMatcher.end();
+            } while (regexMatcher.find());
+        }
+        if (ruleStr.length() > start) {
+            addParam(DEFAULT_RULE_TYPE, ruleStr.substring(start));
+        }
+    }
+    
+    private void addParam(int type, String param) {
+        ruleType.add(type);
+        ruleParam.add(param);
+        paramRules.add(type == JS_RULE_TYPE && isRule(param) ? CompiledRule.compile(param, false, "text") : null);
+    }
+    
+    /**
+     * js首个字符不可能是@，@开头规定为规则
+     */
+    private static boolean isRule(String ruleStr) {
+        return ruleStr.startsWith("@") || ruleStr.startsWith("$.") || ruleStr.startsWith("$[") || ruleStr.startsWith("//");
+    }
+    
+    /**
+     * 保存 @put 的变量
+     */
+    void putRule(RuleContext ctx, Object item) {
+        putMap.forEach((key, rule) -> ctx.put(key, rule.getString(ctx, item)));
+    }
+    
+    /**
+     * 替换 @get、{{}}、$1 得到本步的规则
+     */
+    Rule makeUpRule(RuleContext ctx, Object item, Object result) {
+        if (!dynamic) {
+            return fixed;
+        }
+        
+        StringBuilder infoVal = new StringBuilder();
+        for (int index = ruleParam.size() - 1; index >= 0; index--) {
+            int regType = ruleType.get(index);
+            String param = ruleParam.get(index);
+            if (regType > DEFAULT_RULE_TYPE) {
+                if (result instanceof List) {
+                    List<?> groups = (List<?>) result;
+                    if (groups.size() > regType && groups.get(regType) != null) {
+                        infoVal.insert(0, groups.get(regType));
+                    }
+                } else {
+                    infoVal.insert(0, param);
+                }
+            } else if (regType == JS_RULE_TYPE) {
+                CompiledRule paramRule = paramRules.get(index);
+                if (paramRule != null) {
+                    infoVal.insert(0, paramRule.getString(ctx, item));
+                } else {
+                    Object jsEval = ctx.evalJs(param, result);
+                    if (jsEval instanceof Double && (Double) jsEval % 1.0 == 0.0) {
+                        infoVal.insert(0, String.format("%.0f", (Double) jsEval));
+                    } else if (jsEval != null) {
+                        infoVal.insert(0, jsEval);
+                    }
+                }
+            } else if (regType == GET_RULE_TYPE) {
+                infoVal.insert(0, ctx.get(param));
+            } else {
+                infoVal.insert(0, param);
+            }
+        }
+        return Rule.of(infoVal.toString());
+    }
+    
+    /**
+     * 本步实际使用的类型
+     */
+    RuleMode resolveMode(RuleContext ctx) {
+        if (implicit && mode == RuleMode.DEFAULT) {
+            if (ctx.isRegex()) {
+                return RuleMode.REGEX;
+            }
+            if (ctx.isJson()) {
+                return RuleMode.JSON;
+            }
+        }
+        return mode;
+    }
+    
+    JsoupRule jsoup(Rule rule) {
+        if (rule != fixed) {
+            return JsoupRule.compile(rule.text, defaultExtractor);
+        }
+        if (jsoupRule == null) {
+            jsoupRule = JsoupRule.compile(rule.text, defaultExtractor);
+        }
+        return jsoupRule;
+    }
+    
+    JsonPathRule jsonPath(Rule rule) {
+        if (rule != fixed) {
+            return JsonPathRule.compile(rule.text);
+        }
+        if (jsonPathRule == null) {
+            jsonPathRule = JsonPathRule.compile(rule.text);
+        }
+        return jsonPathRule;
+    }
+    
+    XPathRule xPath(Rule rule) {
+        if (rule != fixed) {
+            return XPathRule.compile(rule.text);
+        }
+        if (xPathRule == null) {
+            xPathRule = XPathRule.compile(rule.text);
+        }
+        return xPathRule;
+    }
+    
+    RegexRule regex(Rule rule) {
+        if (rule != fixed) {
+            return RegexRule.compile(rule.text);
+        }
+        if (regexRule == null) {
+            regexRule = RegexRule.compile(rule.text);
+        }
+        return regexRule;
+    }
+    
+    /**
+     * 在编译阶段编译显式指定类型的解析器，规则有误时尽早报错；
+     * 未指定类型的规则要等到拿到响应后才能确定按JSOUP还是JSONPath解析
+     */
+    void precompile() {
+        if (fixed == null || fixed.text.isEmpty()) {
+            return;
+        }
+        switch (mode) {
+            case JSON:
+                jsonPath(fixed);
+                break;
+            case XPATH:
+                xPath(fixed);
+                break;
+            case DEFAULT:
+                if (!implicit) {
+                    jsoup(fixed);
+                }
+                break;
+            default:
+        }
+    }
+    
+    /**
+     * 转换为jsoup元素
+     */
+    static Element asElement(Object o, RuleContext ctx) {
+        if (o instanceof Element) {
+            return (Element) o;
+        }
+        if (o instanceof Elements && ((Elements) o).size() == 1) {
+            return ((Elements) o).first();
+        }
+        return RuleContext.parseHtml(String.valueOf(o), ctx.getBaseUrl());
+    }
+    
+    /**
+     * 本步规则：选择部分与 ##正则##替换 部分
+     */
+    static final class Rule {
+        
+        final String text;
+        
+        final String replaceRegex;
+        
+        final String replacement;
+        
+        final boolean replaceFirst;
+        
+        /**
+         * 编译好的替换正则，正则有误时为空，按普通字符串替换
+         */
+        private final Pattern pattern;
+        
+        private Rule(String text, String replaceRegex, String replacement, boolean replaceFirst) {
+            this.text = text;
+            this.replaceRegex = replaceRegex;
+            this.replacement = replacement;
+            this.replaceFirst = replaceFirst;
+            Pattern compiled = null;
+            if (!replaceRegex.isEmpty()) {
+                try {
+                    compiled = Pattern.compile(replaceRegex);
+                } catch (Exception e) {
+                    log.debug("替换正则编译失败: {}", replaceRegex);
+                }
+            }
+            this.pattern = compiled;
+        }
+        
+        static Rule of(String rule) {
+            String[] ruleStrS = rule.split("##", -1);
+            return new Rule(
+                    ruleStrS[0].trim(),
+                    ruleStrS.length > 1 ? ruleStrS[1] : "",
+                    ruleStrS.length > 2 ? ruleStrS[2] : "",
+                    ruleStrS.length > 3
+            );
+        }
+        
+        /**
+         * 正则替换
+         */
+        String replace(String result) {
+            if (replaceRegex.isEmpty()) {
+                return result;
+            }
+            if (replaceFirst) {
+                // ##match##replace### 获取第一个匹配到的结果并进行替换
+                if (pattern == null) {
+                    return replacement;
+                }
+                try {
+                    Matcher matcher = pattern.matcher(result);
+                    if (matcher.find()) {
+                        return pattern.matcher(matcher.group(0)).replaceFirst(replacement);
+                    }
+                    return "";
+                } catch (Exception e) {
+                    return replacement;
+                }
+            }
+            // ##match##replace 替换
+            if (pattern == null) {
+                return result.replace(replaceRegex, replacement);
+            }
+            try {
+                return pattern.matcher(result).replaceAll(replacement);
+            } catch (Exception e) {
+                return result.replace(replaceRegex, replacement);
+            }
+        }
+        
+        static List<String> replace(List<?> list, Rule rule) {
+            if (rule.replaceRegex.isEmpty()) {
+                List<String> result = new ArrayList<>(list.size());
+                for (Object o : list) {
+                    result.add(String.valueOf(o));
+                }
+                return result;
+            }
+            List<String> result = new ArrayList<>(list.size());
+            for (Object o : list) {
+                result.add(rule.replace(String.valueOf(o)));
+            }
+            return result;
+        }
+    }
+    
+}
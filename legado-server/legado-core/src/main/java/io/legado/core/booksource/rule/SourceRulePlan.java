@@ -0,0 +1,119 @@
+package io.legado.core.booksource.rule;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.Map;
+
+/**
+ * 书源规则计划
+ * 由 {@link RuleCompiler} 从书源的规则JSON编译得到，不可变，可在多个请求间共享
+ */
+@Getter
+@AllArgsConstructor
+public class SourceRulePlan {
+    
+    /**
+     * 书源ID
+     */
+    private final Long sourceId;
+    
+    /**
+     * 编译时书源的更新时间
+     */
+    private final Long lastUpdateTime;
+    
+    /**
+     * 请求头
+     */
+    private final Map<String, String> headers;
+    
+    private final SearchPlan search;
+    
+    private final BookInfoPlan bookInfo;
+    
+    private final TocPlan toc;
+    
+    private final ContentPlan content;
+    
+    /**
+     * 搜索规则
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class SearchPlan {
+        
+        private final CompiledRule bookList;
+        
+        private final CompiledRule name;
+        
+        private final CompiledRule author;
+        
+        private final CompiledRule intro;
+        
+        private final CompiledRule coverUrl;
+        
+        private final CompiledRule bookUrl;
+        
+        private final CompiledRule latestChapter;
+        
+        private final CompiledRule wordCount;
+        
+        private final CompiledRule kind;
+        
+    }
+    
+    /**
+     * 书籍信息规则
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class BookInfoPlan {
+        
+        private final CompiledRule name;
+        
+        private final CompiledRule author;
+        
+        private final CompiledRule intro;
+        
+        private final CompiledRule coverUrl;
+        
+        private final CompiledRule kind;
+        
+        private final CompiledRule latestChapter;
+        
+        private final CompiledRule tocUrl;
+        
+        private final CompiledRule wordCount;
+        
+    }
+    
+    /**
+     * 目录规则
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class TocPlan {
+        
+        private final CompiledRule chapterList;
+        
+        private final CompiledRule chapterName;
+        
+        private final CompiledRule chapterUrl;
+        
+        private final boolean reverse;
+        
+    }
+    
+    /**
+     * 正文规则
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class ContentPlan {
+        
+        private final CompiledRule content;
+        
+    }
+    
+}
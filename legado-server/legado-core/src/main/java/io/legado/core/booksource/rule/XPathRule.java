@@ -0,0 +1,161 @@
+package io.legado.core.booksource.rule;
+
+import lombok.extern.slf4j.Slf4j;
+import org.jsoup.helper.W3CDom;
+import org.jsoup.nodes.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * XPath规则
+ * 对应App的 AnalyzeByXPath，表达式在编译时校验；XPathExpression不是线程安全的，按线程缓存编译结果
+ */
+@Slf4j
+final class XPathRule {
+    
+    private static final ThreadLocal<XPath> XPATH = ThreadLocal.withInitial(() -> XPathFactory.newInstance().newXPath());
+    
+    private final String elementsType;
+    
+    /**
+     * 由 &&、||、%% 分隔出的子规则，只有一个规则时为空
+     */
+    private final List<XPathRule> alternatives;
+    
+    private final String expression;
+    
+    private final ThreadLocal<XPathExpression> compiled;
+    
+    private XPathRule(String elementsType, List<XPathRule> alternatives, String expression) {
+        this.elementsType = elementsType;
+        this.alternatives = alternatives;
+        this.expression = expression;
+        this.compiled = expression == null ? null : ThreadLocal.withInitial(() -> {
+            try {
+                return XPATH.get().compile(expression);
+            } catch (XPathExpressionException e) {
+                throw new IllegalArgumentException("XPath编译失败: " + expression, e);
+            }
+        });
+    }
+    
+    static XPathRule compile(String rule) {
+        RuleAnalyzer analyzer = new RuleAnalyzer(rule);
+        List<String> rules = analyzer.splitRule("&&", "||", "%%");
+        if (rules.size() > 1) {
+            List<XPathRule> alternatives = new ArrayList<>(rules.size());
+            for (String rl : rules) {
+                alternatives.add(compile(rl));
+            }
+            return new XPathRule(analyzer.getElementsType(), alternatives, null);
+        }
+        
+        XPathRule xPathRule = new XPathRule("", null, rules.get(0));
+        // 提前编译一次，规则有误时在编译阶段报错
+        xPathRule.compiled.get();
+        return xPathRule;
+    }
+    
+    /**
+     * 获取节点列表，元素节点返回jsoup元素，属性与文本节点返回字符串
+     */
+    List<Object> getElements(Object target, RuleContext ctx) {
+        if (alternatives != null) {
+            List<List<Object>> results = new ArrayList<>();
+            for (XPathRule alternative : alternatives) {
+                List<Object> temp = alternative.getElements(target, ctx);
+                if (!temp.isEmpty()) {
+                    results.add(temp);
+                    if ("||".equals(elementsType)) {
+                        break;
+                    }
+                }
+            }
+            List<Object> nodes = new ArrayList<>();
+            if ("%%".equals(elementsType) && !results.isEmpty()) {
+                for (int i = 0; i < results.get(0).size(); i++) {
+                    for (List<Object> temp : results) {
+                        if (i < temp.size()) {
+                            nodes.add(temp.get(i));
+                        }
+                    }
+                }
+            } else {
+                for (List<Object> temp : results) {
+                    nodes.addAll(temp);
+                }
+            }
+            return nodes;
+        }
+        return evaluate(target, ctx);
+    }
+    
+    List<String> getStringList(Object target, RuleContext ctx) {
+        List<String> result = new ArrayList<>();
+        for (Object node : getElements(target, ctx)) {
+            result.add(asString(node));
+        }
+        return result;
+    }
+    
+    String getString(Object target, RuleContext ctx) {
+        if (alternatives != null && !"%%".equals(elementsType)) {
+            List<String> textList = new ArrayList<>();
+            for (XPathRule alternative : alternatives) {
+                String temp = alternative.getString(target, ctx);
+                if (temp != null && !temp.isEmpty()) {
+                    textList.add(temp);
+                    if ("||".equals(elementsType)) {
+                        break;
+                    }
+                }
+            }
+            return String.join("\n", textList);
+        }
+        
+        List<String> list = getStringList(target, ctx);
+        return list.isEmpty() ? null : String.join("\n", list);
+    }
+    
+    private List<Object> evaluate(Object target, RuleContext ctx) {
+        Element element = target instanceof Element ? (Element) target
+                : RuleContext.parseHtml(String.valueOf(target), ctx.getBaseUrl());
+        org.w3c.dom.Document document = ctx.xpathDocument(element);
+        XPathExpression xPathExpression = compiled.get();
+        
+        List<Object> result = new ArrayList<>();
+        try {
+            NodeList nodeList = (NodeList) xPathExpression.evaluate(document, XPathConstants.NODESET);
+            for (int i = 0; i < nodeList.getLength(); i++) {
+                Node node = nodeList.item(i);
+                Object source = node.getUserData(W3CDom.SourceProperty);
+                if (node.getNodeType() == Node.ELEMENT_NODE && source instanceof Element) {
+                    result.add(source);
+                } else {
+                    result.add(node.getNodeType() == Node.ELEMENT_NODE ? node.getTextContent() : node.getNodeValue());
+                }
+            }
+        } catch (XPathExpressionException e) {
+            // 结果不是节点集，例如 string()、count()
+            try {
+                result.add(xPathExpression.evaluate(document, XPathConstants.STRING));
+            } catch (XPathExpressionException ex) {
+                log.debug("XPath解析失败: {}, {}", expression, ex.getMessage());
+            }
+        }
+        return result;
+    }
+    
+    private static String asString(Object node) {
+        return node instanceof Element ? ((Element) node).outerHtml() : String.valueOf(node);
+    }
+    
+}
@@ -1,18 +1,22 @@
 package io.legado.core.config;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
 
 import java.util.concurrent.Executor;
 import java.util.concurrent.ThreadPoolExecutor;
 
 /**
- * 异步任务配置
+ * 异步与定时任务配置
  */
 @Configuration
 @EnableAsync
+@EnableScheduling
 public class AsyncConfig {
     
     @Bean("taskExecutor")
@@ -33,4 +37,65 @@ public class AsyncConfig {
         return executor;
     }
     
+    /**
+     * 页面解析线程池
+     * 解析是CPU密集型任务，与网络请求分开，线程数默认为CPU核数
+     */
+    @Bean("parseExecutor")
+    public Executor parseExecutor(@Value("${legado.parse.pool-size:0}") int poolSize) {
+        int size = poolSize > 0 ? poolSize : Runtime.getRuntime().availableProcessors();
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(size);
+        executor.setMaxPoolSize(size);
+        executor.setQueueCapacity(1000);
+        executor.setThreadNamePrefix("legado-parse-");
+        // 队列已满时由调用线程（网络线程）解析，限制请求速度
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.initialize();
+        return executor;
+    }
+    
+    /**
+     * 章节预读线程池
+     * 线程优先级最低；队列已满时放弃预读，不影响阅读请求
+     */
+    @Bean("readaheadExecutor")
+    public Executor readaheadExecutor(@Value("${legado.readahead.pool-size:2}") int poolSize) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(100);
+        executor.setThreadNamePrefix("legado-readahead-");
+        executor.setThreadPriority(Thread.MIN_PRIORITY);
+        executor.initialize();
+        return executor;
+    }
+    
+    /**
+     * 章节缓存任务线程池，执行任务的启动、章节获取的发起与进度保存，等待书源与重试时不占用线程
+     */
+    @Bean("cacheJobExecutor")
+    public Executor cacheJobExecutor(@Value("${legado.cache-job.pool-size:2}") int poolSize) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(1000);
+        executor.setThreadNamePrefix("legado-cache-");
+        executor.initialize();
+        return executor;
+    }
+    
+    /**
+     * 定时任务调度器（搜索截止、延迟任务等）
+     */
+    @Bean("taskScheduler")
+    public ThreadPoolTaskScheduler taskScheduler() {
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(4);
+        scheduler.setThreadNamePrefix("legado-scheduler-");
+        scheduler.setRemoveOnCancelPolicy(true);
+        scheduler.initialize();
+        return scheduler;
+    }
+    
 }
@@ -1,27 +1,78 @@
 package io.legado.core.config;
 
+import com.github.benmanes.caffeine.cache.CacheLoader;
 import com.github.benmanes.caffeine.cache.Caffeine;
+import io.legado.core.store.ReadProgressBuffer;
+import io.legado.model.entity.Book;
+import io.legado.model.repository.BookRepository;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.cache.caffeine.CaffeineCacheManager;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
-import java.time.Duration;
-
 /**
  * 缓存配置
+ * 每个缓存使用各自的 Caffeine 配置（CaffeineSpec 格式），均记录命中统计，
+ * 由 Actuator 以 cache.gets、cache.evictions 等指标按缓存名称输出
  */
 @Configuration
 @EnableCaching
 public class CacheConfig {
     
+    /**
+     * 书籍缓存
+     */
+    public static final String BOOK = "book";
+    
+    /**
+     * 章节内容缓存
+     */
+    public static final String CHAPTER_CONTENT = "chapterContent";
+    
+    /**
+     * 字符串对象头与字段的大致字节数
+     */
+    private static final int STRING_OVERHEAD = 40;
+    
+    /**
+     * 书籍缓存：到期后下次读取时在后台从数据库重新加载，读取方不等待
+     */
+    @Value("${legado.cache.book:maximumSize=2000,expireAfterAccess=2h,refreshAfterWrite=5m}")
+    private String bookSpec;
+    
+    /**
+     * 章节内容缓存，maximumWeight 为内容的字节数上限
+     */
+    @Value("${legado.cache.chapter-content:maximumWeight=67108864,expireAfterAccess=30m}")
+    private String chapterContentSpec;
+    
+    /**
+     * 其他缓存
+     */
+    @Value("${legado.cache.default:maximumSize=1000,expireAfterWrite=1h}")
+    private String defaultSpec;
+    
     @Bean
-    public CacheManager cacheManager() {
+    public CacheManager cacheManager(BookRepository bookRepository, ReadProgressBuffer readProgressBuffer) {
         CaffeineCacheManager cacheManager = new CaffeineCacheManager();
-        cacheManager.setCaffeine(Caffeine.newBuilder()
-                .maximumSize(10000)
-                .expireAfterWrite(Duration.ofHours(1)));
+        cacheManager.setCaffeine(Caffeine.from(defaultSpec).recordStats());
+        
+        CacheLoader<Object, Object> bookLoader = key -> {
+            Book book = bookRepository.findById((Long) key).orElse(null);
+            readProgressBuffer.applyTo(book);
+            return book;
+        };
+        cacheManager.registerCustomCache(BOOK, Caffeine.from(bookSpec).recordStats().build(bookLoader));
+        
+        // 按内容大小计算权重（UTF-16 每字符2字节），限制的是内存而不是章节数
+        cacheManager.registerCustomCache(CHAPTER_CONTENT, Caffeine.from(chapterContentSpec)
+                .weigher((Object key, Object value) -> value instanceof String
+                        ? STRING_OVERHEAD + ((String) value).length() * 2
+                        : STRING_OVERHEAD)
+                .recordStats()
+                .build());
         return cacheManager;
     }
     
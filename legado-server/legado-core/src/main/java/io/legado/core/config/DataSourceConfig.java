@@ -0,0 +1,87 @@
+package io.legado.core.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 数据源配置
+ * SQLite 同一时间只允许一个写事务，写连接池只有一个连接，写操作排队而不是在数据库锁上重试；
+ * 只读事务（@Transactional(readOnly = true)）走只读连接池，WAL 模式下读不阻塞写
+ */
+@Configuration
+public class DataSourceConfig {
+    
+    private static final String WRITE = "write";
+    
+    private static final String READ = "read";
+    
+    @Bean
+    public HikariDataSource writeDataSource(
+            DataSourceProperties properties,
+            @Value("${legado.datasource.write.connection-timeout:30000}") long connectionTimeout) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName("legado-write");
+        dataSource.setMaximumPoolSize(1);
+        dataSource.setMinimumIdle(1);
+        dataSource.setConnectionTimeout(connectionTimeout);
+        return dataSource;
+    }
+    
+    @Bean
+    public HikariDataSource readDataSource(
+            DataSourceProperties properties,
+            @Value("${legado.datasource.read.pool-size:4}") int poolSize,
+            @Value("${legado.datasource.read.connection-timeout:30000}") long connectionTimeout) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName("legado-read");
+        dataSource.setMaximumPoolSize(poolSize);
+        dataSource.setMinimumIdle(1);
+        dataSource.setConnectionTimeout(connectionTimeout);
+        // sqlite-jdbc 不支持连接建立后切换只读，用 query_only 拒绝写入
+        dataSource.setConnectionInitSql("PRAGMA query_only = 1");
+        return dataSource;
+    }
+    
+    /**
+     * 按事务是否只读选择连接池
+     * 外层包装延迟获取连接，事务开始时只读标记尚未设置，执行第一条语句时才选择连接池
+     */
+    @Bean
+    @Primary
+    public DataSource dataSource(@Qualifier("writeDataSource") DataSource writeDataSource,
+                                 @Qualifier("readDataSource") DataSource readDataSource) {
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(WRITE, writeDataSource);
+        targets.put(READ, readDataSource);
+        
+        ReadWriteRoutingDataSource routing = new ReadWriteRoutingDataSource();
+        routing.setTargetDataSources(targets);
+        routing.setDefaultTargetDataSource(writeDataSource);
+        routing.afterPropertiesSet();
+        return new LazyConnectionDataSourceProxy(routing);
+    }
+    
+    /**
+     * 只读事务使用只读连接池，其余（写事务、事务外的语句、建表）使用写连接
+     */
+    private static final class ReadWriteRoutingDataSource extends AbstractRoutingDataSource {
+        
+        @Override
+        protected Object determineCurrentLookupKey() {
+            return TransactionSynchronizationManager.isCurrentTransactionReadOnly() ? READ : WRITE;
+        }
+    }
+    
+}
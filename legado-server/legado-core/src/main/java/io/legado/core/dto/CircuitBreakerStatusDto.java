@@ -0,0 +1,36 @@
+package io.legado.core.dto;
+
+import lombok.Data;
+
+/**
+ * 站点熔断状态
+ */
+@Data
+public class CircuitBreakerStatusDto {
+    
+    /**
+     * 站点（主机:端口）
+     */
+    private String host;
+    
+    /**
+     * 状态：CLOSED、OPEN、HALF_OPEN
+     */
+    private String state;
+    
+    /**
+     * 连续失败次数
+     */
+    private Integer consecutiveFailures;
+    
+    /**
+     * 熔断开始时间
+     */
+    private Long openedAt;
+    
+    /**
+     * 下次允许试探请求的时间
+     */
+    private Long retryAt;
+    
+}
@@ -0,0 +1,36 @@
+package io.legado.core.dto;
+
+import lombok.Data;
+
+/**
+ * 书内搜索结果，每个匹配的章节一条
+ */
+@Data
+public class ContentSearchResultDto {
+    
+    /**
+     * 章节索引
+     */
+    private Integer chapterIndex;
+    
+    /**
+     * 章节标题
+     */
+    private String chapterTitle;
+    
+    /**
+     * 第一处匹配前后的文本
+     */
+    private String snippet;
+    
+    /**
+     * 第一处匹配在章节内容中的位置
+     */
+    private int position;
+    
+    /**
+     * 章节内的匹配次数
+     */
+    private int matchCount;
+    
+}
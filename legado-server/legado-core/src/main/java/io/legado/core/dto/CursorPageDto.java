@@ -0,0 +1,31 @@
+package io.legado.core.dto;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 游标分页结果
+ */
+@Data
+public class CursorPageDto<T> {
+    
+    /**
+     * 本页数据
+     */
+    private List<T> items = new ArrayList<>();
+    
+    /**
+     * 下一页的游标，没有下一页时为空
+     */
+    private String nextCursor;
+    
+    /**
+     * 是否还有下一页
+     */
+    public boolean isHasMore() {
+        return nextCursor != null;
+    }
+    
+}
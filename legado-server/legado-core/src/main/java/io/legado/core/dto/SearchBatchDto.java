@@ -0,0 +1,55 @@
+package io.legado.core.dto;
+
+import io.legado.core.search.SourceSearchStatus;
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 单个书源的搜索结果批次
+ */
+@Data
+public class SearchBatchDto {
+    
+    /**
+     * 书源名称
+     */
+    private String sourceName;
+    
+    /**
+     * 书源URL
+     */
+    private String sourceUrl;
+    
+    /**
+     * 搜索状态
+     */
+    private SourceSearchStatus status;
+    
+    /**
+     * 失败原因
+     */
+    private String message;
+    
+    /**
+     * 耗时（毫秒）
+     */
+    private Long elapsed;
+    
+    /**
+     * 页码
+     */
+    private Integer page;
+    
+    /**
+     * 该书源下一页的游标，没有下一页时为空
+     */
+    private String cursor;
+    
+    /**
+     * 搜索结果
+     */
+    private List<SearchResultDto> results = new ArrayList<>();
+    
+}
@@ -0,0 +1,31 @@
+package io.legado.core.dto;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 分页搜索结果
+ */
+@Data
+public class SearchPageDto {
+    
+    /**
+     * 本页搜索结果，按书源顺序合并
+     */
+    private List<SearchResultDto> results = new ArrayList<>();
+    
+    /**
+     * 各书源下一页的游标，key为书源URL，只包含还有下一页的书源
+     */
+    private Map<String, String> sourceCursors = new LinkedHashMap<>();
+    
+    /**
+     * 本页汇总，其中的 cursor 用于继续搜索所有还有下一页的书源
+     */
+    private SearchSummaryDto summary;
+    
+}
@@ -0,0 +1,64 @@
+package io.legado.core.dto;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 流式搜索汇总
+ */
+@Data
+public class SearchSummaryDto {
+    
+    /**
+     * 搜索关键词
+     */
+    private String keyword;
+    
+    /**
+     * 页码
+     */
+    private Integer page;
+    
+    /**
+     * 参与搜索的书源数量
+     */
+    private Integer sourceCount;
+    
+    /**
+     * 结果总数
+     */
+    private Integer resultCount = 0;
+    
+    /**
+     * 搜索成功的书源
+     */
+    private List<String> succeeded = new ArrayList<>();
+    
+    /**
+     * 搜索失败的书源
+     */
+    private List<String> failed = new ArrayList<>();
+    
+    /**
+     * 搜索超时的书源
+     */
+    private List<String> timedOut = new ArrayList<>();
+    
+    /**
+     * 因响应慢或经常失败而跳过的书源
+     */
+    private List<String> skipped = new ArrayList<>();
+    
+    /**
+     * 总耗时（毫秒）
+     */
+    private Long elapsed;
+    
+    /**
+     * 下一页的游标，只包含本页返回了完整一页的书源；没有下一页时为空
+     */
+    private String cursor;
+    
+}
@@ -0,0 +1,35 @@
+package io.legado.core.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 书源导入失败的条目
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SourceImportErrorDto {
+    
+    /**
+     * 在文件中的位置（从0开始），整个文件的错误为 -1
+     */
+    private int index;
+    
+    /**
+     * 书源名称
+     */
+    private String sourceName;
+    
+    /**
+     * 书源URL
+     */
+    private String sourceUrl;
+    
+    /**
+     * 失败原因
+     */
+    private String message;
+    
+}
@@ -0,0 +1,49 @@
+package io.legado.core.dto;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 书源导入结果
+ */
+@Data
+public class SourceImportResultDto {
+    
+    /**
+     * 读取到的书源数量
+     */
+    private int total;
+    
+    /**
+     * 新增的书源数量
+     */
+    private int inserted;
+    
+    /**
+     * 更新的书源数量
+     */
+    private int updated;
+    
+    /**
+     * 未变化而跳过的书源数量（更新时间不晚于已有书源）
+     */
+    private int skipped;
+    
+    /**
+     * 导入失败的书源数量
+     */
+    private int failed;
+    
+    /**
+     * 是否完整读取了文件，JSON 格式错误时只导入了出错位置之前的书源
+     */
+    private boolean completed;
+    
+    /**
+     * 失败的书源，最多保留配置的条数
+     */
+    private List<SourceImportErrorDto> errors = new ArrayList<>();
+    
+}
@@ -0,0 +1,31 @@
+package io.legado.core.dto;
+
+import lombok.Data;
+
+/**
+ * 书源并发率状态
+ */
+@Data
+public class SourceRateStatusDto {
+    
+    /**
+     * 书源URL
+     */
+    private String sourceUrl;
+    
+    /**
+     * 并发率
+     */
+    private String concurrentRate;
+    
+    /**
+     * 等待队列长度
+     */
+    private Integer queued;
+    
+    /**
+     * 正在访问的请求数
+     */
+    private Integer inFlight;
+    
+}
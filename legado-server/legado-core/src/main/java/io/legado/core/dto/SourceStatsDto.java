@@ -0,0 +1,36 @@
+package io.legado.core.dto;
+
+import lombok.Data;
+
+/**
+ * 书源响应统计
+ */
+@Data
+public class SourceStatsDto {
+    
+    /**
+     * 书源URL
+     */
+    private String sourceUrl;
+    
+    /**
+     * 平均响应时间（毫秒，指数加权）
+     */
+    private Long respondTime;
+    
+    /**
+     * 成功率（指数加权）
+     */
+    private Double successRate;
+    
+    /**
+     * 采样次数
+     */
+    private Long samples;
+    
+    /**
+     * 搜索时是否跳过
+     */
+    private Boolean skipped;
+    
+}
@@ -0,0 +1,48 @@
+package io.legado.core.dto;
+
+import lombok.Data;
+
+/**
+ * 目录更新结果
+ */
+@Data
+public class TocMergeResultDto {
+    
+    /**
+     * 更新后的章节总数
+     */
+    private int total;
+    
+    /**
+     * 新增章节数
+     */
+    private int inserted;
+    
+    /**
+     * 修改的章节数（标题、链接或位置变化）
+     */
+    private int updated;
+    
+    /**
+     * 删除的章节数
+     */
+    private int deleted;
+    
+    /**
+     * 未变化的章节数
+     */
+    private int unchanged;
+    
+    /**
+     * 是否有已有章节的索引发生变化
+     */
+    private boolean reindexed;
+    
+    /**
+     * 目录是否有变化
+     */
+    public boolean isChanged() {
+        return inserted > 0 || updated > 0 || deleted > 0;
+    }
+    
+}
@@ -0,0 +1,151 @@
+package io.legado.core.search;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 分页搜索游标
+ * 记录关键词、下一页页码以及还有下一页的书源，编码为URL安全的字符串交给客户端，服务端不保存状态
+ */
+public final class SearchCursor {
+    
+    private static final ObjectMapper mapper = new ObjectMapper();
+    
+    private final String keyword;
+    
+    private final int page;
+    
+    private final List<Entry> entries;
+    
+    @JsonCreator
+    SearchCursor(@JsonProperty("k") String keyword,
+                 @JsonProperty("p") int page,
+                 @JsonProperty("s") List<Entry> entries) {
+        this.keyword = keyword;
+        this.page = page;
+        this.entries = entries != null ? entries : Collections.<Entry>emptyList();
+    }
+    
+    /**
+     * 单个书源的游标
+     */
+    public static SearchCursor of(String keyword, int page, Entry entry) {
+        return new SearchCursor(keyword, page, Collections.singletonList(entry));
+    }
+    
+    /**
+     * 合并多个书源的游标，同一书源只保留一个
+     *
+     * @return 没有可合并的游标时返回 null
+     */
+    public static SearchCursor merge(List<SearchCursor> cursors) {
+        if (cursors.isEmpty()) {
+            return null;
+        }
+        Map<String, Entry> entries = new LinkedHashMap<>();
+        for (SearchCursor cursor : cursors) {
+            for (Entry entry : cursor.entries) {
+                entries.put(entry.sourceUrl, entry);
+            }
+        }
+        SearchCursor first = cursors.get(0);
+        return new SearchCursor(first.keyword, first.page, new ArrayList<>(entries.values()));
+    }
+    
+    /**
+     * 解码客户端传回的游标
+     *
+     * @throws IllegalArgumentException 游标格式错误
+     */
+    public static SearchCursor decode(String cursor) {
+        SearchCursor result;
+        try {
+            byte[] json = Base64.getUrlDecoder().decode(cursor.trim());
+            result = mapper.readValue(json, SearchCursor.class);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("搜索游标无效", e);
+        }
+        if (result.keyword == null || result.page < 2 || result.entries.isEmpty()) {
+            throw new IllegalArgumentException("搜索游标无效");
+        }
+        return result;
+    }
+    
+    /**
+     * 编码为URL安全的字符串
+     */
+    public String encode() {
+        try {
+            byte[] json = mapper.writeValueAsString(this).getBytes(StandardCharsets.UTF_8);
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(json);
+        } catch (Exception e) {
+            throw new RuntimeException("编码搜索游标失败", e);
+        }
+    }
+    
+    @JsonProperty("k")
+    public String getKeyword() {
+        return keyword;
+    }
+    
+    @JsonProperty("p")
+    public int getPage() {
+        return page;
+    }
+    
+    @JsonProperty("s")
+    public List<Entry> getEntries() {
+        return entries;
+    }
+    
+    /**
+     * 书源在上一页的情况
+     */
+    public static final class Entry {
+        
+        private final String sourceUrl;
+        
+        private final int pageSize;
+        
+        private final String firstBookUrl;
+        
+        /**
+         * @param sourceUrl 书源URL
+         * @param pageSize 目前见到的最大页结果数，结果少于该值的页视为最后一页
+         * @param firstBookUrl 上一页第一个结果的地址，用于识别忽略页码的书源
+         */
+        @JsonCreator
+        public Entry(@JsonProperty("u") String sourceUrl,
+                     @JsonProperty("n") int pageSize,
+                     @JsonProperty("f") String firstBookUrl) {
+            this.sourceUrl = sourceUrl;
+            this.pageSize = pageSize;
+            this.firstBookUrl = firstBookUrl;
+        }
+        
+        @JsonProperty("u")
+        public String getSourceUrl() {
+            return sourceUrl;
+        }
+        
+        @JsonProperty("n")
+        public int getPageSize() {
+            return pageSize;
+        }
+        
+        @JsonProperty("f")
+        public String getFirstBookUrl() {
+            return firstBookUrl;
+        }
+    }
+    
+}
@@ -0,0 +1,22 @@
+package io.legado.core.search;
+
+import io.legado.core.dto.SearchBatchDto;
+import io.legado.core.dto.SearchSummaryDto;
+
+/**
+ * 流式搜索回调
+ * 每个书源完成时回调一次 onBatch，全部结束后回调 onComplete
+ */
+public interface SearchListener {
+    
+    /**
+     * 单个书源搜索完成（可能在多个线程中并发调用）
+     */
+    void onBatch(SearchBatchDto batch);
+    
+    /**
+     * 全部书源搜索结束
+     */
+    void onComplete(SearchSummaryDto summary);
+    
+}
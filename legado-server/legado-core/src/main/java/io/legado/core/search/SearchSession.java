@@ -0,0 +1,274 @@
+package io.legado.core.search;
+
+import io.legado.core.dto.SearchBatchDto;
+import io.legado.core.dto.SearchSummaryDto;
+import io.legado.core.utils.CallGroup;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 多书源搜索会话
+ * 持有整次搜索的截止时间与进行中的请求，截止或客户端断开时统一结束；
+ * 继续搜索下一页时持有上一页的游标。
+ * 状态在锁内更新，推送在锁外按顺序逐个执行，客户端接收缓慢时不影响截止与取消
+ */
+@Slf4j
+public class SearchSession {
+    
+    private final String keyword;
+    
+    private final int page;
+    
+    /**
+     * 上一页各书源的情况，第一页时为空
+     */
+    private final Map<String, SearchCursor.Entry> previous = new HashMap<>();
+    
+    /**
+     * 已返回结果的书源的下一页游标
+     */
+    private final List<SearchCursor> nextCursors = new ArrayList<>();
+    
+    private final CallGroup callGroup;
+    
+    private final long sourceTimeoutMillis;
+    
+    private final SearchListener listener;
+    
+    /**
+     * 执行推送的线程池
+     */
+    private final Executor sendExecutor;
+    
+    /**
+     * 待推送的结果与汇总，同一时间只有一个线程推送
+     */
+    private final Queue<Runnable> sends = new ConcurrentLinkedQueue<>();
+    
+    private final AtomicBoolean sending = new AtomicBoolean();
+    
+    private final SearchSummaryDto summary = new SearchSummaryDto();
+    
+    /**
+     * 尚未返回的书源，key为书源URL，value为书源名称
+     */
+    private final Map<String, String> pending = new LinkedHashMap<>();
+    
+    private final CompletableFuture<SearchSummaryDto> result = new CompletableFuture<>();
+    
+    private final long startTime = System.currentTimeMillis();
+    
+    private boolean finished;
+    
+    /**
+     * 客户端已离开，未推送的内容丢弃
+     */
+    private volatile boolean cancelled;
+    
+    public SearchSession(String keyword, long deadlineMillis, long sourceTimeoutMillis, SearchListener listener,
+                         Executor sendExecutor) {
+        this(keyword, null, deadlineMillis, sourceTimeoutMillis, listener, sendExecutor);
+    }
+    
+    /**
+     * @param cursor       上一页返回的游标，为空时搜索第一页
+     * @param sendExecutor 执行推送的线程池
+     */
+    public SearchSession(String keyword, SearchCursor cursor, long deadlineMillis, long sourceTimeoutMillis,
+                         SearchListener listener, Executor sendExecutor) {
+        this.keyword = cursor != null ? cursor.getKeyword() : keyword;
+        this.page = cursor != null ? cursor.getPage() : 1;
+        if (cursor != null) {
+            for (SearchCursor.Entry entry : cursor.getEntries()) {
+                previous.put(entry.getSourceUrl(), entry);
+            }
+        }
+        this.callGroup = CallGroup.withTimeout(deadlineMillis);
+        this.sourceTimeoutMillis = sourceTimeoutMillis;
+        this.listener = listener;
+        this.sendExecutor = sendExecutor;
+        summary.setKeyword(this.keyword);
+        summary.setPage(page);
+        summary.setSourceCount(0);
+    }
+    
+    public String getKeyword() {
+        return keyword;
+    }
+    
+    public int getPage() {
+        return page;
+    }
+    
+    /**
+     * 书源在上一页的情况，第一页时返回 null
+     */
+    public SearchCursor.Entry getPrevious(String sourceUrl) {
+        return previous.get(sourceUrl);
+    }
+    
+    public CallGroup getCallGroup() {
+        return callGroup;
+    }
+    
+    /**
+     * 搜索结束后完成的汇总
+     */
+    public CompletableFuture<SearchSummaryDto> getResult() {
+        return result;
+    }
+    
+    /**
+     * 是否仍可继续发起请求
+     */
+    public boolean isActive() {
+        return callGroup.isActive();
+    }
+    
+    /**
+     * 单个书源本次可用的超时时间（毫秒），不超过整体剩余时间
+     */
+    public long nextSourceTimeout() {
+        return Math.max(1, Math.min(sourceTimeoutMillis, callGroup.remainingMillis()));
+    }
+    
+    /**
+     * 登记待搜索的书源
+     */
+    public synchronized void addSource(String sourceUrl, String sourceName) {
+        pending.put(sourceUrl, sourceName);
+        summary.setSourceCount(summary.getSourceCount() + 1);
+    }
+    
+    /**
+     * 登记本次跳过的书源
+     */
+    public synchronized void skipSource(String sourceName) {
+        summary.getSkipped().add(sourceName);
+    }
+    
+    /**
+     * 接收单个书源的结果，截止后到达的结果直接丢弃
+     */
+    public void accept(SearchBatchDto batch) {
+        synchronized (this) {
+            if (finished || pending.remove(batch.getSourceUrl()) == null) {
+                return;
+            }
+            record(batch);
+            sends.add(() -> listener.onBatch(batch));
+            if (pending.isEmpty()) {
+                finish();
+            }
+        }
+        scheduleSend();
+    }
+    
+    private void record(SearchBatchDto batch) {
+        switch (batch.getStatus()) {
+            case SUCCESS:
+                summary.getSucceeded().add(batch.getSourceName());
+                break;
+            case TIMEOUT:
+                summary.getTimedOut().add(batch.getSourceName());
+                break;
+            default:
+                summary.getFailed().add(batch.getSourceName());
+                break;
+        }
+        summary.setResultCount(summary.getResultCount() + batch.getResults().size());
+        if (batch.getCursor() != null) {
+            nextCursors.add(SearchCursor.decode(batch.getCursor()));
+        }
+    }
+    
+    /**
+     * 到达截止时间：未返回的书源记为超时，推送汇总并中断进行中的请求
+     */
+    public void expire() {
+        synchronized (this) {
+            if (finished) {
+                return;
+            }
+            summary.getTimedOut().addAll(pending.values());
+            pending.clear();
+            finish();
+        }
+        scheduleSend();
+    }
+    
+    /**
+     * 客户端已离开：不再推送，直接中断进行中的请求
+     */
+    public void cancel() {
+        cancelled = true;
+        sends.clear();
+        synchronized (this) {
+            if (!finished) {
+                finished = true;
+                summary.setElapsed(System.currentTimeMillis() - startTime);
+            }
+        }
+        callGroup.cancel();
+        result.complete(summary);
+    }
+    
+    /**
+     * 结束搜索，在锁内调用；汇总排在已接收的结果之后推送，推送后完成汇总
+     */
+    private void finish() {
+        finished = true;
+        callGroup.cancel();
+        summary.setElapsed(System.currentTimeMillis() - startTime);
+        SearchCursor cursor = SearchCursor.merge(nextCursors);
+        summary.setCursor(cursor != null ? cursor.encode() : null);
+        log.info("搜索结束: {} 第{}页, 成功{}个, 失败{}个, 超时{}个, 跳过{}个, 耗时{}ms", keyword, page,
+                summary.getSucceeded().size(), summary.getFailed().size(),
+                summary.getTimedOut().size(), summary.getSkipped().size(), summary.getElapsed());
+        sends.add(() -> {
+            listener.onComplete(summary);
+            result.complete(summary);
+        });
+    }
+    
+    /**
+     * 没有线程在推送时，在线程池中开始推送
+     */
+    private void scheduleSend() {
+        if (!sends.isEmpty() && sending.compareAndSet(false, true)) {
+            sendExecutor.execute(this::drain);
+        }
+    }
+    
+    /**
+     * 按顺序推送，推送失败（客户端断开）时取消搜索
+     */
+    private void drain() {
+        try {
+            Runnable send;
+            while (!cancelled && (send = sends.poll()) != null) {
+                try {
+                    send.run();
+                } catch (Exception e) {
+                    log.debug("推送搜索结果失败: {}", e.getMessage());
+                    cancel();
+                }
+            }
+        } finally {
+            sending.set(false);
+        }
+        // 推送结束前又有新内容加入
+        scheduleSend();
+    }
+    
+}
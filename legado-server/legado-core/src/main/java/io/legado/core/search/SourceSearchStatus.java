@@ -0,0 +1,23 @@
+package io.legado.core.search;
+
+/**
+ * 单个书源的搜索状态
+ */
+public enum SourceSearchStatus {
+    
+    /**
+     * 搜索成功
+     */
+    SUCCESS,
+    
+    /**
+     * 搜索失败
+     */
+    FAILED,
+    
+    /**
+     * 搜索超时
+     */
+    TIMEOUT
+    
+}
@@ -1,23 +1,45 @@
 package io.legado.core.service;
 
 import io.legado.core.booksource.BookSourceEngine;
+import io.legado.core.booksource.rule.RulePlanCache;
+import io.legado.core.booksource.rule.SourceRulePlan;
+import io.legado.core.dto.SearchBatchDto;
+import io.legado.core.dto.SearchPageDto;
 import io.legado.core.dto.SearchResultDto;
+import io.legado.core.dto.SearchSummaryDto;
+import io.legado.core.search.SearchCursor;
+import io.legado.core.search.SearchListener;
+import io.legado.core.search.SearchSession;
+import io.legado.core.search.SourceSearchStatus;
+import io.legado.core.source.CircuitOpenException;
+import io.legado.core.source.SourceCircuitBreaker;
+import io.legado.core.source.SourceRateLimiter;
+import io.legado.core.source.SourceRegistry;
+import io.legado.core.source.SourceStats;
+import io.legado.core.utils.CallGroup;
 import io.legado.core.utils.HttpClient;
 import io.legado.model.entity.Book;
 import io.legado.model.entity.BookSource;
-import io.legado.model.repository.BookSourceRepository;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.scheduling.annotation.Async;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.TaskScheduler;
 import org.springframework.stereotype.Service;
 
-import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
 import java.util.stream.Collectors;
 
 /**
@@ -27,116 +49,383 @@ import java.util.stream.Collectors;
 @Service
 public class BookSearchService {
     
+    /**
+     * 搜索地址中的页码列表，如 <,_2,_3> 第几页取第几项，超出时取最后一项
+     */
+    private static final Pattern PAGE_PATTERN = Pattern.compile("<(.*?)>");
+    
     @Autowired
-    private BookSourceRepository bookSourceRepository;
+    private SourceRegistry sourceRegistry;
     
     @Autowired
     private BookSourceEngine bookSourceEngine;
     
+    @Autowired
+    private RulePlanCache rulePlanCache;
+    
     @Autowired
     private HttpClient httpClient;
     
+    @Autowired
+    private SourceRateLimiter sourceRateLimiter;
+    
+    @Autowired
+    private SourceStats sourceStats;
+    
+    @Autowired
+    private SourceCircuitBreaker sourceCircuitBreaker;
+    
+    @Autowired
+    private Executor parseExecutor;
+    
     @Autowired
     private Executor taskExecutor;
     
+    @Autowired
+    private TaskScheduler taskScheduler;
+    
+    /**
+     * 整次搜索的截止时间（毫秒）
+     */
+    @Value("${legado.search.deadline-ms:8000}")
+    private long deadlineMillis;
+    
+    /**
+     * 单个书源的超时时间（毫秒）
+     */
+    @Value("${legado.search.source-timeout-ms:6000}")
+    private long sourceTimeoutMillis;
+    
     /**
      * 搜索书籍
+     * 到达整体截止时间后返回已得到的结果
      * 
      * @param keyword 搜索关键词
      * @return 搜索结果列表
      */
     public List<SearchResultDto> search(String keyword) {
-        // 获取所有启用的书源
-        List<BookSource> sources = bookSourceRepository.findByEnabledTrueOrderByWeightDesc();
+        return searchPage(keyword, null).getResults();
+    }
+    
+    /**
+     * 分页搜索书籍
+     * 没有游标时搜索所有书源的第一页；有游标时只请求上一页返回了完整一页的书源
+     * 
+     * @param keyword 搜索关键词，有游标时以游标中的关键词为准
+     * @param cursor 上一页返回的游标
+     * @return 本页结果与下一页的游标
+     */
+    public SearchPageDto searchPage(String keyword, String cursor) {
+        SearchCursor continuing = decodeCursor(cursor);
+        List<BookSource> sources = continuing != null ? getContinuingSources(continuing) : getSearchableSources();
         
-        log.info("开始搜索关键词: {}, 启用书源数量: {}", keyword, sources.size());
+        // 并行搜索，按书源收集结果
+        Map<String, SearchBatchDto> batches = new ConcurrentHashMap<>();
+        SearchSession session = startSearch(keyword, continuing, sources, new SearchListener() {
+            @Override
+            public void onBatch(SearchBatchDto batch) {
+                batches.put(batch.getSourceUrl(), batch);
+            }
+            
+            @Override
+            public void onComplete(SearchSummaryDto summary) {
+            }
+        });
         
-        // 并行搜索
-        List<CompletableFuture<List<SearchResultDto>>> futures = sources.stream()
-                .map(source -> searchFromSource(source, keyword))
-                .collect(Collectors.toList());
+        SearchPageDto page = new SearchPageDto();
+        try {
+            page.setSummary(session.getResult().join());
+        } finally {
+            session.cancel();
+        }
         
-        // 合并结果
-        CompletableFuture<Void> allDone = CompletableFuture.allOf(
-                futures.toArray(new CompletableFuture[0])
-        );
+        // 按书源权重顺序合并结果
+        for (BookSource source : sources) {
+            SearchBatchDto batch = batches.get(source.getSourceUrl());
+            if (batch == null) {
+                continue;
+            }
+            page.getResults().addAll(batch.getResults());
+            if (batch.getCursor() != null) {
+                page.getSourceCursors().put(batch.getSourceUrl(), batch.getCursor());
+            }
+        }
+        return page;
+    }
+    
+    /**
+     * 流式搜索书籍
+     * 每个书源完成后立即回调，不等待最慢的书源；到达整体截止时间后未返回的书源记为超时
+     * 
+     * @param keyword 搜索关键词
+     * @param listener 结果回调
+     * @return 搜索会话，客户端断开时调用 cancel 中断进行中的请求
+     */
+    public SearchSession searchStream(String keyword, SearchListener listener) {
+        return searchStream(keyword, null, listener);
+    }
+    
+    /**
+     * 流式分页搜索书籍，每个 batch 与 summary 中带有下一页的游标
+     * 
+     * @param cursor 上一页返回的游标，为空时搜索第一页
+     */
+    public SearchSession searchStream(String keyword, String cursor, SearchListener listener) {
+        SearchCursor continuing = decodeCursor(cursor);
+        List<BookSource> sources = continuing != null ? getContinuingSources(continuing) : getSearchableSources();
+        return startSearch(keyword, continuing, sources, listener);
+    }
+    
+    /**
+     * 搜索截止时间（毫秒）
+     */
+    public long getDeadlineMillis() {
+        return deadlineMillis;
+    }
+    
+    /**
+     * 创建搜索会话并向所有书源分发请求
+     * 书源已按期望耗时排序，快而稳定的书源先发出请求；长期很慢或经常失败的书源在第一页跳过
+     */
+    private SearchSession startSearch(String keyword, SearchCursor cursor, List<BookSource> sources,
+                                      SearchListener listener) {
+        SearchSession session = new SearchSession(keyword, cursor, deadlineMillis, sourceTimeoutMillis, listener,
+                taskExecutor);
+        log.info("开始搜索关键词: {}, 第{}页, 书源数量: {}", session.getKeyword(), session.getPage(), sources.size());
         
-        CompletableFuture<List<SearchResultDto>> results = allDone.thenApply(v -> 
-                futures.stream()
-                        .flatMap(future -> future.join().stream())
-                        .collect(Collectors.toList())
-        );
+        List<BookSource> searching = new ArrayList<>(sources.size());
+        for (BookSource source : sources) {
+            if (cursor == null && sourceStats.shouldSkip(source)) {
+                session.skipSource(source.getSourceName());
+                continue;
+            }
+            searching.add(source);
+            session.addSource(source.getSourceUrl(), source.getSourceName());
+        }
+        if (searching.isEmpty()) {
+            session.expire();
+            return session;
+        }
+        
+        ScheduledFuture<?> deadline = taskScheduler.schedule(session::expire,
+                new Date(System.currentTimeMillis() + deadlineMillis));
+        session.getResult().whenComplete((summary, e) -> deadline.cancel(false));
         
-        return results.join();
+        for (BookSource source : searching) {
+            searchFromSource(source, session).thenAccept(session::accept);
+        }
+        return session;
     }
     
     /**
      * 从单个书源搜索
+     * 依次为：按书源并发率排队、异步请求、在解析线程池解析，各阶段都不占用等待中的线程；
+     * 搜索结束时仍在排队的请求直接记为超时，站点暂停访问时直接记为失败
      */
-    @Async("taskExecutor")
-    public CompletableFuture<List<SearchResultDto>> searchFromSource(BookSource source, String keyword) {
-        return CompletableFuture.supplyAsync(() -> {
-            try {
-                // 检查搜索URL
-                if (source.getSearchUrl() == null || source.getSearchUrl().isEmpty()) {
-                    return Collections.emptyList();
-                }
-                
-                // 构建搜索URL
-                String searchUrl = buildSearchUrl(source.getSearchUrl(), keyword);
-                
-                // 解析请求头
-                Map<String, String> headers = parseHeaders(source.getHeader());
-                
-                // 发送请求
-                String html = httpClient.get(searchUrl, headers);
-                
-                // 解析结果
-                List<Book> books = bookSourceEngine.parseSearchResults(
-                        html, 
-                        source.getRuleSearch(), 
-                        source.getSourceName(), 
-                        source.getSourceUrl()
-                );
-                
-                // 转换为DTO
-                return books.stream()
-                        .map(this::convertToDto)
-                        .collect(Collectors.toList());
-                
-            } catch (Exception e) {
-                log.warn("从书源 {} 搜索失败: {}", source.getSourceName(), e.getMessage());
-                return Collections.emptyList();
-            }
-        }, taskExecutor);
+    public CompletableFuture<SearchBatchDto> searchFromSource(BookSource source, SearchSession session) {
+        long startTime = System.currentTimeMillis();
+        try {
+            sourceCircuitBreaker.checkRequest(source.getSearchUrl());
+        } catch (CircuitOpenException e) {
+            log.debug("书源 {} 跳过: {}", source.getSourceName(), e.getMessage());
+            SearchBatchDto batch = newBatch(source, SourceSearchStatus.FAILED);
+            batch.setMessage(e.getMessage());
+            batch.setElapsed(0L);
+            return CompletableFuture.completedFuture(batch);
+        }
+        
+        CompletableFuture<SourceRateLimiter.Permit> permit = sourceRateLimiter.acquire(source);
+        session.getResult().whenComplete((summary, e) -> permit.cancel(false));
+        
+        return permit
+                .thenCompose(p -> {
+                    long fetchStart = System.currentTimeMillis();
+                    return fetchSearchPage(source, session).whenComplete((html, e) -> {
+                        p.release();
+                        recordFetch(source, session, System.currentTimeMillis() - fetchStart, e);
+                    });
+                })
+                .thenApplyAsync(html -> parseSearchPage(source, session, html), parseExecutor)
+                .exceptionally(e -> failedBatch(source, session, e))
+                .thenApply(batch -> {
+                    batch.setElapsed(System.currentTimeMillis() - startTime);
+                    return batch;
+                });
     }
     
     /**
-     * 构建搜索URL
+     * 请求搜索页
      */
-    private String buildSearchUrl(String searchUrl, String keyword) {
-        // 替换关键词占位符
-        return searchUrl.replace("{{key}}", keyword)
-                       .replace("{{page}}", "1")
-                       .replace("{key}", keyword)
-                       .replace("{page}", "1");
+    private CompletableFuture<String> fetchSearchPage(BookSource source, SearchSession session) {
+        // 排队期间搜索已结束，不再发起请求
+        if (!session.isActive()) {
+            return failedFuture(new CancellationException("搜索已结束"));
+        }
+        
+        try {
+            // 构建搜索URL
+            String searchUrl = buildSearchUrl(source.getSearchUrl(), session.getKeyword(), session.getPage());
+            
+            // 发送请求
+            return httpClient.getAsync(searchUrl, rulePlanCache.get(source).getHeaders(), null,
+                    session.getCallGroup(), session.nextSourceTimeout());
+        } catch (RuntimeException e) {
+            return failedFuture(e);
+        }
+    }
+    
+    /**
+     * 解析搜索页
+     */
+    private SearchBatchDto parseSearchPage(BookSource source, SearchSession session, String html) {
+        SourceRulePlan plan = rulePlanCache.get(source);
+        List<Book> books = bookSourceEngine.parseSearchResults(
+                html, 
+                plan, 
+                source.getSourceName(), 
+                source.getSourceUrl()
+        );
+        
+        // 转换为DTO
+        SearchBatchDto batch = newBatch(source, SourceSearchStatus.SUCCESS);
+        batch.setPage(session.getPage());
+        batch.setResults(books.stream()
+                .map(this::convertToDto)
+                .collect(Collectors.toList()));
+        
+        SearchCursor.Entry next = nextPage(source, session, books);
+        if (next != null) {
+            batch.setCursor(SearchCursor.of(session.getKeyword(), session.getPage() + 1, next).encode());
+        }
+        return batch;
     }
     
     /**
-     * 解析请求头
+     * 判断书源是否还有下一页
+     * 搜索地址没有页码、本页没有结果、结果少于之前的整页数量，或与上一页相同（书源忽略页码）时视为最后一页
      */
-    private Map<String, String> parseHeaders(String headerJson) {
-        if (headerJson == null || headerJson.isEmpty()) {
-            return Collections.emptyMap();
+    private SearchCursor.Entry nextPage(BookSource source, SearchSession session, List<Book> books) {
+        if (books.isEmpty() || !isPageable(source.getSearchUrl())) {
+            return null;
         }
         
-        try {
-            return new com.fasterxml.jackson.databind.ObjectMapper()
-                    .readValue(headerJson, new com.fasterxml.jackson.core.type.TypeReference<Map<String, String>>() {});
-        } catch (Exception e) {
-            log.warn("解析请求头失败", e);
-            return Collections.emptyMap();
+        String firstBookUrl = books.get(0).getBookUrl();
+        SearchCursor.Entry previous = session.getPrevious(source.getSourceUrl());
+        if (previous == null) {
+            return new SearchCursor.Entry(source.getSourceUrl(), books.size(), firstBookUrl);
+        }
+        if (books.size() < previous.getPageSize() || Objects.equals(firstBookUrl, previous.getFirstBookUrl())) {
+            return null;
+        }
+        return new SearchCursor.Entry(source.getSourceUrl(), Math.max(books.size(), previous.getPageSize()),
+                firstBookUrl);
+    }
+    
+    /**
+     * 记录书源响应情况，客户端离开导致的中断与未发出的请求不计入；
+     * 搜索结束时被中断的请求不计入站点熔断
+     */
+    private void recordFetch(BookSource source, SearchSession session, long elapsed, Throwable e) {
+        if (e == null) {
+            sourceStats.record(source, elapsed, true);
+            sourceCircuitBreaker.onSuccess(source.getSearchUrl());
+            return;
+        }
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        CallGroup group = session.getCallGroup();
+        if (cause instanceof CancellationException || (group.isCancelled() && !group.isExpired())) {
+            return;
+        }
+        sourceStats.record(source, elapsed, false);
+        if (!group.isCancelled()) {
+            sourceCircuitBreaker.onFailure(source.getSearchUrl(), cause);
+        }
+    }
+    
+    private SearchBatchDto failedBatch(BookSource source, SearchSession session, Throwable e) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        if (cause instanceof CancellationException) {
+            return newBatch(source, SourceSearchStatus.TIMEOUT);
+        }
+        
+        SearchBatchDto batch;
+        if (cause instanceof InterruptedIOException) {
+            log.warn("从书源 {} 搜索超时: {}", source.getSourceName(), cause.getMessage());
+            batch = newBatch(source, SourceSearchStatus.TIMEOUT);
+        } else if (session.getCallGroup().isExpired()) {
+            batch = newBatch(source, SourceSearchStatus.TIMEOUT);
+        } else if (session.getCallGroup().isCancelled()) {
+            log.debug("书源 {} 的搜索请求已取消", source.getSourceName());
+            batch = newBatch(source, SourceSearchStatus.FAILED);
+        } else {
+            log.warn("从书源 {} 搜索失败: {}", source.getSourceName(), cause.getMessage());
+            batch = newBatch(source, SourceSearchStatus.FAILED);
+        }
+        batch.setMessage(cause.getMessage());
+        return batch;
+    }
+    
+    private SearchBatchDto newBatch(BookSource source, SourceSearchStatus status) {
+        SearchBatchDto batch = new SearchBatchDto();
+        batch.setSourceName(source.getSourceName());
+        batch.setSourceUrl(source.getSourceUrl());
+        batch.setStatus(status);
+        return batch;
+    }
+    
+    private SearchCursor decodeCursor(String cursor) {
+        return cursor != null && !cursor.trim().isEmpty() ? SearchCursor.decode(cursor) : null;
+    }
+    
+    /**
+     * 获取游标中仍然可搜索的书源，规则计划按书源缓存，继续搜索时不再重新编译
+     */
+    private List<BookSource> getContinuingSources(SearchCursor cursor) {
+        List<String> sourceUrls = cursor.getEntries().stream()
+                .map(SearchCursor.Entry::getSourceUrl)
+                .collect(Collectors.toList());
+        return sourceStats.order(sourceRegistry.getBySourceUrls(sourceUrls).stream()
+                .filter(source -> source.getSearchUrl() != null && !source.getSearchUrl().isEmpty())
+                .collect(Collectors.toList()));
+    }
+    
+    /**
+     * 获取可搜索的书源（启用且配置了搜索地址），按权重与期望耗时排序
+     */
+    private List<BookSource> getSearchableSources() {
+        return sourceStats.order(sourceRegistry.getEnabled().stream()
+                .filter(source -> source.getSearchUrl() != null && !source.getSearchUrl().isEmpty())
+                .collect(Collectors.toList()));
+    }
+    
+    /**
+     * 构建搜索URL
+     */
+    private String buildSearchUrl(String searchUrl, String keyword, int page) {
+        // 替换页码列表
+        Matcher matcher = PAGE_PATTERN.matcher(searchUrl);
+        StringBuffer sb = new StringBuffer();
+        while (matcher.find()) {
+            String[] pages = matcher.group(1).split(",");
+            String value = page <= pages.length ? pages[page - 1] : pages[pages.length - 1];
+            matcher.appendReplacement(sb, Matcher.quoteReplacement(value.trim()));
         }
+        matcher.appendTail(sb);
+        
+        // 替换关键词与页码占位符
+        String pageText = String.valueOf(page);
+        return sb.toString().replace("{{key}}", keyword)
+                       .replace("{{page}}", pageText)
+                       .replace("{key}", keyword)
+                       .replace("{page}", pageText);
+    }
+    
+    /**
+     * 搜索地址是否带有页码
+     */
+    private boolean isPageable(String searchUrl) {
+        return searchUrl.contains("{{page}}") || searchUrl.contains("{page}")
+                || PAGE_PATTERN.matcher(searchUrl).find();
     }
     
     /**
@@ -157,4 +446,10 @@ public class BookSearchService {
         return dto;
     }
     
+    private static <T> CompletableFuture<T> failedFuture(Throwable e) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(e);
+        return future;
+    }
+    
 }
@@ -1,23 +1,56 @@
 package io.legado.core.service;
 
 import io.legado.core.booksource.BookSourceEngine;
+import io.legado.core.config.CacheConfig;
+import io.legado.core.booksource.rule.RulePlanCache;
+import io.legado.core.booksource.rule.SourceRulePlan;
+import io.legado.core.dto.ContentSearchResultDto;
+import io.legado.core.dto.CursorPageDto;
+import io.legado.core.dto.TocMergeResultDto;
+import io.legado.core.source.SourceCircuitBreaker;
+import io.legado.core.source.RequestCoalescer;
+import io.legado.core.source.SourceRateLimiter;
+import io.legado.core.source.SourceRegistry;
+import io.legado.core.source.SourceStats;
+import io.legado.core.store.ChapterContentStore;
+import io.legado.core.store.FullTextIndex;
+import io.legado.core.store.ReadProgressBuffer;
+import io.legado.core.store.TocMerger;
+import io.legado.core.store.WriteQueue;
+import io.legado.core.utils.CallGroup;
 import io.legado.core.utils.HttpClient;
+import io.legado.core.utils.PageCursor;
 import io.legado.model.entity.Book;
 import io.legado.model.entity.BookChapter;
 import io.legado.model.entity.BookSource;
+import io.legado.model.projection.ChapterTocItem;
 import io.legado.model.repository.BookChapterRepository;
 import io.legado.model.repository.BookRepository;
-import io.legado.model.repository.BookSourceRepository;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.Cacheable;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 
 /**
  * 书籍服务
@@ -26,6 +59,11 @@ import java.util.Optional;
 @Service
 public class BookService {
     
+    /**
+     * 搜索结果中匹配处前后保留的字符数
+     */
+    private static final int SNIPPET_CONTEXT = 30;
+    
     @Autowired
     private BookRepository bookRepository;
     
@@ -33,19 +71,100 @@ public class BookService {
     private BookChapterRepository bookChapterRepository;
     
     @Autowired
-    private BookSourceRepository bookSourceRepository;
+    private SourceRegistry sourceRegistry;
     
     @Autowired
     private BookSourceEngine bookSourceEngine;
     
+    @Autowired
+    private RulePlanCache rulePlanCache;
+    
     @Autowired
     private HttpClient httpClient;
     
+    @Autowired
+    private SourceRateLimiter sourceRateLimiter;
+    
+    @Autowired
+    private SourceStats sourceStats;
+    
+    @Autowired
+    private SourceCircuitBreaker sourceCircuitBreaker;
+    
+    @Autowired
+    private ChapterContentStore chapterContentStore;
+    
+    @Autowired
+    private TocMerger tocMerger;
+    
+    @Autowired
+    private ReadProgressBuffer readProgressBuffer;
+    
+    @Autowired
+    private WriteQueue writeQueue;
+    
+    @Autowired
+    private FullTextIndex fullTextIndex;
+    
+    @Autowired
+    private Executor taskExecutor;
+    
+    @Autowired
+    private Executor parseExecutor;
+    
+    @Autowired
+    private CacheManager cacheManager;
+    
+    @Autowired
+    private RequestCoalescer requestCoalescer;
+    
+    /**
+     * 进行中的预读加载，阅读请求合并到预读上时提升其排队优先级
+     */
+    private final Map<String, Prefetch> prefetching = new ConcurrentHashMap<>();
+    
     /**
      * 获取所有书籍
      */
     public List<Book> getAllBooks() {
-        return bookRepository.findAll();
+        List<Book> books = bookRepository.findAll();
+        books.forEach(readProgressBuffer::applyTo);
+        return books;
+    }
+    
+    /**
+     * 按更新时间倒序分页获取书籍
+     *
+     * @param cursor 上一页返回的游标，为空时获取第一页
+     */
+    public CursorPageDto<Book> getBookPage(String cursor, Integer size) {
+        int pageSize = PageCursor.pageSize(size);
+        PageRequest limit = PageRequest.of(0, pageSize + 1);
+        List<Book> rows;
+        if (cursor == null || cursor.isEmpty()) {
+            rows = bookRepository.findFirstPage(limit);
+        } else {
+            PageCursor position = PageCursor.decode(cursor, "books", 2);
+            rows = bookRepository.findPageAfter(position.getTime(0), position.getLong(1), limit);
+        }
+        CursorPageDto<Book> page = PageCursor.page(rows, pageSize,
+                book -> PageCursor.encode("books", book.getUpdatedAt(), book.getId()));
+        page.getItems().forEach(readProgressBuffer::applyTo);
+        return page;
+    }
+    
+    /**
+     * 在书架中搜索书名、作者、分类与简介，按相关度排序
+     * 关键词过短或全文索引不可用时退回模糊查询
+     */
+    public List<Book> searchShelf(String keyword, Integer limit) {
+        int size = PageCursor.pageSize(limit);
+        String query = fullTextIndex.isReady() ? FullTextIndex.toMatchQuery(keyword) : null;
+        List<Book> books = query != null
+                ? bookRepository.searchFullText(query, size)
+                : bookRepository.searchBooks(keyword.trim(), PageRequest.of(0, size)).getContent();
+        books.forEach(readProgressBuffer::applyTo);
+        return books;
     }
     
     /**
@@ -53,7 +172,9 @@ public class BookService {
      */
     @Cacheable(value = "book", key = "#id")
     public Book getBookById(Long id) {
-        return bookRepository.findById(id).orElse(null);
+        Book book = bookRepository.findById(id).orElse(null);
+        readProgressBuffer.applyTo(book);
+        return book;
     }
     
     /**
@@ -65,193 +186,580 @@ public class BookService {
     
     /**
      * 添加书籍
+     * 检查与保存在写队列中一起执行，同一书籍同时添加时只保存一次
      */
-    @Transactional
     public Book addBook(Book book) {
+        return writeQueue.execute(() -> {
+            // 检查是否已存在
+            Optional<Book> existing = bookRepository.findByBookUrl(book.getBookUrl());
+            if (existing.isPresent()) {
+                log.info("书籍已存在: {}", book.getName());
+                return existing.get();
+            }
+            
+            return bookRepository.save(book);
+        });
+    }
+    
+    /**
+     * 从书源添加书籍
+     * 网络请求异步进行且不放在事务中，避免请求期间占用线程与唯一的写连接；同一书籍同时添加时只请求一次书源
+     */
+    public CompletableFuture<Book> addBookFromSource(String bookUrl, String sourceUrl) {
+        return requestCoalescer.execute("bookInfo", bookUrl, () -> loadBookFromSource(bookUrl, sourceUrl))
+                .handle((book, e) -> {
+                    if (e == null) {
+                        return book;
+                    }
+                    Throwable cause = unwrap(e);
+                    log.error("添加书籍失败: {}", bookUrl, cause);
+                    throw new RuntimeException("添加书籍失败", cause);
+                });
+    }
+    
+    private CompletableFuture<Book> loadBookFromSource(String bookUrl, String sourceUrl) {
+        // 获取书源
+        BookSource source = sourceRegistry.findBySourceUrl(sourceUrl)
+                .orElseThrow(() -> new RuntimeException("书源不存在"));
+        
         // 检查是否已存在
-        Optional<Book> existing = bookRepository.findByBookUrl(book.getBookUrl());
+        Optional<Book> existing = bookRepository.findByBookUrl(bookUrl);
         if (existing.isPresent()) {
-            log.info("书籍已存在: {}", book.getName());
-            return existing.get();
+            log.info("书籍已存在: {}", existing.get().getName());
+            return CompletableFuture.completedFuture(existing.get());
         }
         
-        return bookRepository.save(book);
+        // 获取书籍详情
+        SourceRulePlan plan = rulePlanCache.get(source);
+        return fetch(bookUrl, source, plan)
+                .thenApplyAsync(html -> {
+                    Book book = new Book();
+                    book.setBookUrl(bookUrl);
+                    book.setOrigin(sourceUrl);
+                    book.setOriginName(source.getSourceName());
+                    
+                    // 解析详情
+                    return bookSourceEngine.parseBookInfo(html, plan, book);
+                }, parseExecutor)
+                .thenComposeAsync(book -> {
+                    // 保存书籍并获取章节列表
+                    Book saved = addBook(book);
+                    return loadChapters(saved, source).thenApply(v -> saved);
+                }, taskExecutor);
     }
     
     /**
-     * 从书源添加书籍
+     * 加载章节列表，失败时只记录日志
      */
-    @Transactional
-    public Book addBookFromSource(String bookUrl, String sourceUrl) {
-        try {
-            // 获取书源
-            BookSource source = bookSourceRepository.findBySourceUrl(sourceUrl)
-                    .orElseThrow(() -> new RuntimeException("书源不存在"));
-            
-            // 检查是否已存在
-            Optional<Book> existing = bookRepository.findByBookUrl(bookUrl);
-            if (existing.isPresent()) {
-                log.info("书籍已存在: {}", existing.get().getName());
-                return existing.get();
+    public CompletableFuture<Void> loadChapters(Book book, BookSource source) {
+        return mergeToc(book, source).handle((result, e) -> {
+            if (e != null) {
+                log.error("加载章节失败: {}", book.getName(), unwrap(e));
             }
-            
-            // 获取书籍详情
-            Map<String, String> headers = parseHeaders(source.getHeader());
-            String html = httpClient.get(bookUrl, headers);
-            
-            Book book = new Book();
-            book.setBookUrl(bookUrl);
-            book.setOrigin(sourceUrl);
-            book.setOriginName(source.getSourceName());
-            
-            // 解析详情
-            book = bookSourceEngine.parseBookInfo(html, source.getRuleBookInfo(), book);
-            
-            // 保存书籍
-            book = bookRepository.save(book);
-            
-            // 获取章节列表
-            loadChapters(book, source);
-            
-            return book;
-            
-        } catch (Exception e) {
-            log.error("添加书籍失败: {}", bookUrl, e);
-            throw new RuntimeException("添加书籍失败", e);
-        }
+            return null;
+        });
     }
     
     /**
-     * 加载章节列表
+     * 从书源更新书籍目录
      */
-    @Transactional
-    public void loadChapters(Book book, BookSource source) {
-        try {
+    public CompletableFuture<TocMergeResultDto> refreshChapters(Long bookId) {
+        Book book = bookRepository.findById(bookId)
+                .orElseThrow(() -> new RuntimeException("书籍不存在"));
+        BookSource source = sourceRegistry.findBySourceUrl(book.getOrigin())
+                .orElseThrow(() -> new RuntimeException("书源不存在"));
+        return mergeToc(book, source).handle((result, e) -> {
+            if (e == null) {
+                return result;
+            }
+            Throwable cause = unwrap(e);
+            log.error("更新目录失败: {}", book.getName(), cause);
+            throw new RuntimeException("更新目录失败", cause);
+        });
+    }
+    
+    /**
+     * 获取目录并与已保存的章节合并，已缓存的内容保留
+     * 同一书籍的目录同时更新时只请求一次书源；解析在解析线程池进行，合并写入在任务线程池进行
+     */
+    private CompletableFuture<TocMergeResultDto> mergeToc(Book book, BookSource source) {
+        return requestCoalescer.execute("toc", book.getId(), () -> {
             String tocUrl = book.getTocUrl() != null ? book.getTocUrl() : book.getBookUrl();
-            Map<String, String> headers = parseHeaders(source.getHeader());
-            String html = httpClient.get(tocUrl, headers);
-            
-            // 解析章节
-            List<BookChapter> chapters = bookSourceEngine.parseToc(
-                    html, 
-                    source.getRuleToc(), 
-                    book.getId(), 
-                    source.getSourceUrl()
-            );
-            
-            // 删除旧章节
-            bookChapterRepository.deleteByBookId(book.getId());
-            
-            // 保存新章节
-            bookChapterRepository.saveAll(chapters);
-            
-            // 更新书籍章节数
-            book.setTotalChapterNum(chapters.size());
-            bookRepository.save(book);
-            
-            log.info("加载章节完成: {}, 共{}章", book.getName(), chapters.size());
-            
-        } catch (Exception e) {
-            log.error("加载章节失败: {}", book.getName(), e);
+            SourceRulePlan plan = rulePlanCache.get(source);
+            return fetch(tocUrl, source, plan)
+                    .thenApplyAsync(html -> bookSourceEngine.parseToc(
+                            html,
+                            plan,
+                            book.getId(),
+                            source.getSourceUrl()
+                    ), parseExecutor)
+                    .thenApplyAsync(chapters -> mergeChapters(book, chapters), taskExecutor);
+        });
+    }
+    
+    private TocMergeResultDto mergeChapters(Book book, List<BookChapter> chapters) {
+        // 目录为空多半是书源异常，保留原有章节
+        if (chapters.isEmpty()) {
+            throw new RuntimeException("目录为空");
+        }
+        
+        // 合并目录与更新书籍章节数在同一次写入中提交
+        TocMergeResultDto result = writeQueue.execute(() -> {
+            TocMergeResultDto merged = tocMerger.merge(book.getId(), chapters);
+            if (merged.isChanged() || !Objects.equals(book.getTotalChapterNum(), chapters.size())) {
+                book.setTotalChapterNum(chapters.size());
+                book.setLatestChapterTitle(chapters.get(chapters.size() - 1).getTitle());
+                book.setLastCheckCount(merged.getInserted());
+                if (merged.getInserted() > 0) {
+                    book.setLatestChapterTime(System.currentTimeMillis());
+                }
+                readProgressBuffer.applyTo(book);
+                bookRepository.save(book);
+            }
+            return merged;
+        });
+        evictBook(book.getId());
+        
+        // 章节索引变化后，按索引缓存的内容不再对应
+        if (result.isReindexed() || result.getDeleted() > 0) {
+            evictChapterContent(book.getId());
         }
+        
+        log.info("更新目录完成: {}, 共{}章, 新增{}, 修改{}, 删除{}", book.getName(), result.getTotal(),
+                result.getInserted(), result.getUpdated(), result.getDeleted());
+        return result;
+    }
+    
+    /**
+     * 清除书籍缓存，目录合并后章节数等字段已变化
+     */
+    private void evictBook(Long bookId) {
+        Cache cache = cacheManager.getCache("book");
+        if (cache != null) {
+            cache.evict(bookId);
+        }
+    }
+    
+    /**
+     * 清除书籍按章节索引缓存的内容
+     */
+    @SuppressWarnings("unchecked")
+    private void evictChapterContent(Long bookId) {
+        Cache cache = cacheManager.getCache(CacheConfig.CHAPTER_CONTENT);
+        if (cache != null && cache.getNativeCache() instanceof com.github.benmanes.caffeine.cache.Cache) {
+            String prefix = bookId + ":";
+            ((com.github.benmanes.caffeine.cache.Cache<Object, Object>) cache.getNativeCache()).asMap().keySet()
+                    .removeIf(key -> key.toString().startsWith(prefix));
+        }
+    }
+    
+    /**
+     * 获取章节目录，只查询目录字段，不加载章节实体
+     */
+    public List<ChapterTocItem> getChapters(Long bookId) {
+        return bookChapterRepository.findTocByBookId(bookId);
     }
     
     /**
-     * 获取章节列表
+     * 分页获取章节目录
+     *
+     * @param cursor 上一页返回的游标，为空时从第一章开始
      */
-    public List<BookChapter> getChapters(Long bookId) {
-        return bookChapterRepository.findByBookIdOrderByChapterIndexAsc(bookId);
+    public CursorPageDto<ChapterTocItem> getChapterPage(Long bookId, String cursor, Integer size) {
+        int pageSize = PageCursor.pageSize(size);
+        int afterIndex = -1;
+        if (cursor != null && !cursor.isEmpty()) {
+            PageCursor position = PageCursor.decode(cursor, "chapters", 2);
+            if (!bookId.equals(position.getLong(0))) {
+                throw new IllegalArgumentException("分页游标无效");
+            }
+            afterIndex = position.getLong(1).intValue();
+        }
+        List<ChapterTocItem> rows = bookChapterRepository.findTocPage(bookId, afterIndex,
+                PageRequest.of(0, pageSize + 1));
+        return PageCursor.page(rows, pageSize,
+                item -> PageCursor.encode("chapters", bookId, item.getChapterIndex()));
     }
     
     /**
      * 获取章节内容
+     * 依次查找内存缓存、章节内容存储（磁盘）与书源；书源请求异步进行，从书源获取的内容在后台写入内容存储，不等待写入完成。
+     * 内存缓存未命中时同一章节的并发请求合并为一次加载
+     */
+    public CompletableFuture<String> getChapterContent(Long bookId, Integer chapterIndex) {
+        String key = bookId + ":" + chapterIndex;
+        Cache cache = cacheManager.getCache(CacheConfig.CHAPTER_CONTENT);
+        String cached = cache != null ? cache.get(key, String.class) : null;
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        return load(key, bookId, chapterIndex).thenApply(loaded -> {
+            if (cache != null) {
+                cache.put(key, loaded.content);
+            }
+            return loaded.content;
+        });
+    }
+    
+    /**
+     * 预读章节内容放入内存缓存
+     * 书源请求排在阅读请求之后，取消请求组时中断排队与请求，返回的Future以 {@link CancellationException} 失败
+     */
+    public CompletableFuture<Void> prefetchChapterContent(Long bookId, Integer chapterIndex, CallGroup group) {
+        String key = bookId + ":" + chapterIndex;
+        Cache cache = cacheManager.getCache(CacheConfig.CHAPTER_CONTENT);
+        if (cache != null && cache.get(key, String.class) != null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return requestCoalescer.execute("content", key, () -> loadChapterContent(bookId, chapterIndex, group))
+                .thenAccept(loaded -> {
+                    if (cache != null) {
+                        cache.put(key, loaded.content);
+                    }
+                });
+    }
+    
+    /**
+     * 缓存章节内容到内容存储，不放入内存缓存（供缓存任务使用，避免挤掉正在阅读的章节）
+     * 与阅读同一章节的请求合并，已缓存的章节直接返回；从书源获取的章节在写入内容存储后才完成
+     */
+    public CompletableFuture<Void> cacheChapterContent(Long bookId, Integer chapterIndex) {
+        return load(bookId + ":" + chapterIndex, bookId, chapterIndex).thenCompose(loaded -> loaded.saved);
+    }
+    
+    /**
+     * 合并加载章节内容
+     * 合并到进行中的预读时提升预读的排队优先级，预读被取消时重新加载一次
+     */
+    private CompletableFuture<LoadedContent> load(String key, Long bookId, Integer chapterIndex) {
+        promote(key);
+        return requestCoalescer.execute("content", key, () -> loadChapterContent(bookId, chapterIndex, null))
+                .handle((loaded, e) -> {
+                    if (e == null) {
+                        return CompletableFuture.completedFuture(loaded);
+                    }
+                    Throwable cause = unwrap(e);
+                    if (cause instanceof CancellationException) {
+                        return requestCoalescer.execute("content", key,
+                                () -> loadChapterContent(bookId, chapterIndex, null));
+                    }
+                    return BookService.<LoadedContent>failedFuture(cause);
+                })
+                .thenCompose(future -> future);
+    }
+    
+    private void promote(String key) {
+        Prefetch prefetch = prefetching.get(key);
+        CompletableFuture<SourceRateLimiter.Permit> permit = prefetch != null ? prefetch.permit : null;
+        if (permit != null && !permit.isDone()) {
+            sourceRateLimiter.prioritize(prefetch.source, permit);
+        }
+    }
+    
+    /**
+     * @param group 预读的请求组，为空时为阅读请求
      */
-    @Cacheable(value = "chapterContent", key = "#bookId + ':' + #chapterIndex")
-    public String getChapterContent(Long bookId, Integer chapterIndex) {
+    private CompletableFuture<LoadedContent> loadChapterContent(Long bookId, Integer chapterIndex, CallGroup group) {
         BookChapter chapter = bookChapterRepository
                 .findByBookIdAndChapterIndex(bookId, chapterIndex)
                 .orElseThrow(() -> new RuntimeException("章节不存在"));
         
         // 如果已有内容，直接返回
-        if (chapter.getContent() != null && !chapter.getContent().isEmpty()) {
-            return chapter.getContent();
+        String cached = readContent(chapter);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(new LoadedContent(cached, CompletableFuture.completedFuture(null)));
         }
         
-        // 从书源获取内容
-        Book book = getBookById(bookId);
-        BookSource source = bookSourceRepository.findBySourceUrl(book.getOrigin())
+        // 从书源获取内容（书籍已删除时失败）
+        Book book = bookRepository.findById(bookId)
+                .orElseThrow(() -> new RuntimeException("书籍不存在"));
+        BookSource source = sourceRegistry.findBySourceUrl(book.getOrigin())
                 .orElseThrow(() -> new RuntimeException("书源不存在"));
         
+        SourceRulePlan plan = rulePlanCache.get(source);
+        String key = bookId + ":" + chapterIndex;
+        Prefetch prefetch = group != null ? new Prefetch(source, group) : null;
+        if (prefetch != null) {
+            prefetching.put(key, prefetch);
+        }
+        return fetch(chapter.getUrl(), source, plan, prefetch)
+                // 解析内容
+                .thenApplyAsync(html -> bookSourceEngine.parseContent(html, plan, chapter.getUrl()), parseExecutor)
+                .handle((content, e) -> {
+                    if (prefetch != null) {
+                        prefetching.remove(key, prefetch);
+                    }
+                    if (e != null) {
+                        if (prefetch != null && group.isCancelled()) {
+                            throw new CancellationException("预读已取消");
+                        }
+                        Throwable cause = unwrap(e);
+                        log.error("获取章节内容失败: {} - 第{}章", book.getName(), chapterIndex, cause);
+                        throw new RuntimeException("获取章节内容失败", cause);
+                    }
+                    
+                    // 在后台保存内容，阅读请求不等待写入
+                    CompletableFuture<Void> saved = CompletableFuture.runAsync(
+                            () -> saveContent(chapter, content), taskExecutor);
+                    saved.whenComplete((v, error) -> {
+                        if (error != null) {
+                            log.warn("保存章节内容失败: 书籍{} 第{}章, {}", chapter.getBookId(),
+                                    chapter.getChapterIndex(), unwrap(error).getMessage());
+                        }
+                    });
+                    return new LoadedContent(content, saved);
+                });
+    }
+    
+    /**
+     * 将章节内容写入内容存储，并保存内容位置与全文索引
+     */
+    private void saveContent(BookChapter chapter, String content) {
         try {
-            Map<String, String> headers = parseHeaders(source.getHeader());
-            String html = httpClient.get(chapter.getUrl(), headers);
-            
-            // 解析内容
-            String content = bookSourceEngine.parseContent(html, source.getRuleContent());
-            
-            // 保存内容
-            chapter.setContent(content);
-            bookChapterRepository.save(chapter);
-            
-            return content;
-            
-        } catch (Exception e) {
-            log.error("获取章节内容失败: {} - 第{}章", book.getName(), chapterIndex, e);
-            throw new RuntimeException("获取章节内容失败", e);
+            chapterContentStore.write(chapter, content, () -> writeQueue.run(() -> {
+                bookChapterRepository.updateContentLocator(
+                        chapter.getId(), chapter.getContentOffset(), chapter.getContentSize());
+                fullTextIndex.indexChapter(chapter, content);
+            }));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
     }
     
     /**
-     * 更新阅读进度
+     * 在书籍已缓存的章节中搜索，结果带有匹配处前后的文本
+     * 全文索引按相关度排序；关键词过短或索引不可用时按章节顺序逐章查找
      */
-    @CacheEvict(value = "book", key = "#bookId")
-    @Transactional
-    public void updateProgress(Long bookId, Integer chapterIndex, Integer chapterPos) {
-        Book book = bookRepository.findById(bookId)
-                .orElseThrow(() -> new RuntimeException("书籍不存在"));
+    @Transactional(readOnly = true)
+    public List<ContentSearchResultDto> searchContent(Long bookId, String keyword, Integer limit) {
+        int size = PageCursor.pageSize(limit);
+        List<String> terms = FullTextIndex.terms(keyword);
+        List<ContentSearchResultDto> results = new ArrayList<>();
+        if (terms.isEmpty()) {
+            return results;
+        }
         
-        book.setDurChapterIndex(chapterIndex);
-        book.setDurChapterPos(chapterPos);
+        List<BookChapter> chapters;
+        if (fullTextIndex.isReady() && FullTextIndex.toMatchQuery(keyword) != null) {
+            List<Long> ids = new ArrayList<>();
+            for (Map<String, Object> row : fullTextIndex.searchChapters(bookId, keyword, size)) {
+                ids.add(((Number) row.get("id")).longValue());
+            }
+            Map<Long, BookChapter> byId = new HashMap<>();
+            bookChapterRepository.findAllById(ids).forEach(chapter -> byId.put(chapter.getId(), chapter));
+            chapters = new ArrayList<>(ids.size());
+            for (Long id : ids) {
+                if (byId.containsKey(id)) {
+                    chapters.add(byId.get(id));
+                }
+            }
+        } else {
+            chapters = bookChapterRepository.findCachedByBookId(bookId);
+            chapters.sort(Comparator.comparing(BookChapter::getChapterIndex));
+        }
         
-        // 获取章节标题
-        BookChapter chapter = bookChapterRepository
-                .findByBookIdAndChapterIndex(bookId, chapterIndex)
-                .orElse(null);
+        for (BookChapter chapter : chapters) {
+            String content = readContent(chapter);
+            ContentSearchResultDto result = content != null ? match(content, terms) : null;
+            if (result == null) {
+                continue;
+            }
+            result.setChapterIndex(chapter.getChapterIndex());
+            result.setChapterTitle(chapter.getTitle());
+            results.add(result);
+            if (results.size() >= size) {
+                break;
+            }
+        }
+        return results;
+    }
+    
+    /**
+     * 查找章节内容中的关键词，所有词都出现时返回第一处匹配前后的文本与匹配次数
+     */
+    private ContentSearchResultDto match(String content, List<String> terms) {
+        String text = content.toLowerCase(Locale.ROOT);
+        int first = -1;
+        int firstLength = 0;
+        int count = 0;
+        for (String term : terms) {
+            String lower = term.toLowerCase(Locale.ROOT);
+            int index = text.indexOf(lower);
+            if (index < 0) {
+                return null;
+            }
+            if (first < 0 || index < first) {
+                first = index;
+                firstLength = lower.length();
+            }
+            for (; index >= 0; index = text.indexOf(lower, index + lower.length())) {
+                count++;
+            }
+        }
+        
+        int start = Math.max(0, first - SNIPPET_CONTEXT);
+        int end = Math.min(content.length(), first + firstLength + SNIPPET_CONTEXT);
+        String snippet = content.substring(start, end).replaceAll("\\s+", " ").trim();
+        
+        ContentSearchResultDto result = new ContentSearchResultDto();
+        result.setSnippet((start > 0 ? "…" : "") + snippet + (end < content.length() ? "…" : ""));
+        result.setPosition(first);
+        result.setMatchCount(count);
+        return result;
+    }
+    
+    /**
+     * 更新阅读进度
+     * 只写入进度缓冲，由缓冲定期批量写回，避免翻页时频繁写库
+     */
+    @CacheEvict(value = "book", key = "#bookId")
+    public void updateProgress(Long bookId, Integer chapterIndex, Integer chapterPos, String username) {
+        ReadProgressBuffer.Progress previous = readProgressBuffer.get(bookId, username);
+        if (previous == null && !bookRepository.existsById(bookId)) {
+            throw new RuntimeException("书籍不存在");
+        }
         
-        if (chapter != null) {
-            book.setDurChapterTitle(chapter.getTitle());
+        // 获取章节标题，同一章内翻页时沿用
+        String chapterTitle;
+        if (previous != null && previous.getChapterIndex() == chapterIndex) {
+            chapterTitle = previous.getChapterTitle();
+        } else {
+            chapterTitle = bookChapterRepository
+                    .findByBookIdAndChapterIndex(bookId, chapterIndex)
+                    .map(BookChapter::getTitle)
+                    .orElse(null);
         }
         
-        bookRepository.save(book);
+        // 只写入缓冲，定期批量写回
+        readProgressBuffer.put(new ReadProgressBuffer.Progress(bookId, username, chapterIndex,
+                chapterPos != null ? chapterPos : 0, chapterTitle));
     }
     
     /**
      * 删除书籍
      */
-    @Transactional
     public void deleteBook(Long bookId) {
-        // 删除章节
-        bookChapterRepository.deleteByBookId(bookId);
+        writeQueue.run(() -> {
+            // 删除章节
+            bookChapterRepository.deleteByBookId(bookId);
+            
+            // 删除书籍
+            bookRepository.deleteById(bookId);
+        });
         
-        // 删除书籍
-        bookRepository.deleteById(bookId);
+        // 提交后删除章节内容，失败时保留内容文件；不在写线程中执行，内容写入等待写队列时不会互相等待
+        chapterContentStore.delete(bookId);
+        evictBook(bookId);
+        evictChapterContent(bookId);
+        readProgressBuffer.remove(bookId);
         
         log.info("删除书籍: {}", bookId);
     }
     
     /**
-     * 解析请求头
+     * 从章节内容存储读取内容
+     * 内容文件压缩后旧位置会失效，此时重新查询一次章节的位置
      */
-    private Map<String, String> parseHeaders(String headerJson) {
-        if (headerJson == null || headerJson.isEmpty()) {
-            return java.util.Collections.emptyMap();
+    private String readContent(BookChapter chapter) {
+        if (chapter.getContentOffset() == null) {
+            return null;
         }
-        
+        String content = chapterContentStore.read(chapter);
+        if (content != null) {
+            return content;
+        }
+        BookChapter latest = bookChapterRepository.findById(chapter.getId()).orElse(null);
+        if (latest == null || Objects.equals(latest.getContentOffset(), chapter.getContentOffset())) {
+            return null;
+        }
+        chapter.setContentOffset(latest.getContentOffset());
+        chapter.setContentSize(latest.getContentSize());
+        return chapterContentStore.read(chapter);
+    }
+    
+    /**
+     * 按书源并发率异步访问网络，并记录书源响应情况；站点暂停访问时直接失败
+     * 排队与请求都不占用线程，与搜索相同
+     */
+    private CompletableFuture<String> fetch(String url, BookSource source, SourceRulePlan plan) {
+        return fetch(url, source, plan, null);
+    }
+    
+    /**
+     * @param prefetch 预读加载，不为空时排在阅读请求之后，取消其请求组时中断排队与请求
+     */
+    private CompletableFuture<String> fetch(String url, BookSource source, SourceRulePlan plan, Prefetch prefetch) {
         try {
-            return new com.fasterxml.jackson.databind.ObjectMapper()
-                    .readValue(headerJson, new com.fasterxml.jackson.core.type.TypeReference<Map<String, String>>() {});
-        } catch (Exception e) {
-            return java.util.Collections.emptyMap();
+            sourceCircuitBreaker.checkRequest(url);
+        } catch (IOException e) {
+            return failedFuture(e);
+        }
+        CallGroup group = prefetch != null ? prefetch.group : null;
+        CompletableFuture<SourceRateLimiter.Permit> request = sourceRateLimiter.acquire(source, group != null);
+        if (prefetch != null) {
+            prefetch.permit = request;
+            group.onCancel(() -> request.cancel(false));
+        }
+        return request.thenCompose(permit -> {
+            long startTime = System.currentTimeMillis();
+            return httpClient.getAsync(url, plan.getHeaders(), null, group, 0).whenComplete((html, e) -> {
+                permit.release();
+                if (group != null && group.isCancelled()) {
+                    // 取消中断的预读不计入书源状况
+                    return;
+                }
+                if (e == null) {
+                    sourceCircuitBreaker.onSuccess(url);
+                } else {
+                    sourceCircuitBreaker.onFailure(url, unwrap(e));
+                }
+                sourceStats.record(source, System.currentTimeMillis() - startTime, e == null);
+            });
+        });
+    }
+    
+    private static Throwable unwrap(Throwable e) {
+        return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+    }
+    
+    private static <T> CompletableFuture<T> failedFuture(Throwable e) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(e);
+        return future;
+    }
+    
+    /**
+     * 加载的章节内容，以及写入内容存储的结果（内容已在存储中时为已完成）
+     */
+    private static final class LoadedContent {
+        
+        private final String content;
+        
+        private final CompletableFuture<Void> saved;
+        
+        private LoadedContent(String content, CompletableFuture<Void> saved) {
+            this.content = content;
+            this.saved = saved;
+        }
+    }
+    
+    /**
+     * 进行中的预读加载
+     */
+    private static final class Prefetch {
+        
+        private final BookSource source;
+        
+        private final CallGroup group;
+        
+        /**
+         * 预读的并发率许可申请，开始请求书源前为空
+         */
+        private volatile CompletableFuture<SourceRateLimiter.Permit> permit;
+        
+        private Prefetch(BookSource source, CallGroup group) {
+            this.source = source;
+            this.group = group;
         }
     }
     
@@ -1,20 +1,28 @@
 package io.legado.core.service;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import io.legado.core.booksource.rule.RulePlanCache;
+import io.legado.core.dto.CursorPageDto;
+import io.legado.core.dto.SourceImportResultDto;
+import io.legado.core.source.SourceImporter;
+import io.legado.core.source.SourceRegistry;
+import io.legado.core.store.FullTextIndex;
+import io.legado.core.store.WriteQueue;
+import io.legado.core.utils.PageCursor;
 import io.legado.model.entity.BookSource;
 import io.legado.model.repository.BookSourceRepository;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 
-/**
+    /**
  * 书源服务
+ * 写操作经写队列提交，书源快照在提交后更新
  */
 @Slf4j
 @Service
@@ -26,7 +34,20 @@ public class BookSourceService {
     @Autowired
     private io.legado.core.utils.HttpClient httpClient;
     
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    @Autowired
+    private RulePlanCache rulePlanCache;
+    
+    @Autowired
+    private SourceImporter sourceImporter;
+    
+    @Autowired
+    private FullTextIndex fullTextIndex;
+    
+    @Autowired
+    private SourceRegistry sourceRegistry;
+    
+    @Autowired
+    private WriteQueue writeQueue;
     
     /**
      * 获取所有书源
@@ -36,10 +57,54 @@ public class BookSourceService {
     }
     
     /**
-     * 获取启用的书源
+     * 按权重倒序分页获取书源
+     *
+     * @param cursor 上一页返回的游标，为空时获取第一页
      */
-    public List<BookSource> getEnabledSources() {
-        return bookSourceRepository.findByEnabledTrueOrderByWeightDesc();
+    public CursorPageDto<BookSource> getSourcePage(String cursor, Integer size) {
+        int pageSize = PageCursor.pageSize(size);
+        PageRequest limit = PageRequest.of(0, pageSize + 1);
+        List<BookSource> rows;
+        if (cursor == null || cursor.isEmpty()) {
+            rows = bookSourceRepository.findFirstPage(limit);
+        } else {
+            PageCursor position = PageCursor.decode(cursor, "sources", 2);
+            rows = bookSourceRepository.findPageAfter(position.getLong(0).intValue(), position.getLong(1), limit);
+        }
+        return PageCursor.page(rows, pageSize,
+                source -> PageCursor.encode("sources", source.getWeight(), source.getId()));
+    }
+    
+    /**
+     * 按名称、URL与分组搜索书源，按相关度排序
+     * 关键词过短或全文索引不可用时退回模糊查询
+     */
+    public List<BookSource> searchSources(String keyword, Integer limit) {
+        int size = PageCursor.pageSize(limit);
+        String query = fullTextIndex.isReady() ? FullTextIndex.toMatchQuery(keyword) : null;
+        if (query != null) {
+            return bookSourceRepository.searchFullText(query, size);
+        }
+        return bookSourceRepository.searchSources(keyword.trim(), PageRequest.of(0, size)).getContent();
+    }
+    
+    /**
+     * 获取启用的书源，按权重倒序
+     *
+     * @param group 书源分组，为空时获取所有启用的书源
+     */
+    public List<BookSource> getEnabledSources(String group) {
+        if (group == null || group.trim().isEmpty()) {
+            return sourceRegistry.getEnabled();
+        }
+        return sourceRegistry.getByGroup(group.trim());
+    }
+    
+    /**
+     * 获取启用书源的所有分组
+     */
+    public List<String> getEnabledGroups() {
+        return new ArrayList<>(sourceRegistry.getGroups());
     }
     
     /**
@@ -52,103 +117,89 @@ public class BookSourceService {
     /**
      * 添加书源
      */
-    @Transactional
     public BookSource addSource(BookSource source) {
-        return bookSourceRepository.save(source);
+        fillDefaults(source);
+        BookSource saved = writeQueue.execute(() -> {
+            BookSource result = bookSourceRepository.save(source);
+            sourceRegistry.onSaved(result);
+            return result;
+        });
+        rulePlanCache.invalidate(saved.getId());
+        return saved;
     }
     
     /**
      * 更新书源
      */
-    @Transactional
     public BookSource updateSource(Long id, BookSource source) {
-        BookSource existing = bookSourceRepository.findById(id)
-                .orElseThrow(() -> new RuntimeException("书源不存在"));
-        
         source.setId(id);
-        return bookSourceRepository.save(source);
+        source.setLastUpdateTime(System.currentTimeMillis());
+        fillDefaults(source);
+        BookSource saved = writeQueue.execute(() -> {
+            if (!bookSourceRepository.existsById(id)) {
+                throw new RuntimeException("书源不存在");
+            }
+            BookSource result = bookSourceRepository.save(source);
+            sourceRegistry.onSaved(result);
+            return result;
+        });
+        rulePlanCache.invalidate(id);
+        return saved;
     }
     
     /**
      * 删除书源
      */
-    @Transactional
     public void deleteSource(Long id) {
-        bookSourceRepository.deleteById(id);
+        writeQueue.run(() -> {
+            bookSourceRepository.deleteById(id);
+            sourceRegistry.onDeleted(id);
+        });
+        rulePlanCache.invalidate(id);
     }
     
     /**
      * 批量保存书源
      */
-    @Transactional
     public void saveSources(List<BookSource> sources) {
-        bookSourceRepository.saveAll(sources);
+        sources.forEach(this::fillDefaults);
+        writeQueue.run(() -> sourceRegistry.onSaved(bookSourceRepository.saveAll(sources)));
+        rulePlanCache.invalidateAll();
     }
     
     /**
      * 启用/禁用书源
      */
-    @Transactional
     public void toggleSource(Long id, Boolean enabled) {
-        BookSource source = bookSourceRepository.findById(id)
-                .orElseThrow(() -> new RuntimeException("书源不存在"));
-        
-        source.setEnabled(enabled);
-        bookSourceRepository.save(source);
+        writeQueue.run(() -> {
+            BookSource source = bookSourceRepository.findById(id)
+                    .orElseThrow(() -> new RuntimeException("书源不存在"));
+            
+            source.setEnabled(enabled);
+            sourceRegistry.onSaved(bookSourceRepository.save(source));
+        });
     }
     
     /**
-     * 从URL导入书源
+     * 从URL导入书源，以流的方式读取，不在事务中下载
      */
-    @Transactional
-    public int importFromUrl(String url) throws IOException {
-        String jsonContent = httpClient.get(url);
-        List<Map<String, Object>> rawSources = objectMapper.readValue(jsonContent, new TypeReference<List<Map<String, Object>>>() {});
-        
-        List<BookSource> sources = rawSources.stream().map(this::convertToBookSource).toList();
-        bookSourceRepository.saveAll(sources);
-        return sources.size();
+    public SourceImportResultDto importFromUrl(String url) throws IOException {
+        return httpClient.getStream(url, sourceImporter::importFrom);
     }
     
-    private BookSource convertToBookSource(Map<String, Object> raw) {
-        BookSource source = new BookSource();
-        
-        source.setSourceName((String) raw.getOrDefault("bookSourceName", ""));
-        source.setSourceUrl((String) raw.getOrDefault("bookSourceUrl", ""));
-        source.setSourceIcon((String) raw.get("bookSourceIcon"));
-        source.setSourceGroup((String) raw.get("bookSourceGroup"));
-        source.setEnabled(raw.get("enabled") != null ? (Boolean) raw.get("enabled") : true);
-        source.setEnabledExplore(raw.get("enabledExplore") != null ? (Boolean) raw.get("enabledExplore") : true);
-        source.setWeight(raw.get("weight") != null ? ((Number) raw.get("weight")).intValue() : 0);
-        source.setCustomOrder(raw.get("customOrder") != null ? ((Number) raw.get("customOrder")).intValue() : 0);
-        source.setLoginUrl((String) raw.get("loginUrl"));
-        source.setLoginUi((String) raw.get("loginUi"));
-        source.setLoginCheckJs((String) raw.get("loginCheckJs"));
-        source.setBookUrlPattern((String) raw.get("bookUrlPattern"));
-        source.setHeader((String) raw.get("header"));
-        source.setSearchUrl((String) raw.get("searchUrl"));
-        source.setExploreUrl((String) raw.get("exploreUrl"));
-        source.setLastUpdateTime(raw.get("lastUpdateTime") != null ? ((Number) raw.get("lastUpdateTime")).longValue() : null);
-        source.setRespondTime(raw.get("respondTime") != null ? ((Number) raw.get("respondTime")).longValue() : null);
-        
-        source.setRuleSearch(serializeField(raw.get("ruleSearch")));
-        source.setRuleBookInfo(serializeField(raw.get("ruleBookInfo")));
-        source.setRuleToc(serializeField(raw.get("ruleToc")));
-        source.setRuleContent(serializeField(raw.get("ruleContent")));
-        source.setRuleReview(serializeField(raw.get("ruleReview")));
-        source.setContentReplaceRule(serializeField(raw.get("contentReplaceRule")));
-        source.setRuleExplore(serializeField(raw.get("ruleExplore")));
-        
-        return source;
+    /**
+     * 从上传的文件导入书源
+     */
+    public SourceImportResultDto importFrom(InputStream in) throws IOException {
+        return sourceImporter.importFrom(in);
     }
     
-    private String serializeField(Object field) {
-        if (field == null) return null;
-        try {
-            return objectMapper.writeValueAsString(field);
-        } catch (IOException e) {
-            log.warn("序列化字段失败", e);
-            return null;
+    /**
+     * 补全排序字段，权重为空的书源无法参与分页
+     */
+    private void fillDefaults(BookSource source) {
+        if (source.getWeight() == null) {
+            source.setWeight(0);
         }
     }
     
@@ -0,0 +1,41 @@
+package io.legado.core.service;
+
+import io.legado.core.dto.CursorPageDto;
+import io.legado.core.utils.PageCursor;
+import io.legado.model.entity.Bookmark;
+import io.legado.model.repository.BookmarkRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+/**
+ * 书签服务
+ */
+@Service
+public class BookmarkService {
+    
+    @Autowired
+    private BookmarkRepository bookmarkRepository;
+    
+    /**
+     * 按创建时间倒序分页获取书签
+     *
+     * @param cursor 上一页返回的游标，为空时获取第一页
+     */
+    public CursorPageDto<Bookmark> getBookmarkPage(String cursor, Integer size) {
+        int pageSize = PageCursor.pageSize(size);
+        PageRequest limit = PageRequest.of(0, pageSize + 1);
+        List<Bookmark> rows;
+        if (cursor == null || cursor.isEmpty()) {
+            rows = bookmarkRepository.findFirstPage(limit);
+        } else {
+            PageCursor position = PageCursor.decode(cursor, "bookmarks", 2);
+            rows = bookmarkRepository.findPageAfter(position.getTime(0), position.getLong(1), limit);
+        }
+        return PageCursor.page(rows, pageSize,
+                bookmark -> PageCursor.encode("bookmarks", bookmark.getCreatedAt(), bookmark.getId()));
+    }
+    
+}
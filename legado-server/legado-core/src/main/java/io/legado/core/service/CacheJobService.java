@@ -0,0 +1,442 @@
+package io.legado.core.service;
+
+import io.legado.core.store.WriteQueue;
+import io.legado.core.utils.AsyncPermits;
+import io.legado.model.entity.Book;
+import io.legado.model.entity.CacheJob;
+import io.legado.model.repository.BookChapterRepository;
+import io.legado.model.repository.CacheJobRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 章节缓存任务服务
+ * 对应App的离线缓存：将书籍指定范围的章节下载到内容存储。任务保存在数据库中，重启后从未缓存的章节继续；
+ * 同一书源同时获取的章节数有上限（多个任务共用），请求仍经过书源并发率限制与熔断，失败的章节按退避时间由调度器重试，
+ * 等待许可与重试期间不占用线程。
+ * 进度以 {@link CacheProgressEvent} 发布，由 WebSocket 推送给创建任务的用户
+ */
+@Slf4j
+@Service
+public class CacheJobService {
+    
+    @Autowired
+    private CacheJobRepository cacheJobRepository;
+    
+    @Autowired
+    private BookChapterRepository bookChapterRepository;
+    
+    @Autowired
+    private BookService bookService;
+    
+    @Autowired
+    private WriteQueue writeQueue;
+    
+    @Autowired
+    private Executor cacheJobExecutor;
+    
+    @Autowired
+    private TaskScheduler taskScheduler;
+    
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    /**
+     * 同时执行的任务数
+     */
+    @Value("${legado.cache-job.pool-size:2}")
+    private int poolSize;
+    
+    /**
+     * 每个书源同时获取的章节数
+     */
+    @Value("${legado.cache-job.per-source:4}")
+    private int perSource;
+    
+    /**
+     * 章节获取失败后的重试次数
+     */
+    @Value("${legado.cache-job.max-retries:3}")
+    private int maxRetries;
+    
+    /**
+     * 第一次重试前等待的时间（毫秒），之后每次加倍
+     */
+    @Value("${legado.cache-job.retry-backoff-ms:2000}")
+    private long retryBackoff;
+    
+    /**
+     * 推送进度的最小间隔（毫秒），也是批量保存进度的间隔
+     */
+    @Value("${legado.cache-job.progress-interval-ms:1000}")
+    private long progressInterval;
+    
+    /**
+     * 执行中的任务
+     */
+    private final Map<Long, Run> running = new ConcurrentHashMap<>();
+    
+    /**
+     * 各书源的章节获取许可，多个任务共用
+     */
+    private final Map<String, AsyncPermits> sourcePermits = new ConcurrentHashMap<>();
+    
+    private AsyncPermits jobPermits;
+    
+    @PostConstruct
+    public void init() {
+        jobPermits = new AsyncPermits(poolSize);
+        Gauge.builder("legado.cache-job.running", running, Map::size)
+                .description("执行中的章节缓存任务数量")
+                .register(meterRegistry);
+    }
+    
+    /**
+     * 启动后继续执行未完成的任务
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        writeQueue.execute(() -> cacheJobRepository.resetRunning());
+        List<CacheJob> jobs = cacheJobRepository.findByStatusInOrderByIdAsc(
+                Collections.singletonList(CacheJob.PENDING));
+        if (!jobs.isEmpty()) {
+            log.info("继续执行缓存任务: {}个", jobs.size());
+            jobs.forEach(this::submit);
+        }
+    }
+    
+    /**
+     * 创建缓存任务
+     *
+     * @param startIndex 起始章节索引（含），为空时从第一章开始
+     * @param endIndex   结束章节索引（含），为空时到最后一章
+     */
+    public CacheJob createJob(Long bookId, Integer startIndex, Integer endIndex, String username) {
+        Book book = bookService.getBookById(bookId);
+        if (book == null) {
+            throw new IllegalArgumentException("书籍不存在");
+        }
+        Integer lastIndex = bookChapterRepository.findMaxChapterIndexByBookId(bookId);
+        if (lastIndex == null) {
+            throw new IllegalArgumentException("书籍没有章节");
+        }
+        int start = startIndex != null ? Math.max(0, startIndex) : 0;
+        int end = endIndex != null ? Math.min(endIndex, lastIndex) : lastIndex;
+        if (start > end) {
+            throw new IllegalArgumentException("章节范围无效");
+        }
+        
+        CacheJob job = new CacheJob();
+        job.setBookId(bookId);
+        job.setUsername(username);
+        job.setStartIndex(start);
+        job.setEndIndex(end);
+        job.setTotalCount(end - start + 1);
+        CacheJob saved = writeQueue.execute(() -> cacheJobRepository.save(job));
+        log.info("创建缓存任务: {} 第{}-{}章", book.getName(), start, end);
+        
+        submit(saved);
+        return saved;
+    }
+    
+    /**
+     * 用户的缓存任务，执行中的任务带有最新进度
+     */
+    public List<CacheJob> getJobs(String username) {
+        List<CacheJob> jobs = cacheJobRepository.findByUsernameOrderByIdDesc(username);
+        jobs.forEach(this::applyProgress);
+        return jobs;
+    }
+    
+    /**
+     * 获取缓存任务
+     */
+    public CacheJob getJob(Long id, String username) {
+        CacheJob job = cacheJobRepository.findById(id)
+                .filter(found -> username.equals(found.getUsername()))
+                .orElseThrow(() -> new RuntimeException("缓存任务不存在"));
+        applyProgress(job);
+        return job;
+    }
+    
+    /**
+     * 取消缓存任务，已获取的章节保留
+     */
+    public CacheJob cancelJob(Long id, String username) {
+        CacheJob job = getJob(id, username);
+        if (!CacheJob.PENDING.equals(job.getStatus()) && !CacheJob.RUNNING.equals(job.getStatus())) {
+            return job;
+        }
+        Run run = running.get(id);
+        if (run != null) {
+            run.cancelled = true;
+        }
+        writeQueue.execute(() -> cacheJobRepository.updateStatus(id, CacheJob.CANCELLED, null));
+        job.setStatus(CacheJob.CANCELLED);
+        log.info("取消缓存任务: {}", id);
+        return job;
+    }
+    
+    /**
+     * 等待任务名额后执行，同时执行的任务数不超过 pool-size
+     */
+    private void submit(CacheJob job) {
+        jobPermits.acquire()
+                .thenComposeAsync(v -> run(job), cacheJobExecutor)
+                .whenComplete((v, e) -> {
+                    jobPermits.release();
+                    if (e != null) {
+                        // 保持等待状态，下次启动时执行
+                        log.warn("缓存任务未能执行: {}, {}", job.getId(), unwrap(e).getMessage());
+                    }
+                });
+    }
+    
+    private CompletableFuture<Void> run(CacheJob job) {
+        Run run = new Run(job);
+        if (running.putIfAbsent(job.getId(), run) != null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<Void> future;
+        try {
+            // 排队期间可能已被取消
+            CacheJob current = cacheJobRepository.findById(job.getId()).orElse(null);
+            if (current == null || !CacheJob.PENDING.equals(current.getStatus())) {
+                future = CompletableFuture.completedFuture(null);
+            } else {
+                writeQueue.execute(() -> cacheJobRepository.updateStatus(job.getId(), CacheJob.RUNNING, null));
+                future = execute(run);
+            }
+        } catch (Exception e) {
+            future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+        }
+        return future.handle((v, e) -> {
+            try {
+                if (e != null) {
+                    Throwable cause = unwrap(e);
+                    log.error("缓存任务出错: {}", job.getId(), cause);
+                    finish(run, CacheJob.FAILED, cause.getMessage());
+                }
+            } finally {
+                running.remove(job.getId());
+            }
+            return null;
+        });
+    }
+    
+    private CompletableFuture<Void> execute(Run run) {
+        CacheJob job = run.job;
+        Book book = bookService.getBookById(job.getBookId());
+        if (book == null) {
+            finish(run, CacheJob.FAILED, "书籍不存在");
+            return CompletableFuture.completedFuture(null);
+        }
+        
+        // 只获取尚未缓存的章节，重启后从中断处继续
+        List<Integer> indexes = bookChapterRepository.findUncachedIndexes(
+                job.getBookId(), job.getStartIndex(), job.getEndIndex());
+        run.indexes = indexes;
+        run.cached.set(job.getTotalCount() - indexes.size());
+        report(run, true);
+        long startTime = System.currentTimeMillis();
+        
+        // 每个通道依次获取章节，通道数即本任务同时获取的章节数
+        AsyncPermits source = sourcePermits.computeIfAbsent(book.getOrigin(), key -> new AsyncPermits(perSource));
+        int lanes = Math.min(perSource, indexes.size());
+        List<CompletableFuture<Void>> futures = new ArrayList<>(lanes);
+        for (int i = 0; i < lanes; i++) {
+            futures.add(lane(book, run, source));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).thenRun(() -> {
+            finish(run, run.cancelled ? CacheJob.CANCELLED : CacheJob.COMPLETED,
+                    run.failed.get() > 0 ? run.failed.get() + "章获取失败" : null);
+            log.info("缓存任务结束: {}, 已缓存{}/{}章, 失败{}章, 耗时{}ms", book.getName(), run.cached.get(),
+                    job.getTotalCount(), run.failed.get(), System.currentTimeMillis() - startTime);
+        });
+    }
+    
+    /**
+     * 取下一个章节，等待书源许可后获取，完成后继续下一个，没有章节或任务取消时结束
+     */
+    private CompletableFuture<Void> lane(Book book, Run run, AsyncPermits source) {
+        Integer index = run.nextIndex();
+        if (index == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return source.acquire()
+                .thenComposeAsync(v -> cacheChapter(book, index, run, 0), cacheJobExecutor)
+                .whenComplete((v, e) -> source.release())
+                .thenApplyAsync(v -> {
+                    report(run, false);
+                    return v;
+                }, cacheJobExecutor)
+                .thenCompose(v -> lane(book, run, source));
+    }
+    
+    /**
+     * 获取一章，失败时由调度器在等待后重试，等待时间每次加倍
+     */
+    private CompletableFuture<Void> cacheChapter(Book book, Integer index, Run run, int attempt) {
+        if (run.cancelled) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return bookService.cacheChapterContent(book.getId(), index)
+                .handle((v, e) -> e)
+                .thenCompose(e -> {
+                    if (e == null) {
+                        run.cached.incrementAndGet();
+                        return CompletableFuture.completedFuture(null);
+                    }
+                    if (attempt >= maxRetries) {
+                        run.failed.incrementAndGet();
+                        log.warn("缓存章节失败: {} 第{}章, {}", book.getName(), index, unwrap(e).getMessage());
+                        return CompletableFuture.completedFuture(null);
+                    }
+                    return delay(retryBackoff << attempt)
+                            .thenComposeAsync(v -> cacheChapter(book, index, run, attempt + 1), cacheJobExecutor);
+                });
+    }
+    
+    private CompletableFuture<Void> delay(long millis) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        taskScheduler.schedule(() -> future.complete(null), Instant.now().plusMillis(millis));
+        return future;
+    }
+    
+    /**
+     * 推送进度，间隔不足时跳过；进度只标记待保存，由 {@link #flushProgress()} 合并写入
+     */
+    private void report(Run run, boolean force) {
+        run.dirty = true;
+        synchronized (run) {
+            long now = System.currentTimeMillis();
+            if (!force && now - run.lastReport < progressInterval) {
+                return;
+            }
+            run.lastReport = now;
+        }
+        publish(run, CacheJob.RUNNING);
+    }
+    
+    /**
+     * 将执行中任务的进度在一次写入中保存，不占用任务线程
+     * 计数只增不减，写入时读取最新的计数，不会覆盖任务结束时保存的进度
+     */
+    @Scheduled(fixedDelayString = "${legado.cache-job.progress-interval-ms:1000}")
+    public void flushProgress() {
+        List<Run> dirty = new ArrayList<>();
+        for (Run run : running.values()) {
+            if (run.dirty) {
+                run.dirty = false;
+                dirty.add(run);
+            }
+        }
+        if (dirty.isEmpty()) {
+            return;
+        }
+        
+        try {
+            writeQueue.run(() -> {
+                for (Run run : dirty) {
+                    cacheJobRepository.updateProgress(run.job.getId(), run.cached.get(), run.failed.get());
+                }
+            });
+        } catch (Exception e) {
+            // 留到下一次保存
+            dirty.forEach(run -> run.dirty = true);
+            log.warn("保存缓存任务进度失败: {}", e.getMessage());
+        }
+    }
+    
+    private void finish(Run run, String status, String message) {
+        writeQueue.run(() -> {
+            cacheJobRepository.updateProgress(run.job.getId(), run.cached.get(), run.failed.get());
+            cacheJobRepository.updateStatus(run.job.getId(), status, message);
+        });
+        publish(run, status);
+    }
+    
+    private void publish(Run run, String status) {
+        CacheJob job = run.job;
+        eventPublisher.publishEvent(new CacheProgressEvent(job.getId(), job.getUsername(), job.getBookId(),
+                status, run.cached.get(), run.failed.get(), job.getTotalCount()));
+    }
+    
+    private void applyProgress(CacheJob job) {
+        Run run = running.get(job.getId());
+        if (run != null) {
+            job.setCachedCount(run.cached.get());
+            job.setFailedCount(run.failed.get());
+        }
+    }
+    
+    private static Throwable unwrap(Throwable e) {
+        return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+    }
+    
+    /**
+     * 一次任务执行的状态
+     */
+    private static final class Run {
+        
+        private final CacheJob job;
+        
+        private final AtomicInteger cached = new AtomicInteger();
+        
+        private final AtomicInteger failed = new AtomicInteger();
+        
+        /**
+         * 待获取的章节索引
+         */
+        private volatile List<Integer> indexes = Collections.emptyList();
+        
+        private final AtomicInteger next = new AtomicInteger();
+        
+        private volatile boolean cancelled;
+        
+        private long lastReport;
+        
+        /**
+         * 进度有变化尚未保存
+         */
+        private volatile boolean dirty;
+        
+        private Run(CacheJob job) {
+            this.job = job;
+        }
+        
+        /**
+         * 下一个待获取的章节，没有章节或任务取消时返回 null
+         */
+        private Integer nextIndex() {
+            int i = next.getAndIncrement();
+            return cancelled || i >= indexes.size() ? null : indexes.get(i);
+        }
+    }
+    
+}
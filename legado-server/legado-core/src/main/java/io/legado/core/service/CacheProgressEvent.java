@@ -0,0 +1,27 @@
+package io.legado.core.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * 章节缓存进度事件，由 WebSocket 推送给创建任务的用户
+ */
+@Data
+@AllArgsConstructor
+public class CacheProgressEvent {
+    
+    private Long jobId;
+    
+    private String username;
+    
+    private Long bookId;
+    
+    private String status;
+    
+    private int cachedCount;
+    
+    private int failedCount;
+    
+    private int totalCount;
+    
+}
@@ -0,0 +1,197 @@
+package io.legado.core.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import io.legado.core.store.ReadProgressBuffer;
+import io.legado.model.entity.BookSource;
+import io.legado.model.repository.BookRepository;
+import io.legado.model.repository.BookSourceRepository;
+import io.legado.model.repository.ReplaceRuleRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * 导出服务
+ * 在只读事务中逐行读取并直接写入输出流，写出后立即从持久化上下文中移除，内存占用与数据量无关
+ */
+@Slf4j
+@Service
+public class ExportService {
+    
+    @Autowired
+    private BookSourceRepository bookSourceRepository;
+    
+    @Autowired
+    private BookRepository bookRepository;
+    
+    @Autowired
+    private ReplaceRuleRepository replaceRuleRepository;
+    
+    @Autowired
+    private ReadProgressBuffer readProgressBuffer;
+    
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    
+    @Autowired
+    private ObjectMapper objectMapper;
+    
+    @PersistenceContext
+    private EntityManager entityManager;
+    
+    private ObjectWriter writer;
+    
+    @PostConstruct
+    public void init() {
+        // 逐条写出时不刷新输出流，由外层缓冲决定何时发送
+        writer = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    }
+    
+    /**
+     * 导出书源，格式与阅读App的书源文件相同，可直接再次导入
+     *
+     * @return 导出的书源数量
+     */
+    public int exportSources(OutputStream out) throws IOException {
+        return export("书源", out, bookSourceRepository::streamAll, this::writeSource);
+    }
+    
+    /**
+     * 导出书籍
+     */
+    public int exportBooks(OutputStream out) throws IOException {
+        // 先写回缓冲中的阅读进度
+        readProgressBuffer.flush();
+        return export("书籍", out, bookRepository::streamAll, writer::writeValue);
+    }
+    
+    /**
+     * 导出替换规则
+     */
+    public int exportReplaceRules(OutputStream out) throws IOException {
+        return export("替换规则", out, replaceRuleRepository::streamAll, writer::writeValue);
+    }
+    
+    private <T> int export(String name, OutputStream out, Supplier<Stream<T>> query,
+                           ItemWriter<T> itemWriter) throws IOException {
+        long startTime = System.currentTimeMillis();
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.setReadOnly(true);
+        
+        JsonGenerator generator = objectMapper.getFactory().createGenerator(out);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        Integer count;
+        try {
+            count = template.execute(status -> {
+                int written = 0;
+                try (Stream<T> stream = query.get()) {
+                    generator.writeStartArray();
+                    Iterator<T> iterator = stream.iterator();
+                    while (iterator.hasNext()) {
+                        T item = iterator.next();
+                        itemWriter.write(generator, item);
+                        entityManager.detach(item);
+                        written++;
+                    }
+                    generator.writeEndArray();
+                    generator.flush();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return written;
+            });
+        } catch (UncheckedIOException e) {
+            log.warn("导出{}中断: {}", name, e.getCause().getMessage());
+            throw e.getCause();
+        }
+        
+        log.info("导出{}: {}条, 耗时{}ms", name, count, System.currentTimeMillis() - startTime);
+        return count != null ? count : 0;
+    }
+    
+    private void writeSource(JsonGenerator generator, BookSource source) throws IOException {
+        generator.writeStartObject();
+        writeString(generator, "bookSourceName", source.getSourceName());
+        writeString(generator, "bookSourceUrl", source.getSourceUrl());
+        writeString(generator, "bookSourceIcon", source.getSourceIcon());
+        writeString(generator, "bookSourceGroup", source.getSourceGroup());
+        generator.writeBooleanField("enabled", !Boolean.FALSE.equals(source.getEnabled()));
+        generator.writeBooleanField("enabledExplore", !Boolean.FALSE.equals(source.getEnabledExplore()));
+        generator.writeNumberField("weight", source.getWeight() != null ? source.getWeight() : 0);
+        generator.writeNumberField("customOrder", source.getCustomOrder() != null ? source.getCustomOrder() : 0);
+        writeString(generator, "loginUrl", source.getLoginUrl());
+        writeString(generator, "loginUi", source.getLoginUi());
+        writeString(generator, "loginCheckJs", source.getLoginCheckJs());
+        writeString(generator, "bookUrlPattern", source.getBookUrlPattern());
+        writeString(generator, "header", source.getHeader());
+        writeString(generator, "concurrentRate", source.getConcurrentRate());
+        writeString(generator, "searchUrl", source.getSearchUrl());
+        writeString(generator, "exploreUrl", source.getExploreUrl());
+        if (source.getLastUpdateTime() != null) {
+            generator.writeNumberField("lastUpdateTime", source.getLastUpdateTime());
+        }
+        if (source.getRespondTime() != null) {
+            generator.writeNumberField("respondTime", source.getRespondTime());
+        }
+        writeRule(generator, "ruleSearch", source.getRuleSearch());
+        writeRule(generator, "ruleBookInfo", source.getRuleBookInfo());
+        writeRule(generator, "ruleToc", source.getRuleToc());
+        writeRule(generator, "ruleContent", source.getRuleContent());
+        writeRule(generator, "ruleReview", source.getRuleReview());
+        writeRule(generator, "contentReplaceRule", source.getContentReplaceRule());
+        writeRule(generator, "ruleExplore", source.getRuleExplore());
+        generator.writeEndObject();
+    }
+    
+    private void writeString(JsonGenerator generator, String field, String value) throws IOException {
+        if (value != null) {
+            generator.writeStringField(field, value);
+        }
+    }
+    
+    /**
+     * 规则以JSON文本保存，导出为JSON对象；不是合法JSON时按字符串导出
+     */
+    private void writeRule(JsonGenerator generator, String field, String rule) throws IOException {
+        if (rule == null) {
+            return;
+        }
+        JsonNode node;
+        try {
+            node = objectMapper.readTree(rule);
+        } catch (IOException e) {
+            node = null;
+        }
+        generator.writeFieldName(field);
+        if (node != null && !node.isMissingNode()) {
+            generator.writeTree(node);
+        } else {
+            generator.writeString(rule);
+        }
+    }
+    
+    /**
+     * 写出单条记录
+     */
+    private interface ItemWriter<T> {
+        
+        void write(JsonGenerator generator, T item) throws IOException;
+    }
+    
+}
@@ -0,0 +1,375 @@
+package io.legado.core.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.legado.core.source.SourceRegistry;
+import io.legado.core.source.SourceStats;
+import io.legado.core.utils.AsyncPermits;
+import io.legado.core.utils.CallGroup;
+import io.legado.model.entity.Book;
+import io.legado.model.entity.BookSource;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 章节预读
+ * 读取第N章后在后台依次获取之后的章节放入章节缓存，预读章节数按阅读速度与书源响应时间调整：
+ * 翻页越快、书源越慢，预读越多。每个书源同时进行的预读请求有上限，书源有阅读请求进行时预读等待，
+ * 预读的书源请求排在阅读请求之后；跳到其他位置时取消进行中的预读请求，从新位置重新开始。
+ * 预读逐章异步进行，等待期间不占用线程。预读按书籍与用户区分
+ */
+@Slf4j
+@Service
+public class ReadaheadService {
+    
+    /**
+     * 阅读间隔的指数加权平均平滑系数
+     */
+    private static final double INTERVAL_ALPHA = 0.5;
+    
+    @Autowired
+    private BookService bookService;
+    
+    @Autowired
+    private SourceRegistry sourceRegistry;
+    
+    @Autowired
+    private SourceStats sourceStats;
+    
+    @Autowired
+    private Executor readaheadExecutor;
+    
+    @Autowired
+    private TaskScheduler taskScheduler;
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    /**
+     * 是否启用预读
+     */
+    @Value("${legado.readahead.enabled:true}")
+    private boolean enabled;
+    
+    /**
+     * 最少预读章节数
+     */
+    @Value("${legado.readahead.min-chapters:1}")
+    private int minChapters;
+    
+    /**
+     * 最多预读章节数
+     */
+    @Value("${legado.readahead.max-chapters:5}")
+    private int maxChapters;
+    
+    /**
+     * 每个书源同时进行的预读请求数
+     */
+    @Value("${legado.readahead.per-source:2}")
+    private int perSource;
+    
+    /**
+     * 等待书源预读许可的超时时间（毫秒），超时后放弃本次预读
+     */
+    @Value("${legado.readahead.permit-timeout-ms:10000}")
+    private long permitTimeout;
+    
+    /**
+     * 阅读状态，一段时间不阅读后移除
+     */
+    private final Cache<String, Session> sessions = Caffeine.newBuilder()
+            .expireAfterAccess(30, TimeUnit.MINUTES)
+            .build();
+    
+    /**
+     * 各书源进行中的阅读请求数
+     */
+    private final Map<String, Reading> reading = new ConcurrentHashMap<>();
+    
+    /**
+     * 各书源的预读许可
+     */
+    private final Map<String, AsyncPermits> permits = new ConcurrentHashMap<>();
+    
+    private Counter prefetched;
+    
+    private Counter cancelled;
+    
+    @PostConstruct
+    public void init() {
+        prefetched = Counter.builder("legado.readahead.chapters")
+                .description("预读的章节数量")
+                .register(meterRegistry);
+        cancelled = Counter.builder("legado.readahead.cancelled")
+                .description("因跳转位置停止的预读次数")
+                .register(meterRegistry);
+    }
+    
+    /**
+     * 获取章节内容并预读之后的章节
+     */
+    public CompletableFuture<String> getChapterContent(Long bookId, Integer chapterIndex, String username) {
+        Book book = enabled ? bookService.getBookById(bookId) : null;
+        if (book == null) {
+            return bookService.getChapterContent(bookId, chapterIndex);
+        }
+        
+        Reading sourceReading = reading.computeIfAbsent(book.getOrigin(), key -> new Reading());
+        sourceReading.start();
+        return bookService.getChapterContent(bookId, chapterIndex).whenComplete((content, e) -> {
+            sourceReading.finish();
+            if (e == null) {
+                schedule(book, chapterIndex, username);
+            }
+        });
+    }
+    
+    /**
+     * 记录阅读位置，并在需要时开始预读
+     */
+    private void schedule(Book book, int chapterIndex, String username) {
+        Session session = sessions.get(book.getId() + ":" + username, key -> new Session());
+        long now = System.currentTimeMillis();
+        long generation;
+        CallGroup group;
+        CallGroup stale = null;
+        synchronized (session) {
+            if (chapterIndex == session.lastIndex + 1 && session.lastReadAt > 0) {
+                long interval = now - session.lastReadAt;
+                session.interval = session.interval > 0
+                        ? session.interval + INTERVAL_ALPHA * (interval - session.interval) : interval;
+            } else if (chapterIndex < session.lastIndex || chapterIndex > session.target) {
+                // 跳到其他位置，停止当前预读
+                if (session.running) {
+                    cancelled.increment();
+                }
+                session.generation++;
+                session.running = false;
+                stale = session.group;
+                session.group = null;
+                session.interval = 0;
+                session.target = -1;
+                session.next = chapterIndex + 1;
+            }
+            session.lastIndex = chapterIndex;
+            session.lastReadAt = now;
+            session.next = Math.max(session.next, chapterIndex + 1);
+            
+            int target = chapterIndex + depth(book, session.interval);
+            if (book.getTotalChapterNum() != null) {
+                target = Math.min(target, book.getTotalChapterNum() - 1);
+            }
+            session.target = Math.max(session.target, target);
+            generation = session.generation;
+            if (session.running || session.next > session.target) {
+                group = null;
+            } else {
+                session.running = true;
+                group = CallGroup.create();
+                session.group = group;
+            }
+        }
+        // 中断旧位置排队中与进行中的预读请求
+        if (stale != null) {
+            stale.cancel();
+        }
+        if (group == null) {
+            return;
+        }
+        
+        try {
+            readaheadExecutor.execute(() -> prefetch(book, session, generation, group));
+        } catch (TaskRejectedException e) {
+            synchronized (session) {
+                if (session.generation == generation) {
+                    session.running = false;
+                }
+            }
+        }
+    }
+    
+    /**
+     * 预读章节数：至少 minChapters，书源响应时间每超过一个阅读间隔多预读一章
+     */
+    private int depth(Book book, double interval) {
+        if (interval <= 0) {
+            return minChapters;
+        }
+        BookSource source = sourceRegistry.findBySourceUrl(book.getOrigin()).orElse(null);
+        long latency = source != null ? sourceStats.getRespondTime(source) : 0;
+        int depth = minChapters + (int) Math.ceil(latency / interval);
+        return Math.max(minChapters, Math.min(maxChapters, depth));
+    }
+    
+    /**
+     * 预读下一章，完成后继续，直到目标位置；位置跳转或预读失败时停止
+     * 书源空闲与预读许可都异步等待，取得许可后回到预读线程池发起加载
+     */
+    private void prefetch(Book book, Session session, long generation, CallGroup group) {
+        int index;
+        synchronized (session) {
+            if (session.generation != generation) {
+                return;
+            }
+            if (session.next > session.target) {
+                session.running = false;
+                return;
+            }
+            index = session.next++;
+        }
+        
+        AsyncPermits sourcePermits = permits.computeIfAbsent(book.getOrigin(), key -> new AsyncPermits(perSource));
+        Reading sourceReading = reading.computeIfAbsent(book.getOrigin(), key -> new Reading());
+        CompletableFuture<Void> acquired = cancelOn(group, sourceReading.idle())
+                .thenCompose(v -> cancelOn(group, withTimeout(sourcePermits.acquire())));
+        acquired.thenComposeAsync(v -> bookService.prefetchChapterContent(book.getId(), index, group), readaheadExecutor)
+                .whenComplete((v, e) -> {
+                    // 许可等待超时或取消时未取得许可
+                    if (!acquired.isCompletedExceptionally()) {
+                        sourcePermits.release();
+                    }
+                    if (e != null) {
+                        Throwable cause = unwrap(e);
+                        if (!(cause instanceof CancellationException)) {
+                            log.debug("预读章节失败: {} 第{}章, {}", book.getName(), index, cause.getMessage());
+                        }
+                        stop(session, generation);
+                        return;
+                    }
+                    prefetched.increment();
+                    prefetch(book, session, generation, group);
+                });
+    }
+    
+    /**
+     * 取消请求组时取消等待
+     */
+    private static <T> CompletableFuture<T> cancelOn(CallGroup group, CompletableFuture<T> future) {
+        if (!future.isDone()) {
+            group.onCancel(() -> future.cancel(false));
+        }
+        return future;
+    }
+    
+    /**
+     * 超过 permitTimeout 仍未取得许可时取消等待
+     */
+    private CompletableFuture<Void> withTimeout(CompletableFuture<Void> future) {
+        if (!future.isDone()) {
+            ScheduledFuture<?> timeout = taskScheduler.schedule(() -> future.cancel(false),
+                    Instant.now().plusMillis(permitTimeout));
+            future.whenComplete((v, e) -> timeout.cancel(false));
+        }
+        return future;
+    }
+    
+    private void stop(Session session, long generation) {
+        synchronized (session) {
+            if (session.generation == generation) {
+                session.running = false;
+            }
+        }
+    }
+    
+    private static Throwable unwrap(Throwable e) {
+        return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+    }
+    
+    /**
+     * 一个书源进行中的阅读请求，全部结束时通知等待的预读
+     */
+    private static final class Reading {
+        
+        private final List<CompletableFuture<Void>> idle = new ArrayList<>();
+        
+        private int count;
+        
+        synchronized void start() {
+            count++;
+        }
+        
+        void finish() {
+            List<CompletableFuture<Void>> waiters;
+            synchronized (this) {
+                if (--count > 0) {
+                    return;
+                }
+                waiters = new ArrayList<>(idle);
+                idle.clear();
+            }
+            for (CompletableFuture<Void> waiter : waiters) {
+                waiter.complete(null);
+            }
+        }
+        
+        /**
+         * 没有阅读请求时完成
+         */
+        synchronized CompletableFuture<Void> idle() {
+            if (count == 0) {
+                return CompletableFuture.completedFuture(null);
+            }
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            idle.add(future);
+            return future;
+        }
+    }
+    
+    /**
+     * 一个用户阅读一本书的状态
+     */
+    private static final class Session {
+        
+        private int lastIndex = -1;
+        
+        private long lastReadAt;
+        
+        /**
+         * 顺序阅读的平均间隔（毫秒），0表示尚未得到
+         */
+        private double interval;
+        
+        /**
+         * 预读到的位置（含）
+         */
+        private int target = -1;
+        
+        /**
+         * 下一个预读的章节
+         */
+        private int next;
+        
+        /**
+         * 位置跳转时加一，旧的预读任务随之停止
+         */
+        private volatile long generation;
+        
+        private boolean running;
+        
+        /**
+         * 当前预读的请求组，位置跳转时取消
+         */
+        private CallGroup group;
+    }
+    
+}
@@ -0,0 +1,14 @@
+package io.legado.core.source;
+
+import java.io.IOException;
+
+/**
+ * 熔断中，请求未发出
+ */
+public class CircuitOpenException extends IOException {
+    
+    public CircuitOpenException(String host) {
+        super("站点 " + host + " 连续请求失败，已暂停访问");
+    }
+    
+}
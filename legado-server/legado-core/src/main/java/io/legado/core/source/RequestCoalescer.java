@@ -0,0 +1,88 @@
+package io.legado.core.source;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * 书源请求合并
+ * 同一类型、同一键的异步加载同时只执行一次：第一个调用方发起加载，
+ * 加载期间到达的调用方共用其结果或异常，避免多个设备同时打开新章节时重复请求书源与重复写入
+ */
+@Component
+public class RequestCoalescer {
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    private final Map<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    
+    private final Map<String, Counter> coalescedCounters = new ConcurrentHashMap<>();
+    
+    private final AtomicInteger waiting = new AtomicInteger();
+    
+    @PostConstruct
+    public void init() {
+        Gauge.builder("legado.source.inflight", inFlight, Map::size)
+                .description("进行中的合并加载数量")
+                .register(meterRegistry);
+        Gauge.builder("legado.source.coalesced.waiting", waiting, AtomicInteger::get)
+                .description("正在等待合并加载结果的调用方数量")
+                .register(meterRegistry);
+    }
+    
+    /**
+     * 执行加载，相同类型与键的加载正在进行时共用其结果
+     * 加载方同步抛出的异常同样以失败的结果返回
+     *
+     * @param type 加载类型，用于区分键与指标
+     */
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> execute(String type, Object key, Supplier<CompletableFuture<T>> loader) {
+        String flightKey = type + ":" + key;
+        CompletableFuture<Object> flight = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(flightKey, flight);
+        if (existing != null) {
+            return (CompletableFuture<T>) await(type, existing);
+        }
+        
+        CompletableFuture<T> loaded;
+        try {
+            loaded = loader.get();
+        } catch (RuntimeException | Error e) {
+            loaded = new CompletableFuture<>();
+            loaded.completeExceptionally(e);
+        }
+        loaded.whenComplete((value, e) -> {
+            inFlight.remove(flightKey, flight);
+            if (e != null) {
+                // 与加载方得到相同的异常
+                flight.completeExceptionally(e instanceof CompletionException && e.getCause() != null
+                        ? e.getCause() : e);
+            } else {
+                flight.complete(value);
+            }
+        });
+        return (CompletableFuture<T>) (CompletableFuture<?>) flight;
+    }
+    
+    private CompletableFuture<Object> await(String type, CompletableFuture<Object> flight) {
+        coalescedCounters.computeIfAbsent(type, key -> Counter.builder("legado.source.coalesced")
+                .description("等待其他调用方加载结果、未重复加载的次数")
+                .tag("type", key)
+                .register(meterRegistry)).increment();
+        waiting.incrementAndGet();
+        return flight.whenComplete((value, e) -> waiting.decrementAndGet());
+    }
+    
+}
@@ -0,0 +1,264 @@
+package io.legado.core.source;
+
+import io.legado.core.dto.CircuitBreakerStatusDto;
+import io.legado.core.utils.HttpStatusException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.HttpUrl;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 站点熔断
+ * 按站点（主机:端口）统计连续失败，达到阈值后暂停访问该站点，请求直接失败而不是等待超时；
+ * 暂停期满后放行一个试探请求，成功则恢复，失败则加倍暂停时间
+ */
+@Slf4j
+@Component
+public class SourceCircuitBreaker {
+    
+    /**
+     * 熔断状态
+     */
+    public enum State {
+        
+        /**
+         * 正常访问
+         */
+        CLOSED,
+        
+        /**
+         * 暂停访问
+         */
+        OPEN,
+        
+        /**
+         * 试探请求进行中
+         */
+        HALF_OPEN
+    }
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    /**
+     * 连续失败达到该次数后暂停访问
+     */
+    @Value("${legado.source.breaker.failure-threshold:5}")
+    private int failureThreshold;
+    
+    /**
+     * 首次暂停访问的时间（毫秒）
+     */
+    @Value("${legado.source.breaker.open-ms:30000}")
+    private long openMillis;
+    
+    /**
+     * 试探失败后暂停时间加倍，最长不超过该值（毫秒）
+     */
+    @Value("${legado.source.breaker.max-open-ms:600000}")
+    private long maxOpenMillis;
+    
+    private final Map<String, Breaker> breakers = new ConcurrentHashMap<>();
+    
+    private Counter rejected;
+    
+    @PostConstruct
+    public void init() {
+        Gauge.builder("legado.source.breaker.open", this, SourceCircuitBreaker::countOpen)
+                .description("暂停访问的站点数量")
+                .register(meterRegistry);
+        rejected = Counter.builder("legado.source.breaker.rejected")
+                .description("因熔断未发出的请求数量")
+                .register(meterRegistry);
+    }
+    
+    /**
+     * 检查是否允许访问，暂停访问时抛出异常
+     */
+    public void checkRequest(String url) throws CircuitOpenException {
+        String host = hostOf(url);
+        Breaker breaker = breakers.get(host);
+        if (breaker != null && !breaker.allowRequest()) {
+            rejected.increment();
+            throw new CircuitOpenException(host);
+        }
+    }
+    
+    /**
+     * 记录请求成功
+     */
+    public void onSuccess(String url) {
+        Breaker breaker = breakers.get(hostOf(url));
+        if (breaker != null) {
+            breaker.onSuccess();
+        }
+    }
+    
+    /**
+     * 记录请求失败，只有说明站点不可用的异常才计入
+     */
+    public void onFailure(String url, Throwable e) {
+        if (!isFailure(e)) {
+            return;
+        }
+        String host = hostOf(url);
+        breakers.computeIfAbsent(host, Breaker::new).onFailure();
+    }
+    
+    /**
+     * 各站点的熔断状态
+     */
+    public List<CircuitBreakerStatusDto> getStatus() {
+        List<CircuitBreakerStatusDto> result = new ArrayList<>();
+        for (Breaker breaker : breakers.values()) {
+            CircuitBreakerStatusDto dto = new CircuitBreakerStatusDto();
+            dto.setHost(breaker.host);
+            synchronized (breaker) {
+                dto.setState(breaker.state.name());
+                dto.setConsecutiveFailures(breaker.failures);
+                dto.setOpenedAt(breaker.state == State.CLOSED ? null : breaker.openedAt);
+                dto.setRetryAt(breaker.state == State.CLOSED ? null : breaker.retryAt);
+            }
+            result.add(dto);
+        }
+        return result;
+    }
+    
+    /**
+     * 手动恢复站点的访问
+     *
+     * @return 站点是否存在熔断记录
+     */
+    public boolean reset(String host) {
+        Breaker breaker = breakers.remove(host);
+        if (breaker != null) {
+            log.info("手动恢复站点访问: {}", host);
+        }
+        return breaker != null;
+    }
+    
+    /**
+     * 是否为说明站点不可用的异常：连接失败、超时、5xx、403、429
+     */
+    static boolean isFailure(Throwable e) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        if (cause instanceof CircuitOpenException) {
+            return false;
+        }
+        if (cause instanceof HttpStatusException) {
+            int code = ((HttpStatusException) cause).getCode();
+            return code >= 500 || code == 403 || code == 429;
+        }
+        return cause instanceof IOException;
+    }
+    
+    /**
+     * 站点标识（主机:端口），无法解析时使用原始地址
+     */
+    static String hostOf(String url) {
+        HttpUrl httpUrl = url != null ? HttpUrl.parse(url) : null;
+        if (httpUrl == null) {
+            return String.valueOf(url);
+        }
+        return httpUrl.host() + ":" + httpUrl.port();
+    }
+    
+    private double countOpen() {
+        int count = 0;
+        for (Breaker breaker : breakers.values()) {
+            synchronized (breaker) {
+                if (breaker.state != State.CLOSED) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+    
+    /**
+     * 单个站点的熔断器
+     */
+    private final class Breaker {
+        
+        private final String host;
+        
+        private State state = State.CLOSED;
+        
+        private int failures;
+        
+        private long openedAt;
+        
+        private long retryAt;
+        
+        /**
+         * 本次暂停访问的时长
+         */
+        private long openDuration = openMillis;
+        
+        private Breaker(String host) {
+            this.host = host;
+        }
+        
+        synchronized boolean allowRequest() {
+            long now = System.currentTimeMillis();
+            switch (state) {
+                case OPEN:
+                    if (now < retryAt) {
+                        return false;
+                    }
+                    state = State.HALF_OPEN;
+                    retryAt = now + openMillis;
+                    return true;
+                case HALF_OPEN:
+                    // 试探请求没有结果（如被取消）时，超过暂停时间后再放行一个
+                    if (now < retryAt) {
+                        return false;
+                    }
+                    retryAt = now + openMillis;
+                    return true;
+                default:
+                    return true;
+            }
+        }
+        
+        synchronized void onSuccess() {
+            if (state != State.CLOSED) {
+                log.info("站点恢复访问: {}", host);
+            }
+            state = State.CLOSED;
+            failures = 0;
+            openDuration = openMillis;
+        }
+        
+        synchronized void onFailure() {
+            failures++;
+            long now = System.currentTimeMillis();
+            if (state == State.HALF_OPEN) {
+                openDuration = Math.min(openDuration * 2, maxOpenMillis);
+                open(now);
+            } else if (state == State.CLOSED && failures >= failureThreshold) {
+                open(now);
+            }
+        }
+        
+        private void open(long now) {
+            state = State.OPEN;
+            openedAt = now;
+            retryAt = now + openDuration;
+            log.warn("站点 {} 连续失败{}次，暂停访问{}ms", host, failures, openDuration);
+        }
+    }
+    
+}
@@ -0,0 +1,275 @@
+package io.legado.core.source;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.legado.core.booksource.rule.RulePlanCache;
+import io.legado.core.dto.SourceImportErrorDto;
+import io.legado.core.dto.SourceImportResultDto;
+import io.legado.core.store.WriteQueue;
+import io.legado.model.entity.BookSource;
+import io.legado.model.repository.BookSourceRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 书源导入
+ * 按 JSON 流逐个读取并转换书源，不把整个文件读入内存；每读满一批按书源URL与已有书源对比，
+ * 新书源插入，更新时间更晚的覆盖已有书源，其余跳过。单个书源出错只记录该条目
+ */
+@Slf4j
+@Component
+public class SourceImporter {
+    
+    private static final TypeReference<Map<String, Object>> MAP_TYPE = new TypeReference<Map<String, Object>>() {};
+    
+    /**
+     * 覆盖已有书源时保留的字段
+     */
+    private static final String[] KEEP_ON_UPDATE = {"id", "respondTime", "createdAt", "updatedAt"};
+    
+    @Autowired
+    private BookSourceRepository bookSourceRepository;
+    
+    @Autowired
+    private RulePlanCache rulePlanCache;
+    
+    @Autowired
+    private WriteQueue writeQueue;
+    
+    @Autowired
+    private SourceRegistry sourceRegistry;
+    
+    /**
+     * 每批写入的书源数量
+     */
+    @Value("${legado.source.import.batch-size:500}")
+    private int batchSize;
+    
+    /**
+     * 结果中最多保留的错误条目数
+     */
+    @Value("${legado.source.import.max-errors:100}")
+    private int maxErrors;
+    
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    
+    /**
+     * 导入书源，支持书源数组或单个书源
+     *
+     * @throws IOException 读取失败且没有读到任何书源
+     */
+    public SourceImportResultDto importFrom(InputStream in) throws IOException {
+        long startTime = System.currentTimeMillis();
+        SourceImportResultDto result = new SourceImportResultDto();
+        Map<String, BookSource> batch = new LinkedHashMap<>();
+        try (JsonParser parser = objectMapper.getFactory().createParser(in)) {
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.START_OBJECT) {
+                readSource(parser, 0, batch, result);
+            } else if (token == JsonToken.START_ARRAY) {
+                int index = 0;
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    if (parser.currentToken() == JsonToken.START_OBJECT) {
+                        readSource(parser, index, batch, result);
+                    } else {
+                        parser.skipChildren();
+                        result.setTotal(result.getTotal() + 1);
+                        fail(result, new SourceImportErrorDto(index, null, null, "不是书源对象"));
+                    }
+                    index++;
+                    if (batch.size() >= batchSize) {
+                        save(batch, result);
+                        log.debug("导入书源: 已读取{}个", result.getTotal());
+                    }
+                }
+            } else {
+                throw new JsonParseException(parser, "不是书源数组或书源对象");
+            }
+            result.setCompleted(true);
+        } catch (IOException e) {
+            if (result.getTotal() == 0) {
+                throw e;
+            }
+            // 已读取的书源照常保存
+            String message = e instanceof JsonProcessingException
+                    ? "JSON格式错误: " + ((JsonProcessingException) e).getOriginalMessage()
+                    : "读取失败: " + e.getMessage();
+            addError(result, new SourceImportErrorDto(-1, null, null, message));
+        }
+        
+        if (!batch.isEmpty()) {
+            save(batch, result);
+        }
+        log.info("导入书源完成: 共{}个, 新增{}, 更新{}, 跳过{}, 失败{}, 耗时{}ms", result.getTotal(),
+                result.getInserted(), result.getUpdated(), result.getSkipped(), result.getFailed(),
+                System.currentTimeMillis() - startTime);
+        return result;
+    }
+    
+    /**
+     * 读取当前位置的书源对象
+     */
+    private void readSource(JsonParser parser, int index, Map<String, BookSource> batch,
+                            SourceImportResultDto result) throws IOException {
+        Map<String, Object> raw = objectMapper.readValue(parser, MAP_TYPE);
+        result.setTotal(result.getTotal() + 1);
+        
+        BookSource source;
+        try {
+            source = convertToBookSource(raw);
+        } catch (RuntimeException e) {
+            fail(result, new SourceImportErrorDto(index, text(raw.get("bookSourceName")),
+                    text(raw.get("bookSourceUrl")), "字段类型错误: " + e.getMessage()));
+            return;
+        }
+        if (source.getSourceUrl() == null || source.getSourceUrl().trim().isEmpty()) {
+            fail(result, new SourceImportErrorDto(index, source.getSourceName(), null, "缺少书源URL"));
+            return;
+        }
+        
+        // 文件中重复的书源保留更新时间较晚的一个
+        BookSource previous = batch.get(source.getSourceUrl());
+        if (previous != null) {
+            result.setSkipped(result.getSkipped() + 1);
+            if (!isNewer(source, previous)) {
+                return;
+            }
+        }
+        batch.put(source.getSourceUrl(), source);
+    }
+    
+    /**
+     * 按书源URL写入一批书源
+     */
+    private void save(Map<String, BookSource> batch, SourceImportResultDto result) {
+        List<Long> updatedIds = new ArrayList<>();
+        try {
+            writeQueue.run(() -> {
+                Map<String, BookSource> existing = new HashMap<>();
+                for (BookSource source : bookSourceRepository.findBySourceUrlIn(batch.keySet())) {
+                    existing.merge(source.getSourceUrl(), source, (a, b) -> a.getId() <= b.getId() ? a : b);
+                }
+                
+                List<BookSource> inserts = new ArrayList<>();
+                List<BookSource> changed = new ArrayList<>();
+                updatedIds.clear();
+                for (BookSource source : batch.values()) {
+                    BookSource current = existing.get(source.getSourceUrl());
+                    if (current == null) {
+                        inserts.add(source);
+                    } else if (isNewer(source, current)) {
+                        // 已加载的书源在事务提交时写回
+                        BeanUtils.copyProperties(source, current, KEEP_ON_UPDATE);
+                        updatedIds.add(current.getId());
+                        changed.add(current);
+                    }
+                }
+                changed.addAll(bookSourceRepository.saveAll(inserts));
+                sourceRegistry.onSaved(changed);
+            });
+        } catch (RuntimeException e) {
+            log.warn("保存书源失败: {}个, {}", batch.size(), e.getMessage());
+            for (BookSource source : batch.values()) {
+                addError(result, new SourceImportErrorDto(-1, source.getSourceName(), source.getSourceUrl(),
+                        "保存失败: " + e.getMessage()));
+            }
+            result.setFailed(result.getFailed() + batch.size());
+            batch.clear();
+            return;
+        }
+        
+        updatedIds.forEach(rulePlanCache::invalidate);
+        int inserted = 0;
+        for (BookSource source : batch.values()) {
+            if (source.getId() != null) {
+                inserted++;
+            }
+        }
+        result.setInserted(result.getInserted() + inserted);
+        result.setUpdated(result.getUpdated() + updatedIds.size());
+        result.setSkipped(result.getSkipped() + batch.size() - inserted - updatedIds.size());
+        batch.clear();
+    }
+    
+    /**
+     * 导入的书源是否比已有书源新，缺少更新时间时视为更新
+     */
+    private boolean isNewer(BookSource source, BookSource current) {
+        return source.getLastUpdateTime() == null || current.getLastUpdateTime() == null
+                || source.getLastUpdateTime() > current.getLastUpdateTime();
+    }
+    
+    private String text(Object value) {
+        return value != null ? value.toString() : null;
+    }
+    
+    private void fail(SourceImportResultDto result, SourceImportErrorDto error) {
+        result.setFailed(result.getFailed() + 1);
+        addError(result, error);
+    }
+    
+    private void addError(SourceImportResultDto result, SourceImportErrorDto error) {
+        if (result.getErrors().size() < maxErrors) {
+            result.getErrors().add(error);
+        }
+    }
+    
+    private BookSource convertToBookSource(Map<String, Object> raw) {
+        BookSource source = new BookSource();
+        
+        source.setSourceName((String) raw.getOrDefault("bookSourceName", ""));
+        source.setSourceUrl((String) raw.getOrDefault("bookSourceUrl", ""));
+        source.setSourceIcon((String) raw.get("bookSourceIcon"));
+        source.setSourceGroup((String) raw.get("bookSourceGroup"));
+        source.setEnabled(raw.get("enabled") != null ? (Boolean) raw.get("enabled") : true);
+        source.setEnabledExplore(raw.get("enabledExplore") != null ? (Boolean) raw.get("enabledExplore") : true);
+        source.setWeight(raw.get("weight") != null ? ((Number) raw.get("weight")).intValue() : 0);
+        source.setCustomOrder(raw.get("customOrder") != null ? ((Number) raw.get("customOrder")).intValue() : 0);
+        source.setLoginUrl((String) raw.get("loginUrl"));
+        source.setLoginUi((String) raw.get("loginUi"));
+        source.setLoginCheckJs((String) raw.get("loginCheckJs"));
+        source.setBookUrlPattern((String) raw.get("bookUrlPattern"));
+        source.setHeader((String) raw.get("header"));
+        source.setConcurrentRate(raw.get("concurrentRate") != null ? String.valueOf(raw.get("concurrentRate")) : null);
+        source.setSearchUrl((String) raw.get("searchUrl"));
+        source.setExploreUrl((String) raw.get("exploreUrl"));
+        source.setLastUpdateTime(raw.get("lastUpdateTime") != null ? ((Number) raw.get("lastUpdateTime")).longValue() : null);
+        source.setRespondTime(raw.get("respondTime") != null ? ((Number) raw.get("respondTime")).longValue() : null);
+        
+        source.setRuleSearch(serializeField(raw.get("ruleSearch")));
+        source.setRuleBookInfo(serializeField(raw.get("ruleBookInfo")));
+        source.setRuleToc(serializeField(raw.get("ruleToc")));
+        source.setRuleContent(serializeField(raw.get("ruleContent")));
+        source.setRuleReview(serializeField(raw.get("ruleReview")));
+        source.setContentReplaceRule(serializeField(raw.get("contentReplaceRule")));
+        source.setRuleExplore(serializeField(raw.get("ruleExplore")));
+        
+        return source;
+    }
+    
+    private String serializeField(Object field) {
+        if (field == null) return null;
+        try {
+            return objectMapper.writeValueAsString(field);
+        } catch (IOException e) {
+            log.warn("序列化字段失败", e);
+            return null;
+        }
+    }
+    
+}
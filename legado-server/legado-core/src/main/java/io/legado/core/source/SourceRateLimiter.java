@@ -0,0 +1,365 @@
+package io.legado.core.source;
+
+import io.legado.core.dto.SourceRateStatusDto;
+import io.legado.model.entity.BookSource;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 书源并发率限制
+ * 对应App AnalyzeUrl 的 fetchStart/fetchEnd，支持 "间隔毫秒" 与 "次数/毫秒" 两种写法；
+ * 超出限制的请求进入书源的等待队列，由调度器在可以访问时放行，等待期间不占用工作线程；
+ * 预读等后台请求使用单独的低优先级队列，只在没有阅读请求等待时放行
+ */
+@Slf4j
+@Component
+public class SourceRateLimiter {
+    
+    @Autowired
+    private TaskScheduler taskScheduler;
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    private final Map<String, Limiter> limiters = new ConcurrentHashMap<>();
+    
+    @PostConstruct
+    public void init() {
+        Gauge.builder("legado.source.rate.queued", this, SourceRateLimiter::totalQueued)
+                .description("等待并发率许可的请求数量")
+                .register(meterRegistry);
+    }
+    
+    /**
+     * 申请访问许可
+     * 不受限制时立即完成，否则在可以访问时完成；取消返回的Future会将请求移出等待队列。
+     * 访问结束后必须调用 {@link Permit#release()}
+     */
+    public CompletableFuture<Permit> acquire(BookSource source) {
+        return acquire(source, false);
+    }
+    
+    /**
+     * 申请访问许可，background 为 true 时排在所有阅读请求之后
+     */
+    public CompletableFuture<Permit> acquire(BookSource source, boolean background) {
+        Rate rate = Rate.parse(source.getConcurrentRate());
+        if (rate == null) {
+            limiters.remove(source.getSourceUrl());
+            return CompletableFuture.completedFuture(Permit.NONE);
+        }
+        
+        // 并发率修改后使用新的限制，旧的等待队列照常放行
+        Limiter limiter = limiters.compute(source.getSourceUrl(),
+                (key, old) -> old != null && old.rate.equals(rate) ? old : new Limiter(rate));
+        return limiter.acquire(background);
+    }
+    
+    /**
+     * 将等待中的后台请求提升为阅读请求，用于阅读请求合并到了预读请求上
+     */
+    public void prioritize(BookSource source, CompletableFuture<Permit> request) {
+        Limiter limiter = limiters.get(source.getSourceUrl());
+        if (limiter != null) {
+            limiter.prioritize(request);
+        }
+    }
+    
+    /**
+     * 各书源的并发率状态
+     */
+    public List<SourceRateStatusDto> getStatus() {
+        List<SourceRateStatusDto> result = new ArrayList<>();
+        limiters.forEach((sourceUrl, limiter) -> {
+            SourceRateStatusDto dto = new SourceRateStatusDto();
+            dto.setSourceUrl(sourceUrl);
+            dto.setConcurrentRate(limiter.rate.toString());
+            synchronized (limiter) {
+                dto.setQueued(limiter.queued());
+                dto.setInFlight(limiter.inFlight);
+            }
+            result.add(dto);
+        });
+        return result;
+    }
+    
+    private double totalQueued() {
+        int total = 0;
+        for (Limiter limiter : limiters.values()) {
+            synchronized (limiter) {
+                total += limiter.queued();
+            }
+        }
+        return total;
+    }
+    
+    /**
+     * 访问许可
+     */
+    public static class Permit {
+        
+        /**
+         * 不受并发率限制的许可
+         */
+        static final Permit NONE = new Permit(null);
+        
+        private final Limiter limiter;
+        
+        private final AtomicBoolean released = new AtomicBoolean();
+        
+        private Permit(Limiter limiter) {
+            this.limiter = limiter;
+        }
+        
+        /**
+         * 访问结束，重复调用无效
+         */
+        public void release() {
+            if (limiter != null && released.compareAndSet(false, true)) {
+                limiter.release();
+            }
+        }
+    }
+    
+    /**
+     * 单个书源的限制器
+     * 锁内只做计数与出入队，放行等待的请求在锁外进行
+     */
+    private final class Limiter {
+        
+        private final Rate rate;
+        
+        private final Deque<CompletableFuture<Permit>> queue = new ArrayDeque<>();
+        
+        /**
+         * 后台请求的等待队列
+         */
+        private final Deque<CompletableFuture<Permit>> background = new ArrayDeque<>();
+        
+        /**
+         * 间隔模式为上次访问的开始时间，次数模式为当前计数周期的开始时间
+         */
+        private long time;
+        
+        /**
+         * 当前计数周期内的访问次数
+         */
+        private int count;
+        
+        private int inFlight;
+        
+        private ScheduledFuture<?> drainTask;
+        
+        private Limiter(Rate rate) {
+            this.rate = rate;
+        }
+        
+        CompletableFuture<Permit> acquire(boolean lowPriority) {
+            CompletableFuture<Permit> future = new CompletableFuture<>();
+            boolean granted = false;
+            synchronized (this) {
+                long now = System.currentTimeMillis();
+                if (queue.isEmpty() && (!lowPriority || background.isEmpty()) && waitTime(now) == 0) {
+                    take(now);
+                    granted = true;
+                } else {
+                    (lowPriority ? background : queue).add(future);
+                    schedule(waitTime(now));
+                }
+            }
+            if (granted) {
+                future.complete(new Permit(this));
+            }
+            return future;
+        }
+        
+        void release() {
+            synchronized (this) {
+                inFlight--;
+            }
+            drain();
+        }
+        
+        void prioritize(CompletableFuture<Permit> request) {
+            synchronized (this) {
+                if (!background.remove(request)) {
+                    return;
+                }
+                queue.add(request);
+            }
+            drain();
+        }
+        
+        /**
+         * 放行可以访问的请求，其余的等待下一次调度
+         */
+        void drain() {
+            List<CompletableFuture<Permit>> ready = new ArrayList<>();
+            synchronized (this) {
+                drainTask = null;
+                long now = System.currentTimeMillis();
+                // 阅读请求排空后才放行后台请求
+                Deque<CompletableFuture<Permit>> next;
+                while ((next = !queue.isEmpty() ? queue : background).peek() != null) {
+                    // 已取消的请求直接移出队列
+                    if (next.peek().isDone()) {
+                        next.poll();
+                        continue;
+                    }
+                    long wait = waitTime(now);
+                    if (wait != 0) {
+                        schedule(wait);
+                        break;
+                    }
+                    take(now);
+                    ready.add(next.poll());
+                }
+            }
+            for (CompletableFuture<Permit> future : ready) {
+                Permit permit = new Permit(this);
+                if (!future.complete(permit)) {
+                    // 放行时恰好被取消
+                    permit.release();
+                }
+            }
+        }
+        
+        /**
+         * 距离可以访问的时间，-1表示要等正在进行的访问结束
+         */
+        private long waitTime(long now) {
+            if (rate.windowed) {
+                if (now >= time + rate.period || count < rate.count) {
+                    return 0;
+                }
+                return time + rate.period - now;
+            }
+            if (inFlight > 0) {
+                return -1;
+            }
+            return Math.max(0, time + rate.period - now);
+        }
+        
+        private void take(long now) {
+            if (rate.windowed) {
+                if (now >= time + rate.period) {
+                    time = now;
+                    count = 0;
+                }
+                count++;
+            } else {
+                time = now;
+            }
+            inFlight++;
+        }
+        
+        /**
+         * 每个书源最多只有一个待执行的调度，要等正在进行的访问结束时由 release 触发
+         */
+        private void schedule(long wait) {
+            if (wait < 0 || drainTask != null) {
+                return;
+            }
+            drainTask = taskScheduler.schedule(this::drain, Instant.now().plusMillis(Math.max(wait, 1)));
+        }
+        
+        private int queued() {
+            return pending(queue) + pending(background);
+        }
+        
+        private int pending(Deque<CompletableFuture<Permit>> futures) {
+            int pending = 0;
+            for (CompletableFuture<Permit> future : futures) {
+                if (!future.isDone()) {
+                    pending++;
+                }
+            }
+            return pending;
+        }
+    }
+    
+    /**
+     * 解析后的并发率
+     */
+    static final class Rate {
+        
+        /**
+         * 是否为 次数/毫秒 的写法
+         */
+        final boolean windowed;
+        
+        final int count;
+        
+        final long period;
+        
+        private Rate(boolean windowed, int count, long period) {
+            this.windowed = windowed;
+            this.count = count;
+            this.period = period;
+        }
+        
+        /**
+         * 解析并发率，为空、0或格式错误时不限制
+         */
+        static Rate parse(String concurrentRate) {
+            if (concurrentRate == null || concurrentRate.trim().isEmpty() || "0".equals(concurrentRate.trim())) {
+                return null;
+            }
+            
+            String rate = concurrentRate.trim();
+            try {
+                int index = rate.indexOf('/');
+                if (index > 0) {
+                    int count = Integer.parseInt(rate.substring(0, index).trim());
+                    long period = Long.parseLong(rate.substring(index + 1).trim());
+                    return count > 0 && period > 0 ? new Rate(true, count, period) : null;
+                }
+                long period = Long.parseLong(rate);
+                return period > 0 ? new Rate(false, 1, period) : null;
+            } catch (NumberFormatException e) {
+                log.debug("并发率格式错误: {}", concurrentRate);
+                return null;
+            }
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Rate)) {
+                return false;
+            }
+            Rate other = (Rate) o;
+            return windowed == other.windowed && count == other.count && period == other.period;
+        }
+        
+        @Override
+        public int hashCode() {
+            return Objects.hash(windowed, count, period);
+        }
+        
+        @Override
+        public String toString() {
+            return windowed ? count + "/" + period : String.valueOf(period);
+        }
+    }
+    
+}
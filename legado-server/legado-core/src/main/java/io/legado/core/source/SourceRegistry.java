@@ -0,0 +1,219 @@
+package io.legado.core.source;
+
+import io.legado.model.entity.BookSource;
+import io.legado.model.repository.BookSourceRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * 启用书源注册表
+ * 启动时加载所有启用的书源，保存为不可变快照，按ID、书源URL与分组建立索引；
+ * 书源修改后复制一份新快照并整体替换（写时复制），读取无锁，搜索与获取章节不再查询数据库。
+ * 快照中的书源由所有线程共享，调用方不能修改；未启用的书源不在快照中，按URL获取时查询数据库
+ */
+@Slf4j
+@Component
+public class SourceRegistry {
+    
+    /**
+     * 书源分组的分隔符，与阅读App相同
+     */
+    private static final String GROUP_SEPARATOR = "[,;，；]";
+    
+    private static final Comparator<BookSource> WEIGHT_ORDER = Comparator
+            .comparing((BookSource source) -> source.getWeight() != null ? source.getWeight() : 0)
+            .reversed()
+            .thenComparing(BookSource::getId);
+    
+    @Autowired
+    private BookSourceRepository bookSourceRepository;
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    private volatile Snapshot snapshot = new Snapshot(Collections.emptyList());
+    
+    @PostConstruct
+    public void init() {
+        reload();
+        Gauge.builder("legado.source.registry.size", this, registry -> registry.snapshot.enabled.size())
+                .description("注册表中启用的书源数量")
+                .register(meterRegistry);
+    }
+    
+    /**
+     * 从数据库重新加载所有启用的书源
+     */
+    public synchronized void reload() {
+        long startTime = System.currentTimeMillis();
+        snapshot = new Snapshot(bookSourceRepository.findByEnabledTrueOrderByWeightDesc());
+        log.info("加载书源注册表: {}个启用的书源, 耗时{}ms", snapshot.enabled.size(),
+                System.currentTimeMillis() - startTime);
+    }
+    
+    /**
+     * 所有启用的书源，按权重倒序
+     */
+    public List<BookSource> getEnabled() {
+        return snapshot.enabled;
+    }
+    
+    /**
+     * 分组中启用的书源，按权重倒序
+     */
+    public List<BookSource> getByGroup(String group) {
+        return snapshot.byGroup.getOrDefault(group, Collections.emptyList());
+    }
+    
+    /**
+     * 所有启用书源的分组
+     */
+    public Collection<String> getGroups() {
+        return snapshot.byGroup.keySet();
+    }
+    
+    /**
+     * 按ID获取启用的书源
+     */
+    public BookSource getById(Long id) {
+        return snapshot.byId.get(id);
+    }
+    
+    /**
+     * 按书源URL获取书源，未启用的书源查询数据库
+     */
+    public Optional<BookSource> findBySourceUrl(String sourceUrl) {
+        BookSource source = snapshot.byUrl.get(sourceUrl);
+        return source != null ? Optional.of(source) : bookSourceRepository.findBySourceUrl(sourceUrl);
+    }
+    
+    /**
+     * 按书源URL获取多个启用的书源，顺序与参数相同，不存在或未启用的书源被忽略
+     */
+    public List<BookSource> getBySourceUrls(Collection<String> sourceUrls) {
+        Snapshot current = snapshot;
+        List<BookSource> sources = new ArrayList<>(sourceUrls.size());
+        for (String sourceUrl : sourceUrls) {
+            BookSource source = current.byUrl.get(sourceUrl);
+            if (source != null) {
+                sources.add(source);
+            }
+        }
+        return sources;
+    }
+    
+    /**
+     * 书源已保存，在事务提交后更新快照
+     */
+    public void onSaved(BookSource source) {
+        onSaved(Collections.singletonList(source));
+    }
+    
+    /**
+     * 多个书源已保存，在事务提交后一次更新快照
+     */
+    public void onSaved(Collection<BookSource> sources) {
+        if (sources.isEmpty()) {
+            return;
+        }
+        List<BookSource> saved = new ArrayList<>(sources);
+        afterCommit(() -> apply(saved, Collections.emptyList()));
+    }
+    
+    /**
+     * 书源已删除，在事务提交后更新快照
+     */
+    public void onDeleted(Long id) {
+        afterCommit(() -> apply(Collections.emptyList(), Collections.singletonList(id)));
+    }
+    
+    /**
+     * 复制当前快照，替换或移除变化的书源后整体替换
+     */
+    private synchronized void apply(List<BookSource> saved, List<Long> deleted) {
+        Map<Long, BookSource> sources = new LinkedHashMap<>(snapshot.byId);
+        deleted.forEach(sources::remove);
+        for (BookSource source : saved) {
+            if (source.getId() == null) {
+                continue;
+            }
+            if (Boolean.TRUE.equals(source.getEnabled())) {
+                sources.put(source.getId(), source);
+            } else {
+                sources.remove(source.getId());
+            }
+        }
+        snapshot = new Snapshot(sources.values());
+    }
+    
+    private void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+    
+    /**
+     * 不可变的书源快照
+     */
+    private static final class Snapshot {
+        
+        private final List<BookSource> enabled;
+        
+        private final Map<Long, BookSource> byId;
+        
+        private final Map<String, BookSource> byUrl;
+        
+        private final Map<String, List<BookSource>> byGroup;
+        
+        private Snapshot(Collection<BookSource> sources) {
+            List<BookSource> ordered = new ArrayList<>(sources);
+            ordered.sort(WEIGHT_ORDER);
+            
+            Map<Long, BookSource> ids = new LinkedHashMap<>();
+            Map<String, BookSource> urls = new HashMap<>();
+            Map<String, List<BookSource>> groups = new LinkedHashMap<>();
+            for (BookSource source : ordered) {
+                ids.put(source.getId(), source);
+                // 重复的书源URL取权重高的一个
+                urls.putIfAbsent(source.getSourceUrl(), source);
+                if (source.getSourceGroup() != null) {
+                    for (String group : source.getSourceGroup().split(GROUP_SEPARATOR)) {
+                        if (!group.trim().isEmpty()) {
+                            groups.computeIfAbsent(group.trim(), key -> new ArrayList<>()).add(source);
+                        }
+                    }
+                }
+            }
+            groups.replaceAll((group, list) -> Collections.unmodifiableList(list));
+            
+            this.enabled = Collections.unmodifiableList(ordered);
+            this.byId = Collections.unmodifiableMap(ids);
+            this.byUrl = Collections.unmodifiableMap(urls);
+            this.byGroup = Collections.unmodifiableMap(groups);
+        }
+    }
+    
+}
@@ -0,0 +1,274 @@
+package io.legado.core.source;
+
+import io.legado.core.dto.SourceStatsDto;
+import io.legado.core.store.WriteQueue;
+import io.legado.model.entity.BookSource;
+import io.legado.model.repository.BookSourceRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 书源响应统计
+ * 按书源记录响应时间与成功率的指数加权平均，用于搜索时的书源排序与跳过；
+ * 平均响应时间定期写回书源的 respondTime，重启后以其作为初始值
+ */
+@Slf4j
+@Component
+public class SourceStats {
+    
+    @Autowired
+    private BookSourceRepository bookSourceRepository;
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    @Autowired
+    private WriteQueue writeQueue;
+    
+    /**
+     * 指数加权平均的平滑系数，越大越看重最近的结果
+     */
+    @Value("${legado.source.stats.alpha:0.3}")
+    private double alpha;
+    
+    /**
+     * 没有记录的书源使用的响应时间（毫秒）
+     */
+    @Value("${legado.source.stats.default-respond-time-ms:3000}")
+    private long defaultRespondTime;
+    
+    /**
+     * 采样次数达到该值后才会跳过书源
+     */
+    @Value("${legado.source.stats.min-samples:5}")
+    private long minSamples;
+    
+    /**
+     * 成功率低于该值时跳过
+     */
+    @Value("${legado.source.stats.skip-success-rate:0.2}")
+    private double skipSuccessRate;
+    
+    /**
+     * 平均响应时间超过该值（毫秒）时跳过，默认为搜索截止时间
+     */
+    @Value("${legado.source.stats.skip-respond-time-ms:${legado.search.deadline-ms:8000}}")
+    private long skipRespondTime;
+    
+    /**
+     * 被跳过的书源每隔该时间（毫秒）放行一次，以便恢复后重新参与搜索
+     */
+    @Value("${legado.source.stats.probe-interval-ms:60000}")
+    private long probeInterval;
+    
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    
+    private Timer successTimer;
+    
+    private Timer failureTimer;
+    
+    @PostConstruct
+    public void init() {
+        successTimer = Timer.builder("legado.source.fetch")
+                .description("书源请求耗时")
+                .tag("outcome", "success")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        failureTimer = Timer.builder("legado.source.fetch")
+                .description("书源请求耗时")
+                .tag("outcome", "failure")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+    
+    /**
+     * 记录一次请求
+     *
+     * @param elapsed 耗时（毫秒），超时的请求为等待的时间
+     * @param success 是否成功
+     */
+    public void record(BookSource source, long elapsed, boolean success) {
+        (success ? successTimer : failureTimer).record(elapsed, TimeUnit.MILLISECONDS);
+        entry(source).record(elapsed, success);
+    }
+    
+    /**
+     * 按权重从高到低、期望耗时从低到高排序
+     * 期望耗时为平均响应时间除以成功率，经常失败的书源排在后面
+     */
+    public List<BookSource> order(List<BookSource> sources) {
+        List<BookSource> result = new ArrayList<>(sources);
+        Map<BookSource, Double> scores = new IdentityHashMap<>();
+        for (BookSource source : result) {
+            scores.put(source, entry(source).score());
+        }
+        result.sort(Comparator
+                .comparing((BookSource source) -> source.getWeight() != null ? source.getWeight() : 0)
+                .reversed()
+                .thenComparing(scores::get));
+        return result;
+    }
+    
+    /**
+     * 本次搜索是否跳过该书源
+     * 被跳过的书源每隔一段时间放行一次请求作为探测
+     */
+    public boolean shouldSkip(BookSource source) {
+        Entry entry = entry(source);
+        synchronized (entry) {
+            if (!isUnhealthy(entry)) {
+                return false;
+            }
+            long now = System.currentTimeMillis();
+            if (now - entry.lastProbe >= probeInterval) {
+                entry.lastProbe = now;
+                return false;
+            }
+            return true;
+        }
+    }
+    
+    /**
+     * 书源的平均响应时间（毫秒），没有记录时为默认值
+     */
+    public long getRespondTime(BookSource source) {
+        Entry entry = entry(source);
+        synchronized (entry) {
+            return Math.round(entry.respondTime);
+        }
+    }
+    
+    /**
+     * 各书源的统计
+     */
+    public List<SourceStatsDto> getStatus() {
+        List<SourceStatsDto> result = new ArrayList<>();
+        entries.forEach((sourceUrl, entry) -> {
+            SourceStatsDto dto = new SourceStatsDto();
+            dto.setSourceUrl(sourceUrl);
+            synchronized (entry) {
+                dto.setRespondTime(Math.round(entry.respondTime));
+                dto.setSuccessRate(entry.successRate);
+                dto.setSamples(entry.samples);
+                dto.setSkipped(isUnhealthy(entry));
+            }
+            result.add(dto);
+        });
+        result.sort(Comparator.comparing(SourceStatsDto::getRespondTime));
+        return result;
+    }
+    
+    /**
+     * 将平均响应时间写回书源
+     */
+    @Scheduled(fixedDelayString = "${legado.source.stats.persist-interval-ms:300000}",
+            initialDelayString = "${legado.source.stats.persist-interval-ms:300000}")
+    public void persist() {
+        Map<String, Long> respondTimes = new LinkedHashMap<>();
+        for (Map.Entry<String, Entry> e : entries.entrySet()) {
+            Entry entry = e.getValue();
+            synchronized (entry) {
+                if (!entry.dirty) {
+                    continue;
+                }
+                entry.dirty = false;
+                respondTimes.put(e.getKey(), Math.round(entry.respondTime));
+            }
+        }
+        if (respondTimes.isEmpty()) {
+            return;
+        }
+        
+        // 所有书源在一次写入中提交
+        try {
+            int updated = writeQueue.execute(() -> {
+                int count = 0;
+                for (Map.Entry<String, Long> e : respondTimes.entrySet()) {
+                    count += bookSourceRepository.updateRespondTime(e.getKey(), e.getValue());
+                }
+                return count;
+            });
+            log.debug("保存书源响应时间: {}个", updated);
+        } catch (Exception e) {
+            log.warn("保存书源响应时间失败: {}", e.getMessage());
+        }
+    }
+    
+    @PreDestroy
+    public void destroy() {
+        persist();
+    }
+    
+    private Entry entry(BookSource source) {
+        return entries.computeIfAbsent(source.getSourceUrl(), key -> {
+            Long respondTime = source.getRespondTime();
+            return respondTime != null && respondTime > 0
+                    ? new Entry(respondTime, true) : new Entry(defaultRespondTime, false);
+        });
+    }
+    
+    private boolean isUnhealthy(Entry entry) {
+        return entry.samples >= minSamples
+                && (entry.successRate < skipSuccessRate || entry.respondTime > skipRespondTime);
+    }
+    
+    /**
+     * 单个书源的统计
+     */
+    private final class Entry {
+        
+        private double respondTime;
+        
+        private double successRate = 1.0;
+        
+        private long samples;
+        
+        private long lastProbe;
+        
+        private boolean dirty;
+        
+        /**
+         * 初始值是否来自保存的响应时间
+         */
+        private final boolean restored;
+        
+        private Entry(double respondTime, boolean restored) {
+            this.respondTime = respondTime;
+            this.restored = restored;
+        }
+        
+        synchronized void record(long elapsed, boolean success) {
+            // 没有保存过响应时间的书源，第一次记录时直接采用实测值
+            if (samples == 0 && !restored) {
+                respondTime = elapsed;
+                successRate = success ? 1.0 : 0.0;
+            } else {
+                respondTime += alpha * (elapsed - respondTime);
+                successRate += alpha * ((success ? 1.0 : 0.0) - successRate);
+            }
+            samples++;
+            dirty = true;
+        }
+        
+        synchronized double score() {
+            return respondTime / Math.max(successRate, 0.05);
+        }
+    }
+    
+}
@@ -0,0 +1,169 @@
+package io.legado.core.store;
+
+import io.legado.model.entity.BookChapter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * 章节内容迁移
+ * 将旧版本保存在 book_chapters.content 列中的章节内容分批移入章节内容存储，并清空该列
+ */
+@Slf4j
+@Component
+public class ChapterContentMigration {
+    
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    
+    @Autowired
+    private WriteQueue writeQueue;
+    
+    @Autowired
+    private ChapterContentStore chapterContentStore;
+    
+    @Autowired
+    private FullTextIndex fullTextIndex;
+    
+    @Autowired
+    private Executor taskExecutor;
+    
+    /**
+     * 启动时是否迁移
+     */
+    @Value("${legado.content.migration.enabled:true}")
+    private boolean enabled;
+    
+    /**
+     * 每批迁移的章节数量
+     */
+    @Value("${legado.content.migration.batch-size:200}")
+    private int batchSize;
+    
+    /**
+     * 迁移完成后是否执行 VACUUM 回收数据库空间（耗时较长，期间数据库不可写）
+     */
+    @Value("${legado.content.migration.vacuum:false}")
+    private boolean vacuum;
+    
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (enabled) {
+            taskExecutor.execute(this::migrate);
+        }
+    }
+    
+    /**
+     * 迁移所有旧章节内容
+     */
+    public void migrate() {
+        if (!hasLegacyColumn()) {
+            return;
+        }
+        
+        long migrated = 0;
+        long startTime = System.currentTimeMillis();
+        try {
+            while (true) {
+                List<Map<String, Object>> rows = jdbcTemplate.queryForList(
+                        "SELECT id, book_id, chapter_index, content FROM book_chapters WHERE content IS NOT NULL LIMIT ?",
+                        batchSize);
+                if (rows.isEmpty()) {
+                    break;
+                }
+                migrateBatch(rows);
+                migrated += rows.size();
+                if (migrated % (batchSize * 50L) == 0) {
+                    log.info("迁移章节内容: 已完成{}章", migrated);
+                }
+            }
+        } catch (Exception e) {
+            log.error("迁移章节内容失败，下次启动时继续: 已完成{}章", migrated, e);
+            return;
+        }
+        if (migrated == 0) {
+            return;
+        }
+        
+        log.info("迁移章节内容完成: 共{}章, 耗时{}ms", migrated, System.currentTimeMillis() - startTime);
+        jdbcTemplate.queryForList("PRAGMA wal_checkpoint(TRUNCATE)");
+        if (vacuum) {
+            log.info("回收数据库空间");
+            jdbcTemplate.execute("VACUUM");
+        }
+    }
+    
+    /**
+     * 按书籍写入内容文件，内容位置在写入同一本书时一并保存
+     */
+    private void migrateBatch(List<Map<String, Object>> rows) throws IOException {
+        List<Object> empty = new ArrayList<>();
+        Map<Long, List<Map<String, Object>>> books = new LinkedHashMap<>();
+        for (Map<String, Object> row : rows) {
+            Object content = row.get("content");
+            if (content == null || content.toString().isEmpty()) {
+                empty.add(row.get("id"));
+                continue;
+            }
+            books.computeIfAbsent(((Number) row.get("book_id")).longValue(), key -> new ArrayList<>()).add(row);
+        }
+        
+        for (Map.Entry<Long, List<Map<String, Object>>> entry : books.entrySet()) {
+            List<BookChapter> chapters = new ArrayList<>();
+            List<String> contents = new ArrayList<>();
+            for (Map<String, Object> row : entry.getValue()) {
+                BookChapter chapter = new BookChapter();
+                chapter.setId(((Number) row.get("id")).longValue());
+                chapter.setBookId(entry.getKey());
+                chapter.setChapterIndex(((Number) row.get("chapter_index")).intValue());
+                chapters.add(chapter);
+                contents.add(row.get("content").toString());
+            }
+            chapterContentStore.write(chapters, contents, () -> writeQueue.run(() -> {
+                List<Object[]> updates = new ArrayList<>(chapters.size());
+                for (BookChapter chapter : chapters) {
+                    updates.add(new Object[]{chapter.getContentOffset(), chapter.getContentSize(), chapter.getId()});
+                }
+                jdbcTemplate.batchUpdate(
+                        "UPDATE book_chapters SET content = NULL, content_offset = ?, content_size = ? WHERE id = ?",
+                        updates);
+                for (int i = 0; i < chapters.size(); i++) {
+                    fullTextIndex.indexChapter(chapters.get(i).getId(), contents.get(i));
+                }
+            }));
+        }
+        
+        if (!empty.isEmpty()) {
+            writeQueue.run(() -> {
+                List<Object[]> updates = new ArrayList<>(empty.size());
+                for (Object id : empty) {
+                    updates.add(new Object[]{id});
+                }
+                jdbcTemplate.batchUpdate(
+                        "UPDATE book_chapters SET content = NULL, content_offset = NULL, content_size = NULL WHERE id = ?",
+                        updates);
+            });
+        }
+    }
+    
+    /**
+     * 数据库中是否还有旧版本的 content 列
+     */
+    private boolean hasLegacyColumn() {
+        Integer count = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM pragma_table_info('book_chapters') WHERE name = 'content'", Integer.class);
+        return count != null && count > 0;
+    }
+    
+}
@@ -0,0 +1,722 @@
+package io.legado.core.store;
+
+import io.legado.model.entity.BookChapter;
+import io.legado.model.entity.CacheJob;
+import io.legado.model.repository.BookChapterRepository;
+import io.legado.model.repository.BookRepository;
+import io.legado.model.repository.CacheJobRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 章节内容存储
+ * 每本书一个只追加的内容文件，每章压缩为一个块，数据库中只保存块的偏移与长度；
+ * 读取通过内存映射进行，删除的书籍与重新缓存留下的无效块由定期压缩回收。
+ * 内容可以从书源重新获取，写入时不强制刷盘，块头的校验失败时视为未缓存。
+ * 作为章节内容缓存（内存）之下的磁盘层：总大小超出容量上限时按整本书淘汰，删除最久未读的书籍的内容文件，
+ * 访问时间记录在文件的修改时间上，重启后仍然有效；用户通过缓存任务下载的书籍不淘汰。
+ * 每个内容文件有两把锁：文件锁（对象锁）只在追加、映射与关闭时短暂持有，读取只需要文件锁；
+ * 维护锁在写入保存位置、淘汰与压缩期间持有（写入共享，淘汰与压缩独占），等待数据库提交时不阻塞读取
+ */
+@Slf4j
+@Component
+public class ChapterContentStore {
+    
+    /**
+     * 块头：魔数、章节ID（低32位）、原始长度、压缩后长度、CRC32
+     * 章节ID在目录重排后不变，章节移动到新索引时已缓存的内容仍然有效
+     */
+    private static final int MAGIC = 0x4C434832;
+    
+    /**
+     * 旧版块头的魔数，第二个字段为章节索引，压缩时改写为新版块头
+     */
+    private static final int LEGACY_MAGIC = 0x4C43484B;
+    
+    private static final int HEADER_SIZE = 20;
+    
+    private static final String SUFFIX = ".seg";
+    
+    @Autowired
+    private BookRepository bookRepository;
+    
+    @Autowired
+    private BookChapterRepository bookChapterRepository;
+    
+    @Autowired
+    private CacheJobRepository cacheJobRepository;
+    
+    @Autowired
+    private WriteQueue writeQueue;
+    
+    /**
+     * 内容文件目录
+     */
+    @Value("${legado.content.dir:${user.home}/.legado/content}")
+    private String dir;
+    
+    /**
+     * 压缩级别（0-9）
+     */
+    @Value("${legado.content.compression-level:6}")
+    private int compressionLevel;
+    
+    /**
+     * 同时打开的内容文件数量上限
+     */
+    @Value("${legado.content.max-open-segments:64}")
+    private int maxOpenSegments;
+    
+    /**
+     * 无效块占文件的比例超过该值时重写文件
+     */
+    @Value("${legado.content.compact-garbage-ratio:0.5}")
+    private double compactGarbageRatio;
+    
+    /**
+     * 内容文件总大小上限（MB），0 表示不限制
+     * 按整本书淘汰：以内容文件的修改时间为访问时间，删除最久未读的书籍的整个文件，不按章节淘汰
+     */
+    @Value("${legado.content.max-size-mb:512}")
+    private long maxSizeMb;
+    
+    /**
+     * 淘汰时降到上限的该比例以下，避免每次只淘汰一本
+     */
+    @Value("${legado.content.evict-low-water-ratio:0.9}")
+    private double evictLowWaterRatio;
+    
+    private Path root;
+    
+    /**
+     * 最近访问时间，每隔一段时间写到文件的修改时间上
+     */
+    private final Map<Long, Long> accessTimes = new ConcurrentHashMap<>();
+    
+    /**
+     * 打开的内容文件，按访问顺序淘汰
+     */
+    private final LinkedHashMap<Long, Segment> segments = new LinkedHashMap<>(16, 0.75f, true);
+    
+    @PostConstruct
+    public void init() throws IOException {
+        root = Paths.get(dir);
+        Files.createDirectories(root);
+    }
+    
+    @PreDestroy
+    public void destroy() {
+        List<Segment> open;
+        synchronized (segments) {
+            open = new ArrayList<>(segments.values());
+            segments.clear();
+        }
+        for (Segment segment : open) {
+            synchronized (segment) {
+                segment.close();
+            }
+        }
+    }
+    
+    /**
+     * 写入章节内容，并将内容位置设置到章节上
+     *
+     * @param persist 保存内容位置，在持有维护锁时执行，使压缩读取到的位置包含所有已写入的块
+     */
+    public void write(BookChapter chapter, String content, Runnable persist) throws IOException {
+        write(Collections.singletonList(chapter), Collections.singletonList(content), persist);
+    }
+    
+    /**
+     * 写入同一本书的多个章节内容
+     *
+     * @param persist 保存内容位置，在持有维护锁时执行
+     */
+    public void write(List<BookChapter> chapters, List<String> contents, Runnable persist) throws IOException {
+        if (chapters.isEmpty()) {
+            return;
+        }
+        List<byte[]> records = new ArrayList<>(chapters.size());
+        for (int i = 0; i < chapters.size(); i++) {
+            records.add(encode(chapters.get(i).getId(), contents.get(i)));
+        }
+        Long bookId = chapters.get(0).getBookId();
+        Segment segment = lock(bookId, false);
+        try {
+            synchronized (segment) {
+                for (int i = 0; i < chapters.size(); i++) {
+                    byte[] record = records.get(i);
+                    chapters.get(i).setContentOffset(segment.append(record));
+                    chapters.get(i).setContentSize(record.length);
+                }
+            }
+            accessTimes.put(bookId, System.currentTimeMillis());
+            // 释放文件锁后保存位置，等待提交期间读取不受影响
+            persist.run();
+        } finally {
+            segment.lock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * 读取章节内容
+     *
+     * @return 未缓存、文件已被压缩或块校验失败时返回 null
+     */
+    public String read(BookChapter chapter) {
+        if (chapter.getContentOffset() == null || chapter.getContentSize() == null) {
+            return null;
+        }
+        try {
+            ByteBuffer block = slice(chapter.getBookId(), chapter.getContentOffset(), chapter.getContentSize());
+            if (block == null) {
+                return null;
+            }
+            touch(chapter.getBookId());
+            return decode(block, chapter);
+        } catch (IOException e) {
+            log.warn("读取章节内容失败: 书籍{} 第{}章, {}", chapter.getBookId(), chapter.getChapterIndex(), e.getMessage());
+            return null;
+        }
+    }
+    
+    /**
+     * 删除书籍的内容文件
+     */
+    public void delete(Long bookId) {
+        Segment segment = lock(bookId, true);
+        try {
+            delete(bookId, segment);
+        } finally {
+            segment.lock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * 关闭并删除内容文件，调用方持有独占的维护锁
+     */
+    private void delete(Long bookId, Segment segment) {
+        synchronized (segment) {
+            segment.close();
+        }
+        synchronized (segments) {
+            segments.remove(bookId, segment);
+        }
+        try {
+            Files.deleteIfExists(segment.path);
+        } catch (IOException e) {
+            log.warn("删除章节内容文件失败: {}, {}", segment.path, e.getMessage());
+        }
+    }
+    
+    /**
+     * 内容文件超出容量上限时，按访问时间从旧到新淘汰整本书的内容文件，并清除这些章节的内容位置
+     * 最近一分钟内访问过的书籍与有缓存任务（等待、执行中或已完成）的书籍不淘汰
+     */
+    @Scheduled(fixedDelayString = "${legado.content.evict-interval-ms:300000}",
+            initialDelayString = "${legado.content.evict-interval-ms:300000}")
+    public void evict() {
+        if (maxSizeMb <= 0) {
+            return;
+        }
+        long maxBytes = maxSizeMb * 1024 * 1024;
+        List<Object[]> files = new ArrayList<>();
+        long total = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(root, "*" + SUFFIX)) {
+            for (Path file : stream) {
+                Long bookId = bookId(file);
+                if (bookId == null) {
+                    continue;
+                }
+                long size = Files.size(file);
+                long accessed = Math.max(Files.getLastModifiedTime(file).toMillis(),
+                        accessTimes.getOrDefault(bookId, 0L));
+                files.add(new Object[]{bookId, size, accessed});
+                total += size;
+            }
+        } catch (IOException e) {
+            log.warn("读取章节内容目录失败: {}", e.getMessage());
+            return;
+        }
+        if (total <= maxBytes) {
+            return;
+        }
+        
+        Set<Long> pinned = new HashSet<>(cacheJobRepository.findBookIdsByStatusIn(
+                Arrays.asList(CacheJob.PENDING, CacheJob.RUNNING, CacheJob.COMPLETED)));
+        files.sort(Comparator.comparingLong(file -> (Long) file[2]));
+        long target = (long) (maxBytes * evictLowWaterRatio);
+        long recent = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(1);
+        int evicted = 0;
+        long reclaimed = 0;
+        for (Object[] file : files) {
+            if (total <= target || (Long) file[2] > recent) {
+                break;
+            }
+            Long bookId = (Long) file[0];
+            if (pinned.contains(bookId) || !evict(bookId)) {
+                continue;
+            }
+            accessTimes.remove(bookId);
+            total -= (Long) file[1];
+            reclaimed += (Long) file[1];
+            evicted++;
+        }
+        log.info("淘汰章节内容: {}本书, 回收{}字节, 当前{}字节", evicted, reclaimed, total);
+    }
+    
+    /**
+     * 清除书籍的内容位置并删除内容文件
+     * 持有独占的维护锁，写入在维护锁内保存位置，不会留下指向已删除文件的位置
+     */
+    private boolean evict(Long bookId) {
+        Segment segment = lock(bookId, true);
+        try {
+            writeQueue.run(() -> bookChapterRepository.clearContentLocators(bookId));
+            delete(bookId, segment);
+            return true;
+        } catch (Exception e) {
+            log.warn("淘汰章节内容失败: 书籍{}, {}", bookId, e.getMessage());
+            return false;
+        } finally {
+            segment.lock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * 压缩内容文件：删除已删除书籍的文件，重写无效块过多的文件并更新章节的内容位置
+     */
+    @Scheduled(fixedDelayString = "${legado.content.compact-interval-ms:21600000}",
+            initialDelayString = "${legado.content.compact-interval-ms:21600000}")
+    public void compact() {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(root, "*" + SUFFIX)) {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        } catch (IOException e) {
+            log.warn("读取章节内容目录失败: {}", e.getMessage());
+            return;
+        }
+        
+        long reclaimed = 0;
+        for (Path file : files) {
+            Long bookId = bookId(file);
+            if (bookId == null) {
+                continue;
+            }
+            try {
+                reclaimed += compact(bookId);
+            } catch (Exception e) {
+                log.warn("压缩章节内容失败: 书籍{}, {}", bookId, e.getMessage());
+            }
+        }
+        if (reclaimed > 0) {
+            log.info("压缩章节内容完成: 回收{}字节", reclaimed);
+        }
+    }
+    
+    /**
+     * 压缩单本书的内容文件
+     *
+     * @return 回收的字节数
+     */
+    public long compact(Long bookId) throws IOException {
+        Path path = path(bookId);
+        if (!bookRepository.existsById(bookId)) {
+            long fileSize = Files.size(path);
+            delete(bookId);
+            log.info("删除已删除书籍的章节内容: 书籍{}, {}字节", bookId, fileSize);
+            return fileSize;
+        }
+        
+        Segment segment = lock(bookId, true);
+        try {
+            // 在维护锁内读取有效块：写入在维护锁内保存位置，此时读到的位置包含文件中所有已写入的块
+            long fileSize = Files.size(path);
+            List<BookChapter> live = bookChapterRepository.findCachedByBookId(bookId);
+            long liveBytes = 0;
+            for (BookChapter chapter : live) {
+                liveBytes += chapter.getContentSize();
+            }
+            if (live.isEmpty()) {
+                delete(bookId, segment);
+                return fileSize;
+            }
+            if (fileSize - liveBytes < fileSize * compactGarbageRatio) {
+                return 0;
+            }
+            return rewrite(bookId, segment, live, fileSize);
+        } finally {
+            segment.lock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * 只保留有效块重写内容文件，调用方持有独占的维护锁
+     * 写入会等待重写结束，读取照常进行；替换文件后按旧位置读取的块校验失败，由调用方重新读取位置
+     */
+    private long rewrite(Long bookId, Segment segment, List<BookChapter> live, long fileSize) throws IOException {
+        Path tmp = segment.path.resolveSibling(bookId + SUFFIX + ".tmp");
+        Map<Long, long[]> locators = new LinkedHashMap<>();
+        long position = 0;
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            for (BookChapter chapter : live) {
+                ByteBuffer block;
+                synchronized (segment) {
+                    block = segment.slice(chapter.getContentOffset(), chapter.getContentSize());
+                }
+                if (block == null || !isValid(block.duplicate(), chapter)) {
+                    locators.put(chapter.getId(), null);
+                    continue;
+                }
+                if (block.getInt(0) == LEGACY_MAGIC) {
+                    block = upgrade(block, chapter.getId());
+                }
+                locators.put(chapter.getId(), new long[]{position, chapter.getContentSize()});
+                while (block.hasRemaining()) {
+                    position += out.write(block, position);
+                }
+            }
+            out.force(true);
+        }
+        
+        writeQueue.run(() -> locators.forEach((id, locator) -> bookChapterRepository.updateContentLocator(id,
+                locator != null ? locator[0] : null, locator != null ? (int) locator[1] : null)));
+        
+        synchronized (segment) {
+            Files.move(tmp, segment.path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            segment.close();
+        }
+        synchronized (segments) {
+            segments.remove(bookId, segment);
+        }
+        log.info("重写章节内容文件: 书籍{}, {}字节 -> {}字节", bookId, fileSize, position);
+        return fileSize - position;
+    }
+    
+    /**
+     * 获取书籍的内容文件并持有维护锁，文件已关闭时重新获取
+     *
+     * @param exclusive 是否独占：写入共享，淘汰、压缩与删除独占
+     */
+    private Segment lock(Long bookId, boolean exclusive) {
+        while (true) {
+            Segment segment = segment(bookId);
+            Lock lock = exclusive ? segment.lock.writeLock() : segment.lock.readLock();
+            lock.lock();
+            synchronized (segment) {
+                if (!segment.closed) {
+                    return segment;
+                }
+            }
+            lock.unlock();
+        }
+    }
+    
+    private ByteBuffer slice(Long bookId, long offset, int size) throws IOException {
+        while (true) {
+            Segment segment = segment(bookId);
+            synchronized (segment) {
+                if (!segment.closed) {
+                    return segment.slice(offset, size);
+                }
+            }
+        }
+    }
+    
+    /**
+     * 获取书籍的内容文件，超出打开数量上限时关闭最久未使用的文件
+     * 正在写入或维护的文件不关闭，都在使用时暂时超出上限
+     */
+    private Segment segment(Long bookId) {
+        Segment segment;
+        Segment evicted = null;
+        synchronized (segments) {
+            segment = segments.get(bookId);
+            if (segment == null) {
+                segment = new Segment(path(bookId));
+                segments.put(bookId, segment);
+                if (segments.size() > maxOpenSegments) {
+                    Iterator<Segment> iterator = segments.values().iterator();
+                    while (iterator.hasNext()) {
+                        Segment candidate = iterator.next();
+                        if (candidate != segment && candidate.lock.writeLock().tryLock()) {
+                            iterator.remove();
+                            evicted = candidate;
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+        if (evicted != null) {
+            try {
+                synchronized (evicted) {
+                    evicted.close();
+                }
+            } finally {
+                evicted.lock.writeLock().unlock();
+            }
+        }
+        return segment;
+    }
+    
+    private Path path(Long bookId) {
+        return root.resolve(bookId + SUFFIX);
+    }
+    
+    private Long bookId(Path file) {
+        String name = file.getFileName().toString();
+        try {
+            return Long.valueOf(name.substring(0, name.length() - SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+    
+    /**
+     * 记录书籍的访问时间，距上次写入超过一分钟时更新文件的修改时间
+     */
+    private void touch(Long bookId) {
+        long now = System.currentTimeMillis();
+        Long previous = accessTimes.get(bookId);
+        if (previous != null && now - previous < TimeUnit.MINUTES.toMillis(1)) {
+            return;
+        }
+        accessTimes.put(bookId, now);
+        try {
+            Files.setLastModifiedTime(path(bookId), FileTime.fromMillis(now));
+        } catch (IOException e) {
+            log.debug("更新章节内容文件访问时间失败: 书籍{}, {}", bookId, e.getMessage());
+        }
+    }
+    
+    private byte[] encode(Long chapterId, String content) {
+        byte[] raw = content.getBytes(StandardCharsets.UTF_8);
+        CRC32 crc = new CRC32();
+        crc.update(raw);
+        
+        Deflater deflater = new Deflater(compressionLevel);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 2 + HEADER_SIZE);
+        try {
+            out.write(new byte[HEADER_SIZE], 0, HEADER_SIZE);
+            deflater.setInput(raw);
+            deflater.finish();
+            byte[] buf = new byte[8192];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buf);
+                out.write(buf, 0, n);
+            }
+        } finally {
+            deflater.end();
+        }
+        
+        byte[] record = out.toByteArray();
+        ByteBuffer.wrap(record)
+                .putInt(MAGIC)
+                .putInt(chapterId.intValue())
+                .putInt(raw.length)
+                .putInt(record.length - HEADER_SIZE)
+                .putInt((int) crc.getValue());
+        return record;
+    }
+    
+    /**
+     * 校验块头是否属于该章节：新版块头按章节ID，旧版块头按章节索引
+     */
+    private static boolean isValid(ByteBuffer block, BookChapter chapter) {
+        if (block.remaining() < HEADER_SIZE) {
+            return false;
+        }
+        int magic = block.getInt();
+        int key = block.getInt();
+        if (magic == MAGIC) {
+            if (key != chapter.getId().intValue()) {
+                return false;
+            }
+        } else if (magic != LEGACY_MAGIC || key != chapter.getChapterIndex()) {
+            return false;
+        }
+        return block.getInt() >= 0 && block.getInt() == block.remaining() - 4;
+    }
+    
+    /**
+     * 将旧版块头改写为新版块头
+     */
+    private static ByteBuffer upgrade(ByteBuffer block, Long chapterId) {
+        ByteBuffer copy = ByteBuffer.allocate(block.remaining());
+        copy.put(block.duplicate());
+        copy.flip();
+        copy.putInt(0, MAGIC);
+        copy.putInt(4, chapterId.intValue());
+        return copy;
+    }
+    
+    private static String decode(ByteBuffer block, BookChapter chapter) {
+        if (!isValid(block.duplicate(), chapter)) {
+            return null;
+        }
+        block.position(block.position() + 8);
+        int rawLength = block.getInt();
+        int compressedLength = block.getInt();
+        int checksum = block.getInt();
+        byte[] compressed = new byte[compressedLength];
+        block.get(compressed);
+        
+        byte[] raw = new byte[rawLength];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            int n = 0;
+            while (n < rawLength && !inflater.finished()) {
+                int read = inflater.inflate(raw, n, rawLength - n);
+                if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    return null;
+                }
+                n += read;
+            }
+            if (n != rawLength) {
+                return null;
+            }
+        } catch (DataFormatException e) {
+            return null;
+        } finally {
+            inflater.end();
+        }
+        
+        CRC32 crc = new CRC32();
+        crc.update(raw);
+        return (int) crc.getValue() == checksum ? new String(raw, StandardCharsets.UTF_8) : null;
+    }
+    
+    /**
+     * 单本书的内容文件
+     * 通道在第一次访问时打开，整个文件映射到内存，追加后按需重新映射
+     */
+    private static final class Segment {
+        
+        private final Path path;
+        
+        /**
+         * 维护锁
+         */
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        
+        private FileChannel channel;
+        
+        private MappedByteBuffer mapped;
+        
+        private boolean closed;
+        
+        private Segment(Path path) {
+            this.path = path;
+        }
+        
+        long append(byte[] record) throws IOException {
+            FileChannel ch = channel(true);
+            long offset = ch.size();
+            ByteBuffer buffer = ByteBuffer.wrap(record);
+            while (buffer.hasRemaining()) {
+                ch.write(buffer, offset + buffer.position());
+            }
+            return offset;
+        }
+        
+        /**
+         * 块的只读视图，超出文件范围时返回 null
+         */
+        ByteBuffer slice(long offset, int size) throws IOException {
+            FileChannel ch = channel(false);
+            if (ch == null) {
+                return null;
+            }
+            long end = offset + size;
+            if (mapped == null || end > mapped.capacity()) {
+                long fileSize = ch.size();
+                if (end > fileSize) {
+                    return null;
+                }
+                if (fileSize > Integer.MAX_VALUE) {
+                    // 超过单次映射上限的文件只映射需要的块
+                    return ch.map(FileChannel.MapMode.READ_ONLY, offset, size);
+                }
+                mapped = ch.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+            }
+            ByteBuffer block = mapped.duplicate();
+            block.position((int) offset);
+            block.limit((int) end);
+            return block.slice();
+        }
+        
+        private FileChannel channel(boolean create) throws IOException {
+            if (closed) {
+                throw new IOException("章节内容文件已关闭: " + path);
+            }
+            if (channel == null) {
+                try {
+                    channel = create
+                            ? FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                                    StandardOpenOption.WRITE)
+                            : FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                } catch (NoSuchFileException e) {
+                    return null;
+                }
+            }
+            return channel;
+        }
+        
+        void close() {
+            closed = true;
+            mapped = null;
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    log.debug("关闭章节内容文件失败: {}", path);
+                }
+                channel = null;
+            }
+        }
+    }
+    
+}
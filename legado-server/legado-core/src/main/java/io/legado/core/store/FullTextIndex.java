@@ -0,0 +1,254 @@
+package io.legado.core.store;
+
+import io.legado.model.entity.BookChapter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * 全文索引
+ * 使用 SQLite FTS5 与 trigram 分词，中文不需要分词也能按任意子串匹配：
+ * 书籍与书源的索引以原表为外部内容，由触发器随原表同步；
+ * 章节内容保存在内容文件中，索引不保存原文（contentless），缓存章节时写入，删除章节或清除缓存时由触发器删除。
+ * trigram 至少需要3个字符，更短的关键词由调用方退回普通查询
+ */
+@Slf4j
+@Component
+public class FullTextIndex {
+    
+    /**
+     * trigram 分词可匹配的最短关键词
+     */
+    public static final int MIN_KEYWORD_LENGTH = 3;
+    
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    
+    @Autowired
+    private WriteQueue writeQueue;
+    
+    @Autowired
+    private ChapterContentStore chapterContentStore;
+    
+    @Autowired
+    private Executor taskExecutor;
+    
+    /**
+     * 是否启用全文索引
+     */
+    @Value("${legado.fulltext.enabled:true}")
+    private boolean enabled;
+    
+    /**
+     * 补建章节索引时每批的章节数量
+     */
+    @Value("${legado.fulltext.batch-size:200}")
+    private int batchSize;
+    
+    private volatile boolean ready;
+    
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            writeQueue.run(this::createSchema);
+        } catch (Exception e) {
+            log.error("创建全文索引失败，搜索退回普通查询", e);
+            return;
+        }
+        ready = true;
+        taskExecutor.execute(this::backfillChapters);
+    }
+    
+    /**
+     * 全文索引是否可用
+     */
+    public boolean isReady() {
+        return ready;
+    }
+    
+    /**
+     * 写入章节内容的索引，需在写事务中调用（与保存内容位置放在同一个写操作中）
+     */
+    public void indexChapter(BookChapter chapter, String content) {
+        indexChapter(chapter.getId(), content);
+    }
+    
+    /**
+     * 写入章节内容的索引，已有的索引被替换
+     */
+    public void indexChapter(Long chapterId, String content) {
+        if (!ready || chapterId == null || content == null) {
+            return;
+        }
+        jdbcTemplate.update("INSERT OR REPLACE INTO chapter_fts (rowid, content) VALUES (?, ?)", chapterId, content);
+    }
+    
+    /**
+     * 在一本书已缓存的章节中搜索，按相关度排序
+     *
+     * @return 章节ID、章节索引与标题
+     */
+    public List<Map<String, Object>> searchChapters(Long bookId, String keyword, int limit) {
+        return jdbcTemplate.queryForList(
+                "SELECT c.id, c.chapter_index, c.title FROM chapter_fts f JOIN book_chapters c ON c.id = f.rowid "
+                        + "WHERE chapter_fts MATCH ? AND c.book_id = ? ORDER BY f.rank LIMIT ?",
+                toMatchQuery(keyword), bookId, limit);
+    }
+    
+    /**
+     * 转换为 FTS5 查询：按空白拆分的每个词作为短语，多个词需同时出现
+     *
+     * @return 有词短于 trigram 最短长度时返回 null，调用方应退回普通查询
+     */
+    public static String toMatchQuery(String keyword) {
+        List<String> terms = terms(keyword);
+        if (terms.isEmpty()) {
+            return null;
+        }
+        StringBuilder query = new StringBuilder();
+        for (String term : terms) {
+            if (term.codePointCount(0, term.length()) < MIN_KEYWORD_LENGTH) {
+                return null;
+            }
+            if (query.length() > 0) {
+                query.append(' ');
+            }
+            query.append('"').append(term.replace("\"", "\"\"")).append('"');
+        }
+        return query.toString();
+    }
+    
+    /**
+     * 按空白拆分关键词
+     */
+    public static List<String> terms(String keyword) {
+        List<String> terms = new ArrayList<>();
+        if (keyword != null) {
+            for (String term : keyword.trim().split("\\s+")) {
+                if (!term.isEmpty()) {
+                    terms.add(term);
+                }
+            }
+        }
+        return terms;
+    }
+    
+    private void createSchema() {
+        boolean booksCreated = !exists("books_fts");
+        jdbcTemplate.execute("CREATE VIRTUAL TABLE IF NOT EXISTS books_fts USING fts5("
+                + "name, author, kind, intro, content='books', content_rowid='id', tokenize='trigram')");
+        jdbcTemplate.execute("CREATE TRIGGER IF NOT EXISTS books_fts_insert AFTER INSERT ON books BEGIN "
+                + "INSERT INTO books_fts (rowid, name, author, kind, intro) "
+                + "VALUES (new.id, new.name, new.author, new.kind, new.intro); END");
+        jdbcTemplate.execute("CREATE TRIGGER IF NOT EXISTS books_fts_delete AFTER DELETE ON books BEGIN "
+                + "INSERT INTO books_fts (books_fts, rowid, name, author, kind, intro) "
+                + "VALUES ('delete', old.id, old.name, old.author, old.kind, old.intro); END");
+        jdbcTemplate.execute("CREATE TRIGGER IF NOT EXISTS books_fts_update "
+                + "AFTER UPDATE OF name, author, kind, intro ON books BEGIN "
+                + "INSERT INTO books_fts (books_fts, rowid, name, author, kind, intro) "
+                + "VALUES ('delete', old.id, old.name, old.author, old.kind, old.intro); "
+                + "INSERT INTO books_fts (rowid, name, author, kind, intro) "
+                + "VALUES (new.id, new.name, new.author, new.kind, new.intro); END");
+        if (booksCreated) {
+            jdbcTemplate.execute("INSERT INTO books_fts (books_fts) VALUES ('rebuild')");
+        }
+        
+        boolean sourcesCreated = !exists("book_sources_fts");
+        jdbcTemplate.execute("CREATE VIRTUAL TABLE IF NOT EXISTS book_sources_fts USING fts5("
+                + "source_name, source_url, source_group, "
+                + "content='book_sources', content_rowid='id', tokenize='trigram')");
+        jdbcTemplate.execute("CREATE TRIGGER IF NOT EXISTS book_sources_fts_insert AFTER INSERT ON book_sources BEGIN "
+                + "INSERT INTO book_sources_fts (rowid, source_name, source_url, source_group) "
+                + "VALUES (new.id, new.source_name, new.source_url, new.source_group); END");
+        jdbcTemplate.execute("CREATE TRIGGER IF NOT EXISTS book_sources_fts_delete AFTER DELETE ON book_sources BEGIN "
+                + "INSERT INTO book_sources_fts (book_sources_fts, rowid, source_name, source_url, source_group) "
+                + "VALUES ('delete', old.id, old.source_name, old.source_url, old.source_group); END");
+        jdbcTemplate.execute("CREATE TRIGGER IF NOT EXISTS book_sources_fts_update "
+                + "AFTER UPDATE OF source_name, source_url, source_group ON book_sources BEGIN "
+                + "INSERT INTO book_sources_fts (book_sources_fts, rowid, source_name, source_url, source_group) "
+                + "VALUES ('delete', old.id, old.source_name, old.source_url, old.source_group); "
+                + "INSERT INTO book_sources_fts (rowid, source_name, source_url, source_group) "
+                + "VALUES (new.id, new.source_name, new.source_url, new.source_group); END");
+        if (sourcesCreated) {
+            jdbcTemplate.execute("INSERT INTO book_sources_fts (book_sources_fts) VALUES ('rebuild')");
+        }
+        
+        jdbcTemplate.execute("CREATE VIRTUAL TABLE IF NOT EXISTS chapter_fts USING fts5("
+                + "content, content='', contentless_delete=1, tokenize='trigram')");
+        jdbcTemplate.execute("CREATE TRIGGER IF NOT EXISTS chapter_fts_delete AFTER DELETE ON book_chapters BEGIN "
+                + "DELETE FROM chapter_fts WHERE rowid = old.id; END");
+        jdbcTemplate.execute("CREATE TRIGGER IF NOT EXISTS chapter_fts_uncache "
+                + "AFTER UPDATE OF content_offset ON book_chapters WHEN new.content_offset IS NULL BEGIN "
+                + "DELETE FROM chapter_fts WHERE rowid = old.id; END");
+        
+        if (booksCreated || sourcesCreated) {
+            log.info("创建全文索引: 书籍{}, 书源{}", booksCreated ? "已重建" : "已存在", sourcesCreated ? "已重建" : "已存在");
+        }
+    }
+    
+    /**
+     * 为尚未建立索引的已缓存章节补建索引（升级后第一次启动，或上次补建中断）
+     */
+    private void backfillChapters() {
+        long indexed = 0;
+        long lastId = 0;
+        long startTime = System.currentTimeMillis();
+        try {
+            while (true) {
+                List<Map<String, Object>> rows = jdbcTemplate.queryForList(
+                        "SELECT id, book_id, chapter_index, content_offset, content_size FROM book_chapters c "
+                                + "WHERE id > ? AND content_offset IS NOT NULL "
+                                + "AND NOT EXISTS (SELECT 1 FROM chapter_fts f WHERE f.rowid = c.id) "
+                                + "ORDER BY id LIMIT ?",
+                        lastId, batchSize);
+                if (rows.isEmpty()) {
+                    break;
+                }
+                List<Object[]> batch = new ArrayList<>(rows.size());
+                for (Map<String, Object> row : rows) {
+                    BookChapter chapter = new BookChapter();
+                    chapter.setId(((Number) row.get("id")).longValue());
+                    chapter.setBookId(((Number) row.get("book_id")).longValue());
+                    chapter.setChapterIndex(((Number) row.get("chapter_index")).intValue());
+                    chapter.setContentOffset(((Number) row.get("content_offset")).longValue());
+                    chapter.setContentSize(((Number) row.get("content_size")).intValue());
+                    String content = chapterContentStore.read(chapter);
+                    if (content != null) {
+                        batch.add(new Object[]{chapter.getId(), content});
+                    }
+                    lastId = chapter.getId();
+                }
+                if (!batch.isEmpty()) {
+                    writeQueue.execute(() -> jdbcTemplate.batchUpdate(
+                            "INSERT OR REPLACE INTO chapter_fts (rowid, content) VALUES (?, ?)", batch));
+                }
+                indexed += batch.size();
+            }
+        } catch (Exception e) {
+            log.error("补建章节全文索引失败，下次启动时继续: 已完成{}章", indexed, e);
+            return;
+        }
+        if (indexed > 0) {
+            log.info("补建章节全文索引完成: 共{}章, 耗时{}ms", indexed, System.currentTimeMillis() - startTime);
+        }
+    }
+    
+    private boolean exists(String table) {
+        Integer count = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM sqlite_master WHERE type = 'table' AND name = ?", Integer.class, table);
+        return count != null && count > 0;
+    }
+    
+}
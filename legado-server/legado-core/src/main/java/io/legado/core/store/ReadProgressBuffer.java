@@ -0,0 +1,239 @@
+package io.legado.core.store;
+
+import io.legado.model.entity.Book;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 阅读进度写缓冲
+ * 按书籍与用户只保留最新的进度，定期通过写队列批量写回书籍表，关闭时写回剩余进度；
+ * 书籍表只有一份进度，写回时同一本书取最新的一条。读取书籍时以缓冲中的进度为准。
+ * 进度按书籍分组保存，读取书籍时只查看该书的用户
+ */
+@Slf4j
+@Component
+public class ReadProgressBuffer {
+    
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    
+    @Autowired
+    private WriteQueue writeQueue;
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    /**
+     * 每批写回的书籍数量
+     */
+    @Value("${legado.progress.batch-size:200}")
+    private int batchSize;
+    
+    /**
+     * 书籍ID -> 用户名 -> 进度，内层的增删在外层的 compute 中进行
+     */
+    private final Map<Long, Map<String, Progress>> pending = new ConcurrentHashMap<>();
+    
+    @PostConstruct
+    public void init() {
+        Gauge.builder("legado.progress.pending", pending, ReadProgressBuffer::count)
+                .description("尚未写回的阅读进度数量")
+                .register(meterRegistry);
+    }
+    
+    /**
+     * 记录阅读进度，同一用户同一本书只保留最新的一条
+     */
+    public void put(Progress progress) {
+        pending.compute(progress.getBookId(), (bookId, users) -> {
+            Map<String, Progress> updated = users != null ? users : new ConcurrentHashMap<>();
+            updated.put(key(progress.getUsername()), progress);
+            return updated;
+        });
+    }
+    
+    /**
+     * 用户在缓冲中的进度
+     */
+    public Progress get(Long bookId, String username) {
+        Map<String, Progress> users = pending.get(bookId);
+        return users != null ? users.get(key(username)) : null;
+    }
+    
+    /**
+     * 书籍在缓冲中最新的进度
+     */
+    public Progress latest(Long bookId) {
+        Map<String, Progress> users = pending.get(bookId);
+        if (users == null) {
+            return null;
+        }
+        Progress latest = null;
+        for (Progress progress : users.values()) {
+            if (latest == null || progress.getTime() > latest.getTime()) {
+                latest = progress;
+            }
+        }
+        return latest;
+    }
+    
+    /**
+     * 用缓冲中的进度覆盖书籍的进度
+     */
+    public void applyTo(Book book) {
+        if (book == null || pending.isEmpty()) {
+            return;
+        }
+        Progress progress = latest(book.getId());
+        if (progress != null) {
+            book.setDurChapterIndex(progress.getChapterIndex());
+            book.setDurChapterPos(progress.getChapterPos());
+            book.setDurChapterTime(progress.getTime());
+            if (progress.getChapterTitle() != null) {
+                book.setDurChapterTitle(progress.getChapterTitle());
+            }
+        }
+    }
+    
+    /**
+     * 丢弃书籍的进度（书籍已删除）
+     */
+    public void remove(Long bookId) {
+        pending.remove(bookId);
+    }
+    
+    /**
+     * 写回缓冲中的进度，写回期间到达的新进度留到下一次
+     */
+    @Scheduled(fixedDelayString = "${legado.progress.flush-interval-ms:5000}")
+    public synchronized void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        
+        Map<Long, Map<String, Progress>> snapshot = new HashMap<>();
+        List<Progress> updates = new ArrayList<>();
+        pending.forEach((bookId, users) -> {
+            Map<String, Progress> copy = new HashMap<>(users);
+            Progress latest = null;
+            for (Progress progress : copy.values()) {
+                if (latest == null || progress.getTime() > latest.getTime()) {
+                    latest = progress;
+                }
+            }
+            if (latest != null) {
+                snapshot.put(bookId, copy);
+                updates.add(latest);
+            }
+        });
+        
+        try {
+            writeQueue.execute(() -> jdbcTemplate.batchUpdate(
+                    "UPDATE books SET dur_chapter_index = ?, dur_chapter_pos = ?, dur_chapter_time = ?, "
+                            + "dur_chapter_title = COALESCE(?, dur_chapter_title) WHERE id = ?",
+                    updates, batchSize, (ps, progress) -> {
+                        ps.setInt(1, progress.getChapterIndex());
+                        ps.setInt(2, progress.getChapterPos());
+                        ps.setLong(3, progress.getTime());
+                        ps.setString(4, progress.getChapterTitle());
+                        ps.setLong(5, progress.getBookId());
+                    }));
+        } catch (Exception e) {
+            log.warn("写回阅读进度失败，稍后重试: {}", e.getMessage());
+            return;
+        }
+        
+        // 只移除已写回的进度，写回期间更新的进度保留
+        snapshot.forEach((bookId, written) -> pending.computeIfPresent(bookId, (id, users) -> {
+            written.forEach(users::remove);
+            return users.isEmpty() ? null : users;
+        }));
+        log.debug("写回阅读进度: {}本书", updates.size());
+    }
+    
+    @PreDestroy
+    public void destroy() {
+        flush();
+    }
+    
+    /**
+     * 阅读进度
+     */
+    public static final class Progress {
+        
+        private final Long bookId;
+        
+        private final String username;
+        
+        private final int chapterIndex;
+        
+        private final int chapterPos;
+        
+        private final String chapterTitle;
+        
+        private final long time;
+        
+        public Progress(Long bookId, String username, int chapterIndex, int chapterPos, String chapterTitle) {
+            this.bookId = bookId;
+            this.username = username;
+            this.chapterIndex = chapterIndex;
+            this.chapterPos = chapterPos;
+            this.chapterTitle = chapterTitle;
+            this.time = System.currentTimeMillis();
+        }
+        
+        public Long getBookId() {
+            return bookId;
+        }
+        
+        public String getUsername() {
+            return username;
+        }
+        
+        public int getChapterIndex() {
+            return chapterIndex;
+        }
+        
+        public int getChapterPos() {
+            return chapterPos;
+        }
+        
+        public String getChapterTitle() {
+            return chapterTitle;
+        }
+        
+        public long getTime() {
+            return time;
+        }
+    }
+    
+    /**
+     * 用户名可能为空，ConcurrentHashMap 不接受空键
+     */
+    private static String key(String username) {
+        return username != null ? username : "";
+    }
+    
+    private static int count(Map<Long, Map<String, Progress>> pending) {
+        int count = 0;
+        for (Map<String, Progress> users : pending.values()) {
+            count += users.size();
+        }
+        return count;
+    }
+    
+}
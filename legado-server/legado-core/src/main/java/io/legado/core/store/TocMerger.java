@@ -0,0 +1,193 @@
+package io.legado.core.store;
+
+import io.legado.core.dto.TocMergeResultDto;
+import io.legado.model.entity.BookChapter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 目录合并
+ * 将新获取的目录与已保存的章节按链接（其次按标题）对比，只新增、修改、删除有变化的章节，
+ * 已有章节保留缓存的内容；写入通过 JDBC 批量执行
+ */
+@Component
+public class TocMerger {
+    
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    
+    /**
+     * 每批写入的章节数量
+     */
+    @Value("${legado.toc.batch-size:500}")
+    private int batchSize;
+    
+    /**
+     * 合并目录
+     *
+     * @param bookId 书籍ID
+     * @param fresh 新获取的目录，章节索引为其在列表中的位置
+     */
+    @Transactional
+    public TocMergeResultDto merge(Long bookId, List<BookChapter> fresh) {
+        List<StoredChapter> stored = jdbcTemplate.query(
+                "SELECT id, chapter_index, title, url, is_vip, is_pay FROM book_chapters WHERE book_id = ? "
+                        + "ORDER BY chapter_index",
+                (rs, rowNum) -> new StoredChapter(rs.getLong("id"), rs.getInt("chapter_index"),
+                        rs.getString("title"), rs.getString("url"),
+                        rs.getBoolean("is_vip"), rs.getBoolean("is_pay")),
+                bookId);
+        
+        Map<String, Deque<StoredChapter>> byUrl = new HashMap<>();
+        Map<String, Deque<StoredChapter>> byTitle = new HashMap<>();
+        for (StoredChapter chapter : stored) {
+            if (chapter.url != null && !chapter.url.isEmpty()) {
+                byUrl.computeIfAbsent(chapter.url, key -> new ArrayDeque<>()).add(chapter);
+            }
+            if (chapter.title != null) {
+                byTitle.computeIfAbsent(chapter.title, key -> new ArrayDeque<>()).add(chapter);
+            }
+        }
+        
+        TocMergeResultDto result = new TocMergeResultDto();
+        List<BookChapter> inserts = new ArrayList<>();
+        List<BookChapter> updates = new ArrayList<>();
+        List<StoredChapter> moved = new ArrayList<>();
+        for (int i = 0; i < fresh.size(); i++) {
+            BookChapter chapter = fresh.get(i);
+            chapter.setBookId(bookId);
+            chapter.setChapterIndex(i);
+            
+            StoredChapter match = take(byUrl, chapter.getUrl());
+            if (match == null) {
+                match = take(byTitle, chapter.getTitle());
+            }
+            if (match == null) {
+                inserts.add(chapter);
+                continue;
+            }
+            
+            match.matched = true;
+            chapter.setId(match.id);
+            if (match.chapterIndex != i) {
+                moved.add(match);
+                updates.add(chapter);
+            } else if (!Objects.equals(match.title, chapter.getTitle())
+                    || !Objects.equals(match.url, chapter.getUrl())
+                    || match.isVip != Boolean.TRUE.equals(chapter.getIsVip())
+                    || match.isPay != Boolean.TRUE.equals(chapter.getIsPay())) {
+                updates.add(chapter);
+            } else {
+                result.setUnchanged(result.getUnchanged() + 1);
+            }
+        }
+        
+        List<Long> deletes = new ArrayList<>();
+        for (StoredChapter chapter : stored) {
+            if (!chapter.matched) {
+                deletes.add(chapter.id);
+            }
+        }
+        
+        // 先删除，再把要移动的章节挪到临时索引，避免与 (book_id, chapter_index) 唯一约束冲突
+        jdbcTemplate.batchUpdate("DELETE FROM book_chapters WHERE id = ?", deletes, batchSize,
+                (ps, id) -> ps.setLong(1, id));
+        jdbcTemplate.batchUpdate("UPDATE book_chapters SET chapter_index = ? WHERE id = ?", moved, batchSize,
+                (ps, chapter) -> {
+                    ps.setInt(1, (int) -chapter.id);
+                    ps.setLong(2, chapter.id);
+                });
+        jdbcTemplate.batchUpdate(
+                "UPDATE book_chapters SET chapter_index = ?, title = ?, url = ?, is_vip = ?, is_pay = ? WHERE id = ?",
+                updates, batchSize, (ps, chapter) -> {
+                    ps.setInt(1, chapter.getChapterIndex());
+                    ps.setString(2, chapter.getTitle());
+                    ps.setString(3, chapter.getUrl());
+                    ps.setBoolean(4, Boolean.TRUE.equals(chapter.getIsVip()));
+                    ps.setBoolean(5, Boolean.TRUE.equals(chapter.getIsPay()));
+                    ps.setLong(6, chapter.getId());
+                });
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO book_chapters (book_id, chapter_index, title, url, is_vip, is_pay, created_at) "
+                        + "VALUES (?, ?, ?, ?, ?, ?, ?)",
+                inserts, batchSize, (ps, chapter) -> {
+                    ps.setLong(1, bookId);
+                    ps.setInt(2, chapter.getChapterIndex());
+                    ps.setString(3, chapter.getTitle());
+                    ps.setString(4, chapter.getUrl());
+                    ps.setBoolean(5, Boolean.TRUE.equals(chapter.getIsVip()));
+                    ps.setBoolean(6, Boolean.TRUE.equals(chapter.getIsPay()));
+                    ps.setTimestamp(7, now);
+                });
+        
+        result.setTotal(fresh.size());
+        result.setInserted(inserts.size());
+        result.setUpdated(updates.size());
+        result.setDeleted(deletes.size());
+        result.setReindexed(!moved.isEmpty());
+        return result;
+    }
+    
+    /**
+     * 取出第一个未匹配的章节
+     */
+    private StoredChapter take(Map<String, Deque<StoredChapter>> index, String key) {
+        if (key == null || key.isEmpty()) {
+            return null;
+        }
+        Deque<StoredChapter> candidates = index.get(key);
+        if (candidates == null) {
+            return null;
+        }
+        while (!candidates.isEmpty()) {
+            StoredChapter chapter = candidates.poll();
+            if (!chapter.matched) {
+                return chapter;
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * 已保存的章节
+     */
+    private static final class StoredChapter {
+        
+        private final long id;
+        
+        private final int chapterIndex;
+        
+        private final String title;
+        
+        private final String url;
+        
+        private final boolean isVip;
+        
+        private final boolean isPay;
+        
+        private boolean matched;
+        
+        private StoredChapter(long id, int chapterIndex, String title, String url, boolean isVip, boolean isPay) {
+            this.id = id;
+            this.chapterIndex = chapterIndex;
+            this.title = title;
+            this.url = url;
+            this.isVip = isVip;
+            this.isPay = isPay;
+        }
+    }
+    
+}
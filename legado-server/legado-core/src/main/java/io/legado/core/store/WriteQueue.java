@@ -0,0 +1,221 @@
+package io.legado.core.store;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 数据库写队列
+ * 写操作排队交给唯一的写线程，写线程每次取出队列中积压的全部操作（不超过批量上限），
+ * 在同一个事务中执行并提交（组提交），请求越密集每次提交分摊的开销越少。
+ * 某个操作失败时整批回滚，再逐个单独提交，失败只影响该操作的调用方
+ */
+@Slf4j
+@Component
+public class WriteQueue {
+    
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    /**
+     * 每次提交的最多操作数
+     */
+    @Value("${legado.datasource.write.batch-size:100}")
+    private int batchSize;
+    
+    /**
+     * 队列容量，队列已满时调用方等待
+     */
+    @Value("${legado.datasource.write.queue-capacity:10000}")
+    private int queueCapacity;
+    
+    private BlockingQueue<Task<?>> queue;
+    
+    private TransactionTemplate transactionTemplate;
+    
+    private DistributionSummary batchSummary;
+    
+    private Thread writer;
+    
+    private volatile boolean running;
+    
+    @PostConstruct
+    public void start() {
+        queue = new LinkedBlockingQueue<>(queueCapacity);
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        batchSummary = DistributionSummary.builder("legado.db.write.batch")
+                .description("每次提交的写操作数量")
+                .register(meterRegistry);
+        Gauge.builder("legado.db.write.queue", queue, BlockingQueue::size)
+                .description("等待写入的操作数量")
+                .register(meterRegistry);
+        
+        running = true;
+        writer = new Thread(this::loop, "legado-db-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+    
+    /**
+     * 执行写操作并等待提交
+     * 已在写事务中或在写线程中调用时直接执行，加入当前事务
+     *
+     * @return 操作的返回值
+     */
+    public <T> T execute(Supplier<T> operation) {
+        if (Thread.currentThread() == writer || (TransactionSynchronizationManager.isActualTransactionActive()
+                && !TransactionSynchronizationManager.isCurrentTransactionReadOnly())) {
+            return operation.get();
+        }
+        if (!running) {
+            return transactionTemplate.execute(status -> operation.get());
+        }
+        
+        Task<T> task = new Task<>(operation);
+        try {
+            queue.put(task);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("等待写入被中断", e);
+        }
+        return task.await();
+    }
+    
+    /**
+     * 执行没有返回值的写操作并等待提交
+     */
+    public void run(Runnable operation) {
+        execute(() -> {
+            operation.run();
+            return null;
+        });
+    }
+    
+    private void loop() {
+        List<Task<?>> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Task<?> first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                commit(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                log.error("写线程异常", e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+    
+    private void commit(List<Task<?>> batch) {
+        batchSummary.record(batch.size());
+        List<Object> results = new ArrayList<>(batch.size());
+        try {
+            transactionTemplate.execute(status -> {
+                for (Task<?> task : batch) {
+                    results.add(task.operation.get());
+                }
+                return null;
+            });
+        } catch (RuntimeException | Error e) {
+            if (batch.size() == 1) {
+                batch.get(0).fail(e);
+                return;
+            }
+            log.debug("组提交失败，逐个重试: {}个操作, {}", batch.size(), e.getMessage());
+            for (Task<?> task : batch) {
+                commitOne(task);
+            }
+            return;
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            batch.get(i).complete(results.get(i));
+        }
+    }
+    
+    private void commitOne(Task<?> task) {
+        try {
+            task.complete(transactionTemplate.execute(status -> task.operation.get()));
+        } catch (RuntimeException | Error e) {
+            task.fail(e);
+        }
+    }
+    
+    @PreDestroy
+    public void destroy() throws InterruptedException {
+        running = false;
+        writer.join(TimeUnit.SECONDS.toMillis(30));
+        
+        // 停止时才入队的操作
+        Task<?> task;
+        while ((task = queue.poll()) != null) {
+            commitOne(task);
+        }
+    }
+    
+    /**
+     * 排队中的写操作
+     */
+    private static final class Task<T> {
+        
+        private final Supplier<T> operation;
+        
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        
+        private Task(Supplier<T> operation) {
+            this.operation = operation;
+        }
+        
+        @SuppressWarnings("unchecked")
+        private void complete(Object result) {
+            future.complete((T) result);
+        }
+        
+        private void fail(Throwable e) {
+            future.completeExceptionally(e);
+        }
+        
+        private T await() {
+            try {
+                return future.join();
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new RuntimeException("写入失败", cause);
+            }
+        }
+    }
+    
+}
@@ -0,0 +1,57 @@
+package io.legado.core.utils;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 异步许可
+ * 超出数量的申请排队，释放时按顺序交给下一个申请，等待期间不占用线程；取消返回的Future会放弃排队
+ */
+public final class AsyncPermits {
+    
+    private final int limit;
+    
+    private final Deque<CompletableFuture<Void>> waiters = new ArrayDeque<>();
+    
+    private int active;
+    
+    public AsyncPermits(int limit) {
+        this.limit = limit;
+    }
+    
+    /**
+     * 申请许可，完成后必须调用 {@link #release()}
+     */
+    public CompletableFuture<Void> acquire() {
+        synchronized (this) {
+            if (active < limit) {
+                active++;
+                return CompletableFuture.completedFuture(null);
+            }
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            waiters.add(future);
+            return future;
+        }
+    }
+    
+    /**
+     * 释放许可，跳过已取消的申请
+     */
+    public void release() {
+        while (true) {
+            CompletableFuture<Void> next;
+            synchronized (this) {
+                next = waiters.poll();
+                if (next == null) {
+                    active--;
+                    return;
+                }
+            }
+            if (next.complete(null)) {
+                return;
+            }
+        }
+    }
+    
+}
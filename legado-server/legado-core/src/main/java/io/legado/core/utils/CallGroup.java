@@ -0,0 +1,122 @@
+package io.legado.core.utils;
+
+import okhttp3.Call;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HTTP请求组
+ * 统一管理一组请求的截止时间，取消时中断组内所有进行中的请求
+ */
+public class CallGroup {
+    
+    private final long deadlineNanos;
+    
+    /**
+     * 是否有截止时间
+     */
+    private final boolean expires;
+    
+    private final Set<Call> calls = ConcurrentHashMap.newKeySet();
+    
+    private final List<Runnable> cancelActions = new CopyOnWriteArrayList<>();
+    
+    private volatile boolean cancelled;
+    
+    private CallGroup(long deadlineNanos, boolean expires) {
+        this.deadlineNanos = deadlineNanos;
+        this.expires = expires;
+    }
+    
+    /**
+     * 创建没有截止时间的请求组，只能通过取消结束
+     */
+    public static CallGroup create() {
+        return new CallGroup(0, false);
+    }
+    
+    /**
+     * 创建带截止时间的请求组
+     *
+     * @param timeoutMillis 从现在起的可用时间（毫秒）
+     */
+    public static CallGroup withTimeout(long timeoutMillis) {
+        return new CallGroup(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis), true);
+    }
+    
+    /**
+     * 剩余可用时间（毫秒），已过期时返回0
+     */
+    public long remainingMillis() {
+        if (!expires) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime()));
+    }
+    
+    /**
+     * 是否已过截止时间
+     */
+    public boolean isExpired() {
+        return expires && deadlineNanos - System.nanoTime() <= 0;
+    }
+    
+    /**
+     * 是否已取消
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+    
+    /**
+     * 是否仍可发起请求
+     */
+    public boolean isActive() {
+        return !cancelled && !isExpired();
+    }
+    
+    /**
+     * 登记请求，请求组已失效时直接取消该请求
+     */
+    void register(Call call) {
+        calls.add(call);
+        if (!isActive()) {
+            call.cancel();
+        }
+    }
+    
+    /**
+     * 请求结束后移除登记
+     */
+    void unregister(Call call) {
+        calls.remove(call);
+    }
+    
+    /**
+     * 取消请求组时执行的操作（如取消排队中的Future），已取消时立即执行；操作可能执行多次，需可重复执行
+     */
+    public void onCancel(Runnable action) {
+        cancelActions.add(action);
+        if (cancelled) {
+            action.run();
+        }
+    }
+    
+    /**
+     * 取消请求组，中断所有进行中的请求
+     */
+    public void cancel() {
+        cancelled = true;
+        for (Call call : calls) {
+            call.cancel();
+        }
+        for (Runnable action : cancelActions) {
+            action.run();
+        }
+    }
+    
+}
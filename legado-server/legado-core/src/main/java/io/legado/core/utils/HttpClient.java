@@ -1,32 +1,71 @@
 package io.legado.core.utils;
 
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import okhttp3.*;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.PostConstruct;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 
 /**
  * HTTP客户端工具
+ * 同步方法在调用线程上执行请求；异步方法交给OkHttp的Dispatcher排队，
+ * 超出并发上限的请求在Dispatcher中等待，不占用调用方线程
  */
 @Slf4j
 @Component
 public class HttpClient {
     
+    private static final String USER_AGENT = "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/120.0.0.0 Safari/537.36";
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    /**
+     * 异步请求的并发上限
+     */
+    @Value("${legado.http.max-requests:256}")
+    private int maxRequests;
+    
+    /**
+     * 同一主机的异步请求并发上限
+     */
+    @Value("${legado.http.max-requests-per-host:16}")
+    private int maxRequestsPerHost;
+    
     private OkHttpClient client;
     
     @PostConstruct
     public void init() {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(maxRequests);
+        dispatcher.setMaxRequestsPerHost(maxRequestsPerHost);
+        
         client = new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .connectionPool(new ConnectionPool(Math.max(5, maxRequestsPerHost), 5, TimeUnit.MINUTES))
                 .connectTimeout(30, TimeUnit.SECONDS)
                 .readTimeout(30, TimeUnit.SECONDS)
                 .writeTimeout(30, TimeUnit.SECONDS)
                 .followRedirects(true)
                 .followSslRedirects(true)
                 .build();
+        
+        Gauge.builder("legado.http.dispatcher.running", dispatcher, Dispatcher::runningCallsCount)
+                .description("进行中的HTTP请求数量")
+                .register(meterRegistry);
+        Gauge.builder("legado.http.dispatcher.queued", dispatcher, Dispatcher::queuedCallsCount)
+                .description("在Dispatcher中排队的异步HTTP请求数量")
+                .register(meterRegistry);
     }
     
     /**
@@ -47,41 +86,100 @@ public class HttpClient {
      * GET请求（带请求头和Cookie）
      */
     public String get(String url, Map<String, String> headers, String cookie) throws IOException {
-        Request.Builder builder = new Request.Builder().url(url);
-        
-        // 添加默认User-Agent
-        builder.header("User-Agent", "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/120.0.0.0 Safari/537.36");
-        
-        // 添加自定义请求头
-        if (headers != null) {
-            headers.forEach(builder::header);
-        }
-        
-        // 添加Cookie
-        if (cookie != null && !cookie.isEmpty()) {
-            builder.header("Cookie", cookie);
-        }
-        
-        Request request = builder.build();
-        
-        try (Response response = client.newCall(request).execute()) {
+        return get(url, headers, cookie, null, 0);
+    }
+    
+    /**
+     * GET请求（受请求组管理）
+     *
+     * @param group 请求组，取消请求组时中断本次请求，可为空
+     * @param timeoutMillis 本次请求的整体超时时间（毫秒），0表示仅使用客户端默认超时
+     */
+    public String get(String url, Map<String, String> headers, String cookie,
+                      CallGroup group, long timeoutMillis) throws IOException {
+        return execute(newCall(buildGet(url, headers, cookie), group, timeoutMillis), group);
+    }
+    
+    /**
+     * GET请求，以流的方式读取响应体，不把整个响应读入内存
+     */
+    public <T> T getStream(String url, BodyReader<T> reader) throws IOException {
+        try (Response response = newCall(buildGet(url, null, null), null, 0).execute()) {
             if (!response.isSuccessful()) {
-                throw new IOException("Unexpected response code: " + response.code());
+                throw new HttpStatusException(response.code());
             }
-            
             ResponseBody body = response.body();
-            return body != null ? body.string() : "";
+            return reader.read(body != null ? body.byteStream() : new ByteArrayInputStream(new byte[0]));
+        }
+    }
+    
+    /**
+     * 异步GET请求
+     */
+    public CompletableFuture<String> getAsync(String url, Map<String, String> headers) {
+        return getAsync(url, headers, null, null, 0);
+    }
+    
+    /**
+     * 异步GET请求（受请求组管理）
+     * 取消返回的Future会中断本次请求
+     *
+     * @param group 请求组，取消请求组时中断本次请求，可为空
+     * @param timeoutMillis 本次请求的整体超时时间（毫秒），0表示仅使用客户端默认超时
+     */
+    public CompletableFuture<String> getAsync(String url, Map<String, String> headers, String cookie,
+                                              CallGroup group, long timeoutMillis) {
+        Request request;
+        try {
+            request = buildGet(url, headers, cookie);
+        } catch (IllegalArgumentException e) {
+            return failedFuture(e);
         }
+        return enqueue(newCall(request, group, timeoutMillis), group);
     }
     
     /**
      * POST请求
      */
     public String post(String url, Map<String, String> headers, String body, String cookie) throws IOException {
+        return execute(newCall(buildPost(url, headers, body, cookie), null, 0), null);
+    }
+    
+    /**
+     * 异步POST请求
+     * 取消返回的Future会中断本次请求
+     */
+    public CompletableFuture<String> postAsync(String url, Map<String, String> headers, String body, String cookie) {
+        Request request;
+        try {
+            request = buildPost(url, headers, body, cookie);
+        } catch (IllegalArgumentException e) {
+            return failedFuture(e);
+        }
+        return enqueue(newCall(request, null, 0), null);
+    }
+    
+    private Request buildGet(String url, Map<String, String> headers, String cookie) {
+        return newBuilder(url, headers, cookie).build();
+    }
+    
+    private Request buildPost(String url, Map<String, String> headers, String body, String cookie) {
+        Request.Builder builder = newBuilder(url, headers, cookie);
+        
+        // 添加请求体
+        RequestBody requestBody = RequestBody.create(
+                body != null ? body : "",
+                MediaType.parse("application/x-www-form-urlencoded; charset=utf-8")
+        );
+        builder.post(requestBody);
+        return builder.build();
+    }
+    
+    private Request.Builder newBuilder(String url, Map<String, String> headers, String cookie) {
         Request.Builder builder = new Request.Builder().url(url);
         
         // 添加默认User-Agent
-        builder.header("User-Agent", "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/120.0.0.0 Safari/537.36");
+        builder.header("User-Agent", USER_AGENT);
         
         // 添加自定义请求头
         if (headers != null) {
@@ -92,24 +190,89 @@ public class HttpClient {
         if (cookie != null && !cookie.isEmpty()) {
             builder.header("Cookie", cookie);
         }
-        
-        // 添加请求体
-        RequestBody requestBody = RequestBody.create(
-                body != null ? body : "",
-                MediaType.parse("application/x-www-form-urlencoded; charset=utf-8")
-        );
-        builder.post(requestBody);
-        
-        Request request = builder.build();
-        
-        try (Response response = client.newCall(request).execute()) {
-            if (!response.isSuccessful()) {
-                throw new IOException("Unexpected response code: " + response.code());
+        return builder;
+    }
+    
+    private Call newCall(Request request, CallGroup group, long timeoutMillis) {
+        Call call = client.newCall(request);
+        if (timeoutMillis > 0) {
+            call.timeout().timeout(timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+        if (group != null) {
+            group.register(call);
+        }
+        return call;
+    }
+    
+    /**
+     * 执行请求
+     */
+    private String execute(Call call, CallGroup group) throws IOException {
+        try (Response response = call.execute()) {
+            return readBody(response);
+        } finally {
+            if (group != null) {
+                group.unregister(call);
+            }
+        }
+    }
+    
+    /**
+     * 异步执行请求，响应体在OkHttp的线程上读取
+     */
+    private CompletableFuture<String> enqueue(Call call, CallGroup group) {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                if (group != null) {
+                    group.unregister(call);
+                }
+                future.completeExceptionally(e);
             }
             
-            ResponseBody responseBody = response.body();
-            return responseBody != null ? responseBody.string() : "";
+            @Override
+            public void onResponse(Call call, Response response) {
+                try (Response res = response) {
+                    future.complete(readBody(res));
+                } catch (IOException e) {
+                    future.completeExceptionally(e);
+                } finally {
+                    if (group != null) {
+                        group.unregister(call);
+                    }
+                }
+            }
+        });
+        future.whenComplete((body, e) -> {
+            if (future.isCancelled()) {
+                call.cancel();
+            }
+        });
+        return future;
+    }
+    
+    private String readBody(Response response) throws IOException {
+        if (!response.isSuccessful()) {
+            throw new HttpStatusException(response.code());
         }
+        
+        ResponseBody body = response.body();
+        return body != null ? body.string() : "";
+    }
+    
+    private static <T> CompletableFuture<T> failedFuture(Throwable e) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(e);
+        return future;
+    }
+    
+    /**
+     * 响应体读取
+     */
+    public interface BodyReader<T> {
+        
+        T read(InputStream in) throws IOException;
     }
     
 }
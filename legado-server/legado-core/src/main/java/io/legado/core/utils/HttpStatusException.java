@@ -0,0 +1,21 @@
+package io.legado.core.utils;
+
+import java.io.IOException;
+
+/**
+ * HTTP响应码异常
+ */
+public class HttpStatusException extends IOException {
+    
+    private final int code;
+    
+    public HttpStatusException(int code) {
+        super("Unexpected response code: " + code);
+        this.code = code;
+    }
+    
+    public int getCode() {
+        return code;
+    }
+    
+}
@@ -0,0 +1,139 @@
+package io.legado.core.utils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import io.legado.core.dto.CursorPageDto;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * 分页游标
+ * 记录上一页最后一行的排序键，编码为URL安全的字符串交给客户端；
+ * 下一页从该位置之后查询（keyset 分页），翻到多深都只读取一页的数据
+ */
+public final class PageCursor {
+    
+    /**
+     * 默认每页数量
+     */
+    public static final int DEFAULT_SIZE = 50;
+    
+    /**
+     * 每页最多数量
+     */
+    public static final int MAX_SIZE = 200;
+    
+    private static final ObjectMapper mapper = new ObjectMapper();
+    
+    private final ArrayNode values;
+    
+    private PageCursor(ArrayNode values) {
+        this.values = values;
+    }
+    
+    /**
+     * 编码排序键
+     *
+     * @param kind 列表类型，防止把一个列表的游标用于另一个列表
+     * @param keys 排序键，支持 Long、Integer、String 与 LocalDateTime
+     */
+    public static String encode(String kind, Object... keys) {
+        ArrayNode values = mapper.createArrayNode();
+        values.add(kind);
+        for (Object key : keys) {
+            if (key == null) {
+                values.addNull();
+            } else if (key instanceof Long || key instanceof Integer) {
+                values.add(((Number) key).longValue());
+            } else {
+                values.add(key.toString());
+            }
+        }
+        try {
+            byte[] json = mapper.writeValueAsString(values).getBytes(StandardCharsets.UTF_8);
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(json);
+        } catch (Exception e) {
+            throw new RuntimeException("编码分页游标失败", e);
+        }
+    }
+    
+    /**
+     * 解码客户端传回的游标
+     *
+     * @throws IllegalArgumentException 游标格式错误或不属于该列表
+     */
+    public static PageCursor decode(String cursor, String kind, int keyCount) {
+        JsonNode node;
+        try {
+            node = mapper.readTree(Base64.getUrlDecoder().decode(cursor.trim()));
+        } catch (Exception e) {
+            throw new IllegalArgumentException("分页游标无效", e);
+        }
+        if (node == null || !node.isArray() || node.size() != keyCount + 1 || !kind.equals(node.get(0).asText())) {
+            throw new IllegalArgumentException("分页游标无效");
+        }
+        return new PageCursor((ArrayNode) node);
+    }
+    
+    public Long getLong(int index) {
+        JsonNode value = value(index);
+        if (value.isNull()) {
+            return null;
+        }
+        if (!value.canConvertToLong()) {
+            throw new IllegalArgumentException("分页游标无效");
+        }
+        return value.asLong();
+    }
+    
+    public String getString(int index) {
+        JsonNode value = value(index);
+        return value.isNull() ? null : value.asText();
+    }
+    
+    public LocalDateTime getTime(int index) {
+        String value = getString(index);
+        try {
+            return value != null ? LocalDateTime.parse(value) : null;
+        } catch (Exception e) {
+            throw new IllegalArgumentException("分页游标无效", e);
+        }
+    }
+    
+    /**
+     * 规范每页数量
+     */
+    public static int pageSize(Integer size) {
+        if (size == null || size <= 0) {
+            return DEFAULT_SIZE;
+        }
+        return Math.min(size, MAX_SIZE);
+    }
+    
+    /**
+     * 由多查询一行的结果生成分页结果
+     *
+     * @param rows     按 size + 1 查询的结果，多出的一行说明还有下一页
+     * @param cursorOf 由本页最后一行生成下一页的游标
+     */
+    public static <T> CursorPageDto<T> page(List<T> rows, int size, Function<T, String> cursorOf) {
+        CursorPageDto<T> page = new CursorPageDto<>();
+        if (rows.size() > size) {
+            page.setItems(rows.subList(0, size));
+            page.setNextCursor(cursorOf.apply(rows.get(size - 1)));
+        } else {
+            page.setItems(rows);
+        }
+        return page;
+    }
+    
+    private JsonNode value(int index) {
+        return values.get(index + 1);
+    }
+    
+}
@@ -0,0 +1,59 @@
+package io.legado.core.booksource;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * JavaScript上下文复用时脚本之间的隔离
+ * 只有一个上下文，所有脚本在同一个上下文中执行
+ */
+class JsContextPoolTest {
+    
+    private JsContextPool pool;
+    
+    @BeforeEach
+    void setUp() {
+        pool = new JsContextPool();
+        ReflectionTestUtils.setField(pool, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(pool, "poolSize", 1);
+        ReflectionTestUtils.setField(pool, "checkoutTimeoutMillis", 5000L);
+        ReflectionTestUtils.setField(pool, "sourceCacheSize", 100L);
+        pool.init();
+    }
+    
+    @AfterEach
+    void tearDown() {
+        pool.destroy();
+    }
+    
+    @Test
+    void globalsDoNotLeakBetweenScripts() {
+        assertEquals(6L, pool.eval("var a = 1; function f() { return 2; } b = 3; a + f() + b"));
+        
+        assertEquals("undefined undefined undefined",
+                pool.eval("typeof a + ' ' + typeof f + ' ' + typeof b"));
+        // 清理后上下文继续复用
+        assertEquals(1, ((AtomicInteger) ReflectionTestUtils.getField(pool, "created")).get());
+    }
+    
+    @Test
+    void lexicalDeclarationsCanBeRepeated() {
+        assertEquals(3L, pool.eval("let x = 1; const y = 2; class C {} x + y"));
+        assertEquals(7L, pool.eval("let x = 3; const y = 4; class C {} x + y"));
+    }
+    
+    @Test
+    void bindingsAreRemovedAfterEval() {
+        assertEquals("内容", pool.eval("result", Collections.singletonMap("result", "内容")));
+        assertEquals("undefined", pool.eval("typeof result"));
+    }
+    
+}
@@ -0,0 +1,77 @@
+package io.legado.core.booksource.rule;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 编译后规则的列表与字段解析
+ */
+class CompiledRuleTest {
+    
+    private static final String HTML = "<html><body><ul class='list'>"
+            + "<li><a href='/book/1'>第一本</a><span class='author'>作者甲</span></li>"
+            + "<li><a href='/book/2'>第二本</a><span class='author'>作者乙</span></li>"
+            + "</ul></body></html>";
+    
+    @Test
+    void allInOneRegexMatchesOriginalResponse() {
+        // 单引号只存在于原始响应中，jsoup序列化后会变为双引号
+        CompiledRule list = RuleCompiler.compileList(":<a href='([^']+)'>([^<]+)</a><span class='author'>([^<]+)");
+        RuleContext ctx = new RuleContext(HTML, "https://example.com", null);
+        
+        List<Object> items = list.getElements(ctx);
+        
+        assertEquals(2, items.size());
+        assertEquals("第一本", RuleCompiler.compileText("$2").getString(ctx, items.get(0)));
+        assertEquals("作者乙", RuleCompiler.compileText("$3").getString(ctx, items.get(1)));
+        assertEquals("/book/2", RuleCompiler.compileAttr("$1", "href").getUrl(ctx, items.get(1)));
+    }
+    
+    @Test
+    void allInOneRegexNarrowsWithMultiplePatterns() {
+        CompiledRule list = RuleCompiler.compileList(":<ul class='list'>[\\s\\S]*?</ul>&&<a href='([^']+)'>([^<]+)</a>");
+        RuleContext ctx = new RuleContext(HTML + "<a href='/other'>其他</a>", "https://example.com", null);
+        
+        List<Object> items = list.getElements(ctx);
+        
+        assertEquals(2, items.size());
+        assertEquals("第二本", RuleCompiler.compileText("$2").getString(ctx, items.get(1)));
+    }
+    
+    @Test
+    void jsoupListStartsFromParsedDocument() {
+        CompiledRule list = RuleCompiler.compileList("class.list@tag.li");
+        RuleContext ctx = new RuleContext(HTML, "https://example.com", null);
+        
+        List<Object> items = list.getElements(ctx);
+        
+        assertEquals(2, items.size());
+        assertEquals("第一本", RuleCompiler.compileText("tag.a@text").getString(ctx, items.get(0)));
+        assertEquals("作者乙", RuleCompiler.compileText("class.author@text").getString(ctx, items.get(1)));
+    }
+    
+    @Test
+    void reversedListKeepsOrderFlag() {
+        CompiledRule list = RuleCompiler.compileList("-class.list@tag.li");
+        RuleContext ctx = new RuleContext(HTML, "https://example.com", null);
+        
+        assertEquals(2, list.getElements(ctx).size());
+        assertEquals(true, list.isReverse());
+    }
+    
+    @Test
+    void jsonListUsesJsonPath() {
+        String json = "{\"data\":[{\"name\":\"第一本\"},{\"name\":\"第二本\"}]}";
+        CompiledRule list = RuleCompiler.compileList("$.data[*]");
+        RuleContext ctx = new RuleContext(json, "https://example.com", null);
+        
+        List<Object> items = list.getElements(ctx);
+        
+        assertEquals(2, items.size());
+        assertEquals("第二本", RuleCompiler.compileText("$.name").getString(ctx, items.get(1)));
+    }
+    
+}
@@ -0,0 +1,143 @@
+package io.legado.core.search;
+
+import io.legado.core.dto.SearchBatchDto;
+import io.legado.core.dto.SearchSummaryDto;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+/**
+ * 搜索会话：推送在锁外进行，推送缓慢时截止与取消不受影响
+ */
+class SearchSessionTest {
+    
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+    
+    @Test
+    void expireIsNotBlockedBySlowListener() throws Exception {
+        CountDownLatch sendStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> events = new CopyOnWriteArrayList<>();
+        SearchSession session = new SearchSession("关键词", 60_000, 60_000, new SearchListener() {
+            @Override
+            public void onBatch(SearchBatchDto batch) {
+                sendStarted.countDown();
+                await(release);
+                events.add("batch:" + batch.getSourceUrl());
+            }
+            
+            @Override
+            public void onComplete(SearchSummaryDto summary) {
+                events.add("summary");
+            }
+        }, executor);
+        session.addSource("a", "A");
+        session.addSource("b", "B");
+        
+        session.accept(batch("a"));
+        assertTrue(sendStarted.await(5, TimeUnit.SECONDS));
+        
+        // 推送阻塞期间截止：立即返回并中断请求
+        assertTimeoutPreemptively(java.time.Duration.ofSeconds(1), session::expire);
+        assertFalse(session.isActive());
+        assertFalse(session.getResult().isDone());
+        
+        // 推送恢复后按顺序推送结果与汇总
+        release.countDown();
+        SearchSummaryDto summary = session.getResult().get(5, TimeUnit.SECONDS);
+        assertEquals(1, summary.getTimedOut().size());
+        assertEquals(2, events.size());
+        assertEquals("batch:a", events.get(0));
+        assertEquals("summary", events.get(1));
+    }
+    
+    @Test
+    void cancelIsNotBlockedBySlowListener() throws Exception {
+        CountDownLatch sendStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> events = new CopyOnWriteArrayList<>();
+        SearchSession session = new SearchSession("关键词", 60_000, 60_000, new SearchListener() {
+            @Override
+            public void onBatch(SearchBatchDto batch) {
+                sendStarted.countDown();
+                await(release);
+                events.add("batch:" + batch.getSourceUrl());
+            }
+            
+            @Override
+            public void onComplete(SearchSummaryDto summary) {
+                events.add("summary");
+            }
+        }, executor);
+        session.addSource("a", "A");
+        session.addSource("b", "B");
+        session.addSource("c", "C");
+        
+        session.accept(batch("a"));
+        assertTrue(sendStarted.await(5, TimeUnit.SECONDS));
+        session.accept(batch("b"));
+        
+        assertTimeoutPreemptively(java.time.Duration.ofSeconds(1), session::cancel);
+        assertFalse(session.isActive());
+        assertTrue(session.getResult().isDone());
+        
+        // 取消后未推送的结果被丢弃
+        release.countDown();
+        Thread.sleep(200);
+        assertEquals(1, events.size());
+        assertEquals("batch:a", events.get(0));
+    }
+    
+    @Test
+    void listenerFailureCancelsSearch() throws Exception {
+        SearchSession session = new SearchSession("关键词", 60_000, 60_000, new SearchListener() {
+            @Override
+            public void onBatch(SearchBatchDto batch) {
+                throw new IllegalStateException("客户端已断开");
+            }
+            
+            @Override
+            public void onComplete(SearchSummaryDto summary) {
+            }
+        }, executor);
+        session.addSource("a", "A");
+        session.addSource("b", "B");
+        
+        session.accept(batch("a"));
+        session.getResult().get(5, TimeUnit.SECONDS);
+        assertFalse(session.isActive());
+    }
+    
+    private static SearchBatchDto batch(String sourceUrl) {
+        SearchBatchDto batch = new SearchBatchDto();
+        batch.setSourceUrl(sourceUrl);
+        batch.setSourceName(sourceUrl.toUpperCase());
+        batch.setStatus(SourceSearchStatus.SUCCESS);
+        return batch;
+    }
+    
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+}
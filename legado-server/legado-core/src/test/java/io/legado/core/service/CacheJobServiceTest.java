@@ -0,0 +1,245 @@
+package io.legado.core.service;
+
+import io.legado.core.store.WriteQueue;
+import io.legado.model.entity.Book;
+import io.legado.model.entity.CacheJob;
+import io.legado.model.repository.BookChapterRepository;
+import io.legado.model.repository.CacheJobRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 章节缓存任务的重试、计数、进度保存与书源并发上限
+ * 书籍服务与仓库为模拟对象，写队列直接执行
+ */
+class CacheJobServiceTest {
+    
+    private static final String ORIGIN = "http://source";
+    
+    private final Map<Long, CacheJob> jobs = new ConcurrentHashMap<>();
+    
+    private final AtomicLong ids = new AtomicLong();
+    
+    private final BlockingQueue<CacheProgressEvent> finished = new LinkedBlockingQueue<>();
+    
+    /**
+     * 保存的进度：已缓存章节数
+     */
+    private final List<Integer> savedProgress = new CopyOnWriteArrayList<>();
+    
+    private BookService bookService;
+    
+    private ThreadPoolTaskExecutor cacheJobExecutor;
+    
+    private ThreadPoolTaskScheduler taskScheduler;
+    
+    private CacheJobService service;
+    
+    @BeforeEach
+    void setUp() {
+        cacheJobExecutor = new ThreadPoolTaskExecutor();
+        cacheJobExecutor.setCorePoolSize(1);
+        cacheJobExecutor.setMaxPoolSize(1);
+        cacheJobExecutor.initialize();
+        taskScheduler = new ThreadPoolTaskScheduler();
+        taskScheduler.setPoolSize(2);
+        taskScheduler.initialize();
+        
+        CacheJobRepository cacheJobRepository = mock(CacheJobRepository.class);
+        when(cacheJobRepository.save(any())).thenAnswer(invocation -> {
+            CacheJob job = invocation.getArgument(0);
+            job.setId(ids.incrementAndGet());
+            job.setStatus(CacheJob.PENDING);
+            jobs.put(job.getId(), job);
+            return job;
+        });
+        when(cacheJobRepository.findById(anyLong()))
+                .thenAnswer(invocation -> Optional.ofNullable(jobs.get(invocation.<Long>getArgument(0))));
+        doAnswer(invocation -> {
+            jobs.get(invocation.<Long>getArgument(0)).setStatus(invocation.getArgument(1));
+            return 1;
+        }).when(cacheJobRepository).updateStatus(anyLong(), anyString(), any());
+        doAnswer(invocation -> {
+            savedProgress.add(invocation.getArgument(1));
+            return 1;
+        }).when(cacheJobRepository).updateProgress(anyLong(), anyInt(), anyInt());
+        
+        BookChapterRepository bookChapterRepository = mock(BookChapterRepository.class);
+        when(bookChapterRepository.findMaxChapterIndexByBookId(anyLong())).thenReturn(9);
+        when(bookChapterRepository.findUncachedIndexes(anyLong(), anyInt(), anyInt())).thenAnswer(invocation -> {
+            List<Integer> indexes = new ArrayList<>();
+            for (int i = invocation.<Integer>getArgument(1); i <= invocation.<Integer>getArgument(2); i++) {
+                indexes.add(i);
+            }
+            return indexes;
+        });
+        
+        bookService = mock(BookService.class);
+        when(bookService.getBookById(anyLong())).thenAnswer(invocation -> {
+            Book book = new Book();
+            book.setId(invocation.getArgument(0));
+            book.setName("书" + book.getId());
+            book.setOrigin(ORIGIN);
+            return book;
+        });
+        
+        WriteQueue writeQueue = mock(WriteQueue.class);
+        when(writeQueue.execute(any())).thenAnswer(invocation -> invocation.<Supplier<?>>getArgument(0).get());
+        doAnswer(invocation -> {
+            invocation.<Runnable>getArgument(0).run();
+            return null;
+        }).when(writeQueue).run(any());
+        
+        ApplicationEventPublisher eventPublisher = mock(ApplicationEventPublisher.class);
+        doAnswer(invocation -> {
+            CacheProgressEvent event = invocation.getArgument(0);
+            if (!CacheJob.RUNNING.equals(event.getStatus())) {
+                finished.add(event);
+            }
+            return null;
+        }).when(eventPublisher).publishEvent(any(Object.class));
+        
+        service = new CacheJobService();
+        ReflectionTestUtils.setField(service, "cacheJobRepository", cacheJobRepository);
+        ReflectionTestUtils.setField(service, "bookChapterRepository", bookChapterRepository);
+        ReflectionTestUtils.setField(service, "bookService", bookService);
+        ReflectionTestUtils.setField(service, "writeQueue", writeQueue);
+        ReflectionTestUtils.setField(service, "cacheJobExecutor", cacheJobExecutor);
+        ReflectionTestUtils.setField(service, "taskScheduler", taskScheduler);
+        ReflectionTestUtils.setField(service, "eventPublisher", eventPublisher);
+        ReflectionTestUtils.setField(service, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(service, "poolSize", 2);
+        ReflectionTestUtils.setField(service, "perSource", 2);
+        ReflectionTestUtils.setField(service, "maxRetries", 2);
+        ReflectionTestUtils.setField(service, "retryBackoff", 10L);
+        ReflectionTestUtils.setField(service, "progressInterval", 0L);
+        service.init();
+    }
+    
+    @AfterEach
+    void tearDown() {
+        taskScheduler.shutdown();
+        cacheJobExecutor.shutdown();
+    }
+    
+    @Test
+    void retriesFailedChapters() throws Exception {
+        Map<Integer, AtomicInteger> attempts = new ConcurrentHashMap<>();
+        when(bookService.cacheChapterContent(anyLong(), anyInt())).thenAnswer(invocation -> {
+            int index = invocation.getArgument(1);
+            int attempt = attempts.computeIfAbsent(index, key -> new AtomicInteger()).incrementAndGet();
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            // 第2章第一次失败，第3章一直失败
+            if (index == 2 && attempt == 1 || index == 3) {
+                future.completeExceptionally(new RuntimeException("获取失败"));
+            } else {
+                future.complete(null);
+            }
+            return future;
+        });
+        
+        CacheJob job = service.createJob(1L, null, null, "user");
+        CacheProgressEvent event = finished.poll(10, TimeUnit.SECONDS);
+        
+        assertNotNull(event);
+        assertEquals(CacheJob.COMPLETED, event.getStatus());
+        assertEquals(9, event.getCachedCount());
+        assertEquals(1, event.getFailedCount());
+        assertEquals(CacheJob.COMPLETED, jobs.get(job.getId()).getStatus());
+        assertEquals(2, attempts.get(2).get());
+        assertEquals(3, attempts.get(3).get());
+        assertEquals(1, attempts.get(0).get());
+    }
+    
+    @Test
+    void limitsChaptersPerSourceAcrossJobs() throws Exception {
+        AtomicInteger active = new AtomicInteger();
+        AtomicInteger maxActive = new AtomicInteger();
+        when(bookService.cacheChapterContent(anyLong(), anyInt())).thenAnswer(invocation -> {
+            maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+            // 由调度器稍后完成，获取期间不占用任务线程
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            taskScheduler.schedule(() -> {
+                active.decrementAndGet();
+                future.complete(null);
+            }, Instant.now().plusMillis(20));
+            return future;
+        });
+        
+        service.createJob(1L, null, null, "user");
+        service.createJob(2L, null, null, "user");
+        CacheProgressEvent first = finished.poll(10, TimeUnit.SECONDS);
+        CacheProgressEvent second = finished.poll(10, TimeUnit.SECONDS);
+        
+        assertNotNull(first);
+        assertNotNull(second);
+        assertEquals(10, first.getCachedCount());
+        assertEquals(10, second.getCachedCount());
+        assertTrue(maxActive.get() <= 2, "同一书源同时获取的章节数: " + maxActive.get());
+    }
+    
+    @Test
+    void savesProgressFromScheduler() throws Exception {
+        CompletableFuture<Void> last = new CompletableFuture<>();
+        CountDownLatch lastStarted = new CountDownLatch(1);
+        when(bookService.cacheChapterContent(anyLong(), anyInt())).thenAnswer(invocation -> {
+            if (invocation.<Integer>getArgument(1) == 9) {
+                lastStarted.countDown();
+                return last;
+            }
+            return CompletableFuture.completedFuture(null);
+        });
+        
+        service.createJob(1L, null, null, "user");
+        assertTrue(lastStarted.await(5, TimeUnit.SECONDS));
+        
+        // 获取章节的过程中不写入进度，定时保存时写入最新计数
+        assertTrue(savedProgress.isEmpty());
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!savedProgress.contains(9)) {
+            assertTrue(System.currentTimeMillis() < deadline, "等待保存进度超时");
+            service.flushProgress();
+            Thread.sleep(10);
+        }
+        
+        last.complete(null);
+        CacheProgressEvent event = finished.poll(10, TimeUnit.SECONDS);
+        assertNotNull(event);
+        assertEquals(10, event.getCachedCount());
+        assertEquals(10, savedProgress.get(savedProgress.size() - 1));
+    }
+    
+}
@@ -0,0 +1,152 @@
+package io.legado.core.service;
+
+import io.legado.core.source.SourceRegistry;
+import io.legado.core.source.SourceStats;
+import io.legado.core.utils.CallGroup;
+import io.legado.model.entity.Book;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 章节预读的位置跳转取消与阅读请求优先
+ * 书籍服务为模拟对象，预读的章节在测试中手动完成
+ */
+class ReadaheadServiceTest {
+    
+    private static final Long BOOK_ID = 1L;
+    
+    private final BlockingQueue<Prefetch> prefetches = new LinkedBlockingQueue<>();
+    
+    private BookService bookService;
+    
+    private ThreadPoolTaskExecutor readaheadExecutor;
+    
+    private ThreadPoolTaskScheduler taskScheduler;
+    
+    private ReadaheadService service;
+    
+    @BeforeEach
+    void setUp() {
+        readaheadExecutor = new ThreadPoolTaskExecutor();
+        readaheadExecutor.setCorePoolSize(1);
+        readaheadExecutor.setMaxPoolSize(1);
+        readaheadExecutor.initialize();
+        taskScheduler = new ThreadPoolTaskScheduler();
+        taskScheduler.initialize();
+        
+        bookService = mock(BookService.class);
+        when(bookService.getBookById(anyLong())).thenAnswer(invocation -> {
+            Book book = new Book();
+            book.setId(invocation.getArgument(0));
+            book.setName("书");
+            book.setOrigin("http://source");
+            book.setTotalChapterNum(100);
+            return book;
+        });
+        when(bookService.getChapterContent(anyLong(), anyInt()))
+                .thenReturn(CompletableFuture.completedFuture("内容"));
+        when(bookService.prefetchChapterContent(anyLong(), anyInt(), any())).thenAnswer(invocation -> {
+            Prefetch prefetch = new Prefetch(invocation.getArgument(1), invocation.getArgument(2));
+            prefetch.group.onCancel(() -> prefetch.future.cancel(false));
+            prefetches.add(prefetch);
+            return prefetch.future;
+        });
+        
+        SourceRegistry sourceRegistry = mock(SourceRegistry.class);
+        when(sourceRegistry.findBySourceUrl(any())).thenReturn(Optional.empty());
+        
+        service = new ReadaheadService();
+        ReflectionTestUtils.setField(service, "bookService", bookService);
+        ReflectionTestUtils.setField(service, "sourceRegistry", sourceRegistry);
+        ReflectionTestUtils.setField(service, "sourceStats", mock(SourceStats.class));
+        ReflectionTestUtils.setField(service, "readaheadExecutor", readaheadExecutor);
+        ReflectionTestUtils.setField(service, "taskScheduler", taskScheduler);
+        ReflectionTestUtils.setField(service, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(service, "enabled", true);
+        ReflectionTestUtils.setField(service, "minChapters", 1);
+        ReflectionTestUtils.setField(service, "maxChapters", 5);
+        ReflectionTestUtils.setField(service, "perSource", 2);
+        ReflectionTestUtils.setField(service, "permitTimeout", 1000L);
+        service.init();
+    }
+    
+    @AfterEach
+    void tearDown() {
+        taskScheduler.shutdown();
+        readaheadExecutor.shutdown();
+    }
+    
+    @Test
+    void jumpCancelsInFlightPrefetch() throws Exception {
+        service.getChapterContent(BOOK_ID, 0, "user").get();
+        Prefetch first = prefetches.poll(5, TimeUnit.SECONDS);
+        assertNotNull(first);
+        assertEquals(1, first.index);
+        
+        // 跳到第50章，进行中的第1章预读被取消，从第51章重新开始
+        service.getChapterContent(BOOK_ID, 50, "user").get();
+        assertTrue(first.group.isCancelled());
+        assertTrue(first.future.isCancelled());
+        Prefetch next = prefetches.poll(5, TimeUnit.SECONDS);
+        assertNotNull(next);
+        assertEquals(51, next.index);
+        assertNotSame(first.group, next.group);
+        assertTrue(next.group.isActive());
+    }
+    
+    @Test
+    void prefetchWaitsForReading() throws Exception {
+        CompletableFuture<String> reading = new CompletableFuture<>();
+        when(bookService.getChapterContent(eq(2L), anyInt())).thenReturn(reading);
+        service.getChapterContent(2L, 0, "other");
+        
+        // 同一书源有阅读请求进行时不开始预读
+        service.getChapterContent(BOOK_ID, 0, "user").get();
+        assertNull(prefetches.poll(200, TimeUnit.MILLISECONDS));
+        
+        reading.complete("内容");
+        Prefetch prefetch = prefetches.poll(5, TimeUnit.SECONDS);
+        assertNotNull(prefetch);
+    }
+    
+    /**
+     * 一次预读调用
+     */
+    private static final class Prefetch {
+        
+        private final int index;
+        
+        private final CallGroup group;
+        
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+        
+        private Prefetch(int index, CallGroup group) {
+            this.index = index;
+            this.group = group;
+        }
+    }
+    
+}
@@ -0,0 +1,126 @@
+package io.legado.core.source;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 请求合并：共用进行中的加载、异常传递与完成后重新加载
+ */
+class RequestCoalescerTest {
+    
+    private SimpleMeterRegistry meterRegistry;
+    
+    private RequestCoalescer coalescer;
+    
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        coalescer = new RequestCoalescer();
+        ReflectionTestUtils.setField(coalescer, "meterRegistry", meterRegistry);
+        coalescer.init();
+    }
+    
+    @Test
+    void sharesInFlightLoad() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        CompletableFuture<String> source = new CompletableFuture<>();
+        
+        CompletableFuture<String> first = coalescer.execute("content", "1:0", () -> {
+            loads.incrementAndGet();
+            return source;
+        });
+        CompletableFuture<String> second = coalescer.execute("content", "1:0", () -> {
+            loads.incrementAndGet();
+            return CompletableFuture.completedFuture("other");
+        });
+        
+        assertFalse(second.isDone());
+        assertEquals(1.0, meterRegistry.get("legado.source.inflight").gauge().value());
+        assertEquals(1.0, meterRegistry.get("legado.source.coalesced.waiting").gauge().value());
+        source.complete("text");
+        
+        assertEquals("text", first.get());
+        assertEquals("text", second.get());
+        assertEquals(1, loads.get());
+        assertEquals(1.0, meterRegistry.get("legado.source.coalesced").tag("type", "content").counter().count());
+        assertEquals(0.0, meterRegistry.get("legado.source.inflight").gauge().value());
+        assertEquals(0.0, meterRegistry.get("legado.source.coalesced.waiting").gauge().value());
+    }
+    
+    @Test
+    void separatesTypesAndKeys() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        CompletableFuture<String> source = new CompletableFuture<>();
+        
+        coalescer.execute("content", "1:0", () -> source);
+        CompletableFuture<String> otherKey = coalescer.execute("content", "1:1", () -> {
+            loads.incrementAndGet();
+            return CompletableFuture.completedFuture("b");
+        });
+        CompletableFuture<String> otherType = coalescer.execute("toc", "1:0", () -> {
+            loads.incrementAndGet();
+            return CompletableFuture.completedFuture("c");
+        });
+        
+        assertEquals("b", otherKey.get());
+        assertEquals("c", otherType.get());
+        assertEquals(2, loads.get());
+    }
+    
+    @Test
+    void waitersGetLoaderException() {
+        CompletableFuture<String> source = new CompletableFuture<>();
+        CompletableFuture<String> first = coalescer.execute("content", "1:0", () -> source);
+        CompletableFuture<String> second = coalescer.execute("content", "1:0", () -> source);
+        IOException error = new IOException("书源不可用");
+        source.completeExceptionally(error);
+        
+        ExecutionException e1 = assertThrows(ExecutionException.class, first::get);
+        ExecutionException e2 = assertThrows(ExecutionException.class, second::get);
+        assertSame(error, e1.getCause());
+        assertSame(error, e2.getCause());
+    }
+    
+    @Test
+    void synchronousExceptionBecomesFailedFuture() {
+        RuntimeException error = new RuntimeException("章节不存在");
+        CompletableFuture<String> future = coalescer.execute("content", "1:0", () -> {
+            throw error;
+        });
+        
+        assertTrue(future.isCompletedExceptionally());
+        ExecutionException e = assertThrows(ExecutionException.class, future::get);
+        assertSame(error, e.getCause());
+    }
+    
+    @Test
+    void loadsAgainAfterCompletion() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        for (int i = 0; i < 2; i++) {
+            String value = coalescer.execute("content", "1:0",
+                    () -> CompletableFuture.completedFuture("v" + loads.incrementAndGet())).get();
+            assertEquals("v" + (i + 1), value);
+        }
+        
+        // 失败后同样重新加载
+        CompletableFuture<String> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new RuntimeException("获取失败"));
+        assertThrows(ExecutionException.class, () -> coalescer.execute("content", "1:0", () -> failed).get());
+        assertEquals("v3", coalescer.execute("content", "1:0",
+                () -> CompletableFuture.completedFuture("v" + loads.incrementAndGet())).get());
+    }
+    
+}
@@ -0,0 +1,143 @@
+package io.legado.core.source;
+
+import io.legado.core.dto.CircuitBreakerStatusDto;
+import io.legado.core.utils.HttpStatusException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 站点熔断的失败计数、暂停、试探与恢复
+ */
+class SourceCircuitBreakerTest {
+    
+    private static final String URL = "http://example.com/book/1";
+    
+    private static final long OPEN_MILLIS = 50;
+    
+    private SimpleMeterRegistry meterRegistry;
+    
+    private SourceCircuitBreaker breaker;
+    
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        breaker = new SourceCircuitBreaker();
+        ReflectionTestUtils.setField(breaker, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(breaker, "failureThreshold", 3);
+        ReflectionTestUtils.setField(breaker, "openMillis", OPEN_MILLIS);
+        ReflectionTestUtils.setField(breaker, "maxOpenMillis", OPEN_MILLIS * 3);
+        breaker.init();
+    }
+    
+    @Test
+    void opensAfterConsecutiveFailures() throws Exception {
+        IOException error = new IOException("连接失败");
+        breaker.onFailure(URL, error);
+        breaker.onFailure(URL, error);
+        breaker.checkRequest(URL);
+        
+        breaker.onFailure(URL, error);
+        assertThrows(CircuitOpenException.class, () -> breaker.checkRequest(URL));
+        assertEquals(1.0, meterRegistry.get("legado.source.breaker.open").gauge().value());
+        assertEquals(1.0, meterRegistry.get("legado.source.breaker.rejected").counter().count());
+        // 同一站点的其他地址同样暂停，其他站点不受影响
+        assertThrows(CircuitOpenException.class, () -> breaker.checkRequest("http://example.com/book/2"));
+        assertDoesNotThrow(() -> breaker.checkRequest("http://example.com:8080/book/1"));
+    }
+    
+    @Test
+    void successResetsFailureCount() throws Exception {
+        IOException error = new IOException("连接失败");
+        breaker.onFailure(URL, error);
+        breaker.onFailure(URL, error);
+        breaker.onSuccess(URL);
+        breaker.onFailure(URL, error);
+        breaker.onFailure(URL, error);
+        
+        breaker.checkRequest(URL);
+        assertEquals(2, status().getConsecutiveFailures());
+        assertEquals("CLOSED", status().getState());
+    }
+    
+    @Test
+    void ignoresErrorsThatDoNotMeanSiteIsDown() {
+        assertFalse(SourceCircuitBreaker.isFailure(new HttpStatusException(404)));
+        assertFalse(SourceCircuitBreaker.isFailure(new RuntimeException("解析失败")));
+        assertFalse(SourceCircuitBreaker.isFailure(new CircuitOpenException("example.com:80")));
+        assertTrue(SourceCircuitBreaker.isFailure(new HttpStatusException(503)));
+        assertTrue(SourceCircuitBreaker.isFailure(new HttpStatusException(429)));
+        assertTrue(SourceCircuitBreaker.isFailure(new CompletionException(new SocketTimeoutException())));
+        
+        for (int i = 0; i < 5; i++) {
+            breaker.onFailure(URL, new HttpStatusException(404));
+        }
+        assertDoesNotThrow(() -> breaker.checkRequest(URL));
+        assertTrue(breaker.getStatus().isEmpty());
+    }
+    
+    @Test
+    void halfOpenAllowsOneProbe() throws Exception {
+        open();
+        Thread.sleep(OPEN_MILLIS + 20);
+        
+        breaker.checkRequest(URL);
+        assertEquals("HALF_OPEN", status().getState());
+        assertThrows(CircuitOpenException.class, () -> breaker.checkRequest(URL));
+        
+        breaker.onSuccess(URL);
+        assertEquals("CLOSED", status().getState());
+        breaker.checkRequest(URL);
+    }
+    
+    @Test
+    void failedProbeDoublesOpenTime() throws Exception {
+        open();
+        Thread.sleep(OPEN_MILLIS + 20);
+        breaker.checkRequest(URL);
+        
+        breaker.onFailure(URL, new IOException("连接失败"));
+        CircuitBreakerStatusDto status = status();
+        assertEquals("OPEN", status.getState());
+        assertEquals(OPEN_MILLIS * 2, status.getRetryAt() - status.getOpenedAt());
+        
+        // 加倍后不超过最长暂停时间
+        Thread.sleep(OPEN_MILLIS * 2 + 20);
+        breaker.checkRequest(URL);
+        breaker.onFailure(URL, new IOException("连接失败"));
+        status = status();
+        assertEquals(OPEN_MILLIS * 3, status.getRetryAt() - status.getOpenedAt());
+    }
+    
+    @Test
+    void resetClosesBreaker() {
+        open();
+        assertTrue(breaker.reset(SourceCircuitBreaker.hostOf(URL)));
+        assertDoesNotThrow(() -> breaker.checkRequest(URL));
+        assertFalse(breaker.reset(SourceCircuitBreaker.hostOf(URL)));
+    }
+    
+    private void open() {
+        for (int i = 0; i < 3; i++) {
+            breaker.onFailure(URL, new IOException("连接失败"));
+        }
+        assertEquals("OPEN", status().getState());
+    }
+    
+    private CircuitBreakerStatusDto status() {
+        assertEquals(1, breaker.getStatus().size());
+        return breaker.getStatus().get(0);
+    }
+    
+}
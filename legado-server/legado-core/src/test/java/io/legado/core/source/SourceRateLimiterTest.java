@@ -0,0 +1,188 @@
+package io.legado.core.source;
+
+import io.legado.core.dto.SourceRateStatusDto;
+import io.legado.model.entity.BookSource;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 书源并发率限制的两种写法、等待队列与取消
+ */
+class SourceRateLimiterTest {
+    
+    private ThreadPoolTaskScheduler taskScheduler;
+    
+    private SimpleMeterRegistry meterRegistry;
+    
+    private SourceRateLimiter limiter;
+    
+    @BeforeEach
+    void setUp() {
+        taskScheduler = new ThreadPoolTaskScheduler();
+        taskScheduler.initialize();
+        meterRegistry = new SimpleMeterRegistry();
+        limiter = new SourceRateLimiter();
+        ReflectionTestUtils.setField(limiter, "taskScheduler", taskScheduler);
+        ReflectionTestUtils.setField(limiter, "meterRegistry", meterRegistry);
+        limiter.init();
+    }
+    
+    @AfterEach
+    void tearDown() {
+        taskScheduler.shutdown();
+    }
+    
+    @Test
+    void unlimitedWithoutRate() throws Exception {
+        assertSame(SourceRateLimiter.Permit.NONE, limiter.acquire(source(null)).get());
+        assertSame(SourceRateLimiter.Permit.NONE, limiter.acquire(source("0")).get());
+        assertSame(SourceRateLimiter.Permit.NONE, limiter.acquire(source("abc")).get());
+        assertTrue(limiter.getStatus().isEmpty());
+    }
+    
+    @Test
+    void intervalWaitsForReleaseAndInterval() throws Exception {
+        BookSource source = source("100");
+        long start = System.currentTimeMillis();
+        SourceRateLimiter.Permit first = limiter.acquire(source).get();
+        CompletableFuture<SourceRateLimiter.Permit> second = limiter.acquire(source);
+        
+        // 间隔已过但上一次访问未结束时仍等待
+        Thread.sleep(150);
+        assertFalse(second.isDone());
+        assertEquals(1, status().getQueued());
+        assertEquals(1, status().getInFlight());
+        
+        first.release();
+        second.get(1, TimeUnit.SECONDS).release();
+        assertTrue(System.currentTimeMillis() - start >= 100);
+        assertEquals(0, status().getInFlight());
+    }
+    
+    @Test
+    void intervalSpacesRequests() throws Exception {
+        BookSource source = source("100");
+        long start = System.currentTimeMillis();
+        limiter.acquire(source).get().release();
+        CompletableFuture<SourceRateLimiter.Permit> second = limiter.acquire(source);
+        assertFalse(second.isDone());
+        
+        second.get(1, TimeUnit.SECONDS).release();
+        assertTrue(System.currentTimeMillis() - start >= 100);
+    }
+    
+    @Test
+    void windowAllowsCountPerPeriod() throws Exception {
+        BookSource source = source("2/200");
+        long start = System.currentTimeMillis();
+        CompletableFuture<SourceRateLimiter.Permit> first = limiter.acquire(source);
+        CompletableFuture<SourceRateLimiter.Permit> second = limiter.acquire(source);
+        CompletableFuture<SourceRateLimiter.Permit> third = limiter.acquire(source);
+        
+        assertTrue(first.isDone());
+        assertTrue(second.isDone());
+        assertFalse(third.isDone());
+        assertEquals(1.0, meterRegistry.get("legado.source.rate.queued").gauge().value());
+        
+        // 次数模式不等待访问结束
+        third.get(1, TimeUnit.SECONDS);
+        assertTrue(System.currentTimeMillis() - start >= 200);
+        assertEquals(3, status().getInFlight());
+    }
+    
+    @Test
+    void cancelledRequestLeavesQueue() throws Exception {
+        BookSource source = source("100");
+        SourceRateLimiter.Permit first = limiter.acquire(source).get();
+        CompletableFuture<SourceRateLimiter.Permit> cancelled = limiter.acquire(source);
+        CompletableFuture<SourceRateLimiter.Permit> next = limiter.acquire(source);
+        cancelled.cancel(false);
+        assertEquals(1, status().getQueued());
+        
+        first.release();
+        next.get(1, TimeUnit.SECONDS).release();
+        assertEquals(0, status().getQueued());
+        assertEquals(0, status().getInFlight());
+    }
+    
+    @Test
+    void readingRequestsGoBeforeBackground() throws Exception {
+        BookSource source = source("100");
+        SourceRateLimiter.Permit first = limiter.acquire(source).get();
+        CompletableFuture<SourceRateLimiter.Permit> prefetch = limiter.acquire(source, true);
+        CompletableFuture<SourceRateLimiter.Permit> reading = limiter.acquire(source);
+        assertEquals(2, status().getQueued());
+        
+        // 后排的阅读请求先放行
+        first.release();
+        SourceRateLimiter.Permit second = reading.get(1, TimeUnit.SECONDS);
+        assertFalse(prefetch.isDone());
+        second.release();
+        prefetch.get(1, TimeUnit.SECONDS).release();
+        assertEquals(0, status().getQueued());
+    }
+    
+    @Test
+    void prioritizedBackgroundRequestJoinsReadingQueue() throws Exception {
+        BookSource source = source("100");
+        SourceRateLimiter.Permit first = limiter.acquire(source).get();
+        CompletableFuture<SourceRateLimiter.Permit> prefetch = limiter.acquire(source, true);
+        CompletableFuture<SourceRateLimiter.Permit> other = limiter.acquire(source, true);
+        limiter.prioritize(source, other);
+        CompletableFuture<SourceRateLimiter.Permit> reading = limiter.acquire(source);
+        
+        first.release();
+        other.get(1, TimeUnit.SECONDS).release();
+        reading.get(1, TimeUnit.SECONDS).release();
+        assertFalse(prefetch.isDone());
+        prefetch.get(1, TimeUnit.SECONDS).release();
+    }
+    
+    @Test
+    void releaseTwiceHasNoEffect() throws Exception {
+        BookSource source = source("2/1000");
+        SourceRateLimiter.Permit permit = limiter.acquire(source).get();
+        limiter.acquire(source).get();
+        permit.release();
+        permit.release();
+        assertEquals(1, status().getInFlight());
+    }
+    
+    @Test
+    void parsesRate() {
+        assertNull(SourceRateLimiter.Rate.parse(" "));
+        assertNull(SourceRateLimiter.Rate.parse("0/100"));
+        assertNull(SourceRateLimiter.Rate.parse("-5"));
+        assertEquals("500", SourceRateLimiter.Rate.parse(" 500 ").toString());
+        SourceRateLimiter.Rate rate = SourceRateLimiter.Rate.parse("3 / 1000");
+        assertTrue(rate.windowed);
+        assertEquals(3, rate.count);
+        assertEquals(1000, rate.period);
+    }
+    
+    private SourceRateStatusDto status() {
+        assertEquals(1, limiter.getStatus().size());
+        return limiter.getStatus().get(0);
+    }
+    
+    private static BookSource source(String concurrentRate) {
+        BookSource source = new BookSource();
+        source.setSourceUrl("http://source");
+        source.setConcurrentRate(concurrentRate);
+        return source;
+    }
+    
+}
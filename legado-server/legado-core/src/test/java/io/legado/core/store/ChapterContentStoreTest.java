@@ -0,0 +1,298 @@
+package io.legado.core.store;
+
+import io.legado.model.entity.BookChapter;
+import io.legado.model.repository.BookChapterRepository;
+import io.legado.model.repository.BookRepository;
+import io.legado.model.repository.CacheJobRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 章节内容存储的写入、压缩与淘汰
+ * 章节表由内存中的章节代替，写队列直接执行
+ */
+class ChapterContentStoreTest {
+    
+    private static final Long BOOK_ID = 1L;
+    
+    @TempDir
+    Path dir;
+    
+    private final Map<Long, BookChapter> chapters = new ConcurrentHashMap<>();
+    
+    private BookChapterRepository bookChapterRepository;
+    
+    private CacheJobRepository cacheJobRepository;
+    
+    private ChapterContentStore store;
+    
+    @BeforeEach
+    void setUp() throws Exception {
+        BookRepository bookRepository = mock(BookRepository.class);
+        when(bookRepository.existsById(anyLong())).thenReturn(true);
+        
+        bookChapterRepository = mock(BookChapterRepository.class);
+        when(bookChapterRepository.findCachedByBookId(anyLong())).thenAnswer(invocation -> cached());
+        doAnswer(invocation -> {
+            BookChapter chapter = chapters.get(invocation.<Long>getArgument(0));
+            chapter.setContentOffset(invocation.getArgument(1));
+            chapter.setContentSize(invocation.getArgument(2));
+            return 1;
+        }).when(bookChapterRepository).updateContentLocator(anyLong(), any(), any());
+        
+        doAnswer(invocation -> {
+            Long bookId = invocation.getArgument(0);
+            for (BookChapter chapter : chapters.values()) {
+                if (chapter.getBookId().equals(bookId)) {
+                    chapter.setContentOffset(null);
+                    chapter.setContentSize(null);
+                }
+            }
+            return 1;
+        }).when(bookChapterRepository).clearContentLocators(anyLong());
+        
+        cacheJobRepository = mock(CacheJobRepository.class);
+        
+        WriteQueue writeQueue = mock(WriteQueue.class);
+        doAnswer(invocation -> {
+            invocation.<Runnable>getArgument(0).run();
+            return null;
+        }).when(writeQueue).run(any());
+        
+        store = new ChapterContentStore();
+        ReflectionTestUtils.setField(store, "bookRepository", bookRepository);
+        ReflectionTestUtils.setField(store, "bookChapterRepository", bookChapterRepository);
+        ReflectionTestUtils.setField(store, "cacheJobRepository", cacheJobRepository);
+        ReflectionTestUtils.setField(store, "writeQueue", writeQueue);
+        ReflectionTestUtils.setField(store, "dir", dir.toString());
+        ReflectionTestUtils.setField(store, "compressionLevel", 6);
+        ReflectionTestUtils.setField(store, "maxOpenSegments", 64);
+        ReflectionTestUtils.setField(store, "compactGarbageRatio", 0.5);
+        ReflectionTestUtils.setField(store, "evictLowWaterRatio", 0.9);
+        store.init();
+    }
+    
+    @AfterEach
+    void tearDown() {
+        store.destroy();
+    }
+    
+    @Test
+    void compactKeepsLiveBlocks() throws Exception {
+        for (int i = 0; i < 4; i++) {
+            write(i, "第" + i + "章旧内容");
+        }
+        for (int i = 0; i < 4; i++) {
+            write(i, "第" + i + "章新内容");
+        }
+        
+        long reclaimed = store.compact(BOOK_ID);
+        
+        assertTrue(reclaimed > 0);
+        for (int i = 0; i < 4; i++) {
+            assertEquals("第" + i + "章新内容", store.read(chapters.get((long) i)));
+        }
+    }
+    
+    @Test
+    void compactKeepsBlockWrittenDuringSnapshot() throws Exception {
+        for (int i = 0; i < 4; i++) {
+            write(i, "第" + i + "章旧内容");
+            write(i, "第" + i + "章新内容");
+        }
+        
+        // 压缩读取有效块时暂停，期间写入新章节
+        CountDownLatch snapshotTaken = new CountDownLatch(1);
+        CountDownLatch proceed = new CountDownLatch(1);
+        when(bookChapterRepository.findCachedByBookId(anyLong())).thenAnswer(invocation -> {
+            List<BookChapter> live = cached();
+            snapshotTaken.countDown();
+            proceed.await(5, TimeUnit.SECONDS);
+            return live;
+        });
+        Thread compactor = new Thread(() -> {
+            try {
+                store.compact(BOOK_ID);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        compactor.start();
+        assertTrue(snapshotTaken.await(5, TimeUnit.SECONDS));
+        
+        CountDownLatch written = new CountDownLatch(1);
+        Thread writer = new Thread(() -> {
+            try {
+                write(4, "第4章内容");
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+            written.countDown();
+        });
+        writer.start();
+        
+        // 写入等待压缩结束
+        assertFalse(written.await(300, TimeUnit.MILLISECONDS));
+        proceed.countDown();
+        compactor.join(5000);
+        writer.join(5000);
+        
+        for (int i = 0; i < 4; i++) {
+            assertEquals("第" + i + "章新内容", store.read(chapters.get((long) i)));
+        }
+        assertEquals("第4章内容", store.read(chapters.get(4L)));
+    }
+    
+    @Test
+    void readDoesNotWaitForPersist() throws Exception {
+        write(0, "第0章内容");
+        
+        // 第1章保存位置时等待提交，期间读取第0章
+        CountDownLatch persisting = new CountDownLatch(1);
+        CountDownLatch proceed = new CountDownLatch(1);
+        BookChapter chapter = new BookChapter();
+        chapter.setId(1L);
+        chapter.setBookId(BOOK_ID);
+        chapter.setChapterIndex(1);
+        Thread writer = new Thread(() -> {
+            try {
+                store.write(chapter, "第1章内容", () -> {
+                    persisting.countDown();
+                    try {
+                        proceed.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        writer.start();
+        assertTrue(persisting.await(5, TimeUnit.SECONDS));
+        
+        CompletableFuture<String> read = CompletableFuture.supplyAsync(() -> store.read(chapters.get(0L)));
+        try {
+            assertEquals("第0章内容", read.get(1, TimeUnit.SECONDS));
+        } finally {
+            proceed.countDown();
+            writer.join(5000);
+        }
+        assertEquals("第1章内容", store.read(chapter));
+    }
+    
+    @Test
+    void evictSkipsBooksWithCacheJobs() throws Exception {
+        ReflectionTestUtils.setField(store, "maxSizeMb", 1L);
+        when(cacheJobRepository.findBookIdsByStatusIn(any())).thenReturn(Collections.singletonList(1L));
+        // 书籍1最久未读但有缓存任务，书籍2、3可以淘汰
+        String content = randomContent(180 * 1024);
+        write(1L, 0L, content);
+        write(2L, 1L, content);
+        write(3L, 2L, content);
+        Map<Long, Long> accessTimes = accessTimes();
+        long old = System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1);
+        for (long bookId = 1; bookId <= 3; bookId++) {
+            accessTimes.put(bookId, old + bookId);
+            Files.setLastModifiedTime(dir.resolve(bookId + ".seg"), FileTime.fromMillis(old + bookId));
+        }
+        
+        store.evict();
+        
+        assertTrue(content.equals(store.read(chapters.get(0L))));
+        assertNull(chapters.get(1L).getContentOffset());
+        assertFalse(Files.exists(dir.resolve("2.seg")));
+        assertTrue(content.equals(store.read(chapters.get(2L))));
+    }
+    
+    @Test
+    void deleteRemovesContent() throws Exception {
+        write(0, "内容");
+        
+        store.delete(BOOK_ID);
+        
+        assertNull(store.read(chapters.get(0L)));
+    }
+    
+    private void write(int index, String content) throws Exception {
+        write(BOOK_ID, index, content);
+    }
+    
+    private void write(Long bookId, long id, String content) throws Exception {
+        BookChapter chapter = chapters.computeIfAbsent(id, key -> {
+            BookChapter created = new BookChapter();
+            created.setId(key);
+            created.setBookId(bookId);
+            created.setChapterIndex((int) (key % 1000));
+            return created;
+        });
+        BookChapter copy = copy(chapter);
+        store.write(copy, content, () -> bookChapterRepository.updateContentLocator(
+                copy.getId(), copy.getContentOffset(), copy.getContentSize()));
+    }
+    
+    @SuppressWarnings("unchecked")
+    private Map<Long, Long> accessTimes() {
+        return (Map<Long, Long>) ReflectionTestUtils.getField(store, "accessTimes");
+    }
+    
+    /**
+     * 随机内容，压缩后大小与原文相近
+     */
+    private static String randomContent(int length) {
+        Random random = new Random(length);
+        StringBuilder builder = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            builder.append((char) (0x4E00 + random.nextInt(0x5000)));
+        }
+        return builder.toString();
+    }
+    
+    private List<BookChapter> cached() {
+        List<BookChapter> live = new ArrayList<>();
+        for (BookChapter chapter : chapters.values()) {
+            if (chapter.getContentOffset() != null) {
+                live.add(copy(chapter));
+            }
+        }
+        live.sort((a, b) -> Long.compare(a.getContentOffset(), b.getContentOffset()));
+        return live;
+    }
+    
+    private static BookChapter copy(BookChapter chapter) {
+        BookChapter copy = new BookChapter();
+        copy.setId(chapter.getId());
+        copy.setBookId(chapter.getBookId());
+        copy.setChapterIndex(chapter.getChapterIndex());
+        copy.setContentOffset(chapter.getContentOffset());
+        copy.setContentSize(chapter.getContentSize());
+        return copy;
+    }
+    
+}
@@ -0,0 +1,69 @@
+package io.legado.core.store;
+
+import io.legado.model.entity.Book;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 阅读进度写缓冲
+ */
+class ReadProgressBufferTest {
+    
+    private ReadProgressBuffer buffer;
+    
+    @BeforeEach
+    void setUp() {
+        WriteQueue writeQueue = mock(WriteQueue.class);
+        when(writeQueue.execute(any())).thenReturn(null);
+        buffer = new ReadProgressBuffer();
+        ReflectionTestUtils.setField(buffer, "writeQueue", writeQueue);
+        ReflectionTestUtils.setField(buffer, "batchSize", 200);
+    }
+    
+    @Test
+    void keepsLatestProgressPerUser() throws Exception {
+        buffer.put(new ReadProgressBuffer.Progress(1L, "甲", 3, 0, "第4章"));
+        buffer.put(new ReadProgressBuffer.Progress(1L, "甲", 5, 10, "第6章"));
+        Thread.sleep(2);
+        buffer.put(new ReadProgressBuffer.Progress(1L, "乙", 8, 0, null));
+        buffer.put(new ReadProgressBuffer.Progress(2L, "甲", 1, 0, "第2章"));
+        
+        assertEquals(5, buffer.get(1L, "甲").getChapterIndex());
+        assertEquals(8, buffer.latest(1L).getChapterIndex());
+        assertEquals(1, buffer.latest(2L).getChapterIndex());
+        assertNull(buffer.latest(3L));
+    }
+    
+    @Test
+    void appliesLatestProgressToBook() {
+        buffer.put(new ReadProgressBuffer.Progress(1L, "甲", 5, 10, "第6章"));
+        Book book = new Book();
+        book.setId(1L);
+        
+        buffer.applyTo(book);
+        
+        assertEquals(5, book.getDurChapterIndex());
+        assertEquals(10, book.getDurChapterPos());
+        assertEquals("第6章", book.getDurChapterTitle());
+    }
+    
+    @Test
+    void flushAndRemoveClearBook() {
+        buffer.put(new ReadProgressBuffer.Progress(1L, "甲", 5, 10, null));
+        buffer.put(new ReadProgressBuffer.Progress(2L, "甲", 1, 0, null));
+        
+        buffer.remove(1L);
+        assertNull(buffer.latest(1L));
+        
+        buffer.flush();
+        assertNull(buffer.latest(2L));
+    }
+    
+}
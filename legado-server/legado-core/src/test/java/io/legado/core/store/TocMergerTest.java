@@ -0,0 +1,147 @@
+package io.legado.core.store;
+
+import io.legado.core.dto.TocMergeResultDto;
+import io.legado.model.entity.BookChapter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 目录合并：章节索引变化时保留已缓存的内容
+ */
+class TocMergerTest {
+    
+    private static final Long BOOK_ID = 1L;
+    
+    @TempDir
+    Path dir;
+    
+    private SingleConnectionDataSource dataSource;
+    
+    private JdbcTemplate jdbcTemplate;
+    
+    private TocMerger tocMerger;
+    
+    private ChapterContentStore store;
+    
+    @BeforeEach
+    void setUp() throws Exception {
+        dataSource = new SingleConnectionDataSource("jdbc:sqlite::memory:", true);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE book_chapters (id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + "book_id INTEGER NOT NULL, chapter_index INTEGER NOT NULL, title TEXT, url TEXT, "
+                + "content_offset INTEGER, content_size INTEGER, is_vip BOOLEAN, is_pay BOOLEAN, created_at TIMESTAMP, "
+                + "UNIQUE (book_id, chapter_index))");
+        
+        tocMerger = new TocMerger();
+        ReflectionTestUtils.setField(tocMerger, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(tocMerger, "batchSize", 500);
+        
+        store = new ChapterContentStore();
+        ReflectionTestUtils.setField(store, "dir", dir.toString());
+        ReflectionTestUtils.setField(store, "compressionLevel", 6);
+        ReflectionTestUtils.setField(store, "maxOpenSegments", 64);
+        store.init();
+    }
+    
+    @AfterEach
+    void tearDown() {
+        store.destroy();
+        dataSource.destroy();
+    }
+    
+    @Test
+    void unchangedTocWritesNothing() {
+        tocMerger.merge(BOOK_ID, toc("a", "b", "c"));
+        
+        TocMergeResultDto result = tocMerger.merge(BOOK_ID, toc("a", "b", "c"));
+        
+        assertEquals(3, result.getUnchanged());
+        assertFalse(result.isChanged());
+        assertFalse(result.isReindexed());
+    }
+    
+    @Test
+    void insertionAtFrontShiftsIndexesAndKeepsContent() throws Exception {
+        tocMerger.merge(BOOK_ID, toc("a", "b", "c"));
+        for (BookChapter chapter : stored()) {
+            store.write(chapter, "内容" + chapter.getUrl(), () -> jdbcTemplate.update(
+                    "UPDATE book_chapters SET content_offset = ?, content_size = ? WHERE id = ?",
+                    chapter.getContentOffset(), chapter.getContentSize(), chapter.getId()));
+        }
+        
+        TocMergeResultDto result = tocMerger.merge(BOOK_ID, toc("new", "a", "b", "c"));
+        
+        assertEquals(1, result.getInserted());
+        assertEquals(3, result.getUpdated());
+        assertTrue(result.isReindexed());
+        List<BookChapter> chapters = stored();
+        assertEquals(Arrays.asList("/new", "/a", "/b", "/c"), urls(chapters));
+        assertNull(store.read(chapters.get(0)));
+        for (BookChapter chapter : chapters.subList(1, chapters.size())) {
+            assertEquals("内容" + chapter.getUrl(), store.read(chapter));
+        }
+    }
+    
+    @Test
+    void removedChaptersAreDeletedAndOthersMoveUp() {
+        tocMerger.merge(BOOK_ID, toc("a", "b", "c", "d"));
+        
+        TocMergeResultDto result = tocMerger.merge(BOOK_ID, toc("a", "c", "d"));
+        
+        assertEquals(1, result.getDeleted());
+        assertEquals(2, result.getUpdated());
+        assertEquals(Arrays.asList("/a", "/c", "/d"), urls(stored()));
+    }
+    
+    private List<BookChapter> toc(String... names) {
+        List<BookChapter> chapters = new ArrayList<>();
+        for (String name : names) {
+            BookChapter chapter = new BookChapter();
+            chapter.setTitle("章节" + name);
+            chapter.setUrl("/" + name);
+            chapters.add(chapter);
+        }
+        return chapters;
+    }
+    
+    private List<BookChapter> stored() {
+        return jdbcTemplate.query("SELECT id, chapter_index, url, content_offset, content_size FROM book_chapters "
+                + "WHERE book_id = ? ORDER BY chapter_index", (rs, rowNum) -> {
+            BookChapter chapter = new BookChapter();
+            chapter.setId(rs.getLong("id"));
+            chapter.setBookId(BOOK_ID);
+            chapter.setChapterIndex(rs.getInt("chapter_index"));
+            chapter.setUrl(rs.getString("url"));
+            long offset = rs.getLong("content_offset");
+            if (!rs.wasNull()) {
+                chapter.setContentOffset(offset);
+                chapter.setContentSize(rs.getInt("content_size"));
+            }
+            return chapter;
+        }, BOOK_ID);
+    }
+    
+    private static List<String> urls(List<BookChapter> chapters) {
+        List<String> urls = new ArrayList<>();
+        for (BookChapter chapter : chapters) {
+            urls.add(chapter.getUrl());
+        }
+        return urls;
+    }
+    
+}
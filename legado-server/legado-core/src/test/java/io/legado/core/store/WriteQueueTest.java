@@ -0,0 +1,162 @@
+package io.legado.core.store;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 写队列的组提交、失败隔离与停止后的写入
+ * 使用内存中的 SQLite
+ */
+class WriteQueueTest {
+    
+    private SingleConnectionDataSource dataSource;
+    
+    private JdbcTemplate jdbcTemplate;
+    
+    private SimpleMeterRegistry meterRegistry;
+    
+    private WriteQueue writeQueue;
+    
+    private ExecutorService callers;
+    
+    @BeforeEach
+    void setUp() {
+        dataSource = new SingleConnectionDataSource("jdbc:sqlite::memory:", true);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE items (id INTEGER PRIMARY KEY)");
+        
+        meterRegistry = new SimpleMeterRegistry();
+        writeQueue = new WriteQueue();
+        ReflectionTestUtils.setField(writeQueue, "transactionManager", new DataSourceTransactionManager(dataSource));
+        ReflectionTestUtils.setField(writeQueue, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(writeQueue, "batchSize", 100);
+        ReflectionTestUtils.setField(writeQueue, "queueCapacity", 1000);
+        writeQueue.start();
+        callers = Executors.newCachedThreadPool();
+    }
+    
+    @AfterEach
+    void tearDown() throws Exception {
+        callers.shutdownNow();
+        writeQueue.destroy();
+        dataSource.destroy();
+    }
+    
+    @Test
+    void commitsQueuedOperationsTogether() throws Exception {
+        CountDownLatch release = blockWriter();
+        List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        for (int i = 1; i <= 20; i++) {
+            futures.add(insertAsync(i));
+        }
+        awaitQueued(20);
+        release.countDown();
+        
+        for (CompletableFuture<Integer> future : futures) {
+            assertEquals(1, future.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(21, count());
+        DistributionSummary batches = meterRegistry.get("legado.db.write.batch").summary();
+        assertEquals(2, batches.count());
+        assertEquals(20.0, batches.max());
+    }
+    
+    @Test
+    void failedOperationOnlyFailsItsCaller() throws Exception {
+        CountDownLatch release = blockWriter();
+        CompletableFuture<Integer> first = insertAsync(1);
+        awaitQueued(1);
+        CompletableFuture<Integer> failed = CompletableFuture.supplyAsync(() -> writeQueue.execute(() -> {
+            jdbcTemplate.update("INSERT INTO items (id) VALUES (2)");
+            throw new IllegalStateException("写入失败");
+        }), callers);
+        awaitQueued(2);
+        CompletableFuture<Integer> last = insertAsync(3);
+        awaitQueued(3);
+        release.countDown();
+        
+        assertEquals(1, first.get(5, TimeUnit.SECONDS));
+        assertEquals(1, last.get(5, TimeUnit.SECONDS));
+        ExecutionException e = assertThrows(ExecutionException.class, () -> failed.get(5, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof IllegalStateException);
+        // 失败操作的写入随其单独的事务回滚
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM items WHERE id = 2", Integer.class));
+        assertEquals(3, count());
+    }
+    
+    @Test
+    void nestedWriteRunsDirectly() {
+        int inserted = writeQueue.execute(() -> {
+            jdbcTemplate.update("INSERT INTO items (id) VALUES (1)");
+            return writeQueue.execute(() -> jdbcTemplate.update("INSERT INTO items (id) VALUES (2)"));
+        });
+        
+        assertEquals(1, inserted);
+        assertEquals(2, count());
+    }
+    
+    @Test
+    void writesAfterDestroyRunInCaller() throws Exception {
+        writeQueue.destroy();
+        
+        writeQueue.run(() -> jdbcTemplate.update("INSERT INTO items (id) VALUES (1)"));
+        assertEquals(1, count());
+    }
+    
+    /**
+     * 让写线程停在一个操作中，之后的操作在队列中积压
+     */
+    private CountDownLatch blockWriter() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture.runAsync(() -> writeQueue.run(() -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            jdbcTemplate.update("INSERT INTO items (id) VALUES (0)");
+        }), callers);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        return release;
+    }
+    
+    private CompletableFuture<Integer> insertAsync(int id) {
+        return CompletableFuture.supplyAsync(() -> writeQueue.execute(
+                () -> jdbcTemplate.update("INSERT INTO items (id) VALUES (?)", id)), callers);
+    }
+    
+    private void awaitQueued(int size) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (meterRegistry.get("legado.db.write.queue").gauge().value() < size) {
+            assertTrue(System.currentTimeMillis() < deadline, "等待操作入队超时");
+            Thread.sleep(5);
+        }
+    }
+    
+    private int count() {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM items", Integer.class);
+    }
+    
+}
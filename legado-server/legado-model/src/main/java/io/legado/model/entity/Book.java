@@ -1,7 +1,10 @@
 package io.legado.model.entity;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import io.legado.model.converter.ReadConfigConverter;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
 import org.hibernate.annotations.CreationTimestamp;
 import org.hibernate.annotations.UpdateTimestamp;
 
@@ -18,7 +21,8 @@ import java.util.List;
        indexes = {
            @Index(name = "idx_books_name_author", columnList = "name, author"),
            @Index(name = "idx_books_origin", columnList = "origin"),
-           @Index(name = "idx_books_group_id", columnList = "group_id")
+           @Index(name = "idx_books_group_id", columnList = "group_id"),
+           @Index(name = "idx_books_updated", columnList = "updated_at, id")
        })
 public class Book {
     
@@ -230,6 +234,9 @@ public class Book {
     /**
      * 章节列表
      */
+    @JsonIgnore
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
     @OneToMany(mappedBy = "book", cascade = CascadeType.ALL, fetch = FetchType.LAZY)
     private List<BookChapter> chapters;
     
@@ -1,6 +1,9 @@
 package io.legado.model.entity;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
 import org.hibernate.annotations.CreationTimestamp;
 
 import javax.persistence.*;
@@ -13,7 +16,7 @@ import java.time.LocalDateTime;
 @Entity
 @Table(name = "book_chapters",
        indexes = {
-           @Index(name = "idx_chapters_book_id", columnList = "book_id")
+           @Index(name = "idx_chapters_book_index", columnList = "book_id, chapter_index")
        },
        uniqueConstraints = {
            @UniqueConstraint(name = "uk_book_chapter", columnNames = {"book_id", "chapter_index"})
@@ -49,10 +52,16 @@ public class BookChapter {
     private String url;
     
     /**
-     * 章节内容
+     * 章节内容在书籍内容文件中的偏移，未缓存内容时为空
      */
-    @Column(name = "content", columnDefinition = "LONGTEXT")
-    private String content;
+    @Column(name = "content_offset")
+    private Long contentOffset;
+    
+    /**
+     * 章节内容在书籍内容文件中占用的字节数
+     */
+    @Column(name = "content_size")
+    private Integer contentSize;
     
     /**
      * 字数
@@ -82,6 +91,9 @@ public class BookChapter {
     /**
      * 所属书籍
      */
+    @JsonIgnore
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "book_id", insertable = false, updatable = false)
     private Book book;
@@ -17,7 +17,8 @@ import java.time.LocalDateTime;
 @Table(name = "book_sources",
        indexes = {
            @Index(name = "idx_sources_name", columnList = "source_name"),
-           @Index(name = "idx_sources_enabled", columnList = "enabled")
+           @Index(name = "idx_sources_enabled", columnList = "enabled"),
+           @Index(name = "idx_sources_weight", columnList = "weight, id")
        })
 public class BookSource {
     
@@ -103,6 +104,12 @@ public class BookSource {
     @Column(name = "header", columnDefinition = "TEXT")
     private String header;
     
+    /**
+     * 并发率，如 1000（两次请求间隔1000毫秒）或 5/1000（每1000毫秒最多5次请求）
+     */
+    @Column(name = "concurrent_rate", length = 32)
+    private String concurrentRate;
+    
     /**
      * 搜索URL
      */
@@ -13,7 +13,8 @@ import java.time.LocalDateTime;
 @Entity
 @Table(name = "bookmarks",
        indexes = {
-           @Index(name = "idx_bookmarks_book", columnList = "book_name, book_author")
+           @Index(name = "idx_bookmarks_book", columnList = "book_name, book_author"),
+           @Index(name = "idx_bookmarks_created", columnList = "created_at, id")
        })
 public class Bookmark {
     
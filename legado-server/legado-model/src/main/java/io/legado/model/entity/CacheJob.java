@@ -0,0 +1,120 @@
+package io.legado.model.entity;
+
+import lombok.Data;
+import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.UpdateTimestamp;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * 章节缓存任务实体
+ * 缓存书籍指定范围的章节内容，任务保存在数据库中，重启后继续执行
+ */
+@Data
+@Entity
+@Table(name = "cache_jobs",
+       indexes = {
+           @Index(name = "idx_cache_jobs_status", columnList = "status, id"),
+           @Index(name = "idx_cache_jobs_username", columnList = "username, id")
+       })
+public class CacheJob {
+    
+    /**
+     * 等待执行
+     */
+    public static final String PENDING = "PENDING";
+    
+    /**
+     * 执行中
+     */
+    public static final String RUNNING = "RUNNING";
+    
+    /**
+     * 已完成（可能有获取失败的章节）
+     */
+    public static final String COMPLETED = "COMPLETED";
+    
+    /**
+     * 执行出错
+     */
+    public static final String FAILED = "FAILED";
+    
+    /**
+     * 已取消
+     */
+    public static final String CANCELLED = "CANCELLED";
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    /**
+     * 书籍ID
+     */
+    @Column(name = "book_id", nullable = false)
+    private Long bookId;
+    
+    /**
+     * 创建任务的用户
+     */
+    @Column(name = "username", length = 64)
+    private String username;
+    
+    /**
+     * 起始章节索引（含）
+     */
+    @Column(name = "start_index", nullable = false)
+    private Integer startIndex;
+    
+    /**
+     * 结束章节索引（含）
+     */
+    @Column(name = "end_index", nullable = false)
+    private Integer endIndex;
+    
+    /**
+     * 状态
+     */
+    @Column(name = "status", nullable = false, length = 16)
+    private String status = PENDING;
+    
+    /**
+     * 章节总数
+     */
+    @Column(name = "total_count")
+    private Integer totalCount = 0;
+    
+    /**
+     * 已缓存章节数
+     */
+    @Column(name = "cached_count")
+    private Integer cachedCount = 0;
+    
+    /**
+     * 获取失败的章节数
+     */
+    @Column(name = "failed_count")
+    private Integer failedCount = 0;
+    
+    /**
+     * 出错信息
+     */
+    @Column(name = "message", length = 512)
+    private String message;
+    
+    /**
+     * 创建时间
+     */
+    @CreationTimestamp
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+    
+    /**
+     * 更新时间
+     */
+    @UpdateTimestamp
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+    
+}
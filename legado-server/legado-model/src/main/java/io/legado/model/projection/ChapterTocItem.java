@@ -0,0 +1,44 @@
+package io.legado.model.projection;
+
+/**
+ * 目录项投影
+ * 只包含目录需要的字段，不加载章节实体
+ */
+public interface ChapterTocItem {
+    
+    /**
+     * 章节索引
+     */
+    Integer getChapterIndex();
+    
+    /**
+     * 章节标题
+     */
+    String getTitle();
+    
+    /**
+     * 章节URL
+     */
+    String getUrl();
+    
+    /**
+     * 是否VIP
+     */
+    Boolean getIsVip();
+    
+    /**
+     * 是否付费
+     */
+    Boolean getIsPay();
+    
+    /**
+     * 字数
+     */
+    Integer getWordCount();
+    
+    /**
+     * 是否已缓存内容
+     */
+    Boolean getCached();
+    
+}
@@ -1,11 +1,14 @@
 package io.legado.model.repository;
 
 import io.legado.model.entity.BookChapter;
+import io.legado.model.projection.ChapterTocItem;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 import java.util.Optional;
@@ -14,6 +17,7 @@ import java.util.Optional;
  * 书籍章节数据访问接口
  */
 @Repository
+@Transactional(readOnly = true)
 public interface BookChapterRepository extends JpaRepository<BookChapter, Long> {
     
     /**
@@ -21,6 +25,25 @@ public interface BookChapterRepository extends JpaRepository<BookChapter, Long>
      */
     List<BookChapter> findByBookIdOrderByChapterIndexAsc(Long bookId);
     
+    /**
+     * 查询书籍的目录，不加载章节实体
+     */
+    @Query("SELECT c.chapterIndex AS chapterIndex, c.title AS title, c.url AS url, c.isVip AS isVip, "
+            + "c.isPay AS isPay, c.wordCount AS wordCount, "
+            + "CASE WHEN c.contentOffset IS NULL THEN false ELSE true END AS cached "
+            + "FROM BookChapter c WHERE c.bookId = :bookId ORDER BY c.chapterIndex")
+    List<ChapterTocItem> findTocByBookId(@Param("bookId") Long bookId);
+    
+    /**
+     * 查询指定章节索引之后的一页目录（keyset 分页）
+     */
+    @Query("SELECT c.chapterIndex AS chapterIndex, c.title AS title, c.url AS url, c.isVip AS isVip, "
+            + "c.isPay AS isPay, c.wordCount AS wordCount, "
+            + "CASE WHEN c.contentOffset IS NULL THEN false ELSE true END AS cached "
+            + "FROM BookChapter c WHERE c.bookId = :bookId AND c.chapterIndex > :afterIndex ORDER BY c.chapterIndex")
+    List<ChapterTocItem> findTocPage(@Param("bookId") Long bookId, @Param("afterIndex") Integer afterIndex,
+                                     Pageable pageable);
+    
     /**
      * 根据书籍ID和章节索引查询
      */
@@ -34,20 +57,51 @@ public interface BookChapterRepository extends JpaRepository<BookChapter, Long>
     /**
      * 删除书籍的所有章节
      */
+    @Transactional
     @Modifying
     @Query("DELETE FROM BookChapter c WHERE c.bookId = :bookId")
     void deleteByBookId(@Param("bookId") Long bookId);
     
     /**
-     * 根据书籍ID查询有内容的章节数量
+     * 根据书籍ID查询已缓存内容的章节数量
      */
-    @Query("SELECT COUNT(c) FROM BookChapter c WHERE c.bookId = :bookId AND c.content IS NOT NULL AND c.content != ''")
+    @Query("SELECT COUNT(c) FROM BookChapter c WHERE c.bookId = :bookId AND c.contentOffset IS NOT NULL")
     long countCachedChaptersByBookId(@Param("bookId") Long bookId);
     
+    /**
+     * 查询书籍已缓存内容的章节
+     */
+    @Query("SELECT c FROM BookChapter c WHERE c.bookId = :bookId AND c.contentOffset IS NOT NULL ORDER BY c.contentOffset")
+    List<BookChapter> findCachedByBookId(@Param("bookId") Long bookId);
+    
+    /**
+     * 更新章节内容的位置
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE BookChapter c SET c.contentOffset = :offset, c.contentSize = :size WHERE c.id = :id")
+    int updateContentLocator(@Param("id") Long id, @Param("offset") Long offset, @Param("size") Integer size);
+    
+    /**
+     * 清除书籍所有章节的内容位置（内容文件已被淘汰）
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE BookChapter c SET c.contentOffset = NULL, c.contentSize = NULL WHERE c.bookId = :bookId")
+    int clearContentLocators(@Param("bookId") Long bookId);
+    
     /**
      * 查询书籍的最后一个章节索引
      */
     @Query("SELECT MAX(c.chapterIndex) FROM BookChapter c WHERE c.bookId = :bookId")
     Integer findMaxChapterIndexByBookId(@Param("bookId") Long bookId);
     
+    /**
+     * 查询指定范围内未缓存内容的章节索引
+     */
+    @Query("SELECT c.chapterIndex FROM BookChapter c WHERE c.bookId = :bookId "
+            + "AND c.chapterIndex BETWEEN :start AND :end AND c.contentOffset IS NULL ORDER BY c.chapterIndex")
+    List<Integer> findUncachedIndexes(@Param("bookId") Long bookId, @Param("start") Integer start,
+                                      @Param("end") Integer end);
+    
 }
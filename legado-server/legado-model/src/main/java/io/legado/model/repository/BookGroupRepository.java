@@ -3,6 +3,7 @@ package io.legado.model.repository;
 import io.legado.model.entity.BookGroup;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 
@@ -10,6 +11,7 @@ import java.util.List;
  * 书籍分组数据访问接口
  */
 @Repository
+@Transactional(readOnly = true)
 public interface BookGroupRepository extends JpaRepository<BookGroup, Long> {
     
     /**
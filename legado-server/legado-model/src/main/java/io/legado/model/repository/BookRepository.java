@@ -5,16 +5,22 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.QueryHint;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 /**
  * 书籍数据访问接口
  */
 @Repository
+@Transactional(readOnly = true)
 public interface BookRepository extends JpaRepository<Book, Long> {
     
     /**
@@ -53,9 +59,17 @@ public interface BookRepository extends JpaRepository<Book, Long> {
     List<Book> findByCanUpdateTrue();
     
     /**
-     * 分页查询所有书籍
+     * 按更新时间倒序查询第一页书籍
      */
-    Page<Book> findAllByOrderByUpdatedAtDesc(Pageable pageable);
+    @Query("SELECT b FROM Book b ORDER BY b.updatedAt DESC, b.id DESC")
+    List<Book> findFirstPage(Pageable pageable);
+    
+    /**
+     * 查询排在指定书籍之后的一页书籍（keyset 分页）
+     */
+    @Query("SELECT b FROM Book b WHERE b.updatedAt <= :updatedAt "
+            + "AND (b.updatedAt < :updatedAt OR b.id < :id) ORDER BY b.updatedAt DESC, b.id DESC")
+    List<Book> findPageAfter(@Param("updatedAt") LocalDateTime updatedAt, @Param("id") Long id, Pageable pageable);
     
     /**
      * 搜索书籍
@@ -65,9 +79,25 @@ public interface BookRepository extends JpaRepository<Book, Long> {
            "LOWER(b.author) LIKE LOWER(CONCAT('%', :keyword, '%'))")
     Page<Book> searchBooks(@Param("keyword") String keyword, Pageable pageable);
     
+    /**
+     * 全文搜索书籍，按相关度排序，书名与作者的权重高于分类与简介
+     *
+     * @param query FTS5 查询语句
+     */
+    @Query(value = "SELECT b.* FROM books_fts f JOIN books b ON b.id = f.rowid WHERE books_fts MATCH :query "
+            + "ORDER BY bm25(books_fts, 10.0, 5.0, 2.0, 1.0) LIMIT :limit", nativeQuery = true)
+    List<Book> searchFullText(@Param("query") String query, @Param("limit") int limit);
+    
     /**
      * 统计书籍数量
      */
     long countByGroupId(Long groupId);
     
+    /**
+     * 按ID顺序逐行读取所有书籍，需在事务中使用并关闭
+     */
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = "500"))
+    @Query("SELECT b FROM Book b ORDER BY b.id")
+    Stream<Book> streamAll();
+    
 }
@@ -4,17 +4,24 @@ import io.legado.model.entity.BookSource;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.QueryHint;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 /**
  * 书源数据访问接口
  */
 @Repository
+@Transactional(readOnly = true)
 public interface BookSourceRepository extends JpaRepository<BookSource, Long> {
     
     /**
@@ -22,6 +29,11 @@ public interface BookSourceRepository extends JpaRepository<BookSource, Long> {
      */
     Optional<BookSource> findBySourceUrl(String sourceUrl);
     
+    /**
+     * 根据多个书源URL查询
+     */
+    List<BookSource> findBySourceUrlIn(Collection<String> sourceUrls);
+    
     /**
      * 查询所有启用的书源
      */
@@ -38,9 +50,17 @@ public interface BookSourceRepository extends JpaRepository<BookSource, Long> {
     List<BookSource> findBySourceNameContainingIgnoreCase(String sourceName);
     
     /**
-     * 分页查询书源
+     * 按权重倒序查询第一页书源
+     */
+    @Query("SELECT s FROM BookSource s ORDER BY s.weight DESC, s.id DESC")
+    List<BookSource> findFirstPage(Pageable pageable);
+    
+    /**
+     * 查询排在指定书源之后的一页书源（keyset 分页）
      */
-    Page<BookSource> findAllByOrderByWeightDesc(Pageable pageable);
+    @Query("SELECT s FROM BookSource s WHERE s.weight <= :weight "
+            + "AND (s.weight < :weight OR s.id < :id) ORDER BY s.weight DESC, s.id DESC")
+    List<BookSource> findPageAfter(@Param("weight") Integer weight, @Param("id") Long id, Pageable pageable);
     
     /**
      * 搜索书源
@@ -50,6 +70,16 @@ public interface BookSourceRepository extends JpaRepository<BookSource, Long> {
            "LOWER(s.sourceUrl) LIKE LOWER(CONCAT('%', :keyword, '%'))")
     Page<BookSource> searchSources(@Param("keyword") String keyword, Pageable pageable);
     
+    /**
+     * 全文搜索书源，按相关度排序
+     *
+     * @param query FTS5 查询语句
+     */
+    @Query(value = "SELECT s.* FROM book_sources_fts f JOIN book_sources s ON s.id = f.rowid "
+            + "WHERE book_sources_fts MATCH :query ORDER BY bm25(book_sources_fts, 10.0, 2.0, 5.0) LIMIT :limit",
+            nativeQuery = true)
+    List<BookSource> searchFullText(@Param("query") String query, @Param("limit") int limit);
+    
     /**
      * 统计启用的书源数量
      */
@@ -60,4 +90,19 @@ public interface BookSourceRepository extends JpaRepository<BookSource, Long> {
      */
     boolean existsBySourceUrl(String sourceUrl);
     
+    /**
+     * 更新响应时间
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE BookSource s SET s.respondTime = :respondTime WHERE s.sourceUrl = :sourceUrl")
+    int updateRespondTime(@Param("sourceUrl") String sourceUrl, @Param("respondTime") Long respondTime);
+    
+    /**
+     * 按ID顺序逐行读取所有书源，需在事务中使用并关闭
+     */
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = "500"))
+    @Query("SELECT s FROM BookSource s ORDER BY s.id")
+    Stream<BookSource> streamAll();
+    
 }
@@ -1,17 +1,21 @@
 package io.legado.model.repository;
 
 import io.legado.model.entity.Bookmark;
-import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 /**
  * 书签数据访问接口
  */
 @Repository
+@Transactional(readOnly = true)
 public interface BookmarkRepository extends JpaRepository<Bookmark, Long> {
     
     /**
@@ -25,8 +29,17 @@ public interface BookmarkRepository extends JpaRepository<Bookmark, Long> {
     List<Bookmark> findByBookUrlOrderByCreatedAtDesc(String bookUrl);
     
     /**
-     * 分页查询所有书签
+     * 按创建时间倒序查询第一页书签
      */
-    Page<Bookmark> findAllByOrderByCreatedAtDesc(Pageable pageable);
+    @Query("SELECT m FROM Bookmark m ORDER BY m.createdAt DESC, m.id DESC")
+    List<Bookmark> findFirstPage(Pageable pageable);
+    
+    /**
+     * 查询排在指定书签之后的一页书签（keyset 分页）
+     */
+    @Query("SELECT m FROM Bookmark m WHERE m.createdAt <= :createdAt "
+            + "AND (m.createdAt < :createdAt OR m.id < :id) ORDER BY m.createdAt DESC, m.id DESC")
+    List<Bookmark> findPageAfter(@Param("createdAt") LocalDateTime createdAt, @Param("id") Long id,
+                                 Pageable pageable);
     
 }
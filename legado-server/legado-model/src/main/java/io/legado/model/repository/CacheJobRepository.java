@@ -0,0 +1,62 @@
+package io.legado.model.repository;
+
+import io.legado.model.entity.CacheJob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 章节缓存任务数据访问接口
+ */
+@Repository
+@Transactional(readOnly = true)
+public interface CacheJobRepository extends JpaRepository<CacheJob, Long> {
+    
+    /**
+     * 按状态查询任务，先创建的在前
+     */
+    List<CacheJob> findByStatusInOrderByIdAsc(Collection<String> statuses);
+    
+    /**
+     * 查询有指定状态任务的书籍
+     */
+    @Query("SELECT DISTINCT j.bookId FROM CacheJob j WHERE j.status IN :statuses")
+    List<Long> findBookIdsByStatusIn(@Param("statuses") Collection<String> statuses);
+    
+    /**
+     * 查询用户的任务，新创建的在前
+     */
+    List<CacheJob> findByUsernameOrderByIdDesc(String username);
+    
+    /**
+     * 更新任务进度
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE CacheJob j SET j.cachedCount = :cachedCount, j.failedCount = :failedCount WHERE j.id = :id")
+    int updateProgress(@Param("id") Long id, @Param("cachedCount") Integer cachedCount,
+                       @Param("failedCount") Integer failedCount);
+    
+    /**
+     * 更新任务状态
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE CacheJob j SET j.status = :status, j.message = :message WHERE j.id = :id")
+    int updateStatus(@Param("id") Long id, @Param("status") String status, @Param("message") String message);
+    
+    /**
+     * 将上次未执行完的任务重新置为等待执行
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE CacheJob j SET j.status = 'PENDING' WHERE j.status = 'RUNNING'")
+    int resetRunning();
+    
+}
@@ -3,6 +3,7 @@ package io.legado.model.repository;
 import io.legado.model.entity.Cookie;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.Optional;
 
@@ -10,6 +11,7 @@ import java.util.Optional;
  * Cookie数据访问接口
  */
 @Repository
+@Transactional(readOnly = true)
 public interface CookieRepository extends JpaRepository<Cookie, Long> {
     
     /**
@@ -20,6 +22,7 @@ public interface CookieRepository extends JpaRepository<Cookie, Long> {
     /**
      * 删除指定URL的Cookie
      */
+    @Transactional
     void deleteByUrl(String url);
     
 }
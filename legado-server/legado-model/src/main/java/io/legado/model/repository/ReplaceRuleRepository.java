@@ -2,14 +2,20 @@ package io.legado.model.repository;
 
 import io.legado.model.entity.ReplaceRule;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.QueryHint;
 import java.util.List;
+import java.util.stream.Stream;
 
 /**
  * 替换规则数据访问接口
  */
 @Repository
+@Transactional(readOnly = true)
 public interface ReplaceRuleRepository extends JpaRepository<ReplaceRule, Long> {
     
     /**
@@ -27,4 +33,11 @@ public interface ReplaceRuleRepository extends JpaRepository<ReplaceRule, Long>
      */
     List<ReplaceRule> findByScopeContainingIgnoreCase(String scope);
     
+    /**
+     * 按ID顺序逐行读取所有替换规则，需在事务中使用并关闭
+     */
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = "500"))
+    @Query("SELECT r FROM ReplaceRule r ORDER BY r.id")
+    Stream<ReplaceRule> streamAll();
+    
 }